@@ -0,0 +1,104 @@
+package org.schabi.newpipe.database
+
+import android.util.Log
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotEquals
+import org.junit.Before
+import org.junit.Test
+import org.schabi.newpipe.database.stream.dao.StreamDAO
+import org.schabi.newpipe.database.stream.model.StreamEntity
+import org.schabi.newpipe.extractor.stream.StreamType
+import org.schabi.newpipe.testUtil.TestDatabase
+import java.time.OffsetDateTime
+import java.time.ZoneOffset
+
+class StreamDAOTest {
+
+    private lateinit var database: AppDatabase
+    private lateinit var streamDAO: StreamDAO
+
+    @Before
+    fun setup() {
+        database = TestDatabase.createReplacingNewPipeDatabase()
+        streamDAO = database.streamDAO()
+    }
+
+    @After
+    fun cleanUp() {
+        database.close()
+    }
+
+    private fun stream(id: Int, title: String = "title $id") = StreamEntity(
+        serviceId = 0, url = "https://example.com/watch/$id", title = title,
+        streamType = StreamType.VIDEO_STREAM, duration = 1, uploader = "uploader"
+    )
+
+    @Test
+    fun upsertAllInsertsAndUpdates() {
+        val existingUid = streamDAO.insert(stream(1))
+
+        val uids = streamDAO.upsertAll(listOf(stream(2), stream(1, "renamed"), stream(3)))
+
+        assertEquals(3, uids.size)
+        assertEquals(existingUid, uids[1])
+        assertNotEquals(uids[0], uids[2])
+        val titles = streamDAO.all.blockingFirst().associate { it.uid to it.title }
+        assertEquals("renamed", titles[existingUid])
+        assertEquals(3, titles.size)
+    }
+
+    @Test
+    fun upsertAllHandlesDuplicates() {
+        val uids = streamDAO.upsertAll(listOf(stream(1), stream(1, "later")))
+
+        assertEquals(uids[0], uids[1])
+        val streams = streamDAO.all.blockingFirst()
+        assertEquals(1, streams.size)
+        assertEquals("later", streams[0].title)
+    }
+
+    @Test
+    fun upsertAllKeepsPreciseUploadDate() {
+        val preciseDate = OffsetDateTime.of(2020, 1, 1, 12, 0, 0, 0, ZoneOffset.UTC)
+        streamDAO.insert(
+            stream(1).apply {
+                uploadDate = preciseDate
+                isUploadDateApproximation = false
+            }
+        )
+
+        streamDAO.upsertAll(
+            listOf(
+                stream(1).apply {
+                    uploadDate = preciseDate.plusHours(3)
+                    isUploadDateApproximation = true
+                }
+            )
+        )
+
+        assertEquals(preciseDate, streamDAO.all.blockingFirst()[0].uploadDate)
+    }
+
+    /**
+     * Not an assertion on the speed, logs the time of writing a 5000 streams playlist, half of
+     * them already in the database, one by one and in bulk.
+     */
+    @Test
+    fun upsertAllBenchmark() {
+        streamDAO.upsertAll((0 until 2500).map { stream(it) })
+
+        var startTime = System.nanoTime()
+        database.runInTransaction {
+            (0 until 5000).forEach { streamDAO.upsert(stream(it, "one by one")) }
+        }
+        val perRowTime = (System.nanoTime() - startTime) / 1_000_000
+
+        startTime = System.nanoTime()
+        streamDAO.upsertAll((0 until 5000).map { stream(it, "bulk") })
+        val bulkTime = (System.nanoTime() - startTime) / 1_000_000
+
+        Log.i("StreamDAOTest", "5000 streams: one by one $perRowTime ms, bulk $bulkTime ms")
+        assertEquals(5000, streamDAO.all.blockingFirst().size)
+    }
+}
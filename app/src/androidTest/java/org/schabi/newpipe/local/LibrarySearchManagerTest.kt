@@ -0,0 +1,95 @@
+package org.schabi.newpipe.local
+
+import android.util.Log
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.schabi.newpipe.database.AppDatabase
+import org.schabi.newpipe.database.playlist.model.PlaylistRemoteEntity
+import org.schabi.newpipe.database.stream.model.StreamEntity
+import org.schabi.newpipe.extractor.stream.StreamType
+import org.schabi.newpipe.local.playlist.LocalPlaylistManager
+import org.schabi.newpipe.testUtil.TestDatabase
+import org.schabi.newpipe.testUtil.TrampolineSchedulerRule
+
+class LibrarySearchManagerTest {
+
+    private lateinit var manager: LibrarySearchManager
+    private lateinit var database: AppDatabase
+
+    @get:Rule
+    val trampolineScheduler = TrampolineSchedulerRule()
+
+    @Before
+    fun setup() {
+        database = TestDatabase.createReplacingNewPipeDatabase()
+        manager = LibrarySearchManager(database)
+    }
+
+    @After
+    fun cleanUp() {
+        database.close()
+    }
+
+    private fun stream(id: Int, title: String, uploader: String = "uploader") = StreamEntity(
+        serviceId = 0, url = "https://newpipe.net/$id", title = title,
+        streamType = StreamType.VIDEO_STREAM, duration = 1, uploader = uploader
+    )
+
+    private fun searchIds(text: String): Set<Long> {
+        return manager.searchStreamIds(text).blockingGet()
+    }
+
+    @Test
+    fun streamIndexFollowsTheStreamsTable() {
+        val first = database.streamDAO().insert(stream(1, "Never gonna give you up", "Rick"))
+        val second = database.streamDAO().insert(stream(2, "Giving up", "Someone"))
+
+        assertEquals(setOf(first, second), searchIds("giv up"))
+        assertEquals(setOf(first), searchIds("rick"))
+
+        database.streamDAO().update(stream(1, "Renamed", "Rick").apply { uid = first })
+        assertEquals(setOf(second), searchIds("giv"))
+        assertEquals(setOf(first), searchIds("renamed"))
+
+        database.streamDAO().deleteAll()
+        assertEquals(emptySet<Long>(), searchIds("rick"))
+    }
+
+    @Test
+    fun librarySearchCoversPlaylistsAndBookmarks() {
+        LocalPlaylistManager(database)
+            .createPlaylist("Music to code", listOf(stream(1, "Lofi beats")))
+            .blockingGet()
+        database.playlistRemoteDAO().insert(
+            PlaylistRemoteEntity(0, "Coding livestreams", "https://newpipe.net/p", null, "Chan", 3)
+        )
+        database.streamDAO().insert(stream(2, "Not in the library"))
+
+        val result = manager.search("cod").blockingGet()
+        assertEquals(listOf("Music to code"), result.playlists.map { it.name })
+        assertEquals(listOf("Coding livestreams"), result.remotePlaylists.map { it.name })
+
+        val streams = manager.search("lofi beat").blockingGet().streams
+        assertEquals(listOf("Lofi beats"), streams.map { it.title })
+        assertEquals(0, manager.search("library").blockingGet().streams.size)
+    }
+
+    /**
+     * Not an assertion on the speed, logs the time of filtering a 10k streams playlist.
+     */
+    @Test
+    fun filterLargePlaylist() {
+        database.streamDAO().insertAll((0 until 10_000).map { stream(it, "video number $it") })
+
+        val startTime = System.nanoTime()
+        val ids = searchIds("number 99")
+        val millis = (System.nanoTime() - startTime) / 1_000_000
+
+        Log.i("LibrarySearchManagerTest", "Filtered 10000 streams in $millis ms")
+        // 99 and 990..999 and 9900..9999
+        assertEquals(111, ids.size)
+    }
+}
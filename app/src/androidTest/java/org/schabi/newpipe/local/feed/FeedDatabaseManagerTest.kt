@@ -0,0 +1,140 @@
+package org.schabi.newpipe.local.feed
+
+import android.util.Log
+import androidx.test.core.app.ApplicationProvider
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.schabi.newpipe.database.AppDatabase
+import org.schabi.newpipe.database.subscription.SubscriptionEntity
+import org.schabi.newpipe.extractor.localization.DateWrapper
+import org.schabi.newpipe.extractor.stream.StreamInfoItem
+import org.schabi.newpipe.extractor.stream.StreamType
+import org.schabi.newpipe.testUtil.TestDatabase
+import java.time.OffsetDateTime
+import java.time.ZoneOffset
+
+class FeedDatabaseManagerTest {
+
+    private lateinit var manager: FeedDatabaseManager
+    private lateinit var database: AppDatabase
+
+    @Before
+    fun setup() {
+        database = TestDatabase.createReplacingNewPipeDatabase()
+        manager = FeedDatabaseManager(ApplicationProvider.getApplicationContext())
+    }
+
+    @After
+    fun cleanUp() {
+        database.close()
+    }
+
+    private fun insertSubscriptions(count: Int): List<Long> {
+        return database.subscriptionDAO().insertAll(
+            (0 until count).map {
+                SubscriptionEntity().apply {
+                    serviceId = 0
+                    url = "https://example.com/channel/$it"
+                    name = "channel $it"
+                }
+            }
+        )
+    }
+
+    private fun stream(id: String): StreamInfoItem {
+        return StreamInfoItem(0, "https://example.com/watch/$id", id, StreamType.VIDEO_STREAM)
+            .apply {
+                uploaderName = "uploader"
+                uploadDate = DateWrapper(OffsetDateTime.now(ZoneOffset.UTC).minusDays(1))
+            }
+    }
+
+    @Test
+    fun sharedStreamsAreWrittenOnce() {
+        val (first, second) = insertSubscriptions(2)
+        val shared = stream("shared")
+
+        database.runInTransaction {
+            manager.upsertBatch(
+                listOf(
+                    FeedDatabaseManager.FeedUpdate(first, listOf(stream("a"), shared), "fp"),
+                    FeedDatabaseManager.FeedUpdate(second, listOf(shared)),
+                )
+            )
+        }
+
+        assertEquals(2, database.streamDAO().all.blockingFirst().size)
+        assertEquals(2, database.feedDAO().getStreamIdsForSubscriptions(listOf(first)).size)
+        assertEquals(1, database.feedDAO().getStreamIdsForSubscriptions(listOf(second)).size)
+        assertEquals("fp", database.feedDAO().getFingerprint(first))
+    }
+
+    @Test
+    fun streamsNotLinkedAnymoreAreDeleted() {
+        val (subscription) = insertSubscriptions(1)
+
+        database.runInTransaction {
+            manager.upsertBatch(
+                listOf(FeedDatabaseManager.FeedUpdate(subscription, listOf(stream("a"), stream("b"))))
+            )
+        }
+        database.runInTransaction {
+            manager.upsertBatch(
+                listOf(FeedDatabaseManager.FeedUpdate(subscription, listOf(stream("b"))))
+            )
+        }
+
+        val streams = database.streamDAO().all.blockingFirst()
+        assertEquals(listOf("b"), streams.map { it.title })
+    }
+
+    @Test
+    fun unchangedSubscriptionsKeepTheirStreams() {
+        val (subscription) = insertSubscriptions(1)
+
+        database.runInTransaction {
+            manager.upsertBatch(
+                listOf(FeedDatabaseManager.FeedUpdate(subscription, listOf(stream("a")), "fp"))
+            )
+        }
+        database.runInTransaction {
+            manager.upsertBatch(
+                listOf(
+                    FeedDatabaseManager.FeedUpdate(
+                        subscription, emptyList(), "fp", isUnchanged = true
+                    )
+                )
+            )
+        }
+
+        assertEquals(1, database.feedDAO().getStreamIdsForSubscriptions(listOf(subscription)).size)
+    }
+
+    /**
+     * Not an assertion on the speed, logs the throughput of a refresh of 500 channels with
+     * 30 streams each, for comparison between changes.
+     */
+    @Test
+    fun batchWriteThroughput() {
+        val subscriptions = insertSubscriptions(500)
+        val updates = subscriptions.mapIndexed { index, subscription ->
+            FeedDatabaseManager.FeedUpdate(
+                subscription,
+                (0 until 30).map { stream("$index-$it") }
+            )
+        }
+
+        val startTime = System.nanoTime()
+        updates.chunked(50).forEach { batch ->
+            database.runInTransaction { manager.upsertBatch(batch) }
+        }
+        val seconds = (System.nanoTime() - startTime) / 1e9
+
+        val streamCount = updates.sumOf { it.streams.size }
+        Log.i("FeedDatabaseManagerTest", "Inserted ${(streamCount / seconds).toInt()} streams/s")
+        assertTrue(database.streamDAO().all.blockingFirst().size == streamCount)
+    }
+}
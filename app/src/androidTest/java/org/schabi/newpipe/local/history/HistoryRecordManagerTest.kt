@@ -9,6 +9,9 @@ import org.junit.Rule
 import org.junit.Test
 import org.schabi.newpipe.database.AppDatabase
 import org.schabi.newpipe.database.history.model.SearchHistoryEntry
+import org.schabi.newpipe.database.history.model.StreamHistoryEntity
+import org.schabi.newpipe.database.stream.model.StreamEntity
+import org.schabi.newpipe.extractor.stream.StreamType
 import org.schabi.newpipe.testUtil.TestDatabase
 import org.schabi.newpipe.testUtil.TrampolineSchedulerRule
 import java.time.LocalDateTime
@@ -162,6 +165,54 @@ class HistoryRecordManagerTest {
         assertThat(searches).isEqualTo(searches2)
     }
 
+    private fun insertStatistics(count: Int) {
+        val streamIds = database.streamDAO().insertAll(
+            (0 until count).map {
+                StreamEntity(
+                    serviceId = 0, url = "https://newpipe.net/$it", title = "title $it",
+                    streamType = StreamType.VIDEO_STREAM, duration = 1, uploader = "uploader"
+                )
+            }
+        )
+        database.streamHistoryDAO().insertAll(
+            streamIds.mapIndexed { i, streamId ->
+                // a few streams share the same access date to check the tie-break
+                StreamHistoryEntity(streamId, time.minusSeconds((i / 3).toLong()), (i % 7).toLong())
+            }
+        )
+    }
+
+    @Test
+    fun getStreamStatisticsPage_lastPlayed() {
+        insertStatistics(120)
+        val all = manager.getStreamStatistics().blockingFirst()
+            .sortedWith(compareBy({ -it.latestAccessDate.toEpochSecond() }, { -it.streamId }))
+
+        val firstPage = manager.getStreamStatisticsPage(false, null, "", 50).blockingGet()
+        val pages = generateSequence(firstPage) {
+            if (it.size < 50) null
+            else manager.getStreamStatisticsPage(false, it.last(), "", 50).blockingGet()
+        }.toList()
+
+        assertEquals(listOf(50, 50, 20), pages.map { it.size })
+        assertEquals(all.map { it.streamId }, pages.flatten().map { it.streamId })
+    }
+
+    @Test
+    fun getStreamStatisticsPage_mostPlayedWithFilter() {
+        insertStatistics(120)
+
+        val firstPage = manager.getStreamStatisticsPage(true, null, "title 1", 10).blockingGet()
+        val secondPage = manager.getStreamStatisticsPage(true, firstPage.last(), "title 1", 10)
+            .blockingGet()
+
+        val entries = firstPage + secondPage
+        assertThat(entries).allMatch { it.streamEntity.title.startsWith("title 1") }
+        assertThat(entries.map { it.streamId }).doesNotHaveDuplicates()
+        assertThat(entries.map { it.watchCount }).isSortedAccordingTo(reverseOrder())
+        assertEquals(0, manager.getStreamStatisticsPage(true, null, "%", 10).blockingGet().size)
+    }
+
     companion object {
         private val time = OffsetDateTime.of(LocalDateTime.of(2000, 1, 1, 1, 1), ZoneOffset.UTC)
 
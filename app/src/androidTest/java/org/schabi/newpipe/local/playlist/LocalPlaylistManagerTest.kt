@@ -1,6 +1,7 @@
 package org.schabi.newpipe.local.playlist
 
 import org.junit.After
+import org.junit.Assert.assertEquals
 import org.junit.Before
 import org.junit.Rule
 import org.junit.Test
@@ -74,4 +75,52 @@ class LocalPlaylistManagerTest {
         result.test().await().assertComplete()
         database.streamDAO().all.test().awaitCount(1).assertValue(listOf(stream, upserted))
     }
+
+    private fun createLargePlaylist(size: Int): Long {
+        val streams = (0 until size).map {
+            StreamEntity(
+                serviceId = 1, url = "https://newpipe.net/$it", title = "title $it",
+                streamType = StreamType.VIDEO_STREAM, duration = 1, uploader = "uploader"
+            )
+        }
+        manager.createPlaylist("name", streams).test().await().assertComplete()
+        return database.playlistDAO().all.blockingFirst()[0].uid
+    }
+
+    private fun storedStreamIds(playlistId: Long): List<Long> {
+        return database.playlistStreamDAO().getStreamIdsOf(playlistId)
+    }
+
+    @Test
+    fun updateJoin_appliesMovesAndRemovals() {
+        val playlistId = createLargePlaylist(3000)
+        val streamIds = storedStreamIds(playlistId).toMutableList()
+
+        streamIds.add(2500, streamIds.removeAt(10))
+        manager.updateJoin(playlistId, streamIds).test().await().assertComplete()
+        assertEquals(streamIds, storedStreamIds(playlistId))
+
+        streamIds.add(0, streamIds.removeAt(2999))
+        manager.updateJoin(playlistId, streamIds).test().await().assertComplete()
+        assertEquals(streamIds, storedStreamIds(playlistId))
+
+        streamIds.removeAt(1000)
+        streamIds.removeAt(5)
+        manager.updateJoin(playlistId, streamIds).test().await().assertComplete()
+        assertEquals(streamIds, storedStreamIds(playlistId))
+
+        val joinIndices = database.playlistStreamDAO().all.blockingFirst().map { it.index }
+        assertEquals((0 until 2998).toList(), joinIndices.sorted())
+    }
+
+    @Test
+    fun updateJoin_duplicatesAreKept() {
+        val playlistId = createLargePlaylist(10)
+        val streamIds = storedStreamIds(playlistId)
+        val withDuplicate = streamIds + streamIds[3]
+
+        manager.updateJoin(playlistId, withDuplicate).test().await().assertComplete()
+
+        assertEquals(withDuplicate, storedStreamIds(playlistId))
+    }
 }
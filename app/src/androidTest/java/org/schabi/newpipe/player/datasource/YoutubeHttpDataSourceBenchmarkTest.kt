@@ -0,0 +1,134 @@
+package org.schabi.newpipe.player.datasource
+
+import android.net.Uri
+import android.os.Bundle
+import android.os.Debug
+import android.os.SystemClock
+import android.util.Log
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.LargeTest
+import androidx.test.platform.app.InstrumentationRegistry
+import com.google.android.exoplayer2.C
+import com.google.android.exoplayer2.upstream.DataSource
+import com.google.android.exoplayer2.upstream.DataSpec
+import com.google.android.exoplayer2.upstream.DefaultHttpDataSource
+import okhttp3.mockwebserver.Dispatcher
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
+import okio.Buffer
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * Compares [YoutubeHttpDataSource] with ExoPlayer's [DefaultHttpDataSource], which uses
+ * `HttpURLConnection` like the former implementation did, on chunk requests to a local server.
+ *
+ * Results are sent as instrumentation status, run with `am instrument -r` to see them.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4::class)
+class YoutubeHttpDataSourceBenchmarkTest {
+    companion object {
+        private const val CHUNK_SIZE = 64 * 1024
+        private const val WARM_UP_REQUESTS = 20
+        private const val REQUESTS = 300
+    }
+
+    private lateinit var server: MockWebServer
+    private val chunk = Buffer().write(ByteArray(CHUNK_SIZE))
+
+    @Before
+    fun setUp() {
+        server = MockWebServer()
+        server.setDispatcher(object : Dispatcher() {
+            override fun dispatch(request: RecordedRequest) = MockResponse()
+                .setHeader("Content-Type", "video/mp4")
+                .setBody(chunk.clone())
+        })
+        server.start()
+    }
+
+    @After
+    fun tearDown() {
+        server.shutdown()
+    }
+
+    @Test
+    fun chunkRequests() {
+        val uri = Uri.parse(
+            server.url("/videoplayback?itag=18&mime=video%2Fmp4").toString()
+        )
+
+        val baseline = measure(DefaultHttpDataSource.Factory().createDataSource(), uri)
+        val firstRequest = server.requestCount
+        val okHttp = measure(
+            YoutubeHttpDataSource.Factory().setRnParameterEnabled(true).createDataSource(), uri
+        )
+
+        // every request after the first one must have reused a connection
+        var newConnections = 0
+        for (i in 0 until firstRequest) {
+            server.takeRequest()
+        }
+        for (i in firstRequest until server.requestCount) {
+            val request = server.takeRequest()
+            if (request.sequenceNumber == 0) {
+                newConnections++
+            }
+            assertEquals("rn parameter", (i - firstRequest).toString(),
+                request.requestUrl.queryParameter("rn"))
+        }
+
+        val results = Bundle().apply {
+            putFloat("httpUrlConnectionMillisPerChunk", baseline.first)
+            putFloat("httpUrlConnectionCpuMillisPerChunk", baseline.second)
+            putFloat("okHttpMillisPerChunk", okHttp.first)
+            putFloat("okHttpCpuMillisPerChunk", okHttp.second)
+            putInt("okHttpNewConnections", newConnections)
+        }
+        Log.i("YoutubeHttpDataSourceBenchmark", results.toString())
+        InstrumentationRegistry.getInstrumentation().sendStatus(0, results)
+
+        assertTrue("$newConnections connections were opened", newConnections <= 1)
+    }
+
+    /**
+     * @return the average wall clock time and thread CPU time of a chunk request, in
+     * milliseconds
+     */
+    private fun measure(dataSource: DataSource, uri: Uri): Pair<Float, Float> {
+        val buffer = ByteArray(16 * 1024)
+        var wallNanos = 0L
+        var cpuNanos = 0L
+        for (i in 0 until WARM_UP_REQUESTS + REQUESTS) {
+            val wallStart = SystemClock.elapsedRealtimeNanos()
+            val cpuStart = Debug.threadCpuTimeNanos()
+
+            dataSource.open(
+                DataSpec.Builder().setUri(uri).setPosition(0).setLength(CHUNK_SIZE.toLong())
+                    .build()
+            )
+            var total = 0
+            while (true) {
+                val read = dataSource.read(buffer, 0, buffer.size)
+                if (read == C.RESULT_END_OF_INPUT) {
+                    break
+                }
+                total += read
+            }
+            dataSource.close()
+            assertEquals(CHUNK_SIZE, total)
+
+            if (i >= WARM_UP_REQUESTS) {
+                wallNanos += SystemClock.elapsedRealtimeNanos() - wallStart
+                cpuNanos += Debug.threadCpuTimeNanos() - cpuStart
+            }
+        }
+        return Pair(wallNanos / REQUESTS / 1_000_000f, cpuNanos / REQUESTS / 1_000_000f)
+    }
+}
@@ -0,0 +1,129 @@
+package org.schabi.newpipe.player.helper
+
+import android.content.Context
+import androidx.test.core.app.ApplicationProvider
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.MediumTest
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertSame
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.io.File
+import java.util.concurrent.Executor
+import java.util.concurrent.TimeUnit
+
+@MediumTest
+@RunWith(AndroidJUnit4::class)
+class ManifestCacheTest {
+    companion object {
+        private const val MANIFEST = """<?xml version="1.0" encoding="UTF-8"?>
+<MPD xmlns="urn:mpeg:DASH:schema:MPD:2011" type="static" mediaPresentationDuration="PT10S"
+     minBufferTime="PT1.5S" profiles="urn:mpeg:dash:profile:full:2011">
+  <Period>
+    <AdaptationSet mimeType="audio/mp4">
+      <Representation id="140" codecs="mp4a.40.2" bandwidth="128000">
+        <BaseURL>https://example.com/audio</BaseURL>
+        <SegmentBase indexRange="0-100"><Initialization range="0-50"/></SegmentBase>
+      </Representation>
+    </AdaptationSet>
+  </Period>
+</MPD>"""
+        private const val PLAYLIST = """#EXTM3U
+#EXT-X-TARGETDURATION:10
+#EXTINF:10.0,
+https://example.com/segment0.ts
+#EXT-X-ENDLIST
+"""
+    }
+
+    private lateinit var directory: File
+    private var generations = 0
+
+    @Before
+    fun setup() {
+        directory = File(
+            ApplicationProvider.getApplicationContext<Context>().cacheDir,
+            "manifest_cache_test"
+        )
+        directory.deleteRecursively()
+    }
+
+    @After
+    fun cleanUp() {
+        directory.deleteRecursively()
+    }
+
+    private fun newCache(): ManifestCache {
+        return ManifestCache().apply {
+            // write synchronously, so that the files exist once the manifest is returned
+            setDiskCache(ManifestDiskCache(directory, 1024 * 1024, Executor { it.run() }))
+        }
+    }
+
+    private fun streamUrl(expiresInMillis: Long): String {
+        val expire = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis() + expiresInMillis)
+        return "https://example.googlevideo.com/videoplayback?itag=140&expire=$expire"
+    }
+
+    private fun generate(): String {
+        generations++
+        return MANIFEST
+    }
+
+    @Test
+    fun generatedManifestIsGeneratedAndParsedOnce() {
+        val cache = newCache()
+        val url = streamUrl(TimeUnit.HOURS.toMillis(1))
+
+        val first = cache.getGeneratedDashManifest(url, "", ::generate)
+        val second = cache.getGeneratedDashManifest(url, "", ::generate)
+        assertSame(first, second)
+        assertEquals(1, generations)
+        assertEquals(10_000, first.durationMs)
+    }
+
+    @Test
+    fun generatedManifestSurvivesTheProcess() {
+        val url = streamUrl(TimeUnit.HOURS.toMillis(1))
+        newCache().getGeneratedDashManifest(url, "", ::generate)
+
+        val manifest = newCache().getGeneratedDashManifest(url, "", ::generate)
+        assertEquals(1, generations)
+        assertEquals(10_000, manifest.durationMs)
+    }
+
+    @Test
+    fun expiredManifestIsGeneratedAgain() {
+        val cache = newCache()
+        val url = streamUrl(-TimeUnit.MINUTES.toMillis(1))
+
+        cache.getGeneratedDashManifest(url, "", ::generate)
+        newCache().getGeneratedDashManifest(url, "", ::generate)
+        assertEquals(2, generations)
+    }
+
+    @Test
+    fun givenManifestsAreParsedOncePerContent() {
+        val cache = newCache()
+        assertSame(cache.getDashManifest(MANIFEST, ""), cache.getDashManifest(MANIFEST, ""))
+        assertSame(cache.getHlsPlaylist(PLAYLIST, ""), cache.getHlsPlaylist(PLAYLIST, ""))
+        assertNotSame(
+            cache.getHlsPlaylist(PLAYLIST, ""),
+            cache.getHlsPlaylist(PLAYLIST.replace("segment0", "segment1"), "")
+        )
+    }
+
+    @Test
+    fun clearingDropsBothTiers() {
+        val cache = newCache()
+        val url = streamUrl(TimeUnit.HOURS.toMillis(1))
+        cache.getGeneratedDashManifest(url, "", ::generate)
+
+        cache.clearCache()
+        cache.getGeneratedDashManifest(url, "", ::generate)
+        assertEquals(2, generations)
+    }
+}
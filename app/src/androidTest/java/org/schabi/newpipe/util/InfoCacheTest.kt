@@ -0,0 +1,109 @@
+package org.schabi.newpipe.util
+
+import android.content.Context
+import androidx.test.core.app.ApplicationProvider
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.MediumTest
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.schabi.newpipe.extractor.InfoItem
+import org.schabi.newpipe.extractor.linkhandler.ListLinkHandler
+import org.schabi.newpipe.extractor.stream.StreamInfoItem
+import org.schabi.newpipe.extractor.stream.StreamType
+import java.io.File
+import java.util.concurrent.Executor
+
+@MediumTest
+@RunWith(AndroidJUnit4::class)
+class InfoCacheTest {
+    private lateinit var directory: File
+
+    @Before
+    fun setup() {
+        directory = File(
+            ApplicationProvider.getApplicationContext<Context>().cacheDir,
+            "info_cache_test"
+        )
+        directory.deleteRecursively()
+    }
+
+    @After
+    fun cleanUp() {
+        directory.deleteRecursively()
+    }
+
+    private fun newCache(maxMemoryBytes: Int = 1024 * 1024): InfoCache {
+        return InfoCache(maxMemoryBytes).apply {
+            // write synchronously, so that the files exist once putInfo returns
+            setDiskCache(InfoDiskCache(directory, 1024 * 1024, Executor { it.run() }))
+        }
+    }
+
+    private fun playlist(id: Int, itemCount: Int = 1): RelatedItemInfo {
+        val url = "https://example.com/playlist/$id"
+        return RelatedItemInfo(0, ListLinkHandler(url, url, "$id", emptyList(), ""), "$id")
+            .apply {
+                relatedItems = (0 until itemCount).map {
+                    StreamInfoItem(
+                        0, "https://example.com/watch/$it", "$it", StreamType.VIDEO_STREAM
+                    )
+                }
+            }
+    }
+
+    @Test
+    fun infoSurvivesANewProcess() {
+        val info = playlist(1)
+        newCache().putInfo(0, info.url, info, InfoItem.InfoType.PLAYLIST)
+
+        val cache = newCache()
+        val cached = cache.getFromKey(0, info.url, InfoItem.InfoType.PLAYLIST)
+
+        assertNotNull(cached)
+        assertEquals(info.name, cached!!.name)
+        assertEquals(1, cache.getDiskHitCount(InfoItem.InfoType.PLAYLIST))
+        assertNotNull(cache.getFromKey(0, info.url, InfoItem.InfoType.PLAYLIST))
+        assertEquals(1, cache.getMemoryHitCount(InfoItem.InfoType.PLAYLIST))
+    }
+
+    @Test
+    fun commentsAreNotWrittenToDisk() {
+        val info = playlist(1)
+        newCache().putInfo(0, info.url, info, InfoItem.InfoType.COMMENT)
+
+        val cache = newCache()
+        assertNull(cache.getFromKey(0, info.url, InfoItem.InfoType.COMMENT))
+        assertEquals(1, cache.getMissCount(InfoItem.InfoType.COMMENT))
+    }
+
+    @Test
+    fun removedInfoIsDeletedFromDisk() {
+        val info = playlist(1)
+        val cache = newCache()
+        cache.putInfo(0, info.url, info, InfoItem.InfoType.PLAYLIST)
+        cache.removeInfo(0, info.url, InfoItem.InfoType.PLAYLIST)
+
+        assertNull(newCache().getFromKey(0, info.url, InfoItem.InfoType.PLAYLIST))
+    }
+
+    @Test
+    fun infosLargerThanTheirStripeAreNotKeptInMemory() {
+        // a single stripe holds 1/8 of the budget
+        val cache = newCache(maxMemoryBytes = 8 * 64 * 1024)
+        cache.setDiskCache(null)
+        val small = playlist(1)
+        val large = playlist(2, itemCount = 1000)
+        cache.putInfo(0, small.url, small, InfoItem.InfoType.PLAYLIST)
+        cache.putInfo(0, large.url, large, InfoItem.InfoType.PLAYLIST)
+
+        assertTrue(cache.getSize() <= cache.getMaxSize())
+        assertNotNull(cache.getFromKey(0, small.url, InfoItem.InfoType.PLAYLIST))
+        assertNull(cache.getFromKey(0, large.url, InfoItem.InfoType.PLAYLIST))
+    }
+}
@@ -0,0 +1,92 @@
+package org.schabi.newpipe.views
+
+import android.graphics.Color
+import android.graphics.Picture
+import android.os.Bundle
+import android.os.SystemClock
+import android.util.Log
+import android.view.View
+import androidx.test.core.app.ApplicationProvider
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.LargeTest
+import androidx.test.internal.runner.junit4.statement.UiThreadStatement
+import androidx.test.platform.app.InstrumentationRegistry
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.schabi.newpipe.extractor.bulletComments.BulletCommentsInfoItem
+
+/**
+ * Renders a dense danmaku stream and reports the time the UI thread spends per frame to move the
+ * comments and record their drawing, which is what the hardware renderer then replays.
+ *
+ * Results are sent as instrumentation status, run with `am instrument -r` to see them.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4::class)
+class BulletCommentsViewStressTest {
+    companion object {
+        private const val WIDTH = 1920
+        private const val HEIGHT = 1080
+        private const val FRAME_NANOS = 16_666_667L
+        private const val FRAME_COUNT = 1200
+        private const val MIN_COMMENT_COUNT = 200
+        private val TEXTS = arrayOf("8", "w", "草", "笑")
+    }
+
+    @Test
+    fun frameTimeWithManyComments() {
+        UiThreadStatement.runOnUiThread {
+            val view = BulletCommentsView(ApplicationProvider.getApplicationContext())
+            view.measure(
+                View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY)
+            )
+            view.layout(0, 0, WIDTH, HEIGHT)
+
+            val picture = Picture()
+            val frameTimes = LongArray(FRAME_COUNT)
+            var maxCommentCount = 0
+            var framesAboveMinimum = 0
+            var frameTime = FRAME_NANOS
+            for (frame in 0 until FRAME_COUNT) {
+                val start = SystemClock.elapsedRealtimeNanos()
+                view.advanceFrame(frameTime)
+                // a few new comments every frame, as many as the rows can take
+                for (i in 0 until 8) {
+                    view.addComment(
+                        TEXTS[(frame + i) % TEXTS.size], Color.WHITE, 1.0,
+                        if (i == 7) BulletCommentsInfoItem.Position.TOP
+                        else BulletCommentsInfoItem.Position.REGULAR,
+                        -1
+                    )
+                }
+                view.draw(picture.beginRecording(WIDTH, HEIGHT))
+                picture.endRecording()
+                frameTimes[frame] = SystemClock.elapsedRealtimeNanos() - start
+
+                maxCommentCount = maxOf(maxCommentCount, view.commentCount)
+                if (view.commentCount >= MIN_COMMENT_COUNT) {
+                    framesAboveMinimum++
+                }
+                frameTime += FRAME_NANOS
+            }
+
+            frameTimes.sort()
+            val results = Bundle().apply {
+                putInt("maxCommentCount", maxCommentCount)
+                putInt("framesAbove${MIN_COMMENT_COUNT}Comments", framesAboveMinimum)
+                putFloat("averageFrameTimeMillis", frameTimes.average().toFloat() / 1_000_000f)
+                putFloat("p95FrameTimeMillis", frameTimes[FRAME_COUNT * 95 / 100] / 1_000_000f)
+                putFloat("maxFrameTimeMillis", frameTimes.last() / 1_000_000f)
+            }
+            Log.i("BulletCommentsStress", results.toString())
+            InstrumentationRegistry.getInstrumentation().sendStatus(0, results)
+
+            assertTrue(
+                "Only $maxCommentCount comments were shown at once",
+                maxCommentCount >= MIN_COMMENT_COUNT
+            )
+        }
+    }
+}
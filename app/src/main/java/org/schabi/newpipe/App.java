@@ -21,9 +21,11 @@ import org.schabi.newpipe.error.ReCaptchaActivity;
 import org.schabi.newpipe.extractor.NewPipe;
 import org.schabi.newpipe.extractor.downloader.Downloader;
 import org.schabi.newpipe.ktx.ExceptionUtils;
+import org.schabi.newpipe.player.helper.ManifestCache;
 import org.schabi.newpipe.settings.NewPipeSettings;
 import org.schabi.newpipe.util.*;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.net.SocketException;
@@ -111,6 +113,9 @@ public class App extends MultiDexApplication {
         NewPipe.init(getDownloader(),
             Localization.getPreferredLocalization(this),
             Localization.getPreferredContentCountry(this));
+        DownloaderImpl.getInstance().updateHttpCache(this);
+        InfoCache.getInstance().setDiskCacheDirectory(new File(getCacheDir(), "info_cache"));
+        ManifestCache.getInstance().setDiskCacheDirectory(new File(getCacheDir(), "manifests"));
 
         Localization.initPrettyTime(Localization.resolvePrettyTime(getApplicationContext()));
 
@@ -22,7 +22,14 @@ import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.TrustManagerFactory;
 import javax.net.ssl.X509TrustManager;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.ref.SoftReference;
 import java.net.UnknownHostException;
 import java.nio.charset.StandardCharsets;
 import java.security.KeyManagementException;
@@ -30,7 +37,9 @@ import java.security.KeyStore;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.schabi.newpipe.MainActivity.DEBUG;
 import static org.schabi.newpipe.extractor.services.bilibili.BilibiliService.WWW_REFERER;
@@ -43,17 +52,33 @@ public final class DownloaderImpl extends Downloader {
     public static final String YOUTUBE_RESTRICTED_MODE_COOKIE = "PREF=f2=8000000";
     public static final String YOUTUBE_DOMAIN = "youtube.com";
 
+    private static final int DEFAULT_READ_TIMEOUT = 30;
+    private static final String HTTP_CACHE_DIRECTORY = "okhttp";
+    private static final long HTTP_CACHE_SIZE = 32 * 1024 * 1024;
+
     private static DownloaderImpl instance;
     private final Map<String, String> mCookies;
-    private final OkHttpClient client;
+    private final OkHttpClient baseClient;
+    private volatile OkHttpClient client;
     private Integer customTimeout;
 
+    /**
+     * Clients with a custom read timeout, derived from {@link #client} so all of them share the
+     * same dispatcher, connection pool and cache
+     */
+    private final Map<Integer, OkHttpClient> timeoutClients = new ConcurrentHashMap<>();
+
+    @Nullable
+    private Cache httpCache;
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+    private final AtomicLong cacheRevalidations = new AtomicLong();
+
     private DownloaderImpl(final OkHttpClient.Builder builder) {
-        this.client = builder
-                .readTimeout(30, TimeUnit.SECONDS)
-//                .cache(new Cache(new File(context.getExternalCacheDir(), "okhttp"),
-//                        16 * 1024 * 1024))
+        this.baseClient = builder
+                .readTimeout(DEFAULT_READ_TIMEOUT, TimeUnit.SECONDS)
                 .build();
+        this.client = baseClient;
         this.mCookies = new HashMap<>();
     }
 
@@ -78,6 +103,128 @@ public final class DownloaderImpl extends Downloader {
         return this;
     }
 
+    /**
+     * Gets the client for a request, the clients are created once per read timeout.
+     *
+     * @param url the url of the request
+     * @return a client sharing the connection pool of the other clients
+     */
+    OkHttpClient getClient(final String url) {
+        final OkHttpClient current = client;
+
+        // pipepipe.dev requests ignore the custom timeout
+        final int timeout = customTimeout == null || url.contains("pipepipe.dev")
+                ? DEFAULT_READ_TIMEOUT : customTimeout;
+        if (timeout == DEFAULT_READ_TIMEOUT) {
+            return current;
+        }
+
+        return timeoutClients.computeIfAbsent(timeout, t -> current.newBuilder()
+                .readTimeout(t, TimeUnit.SECONDS)
+                .build());
+    }
+
+    /**
+     * Gets a builder for clients which don't use the HTTP cache, such as the ones of media data
+     * sources, whose data is cached by the player.
+     *
+     * @return a builder of clients sharing the dispatcher and connection pool of the other clients
+     */
+    public OkHttpClient.Builder newClientBuilder() {
+        return baseClient.newBuilder();
+    }
+
+    /**
+     * Enables or disables the disk cache of HTTP responses. Only the responses allowed by their
+     * headers are stored, and stale ones are revalidated using ETag/Last-Modified.
+     *
+     * @param directory the cache directory, or {@code null} to disable and delete the cache
+     * @param maxSize   the maximum size of the cache, in bytes
+     */
+    public synchronized void setHttpCache(@Nullable final File directory, final long maxSize) {
+        if (httpCache != null) {
+            if (directory != null && directory.equals(httpCache.directory())
+                    && maxSize == httpCache.maxSize()) {
+                return;
+            }
+
+            try {
+                if (directory == null) {
+                    httpCache.delete();
+                } else {
+                    httpCache.close();
+                }
+            } catch (final IOException e) {
+                if (DEBUG) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        httpCache = directory == null ? null : new Cache(directory, maxSize);
+        client = baseClient.newBuilder().cache(httpCache).build();
+        timeoutClients.clear();
+    }
+
+    public void updateHttpCache(final Context context) {
+        setHttpCacheEnabled(context, PreferenceManager.getDefaultSharedPreferences(context)
+                .getBoolean(context.getString(R.string.http_cache_key), false));
+    }
+
+    public void setHttpCacheEnabled(final Context context, final boolean enabled) {
+        setHttpCache(enabled ? new File(context.getCacheDir(), HTTP_CACHE_DIRECTORY) : null,
+                HTTP_CACHE_SIZE);
+    }
+
+    public synchronized void clearHttpCache() {
+        if (httpCache == null) {
+            return;
+        }
+
+        try {
+            httpCache.evictAll();
+        } catch (final IOException e) {
+            if (DEBUG) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * @return amount of responses served from the disk cache without a network request
+     */
+    public long getCacheHitCount() {
+        return cacheHits.get();
+    }
+
+    /**
+     * @return amount of cacheable requests (GET) served from the network
+     */
+    public long getCacheMissCount() {
+        return cacheMisses.get();
+    }
+
+    /**
+     * @return amount of responses revalidated with a conditional request
+     */
+    public long getCacheRevalidationCount() {
+        return cacheRevalidations.get();
+    }
+
+    private void countCacheResult(final okhttp3.Response response) {
+        if (httpCache == null || !response.request().method().equals("GET")) {
+            return;
+        }
+
+        if (response.cacheResponse() == null) {
+            cacheMisses.incrementAndGet();
+        } else if (response.networkResponse() == null) {
+            cacheHits.incrementAndGet();
+        } else {
+            cacheRevalidations.incrementAndGet();
+        }
+    }
+
     /**
      * Enable TLS 1.2 and 1.1 on Android Kitkat. This function is mostly taken
      * from the documentation of OkHttpClient.Builder.sslSocketFactory(_,_).
@@ -190,6 +337,49 @@ public final class DownloaderImpl extends Downloader {
     @Override
     public Response execute(@NonNull final Request request)
             throws IOException, ReCaptchaException {
+        final okhttp3.Response response = executeCall(request);
+
+        final ResponseBody body = response.body();
+        byte[] rawBodyBytes = null;
+
+        try {
+            if (body != null) {
+                // keep only the bytes, the string is decoded if and when it is requested
+                rawBodyBytes = body.bytes();
+            }
+        } finally {
+            response.close();
+        }
+
+        final String latestUrl = response.request().url().toString();
+        return new LazyResponse(response.code(), response.message(),
+                response.headers().toMultimap(), rawBodyBytes, latestUrl);
+    }
+
+    /**
+     * Executes a request without buffering the response body, the body is read from the network
+     * while it is consumed. Useful for large pages that can be parsed incrementally.
+     *
+     * @param request the request to execute
+     * @return the response, must be closed by the caller
+     * @throws IOException        if the request fails
+     * @throws ReCaptchaException if the service asks for a reCaptcha
+     */
+    @NonNull
+    public StreamingResponse executeStreaming(@NonNull final Request request)
+            throws IOException, ReCaptchaException {
+        return new StreamingResponse(executeCall(request));
+    }
+
+    @NonNull
+    public StreamingResponse getStreaming(@NonNull final String url)
+            throws IOException, ReCaptchaException {
+        return executeStreaming(Request.newBuilder().get(url).build());
+    }
+
+    @NonNull
+    private okhttp3.Response executeCall(@NonNull final Request request)
+            throws IOException, ReCaptchaException {
         final String httpMethod = request.httpMethod();
         final String url = request.url();
         final Map<String, List<String>> headers = request.headers();
@@ -227,19 +417,9 @@ public final class DownloaderImpl extends Downloader {
 
         }
 
-        OkHttpClient tmpClient = client;
+        final OkHttpClient tmpClient = getClient(url);
         okhttp3.Response response = null;
 
-        if(url.contains("pipepipe.dev")) {
-            tmpClient = new OkHttpClient.Builder()
-                    .readTimeout(30, TimeUnit.SECONDS)
-                    .build();
-        } else if (customTimeout != null) {
-            tmpClient = new OkHttpClient.Builder()
-                    .readTimeout(customTimeout, TimeUnit.SECONDS)
-                    .build();
-        }
-
         int maxRetries = 2;
         int retryCount = 0;
 
@@ -274,25 +454,8 @@ public final class DownloaderImpl extends Downloader {
             throw new ReCaptchaException("reCaptcha Challenge requested", url);
         }
 
-        final ResponseBody body = response.body();
-        String responseBodyToReturn = null;
-        byte[] rawBodyBytes = null;
-
-        try {
-            if (body != null) {
-                rawBodyBytes = body.bytes(); // Read the raw bytes from the response body
-                responseBodyToReturn = new String(rawBodyBytes, StandardCharsets.UTF_8); // Convert bytes to string
-                // The body is closed after body.bytes() is called.
-            }
-        } finally {
-            if (body != null) {
-                body.close(); // Ensure the body is closed even if bytes() throws an IOException
-            }
-        }
-
-        final String latestUrl = response.request().url().toString();
-        return new Response(response.code(), response.message(), response.headers().toMultimap(),
-                responseBodyToReturn, rawBodyBytes, latestUrl);
+        countCacheResult(response);
+        return response;
     }
 
     public CancellableCall executeAsync(@NonNull final Request request, @NonNull final Downloader.AsyncCallback callback) {
@@ -330,12 +493,7 @@ public final class DownloaderImpl extends Downloader {
 
         }
 
-        OkHttpClient tmpClient = client;
-        if (customTimeout != null) {
-            tmpClient = new OkHttpClient.Builder()
-                    .readTimeout(customTimeout, TimeUnit.SECONDS)
-                    .build();
-        }
+        final OkHttpClient tmpClient = getClient(url);
 
         Call call = tmpClient.newCall(requestBuilder.build());
         CancellableCall cancellableCall = new CancellableCall(call);
@@ -354,18 +512,18 @@ public final class DownloaderImpl extends Downloader {
                         return;
                     }
 
+                    countCacheResult(response);
+
                     ResponseBody body = response.body();
-                    String responseBodyToReturn = null;
                     byte[] rawBodyBytes = null;
 
                     if (body != null) {
                         rawBodyBytes = body.bytes();
-                        responseBodyToReturn = new String(rawBodyBytes, StandardCharsets.UTF_8);
                     }
 
                     String latestUrl = response.request().url().toString();
-                    Response newPipeResponse = new Response(response.code(), response.message(),
-                            response.headers().toMultimap(), responseBodyToReturn, rawBodyBytes, latestUrl);
+                    Response newPipeResponse = new LazyResponse(response.code(), response.message(),
+                            response.headers().toMultimap(), rawBodyBytes, latestUrl);
 
                     callback.onSuccess(newPipeResponse);
                 } catch (Exception e) {
@@ -378,4 +536,85 @@ public final class DownloaderImpl extends Downloader {
         });
         return cancellableCall;
     }
+
+    /**
+     * Response that only keeps the raw body bytes, the UTF-8 string is decoded on the first call
+     * to {@link #responseBody()} and held softly, so the body is not kept twice on the heap for
+     * the whole lifetime of the response.
+     */
+    static final class LazyResponse extends Response {
+        @Nullable
+        private final byte[] rawBody;
+        @Nullable
+        private SoftReference<String> decodedBody;
+
+        LazyResponse(final int responseCode, final String responseMessage,
+                     final Map<String, List<String>> responseHeaders,
+                     @Nullable final byte[] rawBody, @Nullable final String latestUrl) {
+            super(responseCode, responseMessage, responseHeaders, null, rawBody, latestUrl);
+            this.rawBody = rawBody;
+        }
+
+        @Override
+        public String responseBody() {
+            if (rawBody == null) {
+                return null;
+            }
+
+            String body = decodedBody == null ? null : decodedBody.get();
+            if (body == null) {
+                body = new String(rawBody, StandardCharsets.UTF_8);
+                decodedBody = new SoftReference<>(body);
+            }
+            return body;
+        }
+    }
+
+    /**
+     * Response whose body has not been read yet, see {@link #executeStreaming(Request)}.
+     */
+    public static final class StreamingResponse implements Closeable {
+        private final okhttp3.Response response;
+
+        StreamingResponse(@NonNull final okhttp3.Response response) {
+            this.response = response;
+        }
+
+        public int responseCode() {
+            return response.code();
+        }
+
+        @NonNull
+        public String latestUrl() {
+            return response.request().url().toString();
+        }
+
+        @Nullable
+        public String getHeader(@NonNull final String name) {
+            return response.header(name);
+        }
+
+        /**
+         * @return the raw body, an empty stream if the response has no body
+         */
+        @NonNull
+        public InputStream stream() {
+            final ResponseBody body = response.body();
+            return body == null ? new ByteArrayInputStream(new byte[0]) : body.byteStream();
+        }
+
+        /**
+         * @return the body decoded with the charset declared by the server, UTF-8 by default
+         */
+        @NonNull
+        public Reader reader() {
+            final ResponseBody body = response.body();
+            return body == null ? new StringReader("") : body.charStream();
+        }
+
+        @Override
+        public void close() {
+            response.close();
+        }
+    }
 }
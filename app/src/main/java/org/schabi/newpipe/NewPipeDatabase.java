@@ -22,7 +22,8 @@ public final class NewPipeDatabase {
         return Room
                 .databaseBuilder(context.getApplicationContext(), AppDatabase.class, DATABASE_NAME)
                 .addMigrations(MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4, MIGRATION_4_5,
-                        MIGRATION_5_6, MIGRATION_7_6, MIGRATION_8_6, MIGRATION_9_6, MIGRATION_6_900, MIGRATION_9_900)
+                        MIGRATION_5_6, MIGRATION_7_6, MIGRATION_8_6, MIGRATION_9_6, MIGRATION_6_900, MIGRATION_9_900,
+                        MIGRATION_900_901, MIGRATION_901_902)
                 .build();
     }
 
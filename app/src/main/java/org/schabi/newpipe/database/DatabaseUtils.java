@@ -0,0 +1,26 @@
+package org.schabi.newpipe.database;
+
+import androidx.annotation.NonNull;
+
+public final class DatabaseUtils {
+    /**
+     * Page size of the keyset paginated queries used by the local lists.
+     */
+    public static final int PAGE_SIZE = 50;
+
+    private DatabaseUtils() {
+    }
+
+    /**
+     * Escapes the wildcards of a text to be matched with {@code LIKE ... ESCAPE '\'}.
+     *
+     * @param text the text to look for
+     * @return the text with {@code \}, {@code %} and {@code _} escaped
+     */
+    @NonNull
+    public static String escapeLike(@NonNull final String text) {
+        return text.replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_");
+    }
+}
@@ -28,6 +28,8 @@ public final class Migrations {
     public static final int DB_VER_8 = 8;
     public static final int DB_VER_9 = 9;
     public static final int DB_VER_900 = 900;
+    public static final int DB_VER_901 = 901;
+    public static final int DB_VER_902 = 902;
 
     private static final String TAG = Migrations.class.getName();
     public static final boolean DEBUG = MainActivity.DEBUG;
@@ -422,4 +424,33 @@ public final class Migrations {
 
     private Migrations() {
     }
+
+    public static final Migration MIGRATION_900_901 = new Migration(DB_VER_900, DB_VER_901) {
+        @Override
+        public void migrate(@NonNull final SupportSQLiteDatabase database) {
+            // Fingerprint of the last fetch of each subscription, see FeedLoadManager
+            database.execSQL("ALTER TABLE `feed_last_updated` ADD COLUMN `fingerprint` TEXT");
+        }
+    };
+
+    public static final Migration MIGRATION_901_902 = new Migration(DB_VER_901, DB_VER_902) {
+        @Override
+        public void migrate(@NonNull final SupportSQLiteDatabase database) {
+            // Full-text indices of the local library. The triggers keeping them in sync with
+            // their content tables are (re)created by Room after every migration.
+            database.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS `streams_fts` USING FTS4("
+                    + "`title` TEXT NOT NULL, `uploader` TEXT NOT NULL, "
+                    + "tokenize=unicode61, content=`streams`)");
+            database.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS `playlists_fts` USING FTS4("
+                    + "`name` TEXT, tokenize=unicode61, content=`playlists`)");
+            database.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS `remote_playlists_fts` "
+                    + "USING FTS4(`name` TEXT, `uploader` TEXT, "
+                    + "tokenize=unicode61, content=`remote_playlists`)");
+
+            database.execSQL("INSERT INTO `streams_fts`(`streams_fts`) VALUES ('rebuild')");
+            database.execSQL("INSERT INTO `playlists_fts`(`playlists_fts`) VALUES ('rebuild')");
+            database.execSQL("INSERT INTO `remote_playlists_fts`(`remote_playlists_fts`) "
+                    + "VALUES ('rebuild')");
+        }
+    };
 }
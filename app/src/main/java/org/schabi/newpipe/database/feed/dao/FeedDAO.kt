@@ -173,6 +173,30 @@ abstract class FeedDAO {
     )
     abstract fun unlinkOldLivestreams(subscriptionId: Long)
 
+    /**
+     * Same as [unlinkOldLivestreams], for several subscriptions at once.
+     */
+    @Query("DELETE FROM feed WHERE subscription_id IN (:subscriptionIds)")
+    abstract fun unlinkAllForSubscriptions(subscriptionIds: List<Long>)
+
+    @Query("SELECT stream_id FROM feed WHERE subscription_id IN (:subscriptionIds)")
+    abstract fun getStreamIdsForSubscriptions(subscriptionIds: List<Long>): List<Long>
+
+    @Query(
+        """
+        SELECT f.stream_id FROM feed f
+
+        INNER JOIN streams s
+        ON s.uid = f.stream_id
+
+        WHERE s.upload_date < :offsetDateTime
+        """
+    )
+    abstract fun getStreamIdsOlderThan(offsetDateTime: OffsetDateTime): List<Long>
+
+    @Query("DELETE FROM feed WHERE stream_id IN (:streamIds)")
+    abstract fun unlinkStreams(streamIds: List<Long>)
+
     @Insert(onConflict = OnConflictStrategy.IGNORE)
     abstract fun insert(feedEntity: FeedEntity)
 
@@ -185,6 +209,9 @@ abstract class FeedDAO {
     @Update(onConflict = OnConflictStrategy.IGNORE)
     internal abstract fun updateLastUpdated(lastUpdatedEntity: FeedLastUpdatedEntity)
 
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    abstract fun upsertLastUpdated(lastUpdatedEntities: List<FeedLastUpdatedEntity>)
+
     @Transaction
     open fun setLastUpdatedForSubscription(lastUpdatedEntity: FeedLastUpdatedEntity) {
         val id = insertLastUpdated(lastUpdatedEntity)
@@ -194,6 +221,12 @@ abstract class FeedDAO {
         }
     }
 
+    @Query("SELECT fingerprint FROM feed_last_updated WHERE subscription_id = :subscriptionId")
+    abstract fun getFingerprint(subscriptionId: Long): String?
+
+    @Query("UPDATE feed_last_updated SET fingerprint = NULL")
+    abstract fun clearFingerprints()
+
     @Query(
         """
         SELECT MIN(lu.last_updated) FROM feed_last_updated lu
@@ -26,12 +26,20 @@ data class FeedLastUpdatedEntity(
     var subscriptionId: Long,
 
     @ColumnInfo(name = LAST_UPDATED)
-    var lastUpdated: OffsetDateTime? = null
+    var lastUpdated: OffsetDateTime? = null,
+
+    /**
+     * Fingerprint of the newest streams found by the last successful fetch, `null` if the
+     * subscription has to be fully fetched on the next refresh.
+     */
+    @ColumnInfo(name = FINGERPRINT)
+    var fingerprint: String? = null
 ) {
     companion object {
         const val FEED_LAST_UPDATED_TABLE = "feed_last_updated"
 
         const val SUBSCRIPTION_ID = "subscription_id"
         const val LAST_UPDATED = "last_updated"
+        const val FINGERPRINT = "fingerprint"
     }
 }
@@ -21,12 +21,40 @@ import static org.schabi.newpipe.database.stream.StreamStatisticsEntry.STREAM_LA
 import static org.schabi.newpipe.database.stream.StreamStatisticsEntry.STREAM_WATCH_COUNT;
 import static org.schabi.newpipe.database.stream.model.StreamEntity.STREAM_ID;
 import static org.schabi.newpipe.database.stream.model.StreamEntity.STREAM_TABLE;
+import static org.schabi.newpipe.database.stream.model.StreamEntity.STREAM_TITLE;
+import static org.schabi.newpipe.database.stream.model.StreamEntity.STREAM_UPLOADER;
 import static org.schabi.newpipe.database.stream.model.StreamStateEntity.JOIN_STREAM_ID_ALIAS;
 import static org.schabi.newpipe.database.stream.model.StreamStateEntity.STREAM_PROGRESS_MILLIS;
 import static org.schabi.newpipe.database.stream.model.StreamStateEntity.STREAM_STATE_TABLE;
 
 @Dao
 public abstract class StreamHistoryDAO implements HistoryDAO<StreamHistoryEntity> {
+    private static final String STATISTICS_QUERY = "SELECT * FROM " + STREAM_TABLE
+
+            // Select the latest entry and watch count for each stream id on history table
+            + " INNER JOIN "
+            + "(SELECT " + JOIN_STREAM_ID + ", "
+            + "  MAX(" + STREAM_ACCESS_DATE + ") AS " + STREAM_LATEST_DATE + ", "
+            + "  SUM(" + STREAM_REPEAT_COUNT + ") AS " + STREAM_WATCH_COUNT
+            + " FROM " + STREAM_HISTORY_TABLE + " GROUP BY " + JOIN_STREAM_ID + ")"
+
+            + " ON " + STREAM_ID + " = " + JOIN_STREAM_ID
+
+            + " LEFT JOIN "
+            + "(SELECT " + JOIN_STREAM_ID + " AS " + JOIN_STREAM_ID_ALIAS + ", "
+            + STREAM_PROGRESS_MILLIS
+            + " FROM " + STREAM_STATE_TABLE + " )"
+            + " ON " + STREAM_ID + " = " + JOIN_STREAM_ID_ALIAS;
+
+    /**
+     * Matches the streams whose title or uploader contains {@code :filter}, which has to be
+     * escaped with {@link org.schabi.newpipe.database.DatabaseUtils#escapeLike(String)}.
+     * An empty filter matches every stream.
+     */
+    private static final String FILTER_CONDITION = "(:filter = ''"
+            + " OR " + STREAM_TITLE + " LIKE '%' || :filter || '%' ESCAPE '\\'"
+            + " OR " + STREAM_UPLOADER + " LIKE '%' || :filter || '%' ESCAPE '\\')";
+
     @Query("SELECT * FROM " + STREAM_HISTORY_TABLE
             + " WHERE " + STREAM_ACCESS_DATE + " = "
             + "(SELECT MAX(" + STREAM_ACCESS_DATE + ") FROM " + STREAM_HISTORY_TABLE + ")")
@@ -69,21 +97,40 @@ public abstract class StreamHistoryDAO implements HistoryDAO<StreamHistoryEntity
     public abstract int deleteStreamHistory(long streamId);
 
     @RewriteQueriesToDropUnusedColumns
-    @Query("SELECT * FROM " + STREAM_TABLE
-
-            // Select the latest entry and watch count for each stream id on history table
-            + " INNER JOIN "
-            + "(SELECT " + JOIN_STREAM_ID + ", "
-            + "  MAX(" + STREAM_ACCESS_DATE + ") AS " + STREAM_LATEST_DATE + ", "
-            + "  SUM(" + STREAM_REPEAT_COUNT + ") AS " + STREAM_WATCH_COUNT
-            + " FROM " + STREAM_HISTORY_TABLE + " GROUP BY " + JOIN_STREAM_ID + ")"
-
-            + " ON " + STREAM_ID + " = " + JOIN_STREAM_ID
-
-            + " LEFT JOIN "
-            + "(SELECT " + JOIN_STREAM_ID + " AS " + JOIN_STREAM_ID_ALIAS + ", "
-            + STREAM_PROGRESS_MILLIS
-            + " FROM " + STREAM_STATE_TABLE + " )"
-            + " ON " + STREAM_ID + " = " + JOIN_STREAM_ID_ALIAS)
+    @Query(STATISTICS_QUERY)
     public abstract Flowable<List<StreamStatisticsEntry>> getStatistics();
+
+    /**
+     * Gets a page of the statistics sorted by last access, starting after the entry with the
+     * given last access date and stream id. Use {@link Long#MAX_VALUE} for both to get the first
+     * page, and a negative limit to get all the remaining entries.
+     */
+    @RewriteQueriesToDropUnusedColumns
+    @Query(STATISTICS_QUERY
+            + " WHERE (" + STREAM_LATEST_DATE + " < :latestDate"
+            + " OR (" + STREAM_LATEST_DATE + " = :latestDate AND " + STREAM_ID + " < :streamId))"
+            + " AND " + FILTER_CONDITION
+            + " ORDER BY " + STREAM_LATEST_DATE + " DESC, " + STREAM_ID + " DESC"
+            + " LIMIT :limit")
+    public abstract List<StreamStatisticsEntry> getStatisticsByLastPlayed(
+            long latestDate, long streamId, String filter, int limit);
+
+    /**
+     * Same as {@link #getStatisticsByLastPlayed(long, long, String, int)}, sorted by watch count.
+     */
+    @RewriteQueriesToDropUnusedColumns
+    @Query(STATISTICS_QUERY
+            + " WHERE (" + STREAM_WATCH_COUNT + " < :watchCount"
+            + " OR (" + STREAM_WATCH_COUNT + " = :watchCount AND " + STREAM_ID + " < :streamId))"
+            + " AND " + FILTER_CONDITION
+            + " ORDER BY " + STREAM_WATCH_COUNT + " DESC, " + STREAM_ID + " DESC"
+            + " LIMIT :limit")
+    public abstract List<StreamStatisticsEntry> getStatisticsByWatchCount(
+            long watchCount, long streamId, String filter, int limit);
+
+    /**
+     * Emits every time the history changes, to know when loaded pages are out of date.
+     */
+    @Query("SELECT COUNT(*) FROM " + STREAM_HISTORY_TABLE)
+    public abstract Flowable<Integer> getHistoryCount();
 }
@@ -12,7 +12,9 @@ import java.util.List;
 import io.reactivex.rxjava3.core.Flowable;
 
 import static org.schabi.newpipe.database.playlist.model.PlaylistEntity.PLAYLIST_ID;
+import static org.schabi.newpipe.database.playlist.model.PlaylistEntity.PLAYLIST_NAME;
 import static org.schabi.newpipe.database.playlist.model.PlaylistEntity.PLAYLIST_TABLE;
+import static org.schabi.newpipe.database.playlist.model.PlaylistFtsEntity.PLAYLIST_FTS_TABLE;
 
 @Dao
 public interface PlaylistDAO extends BasicDAO<PlaylistEntity> {
@@ -35,6 +37,12 @@ public interface PlaylistDAO extends BasicDAO<PlaylistEntity> {
     @Query("DELETE FROM " + PLAYLIST_TABLE + " WHERE " + PLAYLIST_ID + " = :playlistId")
     int deletePlaylist(long playlistId);
 
+    @Query("SELECT * FROM " + PLAYLIST_TABLE + " WHERE " + PLAYLIST_ID + " IN "
+            + "(SELECT rowid FROM " + PLAYLIST_FTS_TABLE
+            + " WHERE " + PLAYLIST_FTS_TABLE + " MATCH :query)"
+            + " ORDER BY " + PLAYLIST_NAME + " COLLATE NOCASE ASC")
+    List<PlaylistEntity> searchPlaylists(String query);
+
     @Query("SELECT COUNT(*) FROM " + PLAYLIST_TABLE)
     Flowable<Long> getCount();
 
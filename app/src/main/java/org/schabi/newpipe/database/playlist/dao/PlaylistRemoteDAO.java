@@ -12,9 +12,11 @@ import java.util.List;
 import io.reactivex.rxjava3.core.Flowable;
 
 import static org.schabi.newpipe.database.playlist.model.PlaylistRemoteEntity.REMOTE_PLAYLIST_ID;
+import static org.schabi.newpipe.database.playlist.model.PlaylistRemoteEntity.REMOTE_PLAYLIST_NAME;
 import static org.schabi.newpipe.database.playlist.model.PlaylistRemoteEntity.REMOTE_PLAYLIST_SERVICE_ID;
 import static org.schabi.newpipe.database.playlist.model.PlaylistRemoteEntity.REMOTE_PLAYLIST_TABLE;
 import static org.schabi.newpipe.database.playlist.model.PlaylistRemoteEntity.REMOTE_PLAYLIST_URL;
+import static org.schabi.newpipe.database.playlist.model.PlaylistRemoteFtsEntity.REMOTE_PLAYLIST_FTS_TABLE;
 
 @Dao
 public interface PlaylistRemoteDAO extends BasicDAO<PlaylistRemoteEntity> {
@@ -60,4 +62,10 @@ public interface PlaylistRemoteDAO extends BasicDAO<PlaylistRemoteEntity> {
     @Query("DELETE FROM " + REMOTE_PLAYLIST_TABLE
             + " WHERE " + REMOTE_PLAYLIST_ID + " = :playlistId")
     int deletePlaylist(long playlistId);
+
+    @Query("SELECT * FROM " + REMOTE_PLAYLIST_TABLE + " WHERE " + REMOTE_PLAYLIST_ID + " IN "
+            + "(SELECT rowid FROM " + REMOTE_PLAYLIST_FTS_TABLE
+            + " WHERE " + REMOTE_PLAYLIST_FTS_TABLE + " MATCH :query)"
+            + " ORDER BY " + REMOTE_PLAYLIST_NAME + " COLLATE NOCASE ASC")
+    List<PlaylistRemoteEntity> searchPlaylists(String query);
 }
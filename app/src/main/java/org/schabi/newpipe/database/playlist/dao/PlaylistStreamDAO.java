@@ -26,9 +26,11 @@ import static org.schabi.newpipe.database.playlist.model.PlaylistStreamEntity.JO
 import static org.schabi.newpipe.database.playlist.model.PlaylistStreamEntity.JOIN_PLAYLIST_ID;
 import static org.schabi.newpipe.database.playlist.model.PlaylistStreamEntity.JOIN_STREAM_ID;
 import static org.schabi.newpipe.database.playlist.model.PlaylistStreamEntity.PLAYLIST_STREAM_JOIN_TABLE;
+import static org.schabi.newpipe.database.stream.model.StreamEntity.STREAM_DURATION;
 import static org.schabi.newpipe.database.stream.model.StreamEntity.STREAM_ID;
 import static org.schabi.newpipe.database.stream.model.StreamEntity.STREAM_TABLE;
 import static org.schabi.newpipe.database.stream.model.StreamEntity.STREAM_THUMBNAIL_URL;
+import static org.schabi.newpipe.database.stream.model.StreamEntity.STREAM_TITLE;
 import static org.schabi.newpipe.database.stream.model.StreamEntity.STREAM_URL;
 import static org.schabi.newpipe.database.stream.model.StreamStateEntity.JOIN_STREAM_ID_ALIAS;
 import static org.schabi.newpipe.database.stream.model.StreamStateEntity.STREAM_PROGRESS_MILLIS;
@@ -53,6 +55,73 @@ public interface PlaylistStreamDAO extends BasicDAO<PlaylistStreamEntity> {
             + " WHERE " + JOIN_PLAYLIST_ID + " = :playlistId")
     void deleteBatch(long playlistId);
 
+    @Query("DELETE FROM " + PLAYLIST_STREAM_JOIN_TABLE
+            + " WHERE " + JOIN_PLAYLIST_ID + " = :playlistId"
+            + " AND " + JOIN_INDEX + " >= :fromIndex AND " + JOIN_INDEX + " < :toIndex")
+    int deleteRange(long playlistId, int fromIndex, int toIndex);
+
+    /**
+     * Moves the rows in {@code [fromIndex, toIndex)} by {@code delta}, in two statements whatever
+     * the amount of rows. The rows go through negative indices first, since SQLite checks the
+     * primary key on every row while a single statement would run through the range.
+     */
+    @Transaction
+    default void shiftIndices(final long playlistId, final int fromIndex, final int toIndex,
+                              final int delta) {
+        moveRangeToNegativeIndices(playlistId, fromIndex, toIndex, delta);
+        restoreNegativeIndices(playlistId);
+    }
+
+    @Query("UPDATE " + PLAYLIST_STREAM_JOIN_TABLE
+            + " SET " + JOIN_INDEX + " = -1 - (" + JOIN_INDEX + " + :delta)"
+            + " WHERE " + JOIN_PLAYLIST_ID + " = :playlistId"
+            + " AND " + JOIN_INDEX + " >= :fromIndex AND " + JOIN_INDEX + " < :toIndex")
+    void moveRangeToNegativeIndices(long playlistId, int fromIndex, int toIndex, int delta);
+
+    @Query("UPDATE " + PLAYLIST_STREAM_JOIN_TABLE
+            + " SET " + JOIN_INDEX + " = -1 - " + JOIN_INDEX
+            + " WHERE " + JOIN_PLAYLIST_ID + " = :playlistId AND " + JOIN_INDEX + " < 0")
+    void restoreNegativeIndices(long playlistId);
+
+    @Query("SELECT " + JOIN_STREAM_ID + " FROM " + PLAYLIST_STREAM_JOIN_TABLE
+            + " WHERE " + JOIN_PLAYLIST_ID + " = :playlistId"
+            + " ORDER BY " + JOIN_INDEX + " ASC")
+    List<Long> getStreamIdsOf(long playlistId);
+
+    /**
+     * Emits the join rows of a playlist every time they change. They are much lighter than the
+     * streams, so that the order of a whole playlist can be kept while only pages of its streams
+     * are loaded.
+     */
+    @Query("SELECT * FROM " + PLAYLIST_STREAM_JOIN_TABLE
+            + " WHERE " + JOIN_PLAYLIST_ID + " = :playlistId"
+            + " ORDER BY " + JOIN_INDEX + " ASC")
+    Flowable<List<PlaylistStreamEntity>> getJoinsOf(long playlistId);
+
+    @Query("SELECT " + JOIN_INDEX + " FROM " + STREAM_TABLE
+            + " INNER JOIN " + PLAYLIST_STREAM_JOIN_TABLE
+            + " ON " + STREAM_ID + " = " + JOIN_STREAM_ID
+            + " WHERE " + JOIN_PLAYLIST_ID + " = :playlistId"
+            + " ORDER BY " + JOIN_INDEX + " ASC")
+    List<Integer> getJoinIndicesOf(long playlistId);
+
+    /**
+     * @return the titles of the streams of a playlist, in the order of
+     * {@link #getJoinIndicesOf(long)}
+     */
+    @Query("SELECT " + STREAM_TITLE + " FROM " + STREAM_TABLE
+            + " INNER JOIN " + PLAYLIST_STREAM_JOIN_TABLE
+            + " ON " + STREAM_ID + " = " + JOIN_STREAM_ID
+            + " WHERE " + JOIN_PLAYLIST_ID + " = :playlistId"
+            + " ORDER BY " + JOIN_INDEX + " ASC")
+    List<String> getStreamTitlesOf(long playlistId);
+
+    @Query("SELECT COALESCE(SUM(" + STREAM_DURATION + "), 0) FROM " + STREAM_TABLE
+            + " INNER JOIN " + PLAYLIST_STREAM_JOIN_TABLE
+            + " ON " + STREAM_ID + " = " + JOIN_STREAM_ID
+            + " WHERE " + JOIN_PLAYLIST_ID + " = :playlistId")
+    long getDurationOf(long playlistId);
+
     @Query("SELECT COALESCE(MAX(" + JOIN_INDEX + "), -1)"
             + " FROM " + PLAYLIST_STREAM_JOIN_TABLE
             + " WHERE " + JOIN_PLAYLIST_ID + " = :playlistId")
@@ -78,6 +147,71 @@ public interface PlaylistStreamDAO extends BasicDAO<PlaylistStreamEntity> {
             + " ORDER BY " + JOIN_INDEX + " ASC")
     Flowable<List<PlaylistStreamEntry>> getOrderedStreamsOf(long playlistId);
 
+    /**
+     * Gets a keyset page of the streams of a playlist: the streams following the join index
+     * {@code afterIndex}, ordered by join index.
+     */
+    @RewriteQueriesToDropUnusedColumns
+    @Transaction
+    @Query("SELECT * FROM " + STREAM_TABLE + " INNER JOIN "
+            + "(SELECT " + JOIN_STREAM_ID + "," + JOIN_INDEX
+            + " FROM " + PLAYLIST_STREAM_JOIN_TABLE
+            + " WHERE " + JOIN_PLAYLIST_ID + " = :playlistId"
+            + " AND " + JOIN_INDEX + " > :afterIndex)"
+            + " ON " + STREAM_ID + " = " + JOIN_STREAM_ID
+
+            + " LEFT JOIN "
+            + "(SELECT " + JOIN_STREAM_ID + " AS " + JOIN_STREAM_ID_ALIAS + ", "
+            + STREAM_PROGRESS_MILLIS
+            + " FROM " + STREAM_STATE_TABLE + " )"
+            + " ON " + STREAM_ID + " = " + JOIN_STREAM_ID_ALIAS
+
+            + " ORDER BY " + JOIN_INDEX + " ASC"
+            + " LIMIT :limit")
+    List<PlaylistStreamEntry> getStreamsAfter(long playlistId, int afterIndex, int limit);
+
+    /**
+     * Same as {@link #getStreamsAfter(long, int, int)} in reverse order, starting before
+     * {@code beforeIndex}.
+     */
+    @RewriteQueriesToDropUnusedColumns
+    @Transaction
+    @Query("SELECT * FROM " + STREAM_TABLE + " INNER JOIN "
+            + "(SELECT " + JOIN_STREAM_ID + "," + JOIN_INDEX
+            + " FROM " + PLAYLIST_STREAM_JOIN_TABLE
+            + " WHERE " + JOIN_PLAYLIST_ID + " = :playlistId"
+            + " AND " + JOIN_INDEX + " < :beforeIndex)"
+            + " ON " + STREAM_ID + " = " + JOIN_STREAM_ID
+
+            + " LEFT JOIN "
+            + "(SELECT " + JOIN_STREAM_ID + " AS " + JOIN_STREAM_ID_ALIAS + ", "
+            + STREAM_PROGRESS_MILLIS
+            + " FROM " + STREAM_STATE_TABLE + " )"
+            + " ON " + STREAM_ID + " = " + JOIN_STREAM_ID_ALIAS
+
+            + " ORDER BY " + JOIN_INDEX + " DESC"
+            + " LIMIT :limit")
+    List<PlaylistStreamEntry> getStreamsBefore(long playlistId, int beforeIndex, int limit);
+
+    /**
+     * Gets the streams of a playlist at the given join indices, in no particular order.
+     */
+    @RewriteQueriesToDropUnusedColumns
+    @Transaction
+    @Query("SELECT * FROM " + STREAM_TABLE + " INNER JOIN "
+            + "(SELECT " + JOIN_STREAM_ID + "," + JOIN_INDEX
+            + " FROM " + PLAYLIST_STREAM_JOIN_TABLE
+            + " WHERE " + JOIN_PLAYLIST_ID + " = :playlistId"
+            + " AND " + JOIN_INDEX + " IN (:joinIndices))"
+            + " ON " + STREAM_ID + " = " + JOIN_STREAM_ID
+
+            + " LEFT JOIN "
+            + "(SELECT " + JOIN_STREAM_ID + " AS " + JOIN_STREAM_ID_ALIAS + ", "
+            + STREAM_PROGRESS_MILLIS
+            + " FROM " + STREAM_STATE_TABLE + " )"
+            + " ON " + STREAM_ID + " = " + JOIN_STREAM_ID_ALIAS)
+    List<PlaylistStreamEntry> getStreamsAt(long playlistId, List<Integer> joinIndices);
+
     @Transaction
     @Query("SELECT " + PLAYLIST_ID + ", " + PLAYLIST_NAME + ", " + PLAYLIST_THUMBNAIL_URL + ", "
             + PLAYLIST_DISPLAY_INDEX + ", "
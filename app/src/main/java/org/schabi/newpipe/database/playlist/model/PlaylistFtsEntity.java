@@ -0,0 +1,48 @@
+package org.schabi.newpipe.database.playlist.model;
+
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Fts4;
+import androidx.room.FtsOptions;
+import androidx.room.PrimaryKey;
+
+import static org.schabi.newpipe.database.playlist.model.PlaylistEntity.PLAYLIST_NAME;
+import static org.schabi.newpipe.database.playlist.model.PlaylistFtsEntity.PLAYLIST_FTS_TABLE;
+
+/**
+ * Full-text index of the names of the local playlists, kept in sync with {@link PlaylistEntity}
+ * by the triggers Room creates for external content tables.
+ */
+@Fts4(contentEntity = PlaylistEntity.class, tokenizer = FtsOptions.TOKENIZER_UNICODE61)
+@Entity(tableName = PLAYLIST_FTS_TABLE)
+public class PlaylistFtsEntity {
+    public static final String PLAYLIST_FTS_TABLE = "playlists_fts";
+
+    @PrimaryKey
+    @ColumnInfo(name = "rowid")
+    private long rowId;
+
+    @ColumnInfo(name = PLAYLIST_NAME)
+    private String name;
+
+    public PlaylistFtsEntity(final long rowId, final String name) {
+        this.rowId = rowId;
+        this.name = name;
+    }
+
+    public long getRowId() {
+        return rowId;
+    }
+
+    public void setRowId(final long rowId) {
+        this.rowId = rowId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(final String name) {
+        this.name = name;
+    }
+}
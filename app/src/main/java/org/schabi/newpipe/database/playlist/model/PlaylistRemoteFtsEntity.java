@@ -0,0 +1,61 @@
+package org.schabi.newpipe.database.playlist.model;
+
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Fts4;
+import androidx.room.FtsOptions;
+import androidx.room.PrimaryKey;
+
+import static org.schabi.newpipe.database.playlist.model.PlaylistRemoteEntity.REMOTE_PLAYLIST_NAME;
+import static org.schabi.newpipe.database.playlist.model.PlaylistRemoteEntity.REMOTE_PLAYLIST_UPLOADER_NAME;
+import static org.schabi.newpipe.database.playlist.model.PlaylistRemoteFtsEntity.REMOTE_PLAYLIST_FTS_TABLE;
+
+/**
+ * Full-text index of the names and uploaders of the bookmarked playlists, kept in sync with
+ * {@link PlaylistRemoteEntity} by the triggers Room creates for external content tables.
+ */
+@Fts4(contentEntity = PlaylistRemoteEntity.class, tokenizer = FtsOptions.TOKENIZER_UNICODE61)
+@Entity(tableName = REMOTE_PLAYLIST_FTS_TABLE)
+public class PlaylistRemoteFtsEntity {
+    public static final String REMOTE_PLAYLIST_FTS_TABLE = "remote_playlists_fts";
+
+    @PrimaryKey
+    @ColumnInfo(name = "rowid")
+    private long rowId;
+
+    @ColumnInfo(name = REMOTE_PLAYLIST_NAME)
+    private String name;
+
+    @ColumnInfo(name = REMOTE_PLAYLIST_UPLOADER_NAME)
+    private String uploader;
+
+    public PlaylistRemoteFtsEntity(final long rowId, final String name, final String uploader) {
+        this.rowId = rowId;
+        this.name = name;
+        this.uploader = uploader;
+    }
+
+    public long getRowId() {
+        return rowId;
+    }
+
+    public void setRowId(final long rowId) {
+        this.rowId = rowId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(final String name) {
+        this.name = name;
+    }
+
+    public String getUploader() {
+        return uploader;
+    }
+
+    public void setUploader(final String uploader) {
+        this.uploader = uploader;
+    }
+}
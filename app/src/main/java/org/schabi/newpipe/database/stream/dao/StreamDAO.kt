@@ -39,17 +39,25 @@ abstract class StreamDAO : BasicDAO<StreamEntity> {
     @Insert(onConflict = OnConflictStrategy.IGNORE)
     internal abstract fun silentInsertAllInternal(streams: List<StreamEntity>): List<Long>
 
-    @Query("SELECT COUNT(*) != 0 FROM streams WHERE url = :url AND service_id = :serviceId")
-    internal abstract fun exists(serviceId: Int, url: String): Boolean
+    @Query("SELECT url FROM streams WHERE service_id = :serviceId AND url IN (:urls)")
+    internal abstract fun getExistingUrls(serviceId: Int, urls: List<String>): List<String>
 
     @Query(
         """
-        SELECT uid, stream_type, textual_upload_date, upload_date, is_upload_date_approximation, duration 
+        SELECT uid, service_id, url, stream_type, textual_upload_date, upload_date, is_upload_date_approximation, duration 
         FROM streams WHERE url = :url AND service_id = :serviceId
         """
     )
     internal abstract fun getMinimalStreamForCompare(serviceId: Int, url: String): StreamCompareFeed?
 
+    @Query(
+        """
+        SELECT uid, service_id, url, stream_type, textual_upload_date, upload_date, is_upload_date_approximation, duration 
+        FROM streams WHERE service_id = :serviceId AND url IN (:urls)
+        """
+    )
+    internal abstract fun getMinimalStreamsForCompare(serviceId: Int, urls: List<String>): List<StreamCompareFeed>
+
     @Transaction
     open fun upsert(newerStream: StreamEntity): Long {
         val uid = silentInsertInternal(newerStream)
@@ -65,30 +73,78 @@ abstract class StreamDAO : BasicDAO<StreamEntity> {
         return newerStream.uid
     }
 
+    /**
+     * Inserts the streams which are not in the database yet and updates the others.
+     *
+     * The streams already in the database are found with one query per service (and per
+     * [MAX_QUERY_ARGUMENTS] streams), backed by the unique index on (service_id, url), instead of
+     * trying to insert each stream and looking up the ones which were already there one by one.
+     * Then all the new streams are inserted at once, and all the others are updated at once.
+     *
+     * @param streams the streams to write, their uid is set
+     * @return the uids of the streams, in the same order
+     */
     @Transaction
     open fun upsertAll(streams: List<StreamEntity>): List<Long> {
-        val insertUidList = silentInsertAllInternal(streams)
+        val existentStreams = HashMap<Pair<Int, String>, StreamCompareFeed>()
+        streams.groupBy({ it.serviceId }, { it.url }).forEach { (serviceId, urls) ->
+            urls.distinct().chunked(MAX_QUERY_ARGUMENTS).forEach { chunk ->
+                getMinimalStreamsForCompare(serviceId, chunk)
+                    .associateByTo(existentStreams) { it.serviceId to it.url }
+            }
+        }
+
+        val streamsToInsert = LinkedHashMap<Pair<Int, String>, StreamEntity>()
+        val streamsToUpdate = ArrayList<StreamEntity>()
+        val duplicates = ArrayList<StreamEntity>()
+        for (newerStream in streams) {
+            val key = newerStream.serviceId to newerStream.url
+            val existentMinimalStream = existentStreams[key]
+
+            when {
+                existentMinimalStream != null -> {
+                    compareAndUpdateStream(newerStream, existentMinimalStream)
+                    streamsToUpdate.add(newerStream)
+                }
+                streamsToInsert.containsKey(key) -> duplicates.add(newerStream)
+                else -> streamsToInsert[key] = newerStream
+            }
+        }
 
-        val streamIds = ArrayList<Long>(streams.size)
-        for ((index, uid) in insertUidList.withIndex()) {
-            val newerStream = streams[index]
+        val insertedStreams = streamsToInsert.values.toList()
+        silentInsertAllInternal(insertedStreams).forEachIndexed { index, uid ->
+            val newerStream = insertedStreams[index]
             if (uid != -1L) {
-                streamIds.add(uid)
                 newerStream.uid = uid
-                continue
+            } else {
+                compareAndUpdateStream(newerStream)
+                streamsToUpdate.add(newerStream)
             }
+        }
 
-            compareAndUpdateStream(newerStream)
-            streamIds.add(newerStream.uid)
+        // the same stream was given more than once, the last one wins like if they were
+        // written one after the other
+        for (duplicate in duplicates) {
+            duplicate.uid = streamsToInsert.getValue(duplicate.serviceId to duplicate.url).uid
+            streamsToUpdate.add(duplicate)
         }
 
-        update(streams)
-        return streamIds
+        if (streamsToUpdate.isNotEmpty()) {
+            update(streamsToUpdate)
+        }
+        return streams.map { it.uid }
     }
 
     private fun compareAndUpdateStream(newerStream: StreamEntity) {
         val existentMinimalStream = getMinimalStreamForCompare(newerStream.serviceId, newerStream.url)
             ?: throw IllegalStateException("Stream cannot be null just after insertion.")
+        compareAndUpdateStream(newerStream, existentMinimalStream)
+    }
+
+    private fun compareAndUpdateStream(
+        newerStream: StreamEntity,
+        existentMinimalStream: StreamCompareFeed
+    ) {
         newerStream.uid = existentMinimalStream.uid
 
         val isNewerStreamLive = newerStream.streamType == AUDIO_LIVE_STREAM || newerStream.streamType == LIVE_STREAM
@@ -126,6 +182,54 @@ abstract class StreamDAO : BasicDAO<StreamEntity> {
     )
     abstract fun deleteOrphans(): Int
 
+    /**
+     * Same as [deleteOrphans], but only checks the given streams.
+     */
+    @Query(
+        """
+        DELETE FROM streams WHERE uid IN (:streamIds)
+
+        AND NOT EXISTS (SELECT 1 FROM stream_history sh
+        WHERE sh.stream_id = streams.uid)
+
+        AND NOT EXISTS (SELECT 1 FROM playlist_stream_join ps
+        WHERE ps.stream_id = streams.uid)
+
+        AND NOT EXISTS (SELECT 1 FROM feed f
+        WHERE f.stream_id = streams.uid)
+        """
+    )
+    abstract fun deleteOrphansAmong(streamIds: List<Long>): Int
+
+    /**
+     * @param query an FTS query, see [org.schabi.newpipe.local.LibrarySearchManager.toFtsQuery]
+     * @return the ids of the streams whose title or uploader match the query
+     */
+    @Query("SELECT rowid FROM streams_fts WHERE streams_fts MATCH :query")
+    abstract fun searchStreamIds(query: String): List<Long>
+
+    /**
+     * Same as [searchStreamIds], limited to the streams in the history or in a local playlist.
+     */
+    @Query(
+        """
+        SELECT streams.* FROM streams
+
+        INNER JOIN streams_fts ON streams.uid = streams_fts.rowid
+
+        WHERE streams_fts MATCH :query
+
+        AND (EXISTS (SELECT 1 FROM stream_history sh
+        WHERE sh.stream_id = streams.uid)
+
+        OR EXISTS (SELECT 1 FROM playlist_stream_join ps
+        WHERE ps.stream_id = streams.uid))
+
+        LIMIT :limit
+        """
+    )
+    abstract fun searchLibraryStreams(query: String, limit: Int): List<StreamEntity>
+
     /**
      * Minimal entry class used when comparing/updating an existent stream.
      */
@@ -133,6 +237,12 @@ abstract class StreamDAO : BasicDAO<StreamEntity> {
         @ColumnInfo(name = STREAM_ID)
         var uid: Long = 0,
 
+        @ColumnInfo(name = StreamEntity.STREAM_SERVICE_ID)
+        var serviceId: Int = 0,
+
+        @ColumnInfo(name = StreamEntity.STREAM_URL)
+        var url: String = "",
+
         @ColumnInfo(name = StreamEntity.STREAM_TYPE)
         var streamType: StreamType,
 
@@ -148,4 +258,11 @@ abstract class StreamDAO : BasicDAO<StreamEntity> {
         @ColumnInfo(name = StreamEntity.STREAM_DURATION)
         var duration: Long
     )
+
+    companion object {
+        /**
+         * SQLite allows at most 999 arguments per query.
+         */
+        const val MAX_QUERY_ARGUMENTS = 900
+    }
 }
@@ -0,0 +1,32 @@
+package org.schabi.newpipe.database.stream.model
+
+import androidx.room.ColumnInfo
+import androidx.room.Entity
+import androidx.room.Fts4
+import androidx.room.FtsOptions
+import androidx.room.PrimaryKey
+import org.schabi.newpipe.database.stream.model.StreamEntity.Companion.STREAM_TITLE
+import org.schabi.newpipe.database.stream.model.StreamEntity.Companion.STREAM_UPLOADER
+import org.schabi.newpipe.database.stream.model.StreamFtsEntity.Companion.STREAM_FTS_TABLE
+
+/**
+ * Full-text index of the titles and uploaders of [StreamEntity], kept in sync with the
+ * streams table by the triggers Room creates for external content tables.
+ */
+@Fts4(contentEntity = StreamEntity::class, tokenizer = FtsOptions.TOKENIZER_UNICODE61)
+@Entity(tableName = STREAM_FTS_TABLE)
+data class StreamFtsEntity(
+    @PrimaryKey
+    @ColumnInfo(name = "rowid")
+    val rowId: Long,
+
+    @ColumnInfo(name = STREAM_TITLE)
+    val title: String,
+
+    @ColumnInfo(name = STREAM_UPLOADER)
+    val uploader: String
+) {
+    companion object {
+        const val STREAM_FTS_TABLE = "streams_fts"
+    }
+}
@@ -114,6 +114,9 @@ abstract class SubscriptionDAO : BasicDAO<SubscriptionEntity> {
     @Query("SELECT * FROM subscriptions WHERE uid = :subscriptionId")
     abstract fun getSubscription(subscriptionId: Long): SubscriptionEntity
 
+    @Query("SELECT * FROM subscriptions WHERE uid IN (:subscriptionIds)")
+    abstract fun getSubscriptions(subscriptionIds: List<Long>): List<SubscriptionEntity>
+
     @Query("DELETE FROM subscriptions")
     abstract override fun deleteAll(): Int
 
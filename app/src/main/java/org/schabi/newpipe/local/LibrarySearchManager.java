@@ -0,0 +1,150 @@
+package org.schabi.newpipe.local;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.schabi.newpipe.database.AppDatabase;
+import org.schabi.newpipe.database.playlist.dao.PlaylistDAO;
+import org.schabi.newpipe.database.playlist.dao.PlaylistRemoteDAO;
+import org.schabi.newpipe.database.playlist.model.PlaylistEntity;
+import org.schabi.newpipe.database.playlist.model.PlaylistRemoteEntity;
+import org.schabi.newpipe.database.stream.dao.StreamDAO;
+import org.schabi.newpipe.database.stream.model.StreamEntity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import io.reactivex.rxjava3.core.Maybe;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+
+/**
+ * Searches the local library (playlists, history and bookmarks) through the full-text indices
+ * of the streams, playlists and remote playlists tables.
+ *
+ * <p>Every word of the search text is matched as a prefix of a word of the titles, names or
+ * uploaders. Texts in scripts that are not written with spaces between words cannot be
+ * tokenized this way, so they are not handled here and callers should fall back to a substring
+ * search, see {@link #toFtsQuery(String)}.</p>
+ */
+public class LibrarySearchManager {
+    public static final int MAX_STREAM_RESULTS = 100;
+
+    private final StreamDAO streamTable;
+    private final PlaylistDAO playlistTable;
+    private final PlaylistRemoteDAO playlistRemoteTable;
+
+    public LibrarySearchManager(final AppDatabase db) {
+        streamTable = db.streamDAO();
+        playlistTable = db.playlistDAO();
+        playlistRemoteTable = db.playlistRemoteDAO();
+    }
+
+    /**
+     * Builds the FTS query matching the streams or playlists containing every word of the text.
+     *
+     * @param text the text typed by the user
+     * @return the query, or {@code null} if the text has no word or can't be tokenized like the
+     * indexed content
+     */
+    @Nullable
+    public static String toFtsQuery(@NonNull final String text) {
+        final List<String> words = new ArrayList<>();
+        final StringBuilder word = new StringBuilder();
+        for (int i = 0; i < text.length(); ) {
+            final int codePoint = text.codePointAt(i);
+            i += Character.charCount(codePoint);
+
+            if (isUnspacedScript(codePoint)) {
+                return null;
+            } else if (Character.isLetterOrDigit(codePoint)) {
+                word.appendCodePoint(codePoint);
+            } else if (word.length() > 0) {
+                words.add(word.toString());
+                word.setLength(0);
+            }
+        }
+        if (word.length() > 0) {
+            words.add(word.toString());
+        }
+        if (words.isEmpty()) {
+            return null;
+        }
+
+        final StringBuilder query = new StringBuilder();
+        for (final String w : words) {
+            if (query.length() > 0) {
+                query.append(' ');
+            }
+            // lower case, so that words like OR or NOT are not taken as operators
+            query.append(w.toLowerCase(Locale.ROOT)).append('*');
+        }
+        return query.toString();
+    }
+
+    private static boolean isUnspacedScript(final int codePoint) {
+        final Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.THAI
+                || script == Character.UnicodeScript.LAO
+                || script == Character.UnicodeScript.KHMER
+                || script == Character.UnicodeScript.MYANMAR;
+    }
+
+    /**
+     * @param text the text typed by the user
+     * @return the ids of the streams whose title or uploader match the text, or nothing if the
+     * text can't be searched in the index and a substring search has to be used instead
+     */
+    public Maybe<Set<Long>> searchStreamIds(@NonNull final String text) {
+        final String query = toFtsQuery(text);
+        if (query == null) {
+            return Maybe.empty();
+        }
+        return Maybe.fromCallable(() -> (Set<Long>) new HashSet<>(
+                streamTable.searchStreamIds(query))).subscribeOn(Schedulers.io());
+    }
+
+    /**
+     * Searches the whole local library.
+     *
+     * @param text the text typed by the user
+     * @return the matching playlists, bookmarked playlists and streams from the history or from
+     * local playlists, empty if the text can't be searched in the index
+     */
+    public Single<Result> search(@NonNull final String text) {
+        final String query = toFtsQuery(text);
+        if (query == null) {
+            return Single.just(new Result(Collections.emptyList(), Collections.emptyList(),
+                    Collections.emptyList()));
+        }
+        return Single.fromCallable(() -> new Result(
+                playlistTable.searchPlaylists(query),
+                playlistRemoteTable.searchPlaylists(query),
+                streamTable.searchLibraryStreams(query, MAX_STREAM_RESULTS)
+        )).subscribeOn(Schedulers.io());
+    }
+
+    public static final class Result {
+        @NonNull
+        public final List<PlaylistEntity> playlists;
+        @NonNull
+        public final List<PlaylistRemoteEntity> remotePlaylists;
+        @NonNull
+        public final List<StreamEntity> streams;
+
+        Result(@NonNull final List<PlaylistEntity> playlists,
+               @NonNull final List<PlaylistRemoteEntity> remotePlaylists,
+               @NonNull final List<StreamEntity> streams) {
+            this.playlists = playlists;
+            this.remotePlaylists = remotePlaylists;
+            this.streams = streams;
+        }
+    }
+}
@@ -26,6 +26,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 import static org.schabi.newpipe.util.ThemeHelper.isGrid;
 
@@ -85,6 +86,8 @@ public class LocalItemListAdapter extends RecyclerView.Adapter<RecyclerView.View
     private ArrayList<LocalItem> filteredItems = new ArrayList<>();
     public boolean isFilterEnabled = false;
     private String currentFilterText = "";
+    @Nullable
+    private Set<Long> currentFilterStreamIds = null;
     public SortMode sortMode;
     private ItemViewMode itemViewMode = ItemViewMode.LIST;
 
@@ -130,6 +133,30 @@ public class LocalItemListAdapter extends RecyclerView.Adapter<RecyclerView.View
         notifyDataSetChanged();
     }
 
+    /**
+     * Adds a page of items already sorted and filtered by the database to the end of the list.
+     * Unlike {@link #addItems(List)}, the list is neither sorted nor fully redrawn.
+     *
+     * @param data the items to append
+     */
+    public void appendItems(@NonNull final List<? extends LocalItem> data) {
+        if (data.isEmpty()) {
+            return;
+        }
+        final int offsetStart = sizeConsideringHeader();
+        localItems.addAll(data);
+        reapplyFilter();
+
+        if (isFilterEnabled) {
+            notifyDataSetChanged();
+        } else {
+            notifyItemRangeInserted(offsetStart, data.size());
+            if (footer != null && showFooter) {
+                notifyItemMoved(offsetStart, sizeConsideringHeader());
+            }
+        }
+    }
+
     public void removeItem(final LocalItem data) {
 //        final int index = localItems.stream().filter(item -> ((PlaylistStreamEntry)(item)).getStreamEntity().getUrl().equals(((PlaylistStreamEntry)(data)).getStreamEntity().getUrl())).findFirst().orElse(null) != null ? localItems.indexOf(data) : -1;
         int index = -1;
@@ -425,8 +452,34 @@ public class LocalItemListAdapter extends RecyclerView.Adapter<RecyclerView.View
         };
     }
 
+    /**
+     * Shows only the stream items whose stream id is in the given set, typically found with
+     * {@link LibrarySearchManager#searchStreamIds(String)}. Unlike {@link #filter(String)}, no
+     * text is compared here.
+     *
+     * @param text      the text the ids were searched with
+     * @param streamIds the ids of the streams to show
+     */
+    public void filterByStreamIds(@NonNull final String text, @NonNull final Set<Long> streamIds) {
+        currentFilterText = text;
+        currentFilterStreamIds = streamIds;
+        isFilterEnabled = !text.isEmpty();
+        filteredItems.clear();
+        for (final LocalItem item : localItems) {
+            if (!isFilterEnabled
+                    || (item instanceof PlaylistStreamEntry
+                    && streamIds.contains(((PlaylistStreamEntry) item).getStreamId()))
+                    || (item instanceof StreamStatisticsEntry
+                    && streamIds.contains(((StreamStatisticsEntry) item).getStreamId()))) {
+                filteredItems.add(item);
+            }
+        }
+        notifyDataSetChanged();
+    }
+
     public void filter(String text) {
         currentFilterText = text;
+        currentFilterStreamIds = null;
         isFilterEnabled = !text.isEmpty();
         filteredItems.clear();
         if (text.isEmpty()) {
@@ -455,13 +508,16 @@ public class LocalItemListAdapter extends RecyclerView.Adapter<RecyclerView.View
     public void clearFilter() {
         isFilterEnabled = false;
         currentFilterText = "";
+        currentFilterStreamIds = null;
         filteredItems.clear();
         filteredItems.addAll(localItems);
         notifyDataSetChanged();
     }
 
     private void reapplyFilter() {
-        if (isFilterEnabled && !currentFilterText.isEmpty()) {
+        if (isFilterEnabled && currentFilterStreamIds != null) {
+            filterByStreamIds(currentFilterText, currentFilterStreamIds);
+        } else if (isFilterEnabled && !currentFilterText.isEmpty()) {
             filter(currentFilterText);
         } else {
             filteredItems.clear();
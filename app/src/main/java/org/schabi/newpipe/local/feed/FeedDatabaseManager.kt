@@ -13,6 +13,7 @@ import org.schabi.newpipe.database.feed.model.FeedEntity
 import org.schabi.newpipe.database.feed.model.FeedGroupEntity
 import org.schabi.newpipe.database.feed.model.FeedLastUpdatedEntity
 import org.schabi.newpipe.database.stream.StreamWithState
+import org.schabi.newpipe.database.stream.dao.StreamDAO
 import org.schabi.newpipe.database.stream.model.StreamEntity
 import org.schabi.newpipe.database.subscription.NotificationMode
 import org.schabi.newpipe.extractor.stream.StreamInfoItem
@@ -34,8 +35,30 @@ class FeedDatabaseManager(context: Context) {
          */
         val FEED_OLDEST_ALLOWED_DATE: OffsetDateTime = LocalDate.now().minusWeeks(13)
             .atStartOfDay().atOffset(ZoneOffset.UTC)
+
+        const val MAX_QUERY_ARGUMENTS = StreamDAO.MAX_QUERY_ARGUMENTS
+
+        private const val ORPHAN_SWEEP_INTERVAL = 24 * 60 * 60 * 1000L
+
+        @Volatile
+        private var lastOrphanSweep = 0L
     }
 
+    /**
+     * The result of a fetch of a subscription, to be written with [upsertBatch].
+     *
+     * @param isOutdated   the fetch had errors, the subscription is fetched again next time
+     * @param isUnchanged  the streams did not change since the last fetch, only the last updated
+     *                     time is written
+     */
+    data class FeedUpdate(
+        val subscriptionId: Long,
+        val streams: List<StreamInfoItem>,
+        val fingerprint: String? = null,
+        val isOutdated: Boolean = false,
+        val isUnchanged: Boolean = false,
+    )
+
     fun groups() = feedGroupTable.getAll()
 
     fun database() = database
@@ -78,53 +101,127 @@ class FeedDatabaseManager(context: Context) {
     fun markAsOutdated(subscriptionId: Long) = feedTable
         .setLastUpdatedForSubscription(FeedLastUpdatedEntity(subscriptionId, null))
 
-    fun doesStreamExist(stream: StreamInfoItem): Boolean {
-        return streamTable.exists(stream.serviceId, stream.url)
+    /**
+     * Finds which of the given streams are already in the database, with one query per service
+     * (and per [MAX_QUERY_ARGUMENTS] streams) instead of one query per stream.
+     *
+     * @return the service id and url of the streams already in the database
+     */
+    fun existingStreams(streams: List<StreamInfoItem>): Set<Pair<Int, String>> {
+        val existing = HashSet<Pair<Int, String>>()
+
+        streams.groupBy({ it.serviceId }, { it.url }).forEach { (serviceId, urls) ->
+            urls.distinct().chunked(MAX_QUERY_ARGUMENTS).forEach { chunk ->
+                streamTable.getExistingUrls(serviceId, chunk).mapTo(existing) { serviceId to it }
+            }
+        }
+
+        return existing
     }
 
+    fun getFingerprint(subscriptionId: Long): String? = feedTable.getFingerprint(subscriptionId)
+
     fun upsertAll(
         subscriptionId: Long,
         items: List<StreamInfoItem>,
+        oldestAllowedDate: OffsetDateTime = FEED_OLDEST_ALLOWED_DATE,
+        fingerprint: String? = null
+    ) = upsertBatch(listOf(FeedUpdate(subscriptionId, items, fingerprint)), oldestAllowedDate)
+
+    /**
+     * Writes the streams of several subscriptions at once. Streams shared between subscriptions
+     * are only written once, and every table is written with a single bulk statement instead of
+     * one per subscription. Should be called inside a transaction.
+     *
+     * The streams which were linked to these subscriptions before and are not referenced by
+     * anything anymore are deleted, so there is no need for a full [StreamDAO.deleteOrphans] sweep.
+     */
+    fun upsertBatch(
+        updates: List<FeedUpdate>,
         oldestAllowedDate: OffsetDateTime = FEED_OLDEST_ALLOWED_DATE
     ) {
-        val itemsToInsert = ArrayList<StreamInfoItem>()
-        loop@ for (streamItem in items) {
-            val uploadDate = streamItem.uploadDate
-
-            itemsToInsert += when {
-                uploadDate == null && streamItem.streamType == StreamType.LIVE_STREAM -> streamItem
-                uploadDate != null && uploadDate.offsetDateTime() >= oldestAllowedDate -> streamItem
-                else -> continue@loop
-            }
+        if (updates.isEmpty()) {
+            return
         }
 
-        feedTable.unlinkOldLivestreams(subscriptionId)
+        val changed = updates.filterNot { it.isUnchanged }
+        val changedIds = changed.map { it.subscriptionId }
+        val previousStreamIds = changedIds.chunked(MAX_QUERY_ARGUMENTS)
+            .flatMap { feedTable.getStreamIdsForSubscriptions(it) }
+
+        val streamsToInsert = LinkedHashMap<Pair<Int, String>, StreamEntity>()
+        val links = ArrayList<Pair<Long, Pair<Int, String>>>()
+        for (update in changed) {
+            for (streamItem in update.streams) {
+                val uploadDate = streamItem.uploadDate
+                val isAllowed = when {
+                    uploadDate == null -> streamItem.streamType == StreamType.LIVE_STREAM
+                    else -> uploadDate.offsetDateTime() >= oldestAllowedDate
+                }
+                if (!isAllowed) {
+                    continue
+                }
 
-        if (itemsToInsert.isNotEmpty()) {
                 // if item.uploaderName is null, write it as "Unknown"
-                for (item in itemsToInsert) {
-                    if (item.uploaderName == null) {
-                        item.uploaderName = "Unknown"
-                    }
+                if (streamItem.uploaderName == null) {
+                    streamItem.uploaderName = "Unknown"
                 }
-                val streamEntities = itemsToInsert.map { StreamEntity(it) }
-                val streamIds = streamTable.upsertAll(streamEntities)
-                val feedEntities = streamIds.map { FeedEntity(it, subscriptionId) }
-                feedTable.insertAll(feedEntities)
+                val key = streamItem.serviceId to streamItem.url
+                streamsToInsert[key] = StreamEntity(streamItem)
+                links += update.subscriptionId to key
+            }
+        }
+
+        changedIds.chunked(MAX_QUERY_ARGUMENTS).forEach { feedTable.unlinkAllForSubscriptions(it) }
+
+        if (streamsToInsert.isNotEmpty()) {
+            val streamIds = streamTable.upsertAll(streamsToInsert.values.toList())
+            val streamIdByKey = HashMap<Pair<Int, String>, Long>(streamIds.size)
+            streamsToInsert.keys.forEachIndexed { index, key -> streamIdByKey[key] = streamIds[index] }
+
+            feedTable.insertAll(links.map { (subscriptionId, key) -> FeedEntity(streamIdByKey[key]!!, subscriptionId) })
         }
 
-        feedTable.setLastUpdatedForSubscription(
-            FeedLastUpdatedEntity(subscriptionId, OffsetDateTime.now(ZoneOffset.UTC))
+        val now = OffsetDateTime.now(ZoneOffset.UTC)
+        feedTable.upsertLastUpdated(
+            updates.map {
+                FeedLastUpdatedEntity(
+                    it.subscriptionId,
+                    if (it.isOutdated) null else now,
+                    if (it.isOutdated) null else it.fingerprint
+                )
+            }
         )
+
+        deleteOrphans(previousStreamIds.distinct())
     }
 
+    /**
+     * Unlinks the streams older than [oldestAllowedDate] from the feed and deletes the ones which
+     * are not referenced anymore. Only the affected streams are checked, a full sweep of the
+     * streams table is done at most every [ORPHAN_SWEEP_INTERVAL] milliseconds to also collect
+     * the streams orphaned by other means (e.g. a deleted playlist).
+     */
     fun removeOrphansOrOlderStreams(oldestAllowedDate: OffsetDateTime = FEED_OLDEST_ALLOWED_DATE) {
-        feedTable.unlinkStreamsOlderThan(oldestAllowedDate)
-        streamTable.deleteOrphans()
+        val olderStreamIds = feedTable.getStreamIdsOlderThan(oldestAllowedDate).distinct()
+        olderStreamIds.chunked(MAX_QUERY_ARGUMENTS).forEach { feedTable.unlinkStreams(it) }
+        deleteOrphans(olderStreamIds)
+
+        val now = System.currentTimeMillis()
+        if (now - lastOrphanSweep > ORPHAN_SWEEP_INTERVAL) {
+            lastOrphanSweep = now
+            streamTable.deleteOrphans()
+        }
+    }
+
+    private fun deleteOrphans(streamIds: List<Long>) {
+        streamIds.chunked(MAX_QUERY_ARGUMENTS).forEach { streamTable.deleteOrphansAmong(it) }
     }
 
     fun clear() {
         feedTable.deleteAll()
+        // the streams are gone, so every subscription has to be fetched again
+        feedTable.clearFingerprints()
         val deletedOrphans = streamTable.deleteOrphans()
         if (DEBUG) {
             Log.d(
@@ -31,7 +31,11 @@ object FeedEventManager {
             constructor(@StringRes progressMessage: Int) : this(-1, -1, progressMessage)
         }
 
-        data class SuccessResultEvent(val itemsErrors: List<Throwable> = emptyList()) : Event()
+        data class SuccessResultEvent(
+            val itemsErrors: List<Throwable> = emptyList(),
+            val skippedChannels: Int = 0,
+            val savedTime: Long = 0,
+        ) : Event()
         data class ErrorResultEvent(val error: Throwable) : Event()
     }
 }
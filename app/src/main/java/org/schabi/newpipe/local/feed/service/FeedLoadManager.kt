@@ -11,9 +11,11 @@ import io.reactivex.rxjava3.core.Single
 import io.reactivex.rxjava3.functions.Consumer
 import io.reactivex.rxjava3.processors.PublishProcessor
 import io.reactivex.rxjava3.schedulers.Schedulers
+import org.schabi.newpipe.MainActivity.DEBUG
 import org.schabi.newpipe.R
 import org.schabi.newpipe.database.feed.model.FeedGroupEntity
 import org.schabi.newpipe.database.subscription.NotificationMode
+import org.schabi.newpipe.database.subscription.SubscriptionEntity
 import org.schabi.newpipe.extractor.Info
 import org.schabi.newpipe.extractor.NewPipe
 import org.schabi.newpipe.extractor.feed.FeedInfo
@@ -26,6 +28,7 @@ import org.schabi.newpipe.util.ChannelTabHelper
 import org.schabi.newpipe.util.ExtractorHelper.getChannelInfo
 import org.schabi.newpipe.util.ExtractorHelper.getChannelTab
 import org.schabi.newpipe.util.ExtractorHelper.getMoreChannelTabItems
+import java.security.MessageDigest
 import java.time.OffsetDateTime
 import java.time.ZoneOffset
 import java.util.concurrent.ConcurrentHashMap
@@ -44,9 +47,6 @@ class FeedLoadManager(private val context: Context) {
     private val cancelSignal = AtomicBoolean()
     private val feedResultsHolder = FeedResultsHolder()
 
-    private val lastFetchTimePerService = ConcurrentHashMap<Int, Long>()
-
-
     val notification: Flowable<FeedLoadState> = notificationUpdater.map { description ->
         FeedLoadState(description, maxProgress.get(), currentProgress.get())
     }
@@ -107,6 +107,8 @@ class FeedLoadManager(private val context: Context) {
             else -> feedDatabaseManager.outdatedSubscriptionsForGroup(groupId, outdatedThreshold)
         }
 
+        val databaseWriter = DatabaseWriter()
+
         return outdatedSubscriptions
             .take(1)
             .doOnNext {
@@ -122,147 +124,204 @@ class FeedLoadManager(private val context: Context) {
             .observeOn(Schedulers.io())
             .flatMap { Flowable.fromIterable(it) }
             .takeWhile { !cancelSignal.get() }
-            .parallel(PARALLEL_EXTRACTIONS, PARALLEL_EXTRACTIONS * 2)
-            .runOn(Schedulers.io(), PARALLEL_EXTRACTIONS * 2)
-            .filter { !cancelSignal.get() }
-            .concatMap { subscriptionEntity ->
-                val serviceId = subscriptionEntity.serviceId
-                val delay = getServiceDelay(serviceId)
-                val lastFetch = lastFetchTimePerService[serviceId] ?: 0L
-                val now = System.currentTimeMillis()
-                val wait = maxOf(0, delay - (now - lastFetch))
-
-                Flowable.just(subscriptionEntity)
-                    .delay(wait, TimeUnit.MILLISECONDS)
-                    .map {
-                        lastFetchTimePerService[serviceId] = System.currentTimeMillis()
-                        it
-                    }
-                    .flatMap { sub ->
-                        Flowable.defer {
-                            var error: Throwable? = null
-                            val storeOriginalErrorAndRethrow = { e: Throwable ->
-                                Log.e(TAG, "Failed to extract from channel '${subscriptionEntity.name}' (${subscriptionEntity.serviceId}:${subscriptionEntity.url}): ${e.javaClass.simpleName}: ${e.message}", e)
-                                error = e
-                                throw e
-                            }
-
-                            try {
-                                // check for and load new streams
-                                // either by using the dedicated feed method or by getting the channel info
-                                var originalInfo: Info? = null
-                                var streams: List<StreamInfoItem>? = null
-                                val errors = ArrayList<Throwable>()
-
-                                if (useFeedExtractor) {
-                                    NewPipe.getService(subscriptionEntity.serviceId)
-                                        .getFeedExtractor(subscriptionEntity.url)
-                                        ?.also { feedExtractor ->
-                                            // the user wants to use a feed extractor and there is one, use it
-                                            val feedInfo = FeedInfo.getInfo(feedExtractor)
-                                            errors.addAll(feedInfo.errors)
-                                            originalInfo = feedInfo
-                                            streams = feedInfo.relatedItems
-                                        }
-                                }
-
-                                if (originalInfo == null) {
-                                    // use the normal channel tabs extractor if either the user wants it, or
-                                    // the current service does not have a dedicated feed extractor
-
-                                    val channelInfo = getChannelInfo(
-                                        subscriptionEntity.serviceId,
-                                        subscriptionEntity.url, true
-                                    )
-                                        .onErrorReturn(storeOriginalErrorAndRethrow)
-                                        .blockingGet()
-                                    errors.addAll(channelInfo.errors)
-                                    originalInfo = channelInfo
-
-                                    streams = channelInfo.tabs
-                                        .filter { tab ->
-                                            ChannelTabHelper.fetchFeedChannelTab(
-                                                context,
-                                                defaultSharedPreferences,
-                                                tab
-                                            )
-                                        }
-                                        .map {
-                                            Pair(
-                                                getChannelTab(subscriptionEntity.serviceId, it, true)
-                                                    .onErrorReturn(storeOriginalErrorAndRethrow)
-                                                    .blockingGet(),
-                                                it
-                                            )
-                                        }
-                                        .flatMap { (channelTabInfo, linkHandler) ->
-                                            errors.addAll(channelTabInfo.errors)
-                                            if (channelTabInfo.relatedItems.isEmpty()) {
-                                                if (channelTabInfo.nextPage == null) {
-                                                    return@flatMap emptyList()
-                                                }
-                                                val infoItemsPage = getMoreChannelTabItems(
-                                                    subscriptionEntity.serviceId,
-                                                    linkHandler, channelTabInfo.nextPage
-                                                )
-                                                    .blockingGet()
-                                                errors.addAll(infoItemsPage.errors)
-                                                return@flatMap infoItemsPage.items
-                                            } else {
-                                                return@flatMap channelTabInfo.relatedItems
-                                            }
-                                        }
-                                        .filterIsInstance<StreamInfoItem>()
-                                }
-                                streams = streams?.filterNot { it.isRoundPlayStream  || (!showFutureItems && it.uploadDate != null && it.uploadDate!!.offsetDateTime().isAfter(OffsetDateTime.now())) }
-
-                                return@defer Flowable.just(
-                                    FeedUpdateInfo(
-                                        subscriptionEntity,
-                                        originalInfo!!,
-                                        streams!!,
-                                        errors,
-                                    )
-                                )
-                            } catch (e: Throwable) {
-                                // Actually throw the exception to trigger retry
-                                val request = "${sub.serviceId}:${sub.url}"
-                                val wrapper = FeedLoadService.RequestException(
-                                    sub.uid,
-                                    request,
-                                    error ?: e
-                                )
-                                throw wrapper
-                            }
+            // every service is paced by its own limiter, so a service which is backing off
+            // does not hold back the subscriptions of the others
+            .groupBy { it.serviceId }
+            .flatMap { serviceSubscriptions ->
+                val limiter = getLimiter(serviceSubscriptions.key!!)
+
+                serviceSubscriptions.flatMap({ subscriptionEntity ->
+                    Flowable.defer {
+                        val startTime = limiter.acquire(cancelSignal)
+                            ?: return@defer Flowable.empty<FeedUpdateInfo>()
+                        var failure: Throwable? = null
+
+                        try {
+                            Flowable.just(
+                                loadSubscription(subscriptionEntity, useFeedExtractor, showFutureItems)
+                            )
+                        } catch (e: FeedLoadService.RequestException) {
+                            failure = e.cause ?: e
+                            throw e
+                        } finally {
+                            limiter.release(startTime, failure)
                         }
-                            .retry { retryCount, throwable ->
-                                // Check if it's the actual wrapped exception
-                                val actualException = when (throwable) {
-                                    is FeedLoadService.RequestException -> throwable.cause
-                                    else -> throwable
-                                }
-                                false
-                            }
-                            // Now wrap in Notification AFTER retry logic
-                            .map { feedUpdateInfo ->
-                                Notification.createOnNext(feedUpdateInfo)
-                            }
-                            .onErrorReturn { error ->
-                                Notification.createOnError<FeedUpdateInfo>(error)
-                            }
                     }
-
+                        .subscribeOn(Schedulers.io())
+                        .map { feedUpdateInfo ->
+                            Notification.createOnNext(feedUpdateInfo)
+                        }
+                        .onErrorReturn { error ->
+                            Notification.createOnError<FeedUpdateInfo>(error)
+                        }
+                }, ServiceConcurrencyLimiter.MAX_LIMIT)
             }
-
-            .sequential()
             .observeOn(AndroidSchedulers.mainThread())
             .doOnNext(NotificationConsumer())
             .observeOn(Schedulers.io())
-            .buffer(BUFFER_COUNT_BEFORE_INSERT)
-            .doOnNext(DatabaseConsumer())
+            .doOnNext(databaseWriter::offer)
+            .doOnComplete(databaseWriter::flush)
             .subscribeOn(Schedulers.io())
             .toList()
-            .flatMap { x -> postProcessFeed().toSingleDefault(x.flatten()) }
+            .flatMap { x -> postProcessFeed().toSingleDefault(x) }
+    }
+
+    private fun getLimiter(serviceId: Int): ServiceConcurrencyLimiter {
+        return LIMITERS.getOrPut(serviceId) {
+            ServiceConcurrencyLimiter(getServiceDelay(serviceId))
+        }
+    }
+
+    /**
+     * Check for and load new streams of a subscription, either by using the dedicated feed
+     * method or by getting the channel info.
+     * @throws FeedLoadService.RequestException wrapping the original error if the loading failed
+     */
+    private fun loadSubscription(
+        subscriptionEntity: SubscriptionEntity,
+        useFeedExtractor: Boolean,
+        showFutureItems: Boolean,
+    ): FeedUpdateInfo {
+        val defaultSharedPreferences = PreferenceManager.getDefaultSharedPreferences(context)
+        var error: Throwable? = null
+        val storeOriginalErrorAndRethrow = { e: Throwable ->
+            Log.e(TAG, "Failed to extract from channel '${subscriptionEntity.name}' (${subscriptionEntity.serviceId}:${subscriptionEntity.url}): ${e.javaClass.simpleName}: ${e.message}", e)
+            error = e
+            throw e
+        }
+
+        val startTime = System.currentTimeMillis()
+        val lastFingerprint = feedDatabaseManager.getFingerprint(subscriptionEntity.uid)
+        // a different configuration might fetch different streams, it invalidates the fingerprint
+        val fingerprintSeed = if (useFeedExtractor) {
+            "feed"
+        } else {
+            defaultSharedPreferences.getStringSet(
+                context.getString(R.string.feed_fetch_channel_tabs_key), null
+            )?.sorted()?.joinToString(",") ?: "all"
+        }
+
+        try {
+            // check for and load new streams
+            // either by using the dedicated feed method or by getting the channel info
+            var originalInfo: Info? = null
+            var streams: List<StreamInfoItem>? = null
+            var fingerprint: String? = null
+            val errors = ArrayList<Throwable>()
+
+            val feedExtractor = NewPipe.getService(subscriptionEntity.serviceId)
+                .getFeedExtractor(subscriptionEntity.url)
+            if (feedExtractor != null) {
+                // the dedicated feed is cheap, so it is also used to probe for changes before
+                // fetching the channel tabs
+                try {
+                    val feedInfo = FeedInfo.getInfo(feedExtractor)
+                    fingerprint = computeFingerprint(fingerprintSeed, feedInfo.relatedItems)
+
+                    if (fingerprint == lastFingerprint && feedInfo.errors.isEmpty()) {
+                        feedResultsHolder.addProbe(System.currentTimeMillis() - startTime)
+                        feedResultsHolder.addSkipped()
+                        return FeedUpdateInfo(
+                            subscriptionEntity, feedInfo, emptyList(), emptyList(),
+                            fingerprint, isUnchanged = true
+                        )
+                    }
+
+                    if (useFeedExtractor) {
+                        // the user wants to use a feed extractor and there is one, use it
+                        errors.addAll(feedInfo.errors)
+                        originalInfo = feedInfo
+                        streams = feedInfo.relatedItems
+                    } else {
+                        feedResultsHolder.addProbe(System.currentTimeMillis() - startTime)
+                    }
+                } catch (e: Exception) {
+                    if (useFeedExtractor) {
+                        throw e
+                    }
+                    // the probe is only an optimization, fetch the channel tabs without it
+                    Log.w(TAG, "Failed to probe channel '${subscriptionEntity.name}': ${e.message}")
+                    fingerprint = null
+                }
+            }
+
+            if (originalInfo == null) {
+                // use the normal channel tabs extractor if either the user wants it, or
+                // the current service does not have a dedicated feed extractor
+
+                val channelInfo = getChannelInfo(
+                    subscriptionEntity.serviceId,
+                    subscriptionEntity.url, true
+                )
+                    .onErrorReturn(storeOriginalErrorAndRethrow)
+                    .blockingGet()
+                errors.addAll(channelInfo.errors)
+                originalInfo = channelInfo
+
+                streams = channelInfo.tabs
+                    .filter { tab ->
+                        ChannelTabHelper.fetchFeedChannelTab(
+                            context,
+                            defaultSharedPreferences,
+                            tab
+                        )
+                    }
+                    .map {
+                        Pair(
+                            getChannelTab(subscriptionEntity.serviceId, it, true)
+                                .onErrorReturn(storeOriginalErrorAndRethrow)
+                                .blockingGet(),
+                            it
+                        )
+                    }
+                    .flatMap { (channelTabInfo, linkHandler) ->
+                        errors.addAll(channelTabInfo.errors)
+                        if (channelTabInfo.relatedItems.isEmpty()) {
+                            if (channelTabInfo.nextPage == null) {
+                                return@flatMap emptyList()
+                            }
+                            val infoItemsPage = getMoreChannelTabItems(
+                                subscriptionEntity.serviceId,
+                                linkHandler, channelTabInfo.nextPage
+                            )
+                                .blockingGet()
+                            errors.addAll(infoItemsPage.errors)
+                            return@flatMap infoItemsPage.items
+                        } else {
+                            return@flatMap channelTabInfo.relatedItems
+                        }
+                    }
+                    .filterIsInstance<StreamInfoItem>()
+            }
+            streams = streams?.filterNot { it.isRoundPlayStream  || (!showFutureItems && it.uploadDate != null && it.uploadDate!!.offsetDateTime().isAfter(OffsetDateTime.now())) }
+
+            var isUnchanged = false
+            if (feedExtractor == null && errors.isEmpty()) {
+                // there is no cheap probe, but writing the unchanged streams can still be avoided
+                fingerprint = computeFingerprint(fingerprintSeed, streams!!)
+                isUnchanged = fingerprint == lastFingerprint
+            }
+            if (isUnchanged) {
+                feedResultsHolder.addSkipped()
+            }
+            feedResultsHolder.addFetched(System.currentTimeMillis() - startTime)
+
+            return FeedUpdateInfo(
+                subscriptionEntity,
+                originalInfo!!,
+                if (isUnchanged) emptyList() else streams!!,
+                errors,
+                fingerprint,
+                isUnchanged,
+            )
+        } catch (e: Throwable) {
+            val request = "${subscriptionEntity.serviceId}:${subscriptionEntity.url}"
+            throw FeedLoadService.RequestException(
+                subscriptionEntity.uid,
+                request,
+                error ?: e
+            )
+        }
     }
 
     fun cancel() {
@@ -289,7 +348,18 @@ class FeedLoadManager(private val context: Context) {
         FeedEventManager.postEvent(FeedEventManager.Event.ProgressEvent(R.string.feed_processing_message))
         feedDatabaseManager.removeOrphansOrOlderStreams()
 
-        FeedEventManager.postEvent(FeedEventManager.Event.SuccessResultEvent(feedResultsHolder.itemsErrors))
+        Log.i(
+            TAG,
+            "Skipped ${feedResultsHolder.skippedChannels} unchanged channel(s), " +
+                "saved about ${feedResultsHolder.savedTime} ms"
+        )
+        FeedEventManager.postEvent(
+            FeedEventManager.Event.SuccessResultEvent(
+                feedResultsHolder.itemsErrors,
+                feedResultsHolder.skippedChannels,
+                feedResultsHolder.savedTime
+            )
+        )
     }.doOnSubscribe {
         currentProgress.set(-1)
         maxProgress.set(-1)
@@ -307,19 +377,64 @@ class FeedLoadManager(private val context: Context) {
         }
     }
 
-    private inner class DatabaseConsumer : Consumer<List<Notification<FeedUpdateInfo>>> {
+    /**
+     * Accumulates the results and writes them in batches, each batch in a single transaction.
+     * The batch size adapts to how long the writes take: batches are made as large as possible
+     * to amortize the cost of each transaction, while keeping transactions short enough not to
+     * block the UI from reading the database for too long.
+     */
+    private inner class DatabaseWriter {
+        private val pending = ArrayList<Notification<FeedUpdateInfo>>()
+        private var batchSize = INITIAL_BATCH_SIZE
+
+        fun offer(item: Notification<FeedUpdateInfo>) {
+            pending.add(item)
+            if (pending.size >= batchSize) {
+                flush()
+            }
+        }
+
+        fun flush() {
+            if (pending.isEmpty()) {
+                return
+            }
+
+            val startTime = System.nanoTime()
+            write(pending)
+            val duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime)
+
+            if (DEBUG) {
+                Log.d(TAG, "Wrote ${pending.size} subscriptions in $duration ms")
+            }
+            pending.clear()
+
+            batchSize = when {
+                duration < TARGET_BATCH_WRITE_TIME / 2 -> minOf(MAX_BATCH_SIZE, batchSize * 2)
+                duration > TARGET_BATCH_WRITE_TIME -> maxOf(MIN_BATCH_SIZE, batchSize / 2)
+                else -> batchSize
+            }
+        }
+
+        private fun write(list: List<Notification<FeedUpdateInfo>>) {
+            val updates = ArrayList<FeedDatabaseManager.FeedUpdate>(list.size)
+            val infoList = list.mapNotNull { it.value }
 
-        override fun accept(list: List<Notification<FeedUpdateInfo>>) {
             feedDatabaseManager.database().runInTransaction {
+                // one query for the whole batch instead of one per stream
+                val existingStreams = feedDatabaseManager.existingStreams(
+                    infoList.flatMap { it.streams }
+                )
+
                 for (notification in list) {
                     when {
                         notification.isOnNext -> {
                             val info = notification.value!!
 
-                            notification.value!!.newStreams = filterNewStreams(info.streams)
-
-                            feedDatabaseManager.upsertAll(info.uid, info.streams)
-                            subscriptionManager.updateFromInfo(info)
+                            info.newStreams = if (info.isUnchanged) {
+                                emptyList()
+                            } else {
+                                filterNewStreams(info.streams, existingStreams)
+                            }
 
                             if (info.errors.isNotEmpty()) {
                                 // Log errors for this specific channel
@@ -337,8 +452,15 @@ class FeedLoadManager(private val context: Context) {
                                         )
                                     }
                                 )
-                                feedDatabaseManager.markAsOutdated(info.uid)
                             }
+
+                            updates += FeedDatabaseManager.FeedUpdate(
+                                info.uid,
+                                info.streams,
+                                info.fingerprint,
+                                isOutdated = info.errors.isNotEmpty(),
+                                isUnchanged = info.isUnchanged
+                            )
                         }
                         notification.isOnError -> {
                             val error = notification.error!!
@@ -346,7 +468,13 @@ class FeedLoadManager(private val context: Context) {
                             // Log the error for the failed channel
                             if (error is FeedLoadService.RequestException) {
                                 Log.e(TAG, "Failed to load channel with subscription ID ${error.subscriptionId}: ${error.message}", error.cause ?: error)
-                                feedDatabaseManager.markAsOutdated(error.subscriptionId)
+                                // only mark it as outdated, the streams are kept
+                                updates += FeedDatabaseManager.FeedUpdate(
+                                    error.subscriptionId,
+                                    emptyList(),
+                                    isOutdated = true,
+                                    isUnchanged = true
+                                )
                             } else {
                                 Log.e(TAG, "Unexpected error during feed loading: ${error.javaClass.simpleName}: ${error.message}", error)
                             }
@@ -355,12 +483,18 @@ class FeedLoadManager(private val context: Context) {
                         }
                     }
                 }
+
+                feedDatabaseManager.upsertBatch(updates)
+                subscriptionManager.updateFromInfos(infoList.filterNot { it.isUnchanged })
             }
         }
 
-        private fun filterNewStreams(list: List<StreamInfoItem>): List<StreamInfoItem> {
+        private fun filterNewStreams(
+            list: List<StreamInfoItem>,
+            existingStreams: Set<Pair<Int, String>>
+        ): List<StreamInfoItem> {
             return list.filter {
-                !feedDatabaseManager.doesStreamExist(it) &&
+                !existingStreams.contains(it.serviceId to it.url) &&
                         it.uploadDate != null &&
                         // Streams older than this date are automatically removed from the feed.
                         // Therefore, streams which are not in the database,
@@ -382,13 +516,35 @@ class FeedLoadManager(private val context: Context) {
         const val GROUP_NOTIFICATION_ENABLED = -2L
 
         /**
-         * How many extractions will be running in parallel.
+         * Concurrency limiters of the services, kept across refreshes so every refresh starts
+         * with the limit learned by the previous one.
+         */
+        private val LIMITERS = ConcurrentHashMap<Int, ServiceConcurrencyLimiter>()
+
+        /**
+         * Bounds of the number of items to buffer to mass-insert in the database, see
+         * [DatabaseWriter].
          */
-        private const val PARALLEL_EXTRACTIONS = 6
+        private const val INITIAL_BATCH_SIZE = 20
+        private const val MIN_BATCH_SIZE = 5
+        const val MAX_BATCH_SIZE = 100
 
         /**
-         * Number of items to buffer to mass-insert in the database.
+         * Target duration of the transaction writing a batch, in milliseconds.
          */
-        private const val BUFFER_COUNT_BEFORE_INSERT = 20
+        private const val TARGET_BATCH_WRITE_TIME = 200L
+
+        /**
+         * Fingerprint of a list of streams, it only changes when a stream is added, removed,
+         * reordered or changes type (e.g. a live stream ending).
+         */
+        private fun computeFingerprint(seed: String, streams: List<StreamInfoItem>): String {
+            val digest = MessageDigest.getInstance("SHA-1")
+            digest.update(seed.toByteArray())
+            for (stream in streams) {
+                digest.update("\n${stream.url} ${stream.streamType}".toByteArray())
+            }
+            return digest.digest().joinToString("") { "%02x".format(it) }
+        }
     }
 }
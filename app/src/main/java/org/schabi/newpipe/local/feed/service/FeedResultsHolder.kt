@@ -1,5 +1,8 @@
 package org.schabi.newpipe.local.feed.service
 
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
 class FeedResultsHolder {
     /**
      * List of errors that may have happen during loading.
@@ -9,6 +12,30 @@ class FeedResultsHolder {
 
     private val itemsErrorsHolder: MutableList<Throwable> = ArrayList()
 
+    private val fetchedCount = AtomicInteger()
+    private val fetchedTime = AtomicLong()
+    private val skippedCount = AtomicInteger()
+    private val probeTime = AtomicLong()
+
+    /**
+     * Amount of subscriptions which were not fully fetched because they did not change.
+     */
+    val skippedChannels: Int
+        get() = skippedCount.get()
+
+    /**
+     * Estimated time saved by skipping unchanged subscriptions, in milliseconds: the average time
+     * of a full fetch for each skipped subscription, minus the time spent on all the probes.
+     */
+    val savedTime: Long
+        get() {
+            val fetched = fetchedCount.get()
+            if (fetched == 0) {
+                return 0
+            }
+            return maxOf(0, skippedCount.get() * fetchedTime.get() / fetched - probeTime.get())
+        }
+
     fun addError(error: Throwable) {
         itemsErrorsHolder.add(error)
     }
@@ -16,4 +43,17 @@ class FeedResultsHolder {
     fun addErrors(errors: List<Throwable>) {
         itemsErrorsHolder.addAll(errors)
     }
+
+    fun addProbe(duration: Long) {
+        probeTime.addAndGet(duration)
+    }
+
+    fun addFetched(duration: Long) {
+        fetchedCount.incrementAndGet()
+        fetchedTime.addAndGet(duration)
+    }
+
+    fun addSkipped() {
+        skippedCount.incrementAndGet()
+    }
 }
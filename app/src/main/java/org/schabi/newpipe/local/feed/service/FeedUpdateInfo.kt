@@ -9,7 +9,7 @@ import org.schabi.newpipe.util.image.ImageStrategy
 
 /**
  * Instances of this class might stay around in memory for some time while fetching the feed,
- * because of [FeedLoadManager.BUFFER_COUNT_BEFORE_INSERT]. Therefore this class should contain
+ * because of [FeedLoadManager.MAX_BATCH_SIZE]. Therefore this class should contain
  * as little data as possible to avoid out of memory errors. In particular, avoid storing whole
  * [ChannelInfo] objects, as they might contain raw JSON info in ready channel tabs link handlers.
  */
@@ -26,12 +26,18 @@ data class FeedUpdateInfo(
     val subscriberCount: Long?,
     val streams: List<StreamInfoItem>,
     val errors: List<Throwable>,
+    // fingerprint of the fetched streams, see FeedLoadManager.computeFingerprint
+    val fingerprint: String? = null,
+    // true if the fingerprint matches the previous fetch, streams is empty in this case
+    val isUnchanged: Boolean = false,
 ) {
     constructor(
         subscription: SubscriptionEntity,
         info: Info,
         streams: List<StreamInfoItem>,
         errors: List<Throwable>,
+        fingerprint: String? = null,
+        isUnchanged: Boolean = false,
     ) : this(
         uid = subscription.uid,
         notificationMode = subscription.notificationMode,
@@ -47,8 +53,9 @@ data class FeedUpdateInfo(
         subscriberCount = (info as? ChannelInfo)?.subscriberCount,
         streams = streams,
         errors = errors,
+        fingerprint = fingerprint,
+        isUnchanged = isUnchanged,
     )
-    
 
     /**
      * Integer id, can be used as notification id, etc.
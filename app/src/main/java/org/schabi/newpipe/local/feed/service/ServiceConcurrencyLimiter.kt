@@ -0,0 +1,132 @@
+package org.schabi.newpipe.local.feed.service
+
+import org.schabi.newpipe.extractor.exceptions.ReCaptchaException
+import org.schabi.newpipe.ktx.hasAssignableCause
+import java.net.SocketTimeoutException
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
+import kotlin.math.max
+import kotlin.math.min
+
+/**
+ * AIMD (additive increase, multiplicative decrease) limiter for the extractions of one service.
+ *
+ * The amount of extractions allowed to run at the same time grows by one every time a full
+ * window of them completed while the latency and the error rate were healthy, and is halved when
+ * the service pushes back (HTTP 429, which [org.schabi.newpipe.DownloaderImpl] reports as a
+ * [ReCaptchaException], or a timeout). After a push back no new extraction is started for an
+ * exponentially growing backoff delay. Two extractions are never started closer than
+ * [minSpacing] milliseconds apart.
+ *
+ * @param minSpacing minimum time between the start of two extractions, in milliseconds
+ * @param clock      time source, in milliseconds
+ */
+class ServiceConcurrencyLimiter(
+    private val minSpacing: Long,
+    private val clock: () -> Long = System::currentTimeMillis
+) {
+    private val lock = ReentrantLock()
+    private val changed = lock.newCondition()
+
+    private var limit = INITIAL_LIMIT.toDouble()
+    private var inFlight = 0
+    private var nextStart = 0L
+    private var backoff = 0L
+
+    private var minLatency = Long.MAX_VALUE
+    private var errorRate = 0.0
+
+    /**
+     * The current amount of extractions allowed to run in parallel.
+     */
+    val currentLimit: Int
+        get() = lock.withLock { limit.toInt() }
+
+    /**
+     * Blocks until a new extraction can be started.
+     *
+     * @param cancelSignal checked while waiting, the wait is abandoned if it is set
+     * @return the start time to give to [release], or `null` if the wait was cancelled
+     */
+    @Throws(InterruptedException::class)
+    fun acquire(cancelSignal: AtomicBoolean): Long? {
+        lock.withLock {
+            while (true) {
+                if (cancelSignal.get()) {
+                    return null
+                }
+
+                val now = clock()
+                if (inFlight < limit.toInt() && now >= nextStart) {
+                    inFlight++
+                    nextStart = now + minSpacing
+                    return now
+                }
+
+                val wait = if (now < nextStart) nextStart - now else MAX_WAIT
+                changed.await(min(wait, MAX_WAIT), TimeUnit.MILLISECONDS)
+            }
+        }
+    }
+
+    /**
+     * Releases a slot taken with [acquire] and adapts the limit to the outcome.
+     *
+     * @param startTime the value returned by [acquire]
+     * @param error     the error the extraction failed with, `null` if it succeeded
+     */
+    fun release(startTime: Long, error: Throwable?) {
+        lock.withLock {
+            inFlight--
+            val now = clock()
+            val latency = now - startTime
+
+            if (error != null && isPushBack(error)) {
+                limit = max(MIN_LIMIT.toDouble(), limit * DECREASE_FACTOR)
+                backoff = if (backoff == 0L) BASE_BACKOFF else min(backoff * 2, MAX_BACKOFF)
+                nextStart = max(nextStart, now + backoff)
+            } else {
+                backoff = 0
+                errorRate += ((if (error == null) 0.0 else 1.0) - errorRate) * ERROR_RATE_WEIGHT
+
+                if (error == null) {
+                    minLatency = min(minLatency, latency)
+                }
+
+                val healthy = error == null && errorRate < MAX_ERROR_RATE &&
+                    latency <= minLatency * MAX_LATENCY_RATIO
+                if (healthy) {
+                    // about one more slot after a whole window completed without issues
+                    limit = min(MAX_LIMIT.toDouble(), limit + 1.0 / limit)
+                }
+            }
+
+            changed.signalAll()
+        }
+    }
+
+    companion object {
+        const val INITIAL_LIMIT = 3
+        const val MIN_LIMIT = 1
+        const val MAX_LIMIT = 16
+
+        private const val DECREASE_FACTOR = 0.5
+        private const val BASE_BACKOFF = 1000L
+        private const val MAX_BACKOFF = 60_000L
+        private const val MAX_WAIT = 1000L
+
+        private const val ERROR_RATE_WEIGHT = 0.1
+        private const val MAX_ERROR_RATE = 0.2
+        private const val MAX_LATENCY_RATIO = 3
+
+        @JvmStatic
+        fun isPushBack(error: Throwable): Boolean {
+            return error.hasAssignableCause(
+                ReCaptchaException::class.java,
+                SocketTimeoutException::class.java
+            )
+        }
+    }
+}
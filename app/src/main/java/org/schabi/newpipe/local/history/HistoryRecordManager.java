@@ -22,11 +22,13 @@ import android.content.Context;
 import android.content.SharedPreferences;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.preference.PreferenceManager;
 
 import org.schabi.newpipe.NewPipeDatabase;
 import org.schabi.newpipe.R;
 import org.schabi.newpipe.database.AppDatabase;
+import org.schabi.newpipe.database.DatabaseUtils;
 import org.schabi.newpipe.database.LocalItem;
 import org.schabi.newpipe.database.feed.dao.FeedDAO;
 import org.schabi.newpipe.database.history.dao.SearchHistoryDAO;
@@ -188,6 +190,44 @@ public class HistoryRecordManager {
         return streamHistoryTable.getStatistics().subscribeOn(Schedulers.io());
     }
 
+    /**
+     * Gets the page of the statistics following {@code last}. Sorting and filtering are done by
+     * the database, so that only the requested entries are loaded.
+     *
+     * @param byWatchCount whether to sort by watch count instead of by last access
+     * @param last         the last entry of the previous page, {@code null} for the first page
+     * @param filter       text the title or the uploader has to contain, empty for all entries
+     * @param limit        the maximum amount of entries, negative for all the remaining ones
+     * @return the entries, sorted in descending order
+     */
+    public Single<List<StreamStatisticsEntry>> getStreamStatisticsPage(
+            final boolean byWatchCount,
+            @Nullable final StreamStatisticsEntry last,
+            @NonNull final String filter,
+            final int limit) {
+        final long streamId = last == null ? Long.MAX_VALUE : last.getStreamId();
+        final String escapedFilter = DatabaseUtils.escapeLike(filter);
+        return Single.fromCallable(() -> {
+            if (byWatchCount) {
+                return streamHistoryTable.getStatisticsByWatchCount(
+                        last == null ? Long.MAX_VALUE : last.getWatchCount(),
+                        streamId, escapedFilter, limit);
+            } else {
+                return streamHistoryTable.getStatisticsByLastPlayed(
+                        last == null ? Long.MAX_VALUE
+                                : last.getLatestAccessDate().toInstant().toEpochMilli(),
+                        streamId, escapedFilter, limit);
+            }
+        }).subscribeOn(Schedulers.io());
+    }
+
+    /**
+     * @return a {@link Flowable} emitting every time the stream history changes
+     */
+    public Flowable<Integer> getStreamHistoryChanges() {
+        return streamHistoryTable.getHistoryCount().subscribeOn(Schedulers.io());
+    }
+
     public Single<List<Long>> insertStreamHistory(final Collection<StreamHistoryEntry> entries) {
         final List<StreamHistoryEntity> entities = new ArrayList<>(entries.size());
         for (final StreamHistoryEntry entry : entries) {
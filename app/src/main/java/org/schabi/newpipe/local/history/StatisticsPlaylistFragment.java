@@ -19,6 +19,7 @@ import android.widget.Toast;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.ActionBar;
+import androidx.recyclerview.widget.RecyclerView;
 import androidx.viewbinding.ViewBinding;
 
 import com.google.android.material.snackbar.Snackbar;
@@ -26,6 +27,7 @@ import com.google.android.material.snackbar.Snackbar;
 import org.reactivestreams.Subscriber;
 import org.reactivestreams.Subscription;
 import org.schabi.newpipe.R;
+import org.schabi.newpipe.database.DatabaseUtils;
 import org.schabi.newpipe.database.LocalItem;
 import org.schabi.newpipe.database.stream.StreamStatisticsEntry;
 import org.schabi.newpipe.database.stream.model.StreamEntity;
@@ -35,6 +37,7 @@ import org.schabi.newpipe.error.ErrorInfo;
 import org.schabi.newpipe.error.UserAction;
 import org.schabi.newpipe.extractor.stream.StreamInfoItem;
 import org.schabi.newpipe.fragments.BackPressable;
+import org.schabi.newpipe.fragments.OnScrollBelowItemsListener;
 import org.schabi.newpipe.info_list.dialog.InfoItemDialog;
 import org.schabi.newpipe.local.BaseLocalListFragment;
 import org.schabi.newpipe.player.playqueue.PlayQueue;
@@ -45,8 +48,6 @@ import org.schabi.newpipe.util.OnClickGesture;
 import org.schabi.newpipe.info_list.dialog.StreamDialogDefaultEntry;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 import java.util.Objects;
 
@@ -54,6 +55,7 @@ import icepick.State;
 import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
 import io.reactivex.rxjava3.disposables.CompositeDisposable;
 import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.functions.Consumer;
 
 public class StatisticsPlaylistFragment
         extends BaseLocalListFragment<List<StreamStatisticsEntry>, Void> implements BackPressable {
@@ -67,6 +69,11 @@ public class StatisticsPlaylistFragment
 
     /* Used for independent events */
     private Subscription databaseSubscription;
+    private Disposable pageDisposable;
+    private boolean isLoadingPage = false;
+    private boolean hasMorePages = false;
+    @NonNull
+    private String filterText = "";
     private HistoryRecordManager recordManager;
     private EditText editText;
     private View searchClear;
@@ -77,7 +84,8 @@ public class StatisticsPlaylistFragment
 
         @Override
         public void onTextChanged(CharSequence s, int start, int before, int count) {
-            itemListAdapter.filter(String.valueOf(editText.getText()));
+            filterText = String.valueOf(editText.getText());
+            reloadPages();
         }
 
         @Override
@@ -85,22 +93,6 @@ public class StatisticsPlaylistFragment
         }
     };
 
-    private List<StreamStatisticsEntry> processResult(final List<StreamStatisticsEntry> results) {
-        final Comparator<StreamStatisticsEntry> comparator;
-        switch (sortMode) {
-            case LAST_PLAYED:
-                comparator = Comparator.comparing(StreamStatisticsEntry::getLatestAccessDate);
-                break;
-            case MOST_PLAYED:
-                comparator = Comparator.comparingLong(StreamStatisticsEntry::getWatchCount);
-                break;
-            default:
-                return null;
-        }
-        Collections.sort(results, comparator.reversed());
-        return results;
-    }
-
     ///////////////////////////////////////////////////////////////////////////
     // Fragment LifeCycle - Creation
     ///////////////////////////////////////////////////////////////////////////
@@ -158,6 +150,13 @@ public class StatisticsPlaylistFragment
     protected void initListeners() {
         super.initListeners();
 
+        itemsList.addOnScrollListener(new OnScrollBelowItemsListener() {
+            @Override
+            public void onScrolledDown(final RecyclerView recyclerView) {
+                loadNextPage();
+            }
+        });
+
         itemListAdapter.setSelectedListener(new OnClickGesture<LocalItem>() {
             @Override
             public void selected(final LocalItem selectedItem) {
@@ -222,7 +221,7 @@ public class StatisticsPlaylistFragment
     @Override
     public void startLoading(final boolean forceLoad) {
         super.startLoading(forceLoad);
-        recordManager.getStreamStatistics()
+        recordManager.getStreamHistoryChanges()
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(getHistoryObserver());
     }
@@ -261,6 +260,7 @@ public class StatisticsPlaylistFragment
             databaseSubscription.cancel();
         }
         databaseSubscription = null;
+        disposePageLoading();
     }
 
     @Override
@@ -274,8 +274,8 @@ public class StatisticsPlaylistFragment
     // Statistics Loader
     ///////////////////////////////////////////////////////////////////////////
 
-    private Subscriber<List<StreamStatisticsEntry>> getHistoryObserver() {
-        return new Subscriber<List<StreamStatisticsEntry>>() {
+    private Subscriber<Integer> getHistoryObserver() {
+        return new Subscriber<Integer>() {
             @Override
             public void onSubscribe(final Subscription s) {
                 showLoading();
@@ -288,8 +288,8 @@ public class StatisticsPlaylistFragment
             }
 
             @Override
-            public void onNext(final List<StreamStatisticsEntry> streams) {
-                handleResult(streams);
+            public void onNext(final Integer historySize) {
+                reloadPages();
                 if (databaseSubscription != null) {
                     databaseSubscription.request(1);
                 }
@@ -318,23 +318,25 @@ public class StatisticsPlaylistFragment
 
         itemListAdapter.clearStreamItemList();
 
-        if (result.isEmpty()) {
+        if (result.isEmpty() && filterText.isEmpty()) {
             showEmptyState();
             return;
         }
 
-        itemListAdapter.addItems(processResult(result));
+        itemListAdapter.appendItems(result);
         if (itemsListState != null && itemsList.getLayoutManager() != null) {
             itemsList.getLayoutManager().onRestoreInstanceState(itemsListState);
             itemsListState = null;
         }
 
         playlistControlBinding.playlistCtrlPlayAllButton.setOnClickListener(view ->
-                NavigationHelper.playOnMainPlayer(activity, getPlayQueue()));
+                loadPlayQueue(0, queue -> NavigationHelper.playOnMainPlayer(activity, queue)));
         playlistControlBinding.playlistCtrlPlayPopupButton.setOnClickListener(view ->
-                NavigationHelper.playOnPopupPlayer(activity, getPlayQueue(), false));
+                loadPlayQueue(0, queue ->
+                        NavigationHelper.playOnPopupPlayer(activity, queue, false)));
         playlistControlBinding.playlistCtrlPlayBgButton.setOnClickListener(view ->
-                NavigationHelper.playOnBackgroundPlayer(activity, getPlayQueue(), false));
+                loadPlayQueue(0, queue ->
+                        NavigationHelper.playOnBackgroundPlayer(activity, queue, false)));
         headerBinding.sortButton.setOnClickListener(view -> toggleSortMode());
 
         hideLoading();
@@ -350,6 +352,79 @@ public class StatisticsPlaylistFragment
         if (databaseSubscription != null) {
             databaseSubscription.cancel();
         }
+        disposePageLoading();
+    }
+
+    /*//////////////////////////////////////////////////////////////////////////
+    // Paging
+    //////////////////////////////////////////////////////////////////////////*/
+
+    private void disposePageLoading() {
+        if (pageDisposable != null) {
+            pageDisposable.dispose();
+        }
+        pageDisposable = null;
+        isLoadingPage = false;
+    }
+
+    /**
+     * Reloads the list from its start, keeping as many entries as are currently loaded so that
+     * the scroll position is kept when the history changes.
+     */
+    private void reloadPages() {
+        if (itemListAdapter == null) {
+            return;
+        }
+        disposePageLoading();
+
+        final int limit = Math.max(DatabaseUtils.PAGE_SIZE,
+                itemListAdapter.getItemsList().size());
+        isLoadingPage = true;
+        pageDisposable = recordManager
+                .getStreamStatisticsPage(sortMode == StatisticSortMode.MOST_PLAYED, null,
+                        filterText, limit)
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(
+                        entries -> {
+                            isLoadingPage = false;
+                            hasMorePages = entries.size() == limit;
+                            handleResult(entries);
+                        },
+                        throwable -> showError(new ErrorInfo(throwable,
+                                UserAction.SOMETHING_ELSE, "History Statistics")));
+    }
+
+    private void loadNextPage() {
+        if (isLoadingPage || !hasMorePages || itemListAdapter == null) {
+            return;
+        }
+        final List<LocalItem> items = itemListAdapter.getItemsList();
+        if (items.isEmpty()) {
+            return;
+        }
+
+        isLoadingPage = true;
+        showListFooter(true);
+        pageDisposable = recordManager
+                .getStreamStatisticsPage(sortMode == StatisticSortMode.MOST_PLAYED,
+                        (StreamStatisticsEntry) items.get(items.size() - 1), filterText,
+                        DatabaseUtils.PAGE_SIZE)
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(
+                        entries -> {
+                            isLoadingPage = false;
+                            hasMorePages = entries.size() == DatabaseUtils.PAGE_SIZE;
+                            showListFooter(false);
+                            if (itemListAdapter != null) {
+                                itemListAdapter.appendItems(entries);
+                            }
+                        },
+                        throwable -> {
+                            isLoadingPage = false;
+                            showListFooter(false);
+                            showSnackBarError(new ErrorInfo(throwable,
+                                    UserAction.SOMETHING_ELSE, "History Statistics"));
+                        });
     }
 
     /*//////////////////////////////////////////////////////////////////////////
@@ -372,8 +447,8 @@ public class StatisticsPlaylistFragment
         startLoading(true);
     }
 
-    private PlayQueue getPlayQueueStartingAt(final StreamStatisticsEntry infoItem) {
-        return getPlayQueue(Math.max(itemListAdapter.getItemsList().indexOf(infoItem), 0));
+    private int indexOf(final StreamStatisticsEntry infoItem) {
+        return Math.max(itemListAdapter.getItemsList().indexOf(infoItem), 0);
     }
 
     private void showInfoItemDialog(final StreamStatisticsEntry item) {
@@ -393,8 +468,9 @@ public class StatisticsPlaylistFragment
                                     Math.max(itemListAdapter.getItemsList().indexOf(item), 0)))
                     .setAction(
                             StreamDialogDefaultEntry.START_HERE_ON_BACKGROUND,
-                            (f, i) -> NavigationHelper.playOnBackgroundPlayer(
-                                    context, getPlayQueueStartingAt(item), true))
+                            (f, i) -> loadPlayQueue(indexOf(item), queue ->
+                                    NavigationHelper.playOnBackgroundPlayer(
+                                            context, queue, true)))
                     .create()
                     .show();
         } catch (final IllegalArgumentException e) {
@@ -427,23 +503,25 @@ public class StatisticsPlaylistFragment
         }
     }
 
-    private PlayQueue getPlayQueue() {
-        return getPlayQueue(0);
-    }
-
-    private PlayQueue getPlayQueue(final int index) {
-        if (itemListAdapter == null) {
-            return new SinglePlayQueue(Collections.emptyList(), 0);
-        }
-
-        final List<LocalItem> infoItems = itemListAdapter.getItemsList();
-        final List<StreamInfoItem> streamInfoItems = new ArrayList<>(infoItems.size());
-        for (final LocalItem item : infoItems) {
-            if (item instanceof StreamStatisticsEntry) {
-                streamInfoItems.add(((StreamStatisticsEntry) item).toStreamInfoItem());
-            }
-        }
-        return new SinglePlayQueue(streamInfoItems, index);
+    /**
+     * Only a few pages of the list are loaded, so the play queue is built from all the entries
+     * matching the current sort and filter, loaded on demand.
+     */
+    private void loadPlayQueue(final int index, final Consumer<PlayQueue> onLoaded) {
+        disposables.add(recordManager
+                .getStreamStatisticsPage(sortMode == StatisticSortMode.MOST_PLAYED, null,
+                        filterText, -1)
+                .map(entries -> {
+                    final List<StreamInfoItem> streamInfoItems = new ArrayList<>(entries.size());
+                    for (final StreamStatisticsEntry entry : entries) {
+                        streamInfoItems.add(entry.toStreamInfoItem());
+                    }
+                    return (PlayQueue) new SinglePlayQueue(streamInfoItems,
+                            Math.min(index, Math.max(streamInfoItems.size() - 1, 0)));
+                })
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(onLoaded, throwable -> showSnackBarError(new ErrorInfo(throwable,
+                        UserAction.SOMETHING_ELSE, "Loading history play queue"))));
     }
 
 
@@ -467,8 +545,9 @@ public class StatisticsPlaylistFragment
             e.printStackTrace();
         }
         
-        if(itemListAdapter != null) {
-            itemListAdapter.clearFilter();
+        if (!filterText.isEmpty()) {
+            filterText = "";
+            reloadPages();
         }
     }
 
@@ -9,6 +9,7 @@ import android.text.InputType;
 import android.text.TextUtils;
 import android.text.TextWatcher;
 import android.util.Log;
+import android.util.Pair;
 import android.view.*;
 import android.view.inputmethod.InputMethodManager;
 import android.widget.EditText;
@@ -25,19 +26,21 @@ import androidx.recyclerview.widget.RecyclerView;
 import androidx.viewbinding.ViewBinding;
 import icepick.State;
 import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
-import io.reactivex.rxjava3.core.Flowable;
 import io.reactivex.rxjava3.core.Single;
 import io.reactivex.rxjava3.disposables.CompositeDisposable;
 import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.functions.Consumer;
 import io.reactivex.rxjava3.schedulers.Schedulers;
 import io.reactivex.rxjava3.subjects.PublishSubject;
 import org.reactivestreams.Subscriber;
 import org.reactivestreams.Subscription;
 import org.schabi.newpipe.NewPipeDatabase;
 import org.schabi.newpipe.R;
+import org.schabi.newpipe.database.DatabaseUtils;
 import org.schabi.newpipe.database.LocalItem;
 import org.schabi.newpipe.database.history.model.StreamHistoryEntry;
 import org.schabi.newpipe.database.playlist.PlaylistStreamEntry;
+import org.schabi.newpipe.database.playlist.model.PlaylistStreamEntity;
 import org.schabi.newpipe.database.stream.model.StreamEntity;
 import org.schabi.newpipe.database.stream.model.StreamStateEntity;
 import org.schabi.newpipe.databinding.DialogEditTextBinding;
@@ -47,9 +50,11 @@ import org.schabi.newpipe.error.ErrorInfo;
 import org.schabi.newpipe.error.UserAction;
 import org.schabi.newpipe.extractor.stream.StreamInfoItem;
 import org.schabi.newpipe.fragments.BackPressable;
+import org.schabi.newpipe.fragments.OnScrollBelowItemsListener;
 import org.schabi.newpipe.info_list.dialog.InfoItemDialog;
 import org.schabi.newpipe.info_list.dialog.StreamDialogDefaultEntry;
 import org.schabi.newpipe.local.BaseLocalListFragment;
+import org.schabi.newpipe.local.LibrarySearchManager;
 import org.schabi.newpipe.local.dialog.PlaylistDialog;
 import org.schabi.newpipe.local.history.HistoryRecordManager;
 import org.schabi.newpipe.player.PlayerService.PlayerType;
@@ -95,7 +100,11 @@ public class LocalPlaylistFragment extends BaseLocalListFragment<List<PlaylistSt
     private ItemTouchHelper itemTouchHelper;
 
     private LocalPlaylistManager playlistManager;
+    private LibrarySearchManager librarySearchManager;
+    private Disposable searchDisposable;
     private Subscription databaseSubscription;
+    private Disposable pageDisposable;
+    private boolean isLoadingPage = false;
 
     private PublishSubject<Long> debouncedSaveSignal;
     private CompositeDisposable disposables;
@@ -110,6 +119,21 @@ public class LocalPlaylistFragment extends BaseLocalListFragment<List<PlaylistSt
     private boolean isRemovingWatched = false;
     /* Is the playlist currently being processed to remove duplicate streams */
     private boolean isRemovingDuplicateStreams = false;
+    /* Is the playlist currently being saved, it is reloaded once saved */
+    private boolean isSaving = false;
+
+    /* The join rows of the playlist as last loaded from db, ordered by join index */
+    @NonNull
+    private List<PlaylistStreamEntity> storedJoins = Collections.emptyList();
+    /* The join indices of the playlist in the order they are shown */
+    @NonNull
+    private List<Integer> displayOrder = Collections.emptyList();
+    /* How many entries of displayOrder have been loaded into the list */
+    private int loadedCount = 0;
+    /* The join indices of the streams removed since the playlist was last loaded */
+    private final Set<Integer> removedJoinIndices = new HashSet<>();
+    private long storedDurationSeconds = 0;
+    private long removedDurationSeconds = 0;
     private boolean autoBackgroundPlaying = false;
     private boolean randomBackgroundPlaying = false;
 
@@ -125,7 +149,7 @@ public class LocalPlaylistFragment extends BaseLocalListFragment<List<PlaylistSt
 
         @Override
         public void onTextChanged(CharSequence s, int start, int before, int count) {
-            itemListAdapter.filter(String.valueOf(editText.getText()));
+            filterItems(String.valueOf(editText.getText()));
         }
 
         @Override
@@ -147,6 +171,8 @@ public class LocalPlaylistFragment extends BaseLocalListFragment<List<PlaylistSt
     public void onCreate(final Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         playlistManager = new LocalPlaylistManager(NewPipeDatabase.getInstance(requireContext()));
+        librarySearchManager =
+                new LibrarySearchManager(NewPipeDatabase.getInstance(requireContext()));
         debouncedSaveSignal = PublishSubject.create();
 
         disposables = new CompositeDisposable();
@@ -267,6 +293,13 @@ public class LocalPlaylistFragment extends BaseLocalListFragment<List<PlaylistSt
         itemTouchHelper = new ItemTouchHelper(getItemTouchCallback());
         itemTouchHelper.attachToRecyclerView(itemsList);
 
+        itemsList.addOnScrollListener(new OnScrollBelowItemsListener() {
+            @Override
+            public void onScrolledDown(final RecyclerView recyclerView) {
+                loadNextPage();
+            }
+        });
+
         itemListAdapter.setSelectedListener(new OnClickGesture<LocalItem>() {
             @Override
             public void selected(final LocalItem selectedItem) {
@@ -274,12 +307,14 @@ public class LocalPlaylistFragment extends BaseLocalListFragment<List<PlaylistSt
                     final StreamEntity item =
                             ((PlaylistStreamEntry) selectedItem).getStreamEntity();
                     if (autoBackgroundPlaying){
-                        final PlayQueue temp = getPlayQueue();
-                        temp.setIndex(utils.getIndexInQueue((PlaylistStreamEntry) selectedItem, temp, itemListAdapter.sortMode));
-                        if (randomBackgroundPlaying){
-                            temp.shuffle();
-                        }
-                        NavigationHelper.playOnBackgroundPlayer(activity, temp, false);
+                        loadPlayQueue(itemListAdapter.getItemsList().indexOf(selectedItem),
+                                queue -> {
+                                    if (randomBackgroundPlaying) {
+                                        queue.shuffle();
+                                    }
+                                    NavigationHelper.playOnBackgroundPlayer(activity, queue,
+                                            false);
+                                });
                     } else {
                         NavigationHelper.openVideoDetailFragment(requireContext(), getFM(),
                                 item.getServiceId(), item.getUrl(), item.getTitle(), null, false);
@@ -337,8 +372,9 @@ public class LocalPlaylistFragment extends BaseLocalListFragment<List<PlaylistSt
 
         isLoadingComplete.set(false);
         isModified.set(false);
+        isSaving = false;
 
-        playlistManager.getPlaylistStreams(playlistId)
+        playlistManager.getPlaylistJoins(playlistId)
                 .onBackpressureLatest()
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(getPlaylistObserver());
@@ -395,6 +431,7 @@ public class LocalPlaylistFragment extends BaseLocalListFragment<List<PlaylistSt
         if (disposables != null) {
             disposables.clear();
         }
+        disposePageLoading();
 
         databaseSubscription = null;
         itemTouchHelper = null;
@@ -409,9 +446,13 @@ public class LocalPlaylistFragment extends BaseLocalListFragment<List<PlaylistSt
         if (disposables != null) {
             disposables.dispose();
         }
+        if (searchDisposable != null) {
+            searchDisposable.dispose();
+        }
 
         debouncedSaveSignal = null;
         playlistManager = null;
+        librarySearchManager = null;
         disposables = null;
 
         isLoadingComplete = null;
@@ -422,8 +463,8 @@ public class LocalPlaylistFragment extends BaseLocalListFragment<List<PlaylistSt
     // Playlist Stream Loader
     ///////////////////////////////////////////////////////////////////////////
 
-    private Subscriber<List<PlaylistStreamEntry>> getPlaylistObserver() {
-        return new Subscriber<List<PlaylistStreamEntry>>() {
+    private Subscriber<List<PlaylistStreamEntity>> getPlaylistObserver() {
+        return new Subscriber<List<PlaylistStreamEntity>>() {
             @Override
             public void onSubscribe(final Subscription s) {
                 showLoading();
@@ -437,11 +478,10 @@ public class LocalPlaylistFragment extends BaseLocalListFragment<List<PlaylistSt
             }
 
             @Override
-            public void onNext(final List<PlaylistStreamEntry> streams) {
+            public void onNext(final List<PlaylistStreamEntity> joins) {
                 // Skip handling the result after it has been modified
-                if (isModified == null || !isModified.get()) {
-                    handleResult(streams);
-                    isLoadingComplete.set(true);
+                if (isModified != null && !isModified.get() && !isSaving) {
+                    applyJoins(joins);
                 }
 
                 if (databaseSubscription != null) {
@@ -537,10 +577,9 @@ public class LocalPlaylistFragment extends BaseLocalListFragment<List<PlaylistSt
 
             builder.setPositiveButton(R.string.video, new DialogInterface.OnClickListener() {
                         public void onClick(DialogInterface dialog, int id) {
-                            disposable = playlistManager.getPlaylistStreams(playlistId)
+                            disposable = loadAllStreams()
                                     .observeOn(Schedulers.io())
                                     .subscribe(streams -> {
-                                        disposable.dispose();
                                          StreamProcessor streamProcessor = new StreamProcessor();
                                          streamProcessor.processStreamsSequentiallyWithProgress(requireContext(),
                                                  streams.stream()
@@ -554,10 +593,9 @@ public class LocalPlaylistFragment extends BaseLocalListFragment<List<PlaylistSt
             );
             builder.setNegativeButton(R.string.audio, new DialogInterface.OnClickListener() {
                 public void onClick(DialogInterface dialog, int id) {
-                    disposable = playlistManager.getPlaylistStreams(playlistId)
+                    disposable = loadAllStreams()
                             .observeOn(Schedulers.io())
                             .subscribe(streams -> {
-                                disposable.dispose();
                                 StreamProcessor streamProcessor = new StreamProcessor();
                                 streamProcessor.processStreamsSequentiallyWithProgress(requireContext(),
                                         streams.stream()
@@ -575,21 +613,13 @@ public class LocalPlaylistFragment extends BaseLocalListFragment<List<PlaylistSt
         } else if (item.getItemId() == R.id.menu_item_append_playlist) {
             appendAllToOtherPlaylist();
         } else if (item.getItemId() == R.id.menu_item_sort_origin) {
-            itemListAdapter.sortMode = SortMode.ORIGIN;
-            itemListAdapter.sort(SortMode.ORIGIN);
-            PreferenceManager.getDefaultSharedPreferences(requireContext()).edit().putString(getString(R.string.playlist_sort_mode_key), SortMode.ORIGIN.name()).apply();
+            changeSortMode(SortMode.ORIGIN);
         } else if (item.getItemId() == R.id.menu_item_sort_origin_reverse) {
-            itemListAdapter.sortMode = SortMode.ORIGIN_REVERSE;
-            itemListAdapter.sort(SortMode.ORIGIN_REVERSE);
-            PreferenceManager.getDefaultSharedPreferences(requireContext()).edit().putString(getString(R.string.playlist_sort_mode_key), SortMode.ORIGIN_REVERSE.name()).apply();
+            changeSortMode(SortMode.ORIGIN_REVERSE);
         } else if (item.getItemId() == R.id.menu_item_sort_name) {
-            itemListAdapter.sortMode = SortMode.SORT_NAME;
-            itemListAdapter.sort(SortMode.SORT_NAME);
-            PreferenceManager.getDefaultSharedPreferences(requireContext()).edit().putString(getString(R.string.playlist_sort_mode_key), SortMode.SORT_NAME.name()).apply();
+            changeSortMode(SortMode.SORT_NAME);
         } else if (item.getItemId() == R.id.menu_item_sort_name_reverse) {
-            itemListAdapter.sortMode = SortMode.SORT_NAME_REVERSE;
-            itemListAdapter.sort(SortMode.SORT_NAME_REVERSE);
-            PreferenceManager.getDefaultSharedPreferences(requireContext()).edit().putString(getString(R.string.playlist_sort_mode_key), SortMode.SORT_NAME_REVERSE.name()).apply();
+            changeSortMode(SortMode.SORT_NAME_REVERSE);
         }
         return true;
     }
@@ -693,74 +723,46 @@ public class LocalPlaylistFragment extends BaseLocalListFragment<List<PlaylistSt
                 Toast.LENGTH_LONG).show();
     }
 
+    private void changeSortMode(final SortMode sortMode) {
+        // Changes made in the previous order are saved before the list is sorted again
+        if (isModified != null && isModified.get()) {
+            saveImmediate();
+        }
+
+        itemListAdapter.sortMode = sortMode;
+        PreferenceManager.getDefaultSharedPreferences(requireContext()).edit()
+                .putString(getString(R.string.playlist_sort_mode_key), sortMode.name()).apply();
+
+        loadedCount = 0;
+        if (!isSaving && isLoadingComplete != null && isLoadingComplete.get()) {
+            reloadPages();
+        }
+    }
+
     public void removeDuplicateStreams() {
-        if (isRemovingDuplicateStreams) {
+        if (isRemovingDuplicateStreams || itemListAdapter == null
+                || isLoadingComplete == null || !isLoadingComplete.get()) {
             return;
         }
         isRemovingDuplicateStreams = true;
         showLoading();
 
-        disposables.add(playlistManager.getPlaylistStreams(playlistId)
-                .subscribeOn(Schedulers.io())
-                .map((List<PlaylistStreamEntry> playlist) -> {
-                    // Playlist data
-                    final Iterator<PlaylistStreamEntry> playlistIter = playlist.iterator();
-
-                    // Remove duplicates, Functionality data
-                    final List<PlaylistStreamEntry> uniquePlaylistItems = new ArrayList<>();
-                    final Set<Long> uniquePlaylistItemStreamIds = new HashSet<>();
-                    boolean thumbnailVideoRemoved = false;
-
-                    while (playlistIter.hasNext()) {
-                        final PlaylistStreamEntry playlistItem = playlistIter.next();
-                        final Long playlistItemStreamId = playlistItem.getStreamId();
-
-                        if (!uniquePlaylistItemStreamIds.contains(playlistItemStreamId)) {
-                            uniquePlaylistItems.add(playlistItem);
-                            uniquePlaylistItemStreamIds.add(playlistItemStreamId);
-                        } else if (!thumbnailVideoRemoved
-                                && playlistManager.getPlaylistThumbnail(playlistId)
-                                .equals(playlistItem.getStreamEntity().getThumbnailUrl())) {
-                            thumbnailVideoRemoved = true;
-                        }
-                    }
-
-                    return Flowable.just(uniquePlaylistItems, thumbnailVideoRemoved);
-                })
-                .observeOn(AndroidSchedulers.mainThread())
-                .subscribe(flow -> {
-                    final List<PlaylistStreamEntry> uniquePlaylistItems =
-                            (List<PlaylistStreamEntry>) flow.blockingFirst();
-                    final boolean thumbnailVideoRemoved = (Boolean) flow.blockingLast();
-
-                    itemListAdapter.clearStreamItemList();
-                    itemListAdapter.addItems(uniquePlaylistItems);
-                    saveChanges();
-
-                    if (thumbnailVideoRemoved) {
-                        updateThumbnailUrl();
-                    }
-
-                    final long videoCount = itemListAdapter.getItemsList().size();
-                    setStreamCountAndOverallDuration(itemListAdapter.getItemsList());
-                    if (videoCount == 0) {
-                        showEmptyState();
-                    }
-
-                    hideLoading();
-                    isRemovingDuplicateStreams = false;
-                }));
+        // Only copies of streams kept in the playlist are removed, so the playlist thumbnail
+        // still belongs to one of its streams
+        saveStreamIds(new ArrayList<>(
+                new LinkedHashSet<>(getStreamIds(getJoinIndicesToSave()))));
+        isRemovingDuplicateStreams = false;
     }
 
     public void removeWatchedStreams(final boolean removePartiallyWatched) {
-        if (isRemovingWatched) {
+        if (isRemovingWatched || itemListAdapter == null
+                || isLoadingComplete == null || !isLoadingComplete.get()) {
             return;
         }
         isRemovingWatched = true;
         showLoading();
 
-        disposables.add(playlistManager.getPlaylistStreams(playlistId)
-                .subscribeOn(Schedulers.io())
+        disposables.add(playlistManager.getPlaylistStreamsAt(playlistId, getJoinIndicesToSave())
                 .map((List<PlaylistStreamEntry> playlist) -> {
                     // Playlist data
                     final Iterator<PlaylistStreamEntry> playlistIter = playlist.iterator();
@@ -817,33 +819,32 @@ public class LocalPlaylistFragment extends BaseLocalListFragment<List<PlaylistSt
                         }
                     }
 
-                    return Flowable.just(notWatchedItems, thumbnailVideoRemoved);
-                })
-                .observeOn(AndroidSchedulers.mainThread())
-                .subscribe(flow -> {
-                    final List<PlaylistStreamEntry> notWatchedItems =
-                            (List<PlaylistStreamEntry>) flow.blockingFirst();
-                    final boolean thumbnailVideoRemoved = (Boolean) flow.blockingLast();
-
-                    itemListAdapter.clearStreamItemList();
-                    itemListAdapter.addItems(notWatchedItems);
-                    saveChanges();
-
+                    final List<Long> notWatchedStreamIds = new ArrayList<>(notWatchedItems.size());
+                    for (final PlaylistStreamEntry item : notWatchedItems) {
+                        notWatchedStreamIds.add(item.getStreamId());
+                    }
 
+                    String newThumbnailUrl = null;
                     if (thumbnailVideoRemoved) {
-                        updateThumbnailUrl();
+                        newThumbnailUrl = notWatchedItems.isEmpty()
+                                ? "drawable://" + R.drawable.dummy_thumbnail_playlist
+                                : notWatchedItems.get(0).getStreamEntity().getThumbnailUrl();
                     }
-
-                    final long videoCount = itemListAdapter.getItemsList().size();
-                    setStreamCountAndOverallDuration(itemListAdapter.getItemsList());
-                    if (videoCount == 0) {
-                        showEmptyState();
+                    return new Pair<>(notWatchedStreamIds, newThumbnailUrl);
+                })
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(result -> {
+                    if (result.second != null) {
+                        changeThumbnailUrl(result.second);
                     }
-
-                    hideLoading();
+                    saveStreamIds(result.first);
                     isRemovingWatched = false;
-                }, throwable -> showError(new ErrorInfo(throwable, UserAction.REQUESTED_BOOKMARK,
-                        "Removing watched videos, partially watched=" + removePartiallyWatched))));
+                }, throwable -> {
+                    isRemovingWatched = false;
+                    showError(new ErrorInfo(throwable, UserAction.REQUESTED_BOOKMARK,
+                            "Removing watched videos, partially watched="
+                                    + removePartiallyWatched));
+                }));
     }
 
     @Override
@@ -860,17 +861,18 @@ public class LocalPlaylistFragment extends BaseLocalListFragment<List<PlaylistSt
             return;
         }
 
-        itemListAdapter.addItems(result);
+        itemListAdapter.appendItems(result);
         if (itemsListState != null) {
             itemsList.getLayoutManager().onRestoreInstanceState(itemsListState);
             itemsListState = null;
         }
-        setStreamCountAndOverallDuration(itemListAdapter.getItemsList());
+        setStreamCountAndOverallDuration();
 
         playlistControlBinding.playlistCtrlPlayAllButton.setOnClickListener(view ->
-                NavigationHelper.playOnMainPlayer(activity, getPlayQueue()));
+                loadPlayQueue(0, queue -> NavigationHelper.playOnMainPlayer(activity, queue)));
         playlistControlBinding.playlistCtrlPlayPopupButton.setOnClickListener(view ->
-                NavigationHelper.playOnPopupPlayer(activity, getPlayQueue(), false));
+                loadPlayQueue(0, queue ->
+                        NavigationHelper.playOnPopupPlayer(activity, queue, false)));
 
 
 
@@ -878,20 +880,24 @@ public class LocalPlaylistFragment extends BaseLocalListFragment<List<PlaylistSt
             final SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(
                     requireContext());
             if (prefs.getBoolean(getString(R.string.random_music_play_mode_key), false)) {
-                NavigationHelper.playOnBackgroundPlayerShuffled(activity, getPlayQueue(), false);
+                loadPlayQueue(0, queue ->
+                        NavigationHelper.playOnBackgroundPlayerShuffled(activity, queue, false));
             } else {
-                NavigationHelper.playOnBackgroundPlayer(activity, getPlayQueue(), false);
+                loadPlayQueue(0, queue ->
+                        NavigationHelper.playOnBackgroundPlayer(activity, queue, false));
             }
 
         });
 
         playlistControlBinding.playlistCtrlPlayPopupButton.setOnLongClickListener(view -> {
-            NavigationHelper.enqueueOnPlayer(activity, getPlayQueue(), PlayerType.POPUP);
+            loadPlayQueue(0, queue ->
+                    NavigationHelper.enqueueOnPlayer(activity, queue, PlayerType.POPUP));
             return true;
         });
 
         playlistControlBinding.playlistCtrlPlayBgButton.setOnLongClickListener(view -> {
-            NavigationHelper.enqueueOnPlayer(activity, getPlayQueue(), PlayerType.AUDIO);
+            loadPlayQueue(0, queue ->
+                    NavigationHelper.enqueueOnPlayer(activity, queue, PlayerType.AUDIO));
             return true;
         });
 
@@ -908,6 +914,7 @@ public class LocalPlaylistFragment extends BaseLocalListFragment<List<PlaylistSt
         if (databaseSubscription != null) {
             databaseSubscription.cancel();
         }
+        disposePageLoading();
     }
 
     /*//////////////////////////////////////////////////////////////////////////
@@ -915,8 +922,7 @@ public class LocalPlaylistFragment extends BaseLocalListFragment<List<PlaylistSt
     //////////////////////////////////////////////////////////////////////////*/
 
     private void appendAllToOtherPlaylist() {
-        disposables.add(playlistManager.getPlaylistStreams(playlistId)
-                .firstOrError()
+        disposables.add(loadAllStreams()
                 .map(streams -> streams.stream()
                         .map(PlaylistStreamEntry::getStreamEntity)
                         .collect(Collectors.toList()))
@@ -1012,17 +1018,20 @@ public class LocalPlaylistFragment extends BaseLocalListFragment<List<PlaylistSt
     }
 
     private void deleteItem(final PlaylistStreamEntry item) {
-        if (itemListAdapter == null) {
+        // The join indices of the loaded streams are renumbered by the save
+        if (itemListAdapter == null || isSaving) {
             return;
         }
 
         itemListAdapter.removeItem(item);
+        removedJoinIndices.add(item.getJoinIndex());
+        removedDurationSeconds += item.getStreamEntity().getDuration();
         if (playlistManager.getPlaylistThumbnail(playlistId)
                 .equals(item.getStreamEntity().getThumbnailUrl())) {
             updateThumbnailUrl();
         }
 
-        setStreamCountAndOverallDuration(itemListAdapter.getItemsList());
+        setStreamCountAndOverallDuration();
         saveChanges();
     }
 
@@ -1107,41 +1116,78 @@ public class LocalPlaylistFragment extends BaseLocalListFragment<List<PlaylistSt
             return;
         }
 
-        if(itemListAdapter.sortMode != SortMode.ORIGIN && itemListAdapter.sortMode != SortMode.ORIGIN_REVERSE) {
-            itemListAdapter.sort(SortMode.ORIGIN);
-        }
-
-        final List<LocalItem> items = itemListAdapter.getItemsList();
-        final List<Long> streamIds = new ArrayList<>(items.size());
-        for (final LocalItem item : items) {
-            if (item instanceof PlaylistStreamEntry) {
-                streamIds.add(((PlaylistStreamEntry) item).getStreamId());
-            }
-        }
-
-        if(itemListAdapter.sortMode == SortMode.ORIGIN_REVERSE) {
-            Collections.reverse(streamIds);
-        }
+        saveStreamIds(getStreamIds(getJoinIndicesToSave()));
+    }
 
+    /**
+     * Replaces the streams of the playlist and reloads it once saved.
+     */
+    private void saveStreamIds(@NonNull final List<Long> streamIds) {
         if (DEBUG) {
             Log.d(TAG, "Updating playlist id=[" + playlistId + "] "
                     + "with [" + streamIds.size() + "] items");
         }
 
+        disposePageLoading();
+        isSaving = true;
         final Disposable disposable = playlistManager.updateJoin(playlistId, streamIds)
+                .andThen(playlistManager.getPlaylistJoins(playlistId).firstOrError())
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(
-                        () -> {
+                        joins -> {
+                            isSaving = false;
                             if (isModified != null) {
                                 isModified.set(false);
                             }
+                            applyJoins(joins);
                         },
-                        throwable -> showError(new ErrorInfo(throwable,
-                                UserAction.REQUESTED_BOOKMARK, "Saving playlist"))
+                        throwable -> {
+                            isSaving = false;
+                            showError(new ErrorInfo(throwable,
+                                    UserAction.REQUESTED_BOOKMARK, "Saving playlist"));
+                        }
                 );
         disposables.add(disposable);
     }
 
+    /**
+     * @return the join indices of the playlist in the order it is saved in, without the removed
+     * streams
+     */
+    private List<Integer> getJoinIndicesToSave() {
+        final List<Integer> joinIndices;
+        if (itemListAdapter.sortMode == SortMode.ORIGIN) {
+            joinIndices = getShownOrder();
+        } else if (itemListAdapter.sortMode == SortMode.ORIGIN_REVERSE) {
+            joinIndices = getShownOrder();
+            Collections.reverse(joinIndices);
+        } else {
+            // Streams sorted by name are kept in their stored order
+            joinIndices = new ArrayList<>(storedJoins.size());
+            for (final PlaylistStreamEntity join : storedJoins) {
+                if (!removedJoinIndices.contains(join.getIndex())) {
+                    joinIndices.add(join.getIndex());
+                }
+            }
+        }
+        return joinIndices;
+    }
+
+    private List<Long> getStreamIds(@NonNull final List<Integer> joinIndices) {
+        final Map<Integer, Long> streamIdsByJoinIndex = new HashMap<>(storedJoins.size());
+        for (final PlaylistStreamEntity join : storedJoins) {
+            streamIdsByJoinIndex.put(join.getIndex(), join.getStreamUid());
+        }
+
+        final List<Long> streamIds = new ArrayList<>(joinIndices.size());
+        for (final Integer joinIndex : joinIndices) {
+            final Long streamId = streamIdsByJoinIndex.get(joinIndex);
+            if (streamId != null) {
+                streamIds.add(streamId);
+            }
+        }
+        return streamIds;
+    }
 
     private ItemTouchHelper.SimpleCallback getItemTouchCallback() {
         int directions = ItemTouchHelper.UP | ItemTouchHelper.DOWN;
@@ -1181,7 +1227,7 @@ public class LocalPlaylistFragment extends BaseLocalListFragment<List<PlaylistSt
                                   @NonNull final RecyclerView.ViewHolder source,
                                   @NonNull final RecyclerView.ViewHolder target) {
                 if (source.getItemViewType() != target.getItemViewType()
-                        || itemListAdapter == null) {
+                        || itemListAdapter == null || isSaving) {
                     return false;
                 }
 
@@ -1244,10 +1290,6 @@ public class LocalPlaylistFragment extends BaseLocalListFragment<List<PlaylistSt
     // Utils
     //////////////////////////////////////////////////////////////////////////*/
 
-    private PlayQueue getPlayQueueStartingAt(final PlaylistStreamEntry infoItem) {
-        return getPlayQueue(Math.max(itemListAdapter.getItemsList().indexOf(infoItem), 0));
-    }
-
     protected void showInfoItemDialog(final PlaylistStreamEntry item) {
         final StreamInfoItem infoItem = item.toStreamInfoItem();
 
@@ -1278,8 +1320,10 @@ public class LocalPlaylistFragment extends BaseLocalListFragment<List<PlaylistSt
             dialogBuilder
                     .setAction(
                             StreamDialogDefaultEntry.START_HERE_ON_BACKGROUND,
-                            (f, i) -> NavigationHelper.playOnBackgroundPlayer(
-                                    context, getPlayQueueStartingAt(item), true))
+                            (f, i) -> loadPlayQueue(
+                                    itemListAdapter.getItemsList().indexOf(item), queue ->
+                                            NavigationHelper.playOnBackgroundPlayer(
+                                                    context, queue, true)))
                     .setAction(
                             StreamDialogDefaultEntry.SET_AS_PLAYLIST_THUMBNAIL,
                             (f, i) ->
@@ -1291,7 +1335,9 @@ public class LocalPlaylistFragment extends BaseLocalListFragment<List<PlaylistSt
                             StreamDialogDefaultEntry.NAVIGATE_TO,
                             (f, i) -> {
                                 destroyCustomViewInActionBar();
-                                int targetIndex = utils.getIndexInQueue(item, getPlayQueue(), itemListAdapter.sortMode) + 1;
+                                // All the streams are loaded while the search is shown
+                                int targetIndex =
+                                        itemListAdapter.getItemsList().indexOf(item) + 1;
                                 if (targetIndex <= 100) {
                                     itemsList.smoothScrollToPosition(targetIndex);
                                 } else {
@@ -1314,15 +1360,11 @@ public class LocalPlaylistFragment extends BaseLocalListFragment<List<PlaylistSt
         this.name = !TextUtils.isEmpty(title) ? title : "";
     }
 
-    private void setStreamCountAndOverallDuration(final ArrayList<LocalItem> itemsList) {
+    private void setStreamCountAndOverallDuration() {
         if (activity != null && headerBinding != null) {
-            final long streamCount = itemsList.size();
-            final long playlistOverallDurationSeconds = itemsList.stream()
-                    .filter(PlaylistStreamEntry.class::isInstance)
-                    .map(PlaylistStreamEntry.class::cast)
-                    .map(PlaylistStreamEntry::getStreamEntity)
-                    .mapToLong(StreamEntity::getDuration)
-                    .sum();
+            final long streamCount = storedJoins.size() - removedJoinIndices.size();
+            final long playlistOverallDurationSeconds =
+                    storedDurationSeconds - removedDurationSeconds;
             headerBinding.playlistStreamCount.setText(
                     Localization.concatenateStrings(
                             Localization.localizeStreamCount(activity, streamCount),
@@ -1332,23 +1374,201 @@ public class LocalPlaylistFragment extends BaseLocalListFragment<List<PlaylistSt
         }
     }
 
-    private PlayQueue getPlayQueue() {
-        return getPlayQueue(0);
+    /**
+     * Loads all the streams of the playlist, with the changes not saved yet, and plays them
+     * through {@code onLoaded}.
+     */
+    private void loadPlayQueue(final int index, @NonNull final Consumer<PlayQueue> onLoaded) {
+        disposables.add(loadAllStreams()
+                .map(streams -> {
+                    final List<StreamInfoItem> streamInfoItems = new ArrayList<>(streams.size());
+                    for (final PlaylistStreamEntry stream : streams) {
+                        streamInfoItems.add(stream.toStreamInfoItem());
+                    }
+                    return (PlayQueue) new SinglePlayQueue(streamInfoItems, Math.max(index, 0));
+                })
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(onLoaded, throwable -> showSnackBarError(new ErrorInfo(throwable,
+                        UserAction.REQUESTED_BOOKMARK, "Loading local playlist"))));
     }
 
-    private PlayQueue getPlayQueue(final int index) {
-        if (itemListAdapter == null) {
-            return new SinglePlayQueue(Collections.emptyList(), 0);
-        }
+    /**
+     * @return all the streams of the playlist in the order they are shown, with the changes not
+     * saved yet
+     */
+    private Single<List<PlaylistStreamEntry>> loadAllStreams() {
+        return playlistManager.getPlaylistStreamsAt(playlistId, getShownOrder());
+    }
 
-        final List<LocalItem> infoItems = itemListAdapter.getItemsList();
-        final List<StreamInfoItem> streamInfoItems = new ArrayList<>(infoItems.size());
-        for (final LocalItem item : infoItems) {
-            if (item instanceof PlaylistStreamEntry) {
-                streamInfoItems.add(((PlaylistStreamEntry) item).toStreamInfoItem());
+    /**
+     * @return the join indices of the playlist in the order they are shown, with the changes
+     * not saved yet
+     */
+    private List<Integer> getShownOrder() {
+        final List<Integer> joinIndices = new ArrayList<>(storedJoins.size());
+        if (itemListAdapter != null) {
+            for (final LocalItem item : itemListAdapter.getItemsList()) {
+                if (item instanceof PlaylistStreamEntry) {
+                    joinIndices.add(((PlaylistStreamEntry) item).getJoinIndex());
+                }
             }
         }
-        return new SinglePlayQueue(streamInfoItems, index);
+        joinIndices.addAll(displayOrder.subList(Math.min(loadedCount, displayOrder.size()),
+                displayOrder.size()));
+        return joinIndices;
+    }
+
+    /*//////////////////////////////////////////////////////////////////////////
+    // Paging
+    //////////////////////////////////////////////////////////////////////////*/
+
+    private void disposePageLoading() {
+        if (pageDisposable != null) {
+            pageDisposable.dispose();
+        }
+        pageDisposable = null;
+        isLoadingPage = false;
+    }
+
+    /**
+     * Takes the join rows as the unmodified playlist and reloads the list from them.
+     */
+    private void applyJoins(@NonNull final List<PlaylistStreamEntity> joins) {
+        storedJoins = joins;
+        removedJoinIndices.clear();
+        removedDurationSeconds = 0;
+
+        disposables.add(playlistManager.getPlaylistDuration(playlistId)
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(duration -> {
+                    storedDurationSeconds = duration;
+                    setStreamCountAndOverallDuration();
+                }, throwable -> showSnackBarError(new ErrorInfo(throwable,
+                        UserAction.REQUESTED_BOOKMARK, "Loading local playlist duration"))));
+        reloadPages();
+    }
+
+    /**
+     * Reloads the list from its start, keeping as many streams as are currently loaded so that
+     * the scroll position is kept when the playlist changes.
+     */
+    private void reloadPages() {
+        if (itemListAdapter == null || playlistManager == null) {
+            return;
+        }
+        disposePageLoading();
+
+        final SortMode sortMode = itemListAdapter.sortMode;
+        final int limit = Math.max(DatabaseUtils.PAGE_SIZE, loadedCount);
+        isLoadingPage = true;
+        pageDisposable = getDisplayOrder(sortMode)
+                .flatMap(order -> loadPage(sortMode, order, 0, limit)
+                        .map(entries -> new Pair<>(order, entries)))
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(
+                        page -> {
+                            isLoadingPage = false;
+                            displayOrder = page.first;
+                            loadedCount = Math.min(limit, displayOrder.size());
+                            if (isLoadingComplete != null) {
+                                isLoadingComplete.set(true);
+                            }
+                            handleResult(page.second);
+                            loadRemainingPagesIfFiltered();
+                        },
+                        throwable -> showError(new ErrorInfo(throwable,
+                                UserAction.REQUESTED_BOOKMARK, "Loading local playlist")));
+    }
+
+    private void loadNextPage() {
+        loadPages(DatabaseUtils.PAGE_SIZE);
+    }
+
+    /**
+     * The search only filters the loaded streams, so all of them are loaded while it is shown.
+     */
+    private void loadRemainingPagesIfFiltered() {
+        if (itemListAdapter != null && itemListAdapter.isFilterEnabled) {
+            loadPages(-1);
+        }
+    }
+
+    /**
+     * @param limit how many of the streams following the loaded ones to load, {@code -1} for
+     *              all of them
+     */
+    private void loadPages(final int limit) {
+        if (isLoadingPage || isSaving || itemListAdapter == null
+                || loadedCount >= displayOrder.size()) {
+            return;
+        }
+
+        final List<Integer> order = displayOrder;
+        final int from = loadedCount;
+        isLoadingPage = true;
+        showListFooter(true);
+        pageDisposable = loadPage(itemListAdapter.sortMode, order, from, limit)
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(
+                        entries -> {
+                            isLoadingPage = false;
+                            showListFooter(false);
+                            loadedCount = limit == -1 ? order.size()
+                                    : Math.min(from + limit, order.size());
+                            if (itemListAdapter != null) {
+                                itemListAdapter.appendItems(entries);
+                            }
+                            loadRemainingPagesIfFiltered();
+                        },
+                        throwable -> {
+                            isLoadingPage = false;
+                            showListFooter(false);
+                            showSnackBarError(new ErrorInfo(throwable,
+                                    UserAction.REQUESTED_BOOKMARK, "Loading local playlist"));
+                        });
+    }
+
+    /**
+     * @param sortMode the order the streams are shown in
+     * @param order    the join indices of the playlist in that order
+     * @param from     the position in {@code order} of the first stream to load
+     * @param limit    how many streams to load, {@code -1} for all the remaining ones
+     */
+    private Single<List<PlaylistStreamEntry>> loadPage(final SortMode sortMode,
+                                                      final List<Integer> order,
+                                                      final int from, final int limit) {
+        if (sortMode == SortMode.ORIGIN || sortMode == SortMode.ORIGIN_REVERSE) {
+            return playlistManager.getPlaylistStreamsPage(playlistId,
+                    from == 0 ? -1 : order.get(from - 1),
+                    sortMode == SortMode.ORIGIN_REVERSE, limit);
+        }
+
+        // Streams sorted by name are loaded by their join indices instead
+        final int to = limit == -1 ? order.size() : Math.min(from + limit, order.size());
+        return playlistManager.getPlaylistStreamsAt(playlistId,
+                new ArrayList<>(order.subList(Math.min(from, to), to)));
+    }
+
+    /**
+     * @return the join indices of the loaded playlist in the order they are shown
+     */
+    private Single<List<Integer>> getDisplayOrder(final SortMode sortMode) {
+        if (sortMode == SortMode.SORT_NAME) {
+            return playlistManager.getJoinIndicesSortedByTitle(playlistId,
+                    utils::compareChineseStrings);
+        } else if (sortMode == SortMode.SORT_NAME_REVERSE) {
+            return playlistManager.getJoinIndicesSortedByTitle(playlistId,
+                    (a, b) -> utils.compareChineseStrings(b, a));
+        }
+
+        final List<Integer> joinIndices = new ArrayList<>(storedJoins.size());
+        for (final PlaylistStreamEntity join : storedJoins) {
+            joinIndices.add(join.getIndex());
+        }
+        if (sortMode == SortMode.ORIGIN_REVERSE) {
+            Collections.reverse(joinIndices);
+        }
+        return Single.just(joinIndices);
     }
 
     @Override
@@ -1359,6 +1579,39 @@ public class LocalPlaylistFragment extends BaseLocalListFragment<List<PlaylistSt
         }
         return false;
     }
+    /**
+     * Filters the items through the full-text index, off the main thread. Texts the index can't
+     * handle fall back to the substring search of the adapter.
+     */
+    private void filterItems(final String text) {
+        if (searchDisposable != null) {
+            searchDisposable.dispose();
+        }
+        if (text.isEmpty() || librarySearchManager == null) {
+            itemListAdapter.filter(text);
+            loadRemainingPagesIfFiltered();
+            return;
+        }
+
+        searchDisposable = librarySearchManager.searchStreamIds(text)
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(
+                        streamIds -> {
+                            if (itemListAdapter != null) {
+                                itemListAdapter.filterByStreamIds(text, streamIds);
+                                loadRemainingPagesIfFiltered();
+                            }
+                        },
+                        throwable -> showSnackBarError(new ErrorInfo(throwable,
+                                UserAction.SOMETHING_ELSE, "Searching playlist")),
+                        () -> {
+                            if (itemListAdapter != null) {
+                                itemListAdapter.filter(text);
+                                loadRemainingPagesIfFiltered();
+                            }
+                        });
+    }
+
     public void destroyCustomViewInActionBar(){
         ActionBar actionBar = activity.getSupportActionBar();
         if (actionBar == null) {
@@ -1371,6 +1624,9 @@ public class LocalPlaylistFragment extends BaseLocalListFragment<List<PlaylistSt
         if(searchLocal != null){
             searchLocal.setVisibility(View.VISIBLE);
         }
+        if (searchDisposable != null) {
+            searchDisposable.dispose();
+        }
         if(itemListAdapter != null){
             itemListAdapter.clearFilter();
         }
@@ -1389,8 +1645,8 @@ public class LocalPlaylistFragment extends BaseLocalListFragment<List<PlaylistSt
     private void sharePlaylist(final boolean shouldSharePlaylistDetails) {
         final Context context = requireContext();
 
-        disposables.add(playlistManager.getPlaylistStreams(playlistId)
-                .flatMapSingle(playlist -> Single.just(playlist.stream()
+        disposables.add(loadAllStreams()
+                .map(playlist -> playlist.stream()
                         .map(PlaylistStreamEntry::getStreamEntity)
                         .map(streamEntity -> {
                             if (shouldSharePlaylistDetails) {
@@ -1400,7 +1656,7 @@ public class LocalPlaylistFragment extends BaseLocalListFragment<List<PlaylistSt
                                 return streamEntity.getUrl();
                             }
                         })
-                        .collect(Collectors.joining("\n"))))
+                        .collect(Collectors.joining("\n")))
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(urlsText -> ShareUtils.shareText(
                                 context, name, shouldSharePlaylistDetails
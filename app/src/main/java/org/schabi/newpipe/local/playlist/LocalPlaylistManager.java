@@ -1,5 +1,6 @@
 package org.schabi.newpipe.local.playlist;
 
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import org.schabi.newpipe.database.AppDatabase;
@@ -14,7 +15,11 @@ import org.schabi.newpipe.database.stream.dao.StreamDAO;
 import org.schabi.newpipe.database.stream.model.StreamEntity;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import io.reactivex.rxjava3.core.Completable;
 import io.reactivex.rxjava3.core.Flowable;
@@ -23,6 +28,11 @@ import io.reactivex.rxjava3.core.Single;
 import io.reactivex.rxjava3.schedulers.Schedulers;
 
 public class LocalPlaylistManager {
+    /**
+     * The most join indices given to one query, SQLite limits the amount of query arguments.
+     */
+    private static final int MAX_JOIN_INDICES_PER_QUERY = 500;
+
     private final AppDatabase database;
     private final StreamDAO streamTable;
     private final PlaylistDAO playlistTable;
@@ -75,14 +85,37 @@ public class LocalPlaylistManager {
         return playlistStreamTable.insertAll(joinEntities);
     }
 
+    /**
+     * Persists the new order of a playlist. Only the rows that differ from the stored order are
+     * written, see {@link PlaylistJoinDiff}.
+     *
+     * @param playlistId the playlist to update
+     * @param streamIds  the ids of all the streams of the playlist, in their new order
+     * @return a {@link Completable} applying the changes in one transaction
+     */
     public Completable updateJoin(final long playlistId, final List<Long> streamIds) {
-        final List<PlaylistStreamEntity> joinEntities = new ArrayList<>(streamIds.size());
-        for (int i = 0; i < streamIds.size(); i++) {
-            joinEntities.add(new PlaylistStreamEntity(playlistId, streamIds.get(i), i));
-        }
-
         return Completable.fromRunnable(() -> database.runInTransaction(() -> {
-            playlistStreamTable.deleteBatch(playlistId);
+            final PlaylistJoinDiff diff = PlaylistJoinDiff.compute(
+                    playlistStreamTable.getStreamIdsOf(playlistId), streamIds);
+            if (diff.isEmpty()) {
+                return;
+            }
+
+            if (diff.getDeleteTo() > diff.getDeleteFrom()) {
+                playlistStreamTable.deleteRange(playlistId,
+                        diff.getDeleteFrom(), diff.getDeleteTo());
+            }
+            if (diff.getShiftDelta() != 0 && diff.getShiftTo() > diff.getShiftFrom()) {
+                playlistStreamTable.shiftIndices(playlistId,
+                        diff.getShiftFrom(), diff.getShiftTo(), diff.getShiftDelta());
+            }
+
+            final List<Long> inserted = diff.getInserted();
+            final List<PlaylistStreamEntity> joinEntities = new ArrayList<>(inserted.size());
+            for (int i = 0; i < inserted.size(); i++) {
+                joinEntities.add(new PlaylistStreamEntity(playlistId, inserted.get(i),
+                        diff.getInsertAt() + i));
+            }
             playlistStreamTable.insertAll(joinEntities);
         })).subscribeOn(Schedulers.io());
     }
@@ -123,6 +156,108 @@ public class LocalPlaylistManager {
         return playlistStreamTable.getOrderedStreamsOf(playlistId).subscribeOn(Schedulers.io());
     }
 
+    /**
+     * @param playlistId the playlist
+     * @return a {@link Flowable} emitting the join rows of the playlist, ordered by join index,
+     * every time they change
+     */
+    public Flowable<List<PlaylistStreamEntity>> getPlaylistJoins(final long playlistId) {
+        return playlistStreamTable.getJoinsOf(playlistId).subscribeOn(Schedulers.io());
+    }
+
+    /**
+     * @param playlistId the playlist
+     * @return the sum of the durations of the streams of the playlist, in seconds
+     */
+    public Single<Long> getPlaylistDuration(final long playlistId) {
+        return Single.fromCallable(() -> playlistStreamTable.getDurationOf(playlistId))
+                .subscribeOn(Schedulers.io());
+    }
+
+    /**
+     * Gets a keyset page of the streams of a playlist.
+     *
+     * @param playlistId the playlist
+     * @param lastIndex  the join index of the last stream of the previous page, or {@code -1}
+     *                   for the first page
+     * @param reverse    whether to get the streams from the end of the playlist
+     * @param limit      the maximum amount of streams to get, {@code -1} for all of them
+     * @return the streams following {@code lastIndex} in the requested order
+     */
+    public Single<List<PlaylistStreamEntry>> getPlaylistStreamsPage(final long playlistId,
+                                                                    final int lastIndex,
+                                                                    final boolean reverse,
+                                                                    final int limit) {
+        return Single.fromCallable(() -> {
+            if (reverse) {
+                return playlistStreamTable.getStreamsBefore(playlistId,
+                        lastIndex == -1 ? Integer.MAX_VALUE : lastIndex, limit);
+            } else {
+                return playlistStreamTable.getStreamsAfter(playlistId, lastIndex, limit);
+            }
+        }).subscribeOn(Schedulers.io());
+    }
+
+    /**
+     * @param playlistId  the playlist
+     * @param joinIndices the join indices of the streams to get
+     * @return the streams at the given join indices, in the same order
+     */
+    public Single<List<PlaylistStreamEntry>> getPlaylistStreamsAt(
+            final long playlistId, @NonNull final List<Integer> joinIndices) {
+        return Single.fromCallable(() -> {
+            final Map<Integer, PlaylistStreamEntry> entries = new HashMap<>();
+            for (int from = 0; from < joinIndices.size(); from += MAX_JOIN_INDICES_PER_QUERY) {
+                final int to = Math.min(from + MAX_JOIN_INDICES_PER_QUERY, joinIndices.size());
+                for (final PlaylistStreamEntry entry : playlistStreamTable
+                        .getStreamsAt(playlistId, joinIndices.subList(from, to))) {
+                    entries.put(entry.getJoinIndex(), entry);
+                }
+            }
+
+            final List<PlaylistStreamEntry> result = new ArrayList<>(joinIndices.size());
+            for (final Integer joinIndex : joinIndices) {
+                final PlaylistStreamEntry entry = entries.get(joinIndex);
+                if (entry != null) {
+                    result.add(entry);
+                }
+            }
+            return result;
+        }).subscribeOn(Schedulers.io());
+    }
+
+    /**
+     * Sorts a playlist by the titles of its streams, without loading the streams.
+     *
+     * @param playlistId the playlist
+     * @param comparator compares the titles
+     * @return the join indices of the playlist, ordered by the titles of their streams
+     */
+    public Single<List<Integer>> getJoinIndicesSortedByTitle(
+            final long playlistId, @NonNull final Comparator<String> comparator) {
+        return Single.fromCallable(() -> {
+            final List<Integer> joinIndices = new ArrayList<>();
+            final List<String> titles = new ArrayList<>();
+            database.runInTransaction(() -> {
+                joinIndices.addAll(playlistStreamTable.getJoinIndicesOf(playlistId));
+                titles.addAll(playlistStreamTable.getStreamTitlesOf(playlistId));
+            });
+
+            final List<Integer> positions = new ArrayList<>(joinIndices.size());
+            for (int i = 0; i < joinIndices.size(); i++) {
+                positions.add(i);
+            }
+            Collections.sort(positions, (a, b) -> comparator.compare(titles.get(a),
+                    titles.get(b)));
+
+            final List<Integer> sorted = new ArrayList<>(positions.size());
+            for (final Integer position : positions) {
+                sorted.add(joinIndices.get(position));
+            }
+            return sorted;
+        }).subscribeOn(Schedulers.io());
+    }
+
     public Single<Integer> deletePlaylist(final long playlistId) {
         return Single.fromCallable(() -> playlistTable.deletePlaylist(playlistId))
                 .subscribeOn(Schedulers.io());
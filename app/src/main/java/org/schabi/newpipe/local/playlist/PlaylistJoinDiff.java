@@ -0,0 +1,151 @@
+package org.schabi.newpipe.local.playlist;
+
+import androidx.annotation.NonNull;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The changes needed to turn the stored order of a playlist into a new one, expressed as range
+ * operations on the join indices so that they can be applied with a few statements.
+ *
+ * <p>The common head and tail of both orders are left alone. A single item moved inside the
+ * remaining window becomes a delete, a shift of the items between the two positions and an
+ * insert; anything else deletes the window, shifts the tail and inserts the new window.</p>
+ *
+ * <p>The changes have to be applied in order: {@link #getDeleteFrom() delete}, then
+ * {@link #getShiftFrom() shift}, then {@link #getInserted() insert}.</p>
+ */
+public final class PlaylistJoinDiff {
+    private final int deleteFrom;
+    private final int deleteTo;
+    private final int shiftFrom;
+    private final int shiftTo;
+    private final int shiftDelta;
+    private final int insertAt;
+    @NonNull
+    private final List<Long> inserted;
+
+    private PlaylistJoinDiff(final int deleteFrom, final int deleteTo,
+                             final int shiftFrom, final int shiftTo, final int shiftDelta,
+                             final int insertAt, @NonNull final List<Long> inserted) {
+        this.deleteFrom = deleteFrom;
+        this.deleteTo = deleteTo;
+        this.shiftFrom = shiftFrom;
+        this.shiftTo = shiftTo;
+        this.shiftDelta = shiftDelta;
+        this.insertAt = insertAt;
+        this.inserted = inserted;
+    }
+
+    /**
+     * @param oldIds the stream ids of the playlist ordered by join index, as stored
+     * @param newIds the stream ids of the playlist in the new order
+     * @return the changes turning {@code oldIds} into {@code newIds}
+     */
+    @NonNull
+    public static PlaylistJoinDiff compute(@NonNull final List<Long> oldIds,
+                                           @NonNull final List<Long> newIds) {
+        final int oldSize = oldIds.size();
+        final int newSize = newIds.size();
+
+        int head = 0;
+        while (head < oldSize && head < newSize
+                && oldIds.get(head).equals(newIds.get(head))) {
+            head++;
+        }
+        int tail = 0;
+        while (tail < oldSize - head && tail < newSize - head
+                && oldIds.get(oldSize - tail - 1).equals(newIds.get(newSize - tail - 1))) {
+            tail++;
+        }
+
+        final int oldEnd = oldSize - tail;
+        final int newEnd = newSize - tail;
+        if (head == oldEnd && head == newEnd) {
+            return new PlaylistJoinDiff(0, 0, 0, 0, 0, 0, Collections.emptyList());
+        }
+
+        if (oldEnd == newEnd && oldEnd - head >= 2) {
+            final List<Long> oldWindow = oldIds.subList(head, oldEnd);
+            final List<Long> newWindow = newIds.subList(head, newEnd);
+            final int last = oldWindow.size() - 1;
+
+            if (oldWindow.get(0).equals(newWindow.get(last))
+                    && oldWindow.subList(1, last + 1).equals(newWindow.subList(0, last))) {
+                // the first item of the window was moved down to its end
+                return new PlaylistJoinDiff(head, head + 1, head + 1, oldEnd, -1,
+                        oldEnd - 1, Collections.singletonList(oldWindow.get(0)));
+            }
+            if (oldWindow.get(last).equals(newWindow.get(0))
+                    && oldWindow.subList(0, last).equals(newWindow.subList(1, last + 1))) {
+                // the last item of the window was moved up to its start
+                return new PlaylistJoinDiff(oldEnd - 1, oldEnd, head, oldEnd - 1, 1,
+                        head, Collections.singletonList(oldWindow.get(last)));
+            }
+        }
+
+        return new PlaylistJoinDiff(head, oldEnd, oldEnd, oldSize, newEnd - oldEnd,
+                head, newIds.subList(head, newEnd));
+    }
+
+    public boolean isEmpty() {
+        return deleteFrom == deleteTo && (shiftDelta == 0 || shiftFrom == shiftTo)
+                && inserted.isEmpty();
+    }
+
+    /**
+     * @return the first join index to delete
+     */
+    public int getDeleteFrom() {
+        return deleteFrom;
+    }
+
+    /**
+     * @return the join index after the last one to delete
+     */
+    public int getDeleteTo() {
+        return deleteTo;
+    }
+
+    /**
+     * @return the first join index to shift by {@link #getShiftDelta()}, after the deletion
+     */
+    public int getShiftFrom() {
+        return shiftFrom;
+    }
+
+    /**
+     * @return the join index after the last one to shift
+     */
+    public int getShiftTo() {
+        return shiftTo;
+    }
+
+    public int getShiftDelta() {
+        return shiftDelta;
+    }
+
+    /**
+     * @return the join index of the first of the {@link #getInserted() inserted} streams
+     */
+    public int getInsertAt() {
+        return insertAt;
+    }
+
+    /**
+     * @return the ids of the streams to insert at consecutive join indices, after the shift
+     */
+    @NonNull
+    public List<Long> getInserted() {
+        return inserted;
+    }
+
+    /**
+     * @return the amount of join rows written when applying this diff
+     */
+    public int getTouchedRows() {
+        return (deleteTo - deleteFrom) + (shiftDelta == 0 ? 0 : shiftTo - shiftFrom)
+                + inserted.size();
+    }
+}
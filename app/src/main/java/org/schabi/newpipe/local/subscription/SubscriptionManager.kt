@@ -57,9 +57,11 @@ class SubscriptionManager(context: Context) {
         )
 
         database.runInTransaction {
-            infoList.forEachIndexed { index, info ->
-                feedDatabaseManager.upsertAll(listEntities[index].uid, info.relatedItems)
-            }
+            feedDatabaseManager.upsertBatch(
+                infoList.mapIndexed { index, info ->
+                    FeedDatabaseManager.FeedUpdate(listEntities[index].uid, info.relatedItems)
+                }
+            )
         }
 
         return listEntities
@@ -92,7 +94,23 @@ class SubscriptionManager(context: Context) {
 
     fun updateFromInfo(info: FeedUpdateInfo) {
         val subscriptionEntity = subscriptionTable.getSubscription(info.uid)
+        setDataFromInfo(subscriptionEntity, info)
+        subscriptionTable.update(subscriptionEntity)
+    }
 
+    /**
+     * Same as [updateFromInfo], with one query to read and one to write all the subscriptions.
+     */
+    fun updateFromInfos(infoList: List<FeedUpdateInfo>) {
+        val infoByUid = infoList.associateBy { it.uid }
+        val entities = infoByUid.keys.toList().chunked(FeedDatabaseManager.MAX_QUERY_ARGUMENTS)
+            .flatMap { subscriptionTable.getSubscriptions(it) }
+
+        entities.forEach { setDataFromInfo(it, infoByUid.getValue(it.uid)) }
+        subscriptionTable.update(entities)
+    }
+
+    private fun setDataFromInfo(subscriptionEntity: SubscriptionEntity, info: FeedUpdateInfo) {
         subscriptionEntity.name = info.name
 
         // some services do not provide an avatar URL
@@ -101,8 +119,6 @@ class SubscriptionManager(context: Context) {
         // these two fields are null if the feed info was fetched using the fast feed method
         info.description?.let { subscriptionEntity.description = it }
         info.subscriberCount?.let { subscriptionEntity.subscriberCount = it }
-
-        subscriptionTable.update(subscriptionEntity)
     }
 
     fun deleteSubscription(serviceId: Int, url: String): Completable {
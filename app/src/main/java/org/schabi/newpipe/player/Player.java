@@ -44,6 +44,7 @@ import android.media.AudioManager;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Handler;
+import android.os.Looper;
 import android.provider.Settings;
 import android.util.DisplayMetrics;
 import android.util.Log;
@@ -107,7 +108,7 @@ import org.schabi.newpipe.error.ErrorUtil;
 import org.schabi.newpipe.error.UserAction;
 import org.schabi.newpipe.extractor.*;
 import org.schabi.newpipe.extractor.exceptions.ExtractionException;
-import org.schabi.newpipe.extractor.sponsorblock.SponsorBlockAction;
+import org.schabi.newpipe.extractor.sponsorblock.SponsorBlockCategory;
 import org.schabi.newpipe.extractor.sponsorblock.SponsorBlockSegment;
 import org.schabi.newpipe.extractor.stream.*;
 import org.schabi.newpipe.fragments.OnScrollBelowItemsListener;
@@ -216,6 +217,7 @@ public final class Player implements
 
     public static final int PLAY_PREV_ACTIVATION_LIMIT_MILLIS = 5000; // 5 seconds
     public static final int PROGRESS_LOOP_INTERVAL_MILLIS = 1000; // 1 second
+    private static final int BUFFER_STATISTICS_INTERVAL_MILLIS = 1000; // 1 second
     public static final int DEFAULT_CONTROLS_DURATION = 300; // 300 millis
     public static final int DEFAULT_CONTROLS_HIDE_TIME = 2000;  // 2 Seconds
     public static final int DPAD_CONTROLS_HIDE_TIME = 7000;  // 7 Seconds
@@ -356,6 +358,7 @@ public final class Player implements
     private ContentObserver settingsContentObserver;
 
     @NonNull private final SerialDisposable progressUpdateDisposable = new SerialDisposable();
+    @NonNull private final SerialDisposable bufferStatisticsDisposable = new SerialDisposable();
     @NonNull private final CompositeDisposable databaseUpdateDisposable = new CompositeDisposable();
 
     /*//////////////////////////////////////////////////////////////////////////
@@ -385,6 +388,22 @@ public final class Player implements
     private int lastSkipTarget = -1;
     private SponsorBlockSegment lastSegment;
     private boolean autoSkipGracePeriod = false;
+    @NonNull
+    private SponsorBlockSegmentIndex sponsorBlockIndex = SponsorBlockSegmentIndex.EMPTY;
+    /**
+     * Messages delivered by ExoPlayer when the playback reaches the start of a segment. They
+     * are kept after delivery, so that they fire again when seeking back before a segment.
+     */
+    private final List<PlayerMessage> sponsorBlockMessages = new ArrayList<>();
+    /**
+     * The preferences read when checking for segments, cleared whenever a preference changes.
+     */
+    private final Map<SponsorBlockCategory, SponsorBlockSecondaryMode> sponsorBlockSecondaryModes =
+            new EnumMap<>(SponsorBlockCategory.class);
+    @Nullable
+    private Boolean sponsorBlockShowManualButtons;
+    @Nullable
+    private Boolean sponsorBlockNotifications;
 
     private final SharedPreferences.OnSharedPreferenceChangeListener preferenceChangeListener;
     /*//////////////////////////////////////////////////////////////////////////
@@ -411,6 +430,9 @@ public final class Player implements
 
         preferenceChangeListener =
                 (sharedPreferences, key) -> {
+                    sponsorBlockSecondaryModes.clear();
+                    sponsorBlockShowManualButtons = null;
+                    sponsorBlockNotifications = null;
                     if (context.getString(R.string.sponsor_block_enable_key).equals(key)) {
                         setSponsorBlockMode(sharedPreferences.getBoolean(key, false)
                                 ? SponsorBlockMode.ENABLED
@@ -425,9 +447,10 @@ public final class Player implements
         setupBroadcastReceiver();
 
         trackSelector = new DefaultTrackSelector(context, PlayerHelper.getQualitySelector());
-        dataSource = new PlayerDataSource(context, DownloaderImpl.USER_AGENT,
-                new DefaultBandwidthMeter.Builder(context).build());
-        loadController = new LoadController();
+        final DefaultBandwidthMeter bandwidthMeter = new DefaultBandwidthMeter.Builder(context)
+                .build();
+        dataSource = new PlayerDataSource(context, DownloaderImpl.USER_AGENT, bandwidthMeter);
+        loadController = new LoadController(context, bandwidthMeter);
 
         renderFactory = prefs.getBoolean(
                 context.getString(
@@ -512,6 +535,8 @@ public final class Player implements
 
         // Prevent hiding of bottom sheet via swipe inside queue
         binding.itemsList.setNestedScrollingEnabled(false);
+
+        updateBufferStatistics();
     }
 
     private void initPlayer(final boolean playOnReady) {
@@ -737,6 +762,7 @@ public final class Player implements
         playerType = retrievePlayerTypeFromIntent(intent);
         // We need to setup audioOnly before super(), see "sourceOf"
         isAudioOnly = audioPlayerSelected();
+        updateBufferStatistics();
 
 //        if (intent.hasExtra(PLAYBACK_QUALITY)) {
 //            setPlaybackQuality(intent.getStringExtra(PLAYBACK_QUALITY));
@@ -1002,6 +1028,7 @@ public final class Player implements
 
         databaseUpdateDisposable.clear();
         progressUpdateDisposable.set(null);
+        bufferStatisticsDisposable.set(null);
         PicassoHelper.cancelTag(PicassoHelper.PLAYER_THUMBNAIL_TAG); // cancel thumbnail loading
 
         if (binding != null) {
@@ -1043,7 +1070,7 @@ public final class Player implements
         }
 
         if (playQueue != null) {
-            playQueueManager = new MediaSourceManager(context, this, playQueue);
+            playQueueManager = new MediaSourceManager(context, this, playQueue, dataSource);
         }
     }
 
@@ -1342,10 +1369,12 @@ public final class Player implements
             case VideoDetailFragment.ACTION_VIDEO_FRAGMENT_RESUMED:
                 fragmentIsVisible = true;
                 useVideoSource(true);
+                updateBufferStatistics();
                 break;
             case VideoDetailFragment.ACTION_VIDEO_FRAGMENT_STOPPED:
                 fragmentIsVisible = false;
                 onFragmentStopped();
+                updateBufferStatistics();
                 break;
             case Intent.ACTION_CONFIGURATION_CHANGED:
                 assureCorrectAppLanguage(service.getInstance());
@@ -1860,98 +1889,106 @@ public final class Player implements
             return;
         }
 
-        getSkippableSponsorBlockSegment(currentProgress).ifPresent(sponsorBlockSegment -> {
+        final SponsorBlockSegment sponsorBlockSegment =
+                getSkippableSponsorBlockSegment(currentProgress);
+        if (sponsorBlockSegment == null) {
+            return;
+        }
 
-            final boolean showManualButtons = prefs.getBoolean(
+        if (sponsorBlockShowManualButtons == null) {
+            sponsorBlockShowManualButtons = prefs.getBoolean(
                     context.getString(R.string.sponsor_block_show_manual_skip_key), false);
-            // per-sponsorBlockSegment category skip setting
-            final SponsorBlockSecondaryMode secondaryMode = getSecondaryMode(sponsorBlockSegment);
-
-            // show/hide manual skip buttons
-            if (showManualButtons && secondaryMode != SponsorBlockSecondaryMode.HIGHLIGHT) {
-                if (currentProgress < sponsorBlockSegment.endTime
-                        && currentProgress > sponsorBlockSegment.startTime) {
-                    showAutoSkip();
-                } else {
-                    hideAutoSkip();
-                }
-
-                if (currentProgress > sponsorBlockSegment.startTime
-                        && currentProgress < sponsorBlockSegment.endTime + UNSKIP_WINDOW_MILLIS) {
-                    showAutoUnskip();
-                } else {
-                    hideAutoUnskip();
-                }
-            }
+        }
+        final boolean showManualButtons = sponsorBlockShowManualButtons;
+        // per-sponsorBlockSegment category skip setting
+        final SponsorBlockSecondaryMode secondaryMode = getSecondaryMode(sponsorBlockSegment);
 
-            if (DEBUG) {
-                Log.d("SPONSOR_BLOCK", "Un-skip grace: isGracedRewind = "
-                        + isGracedRewind + ", autoSkipGracePeriod = " + autoSkipGracePeriod);
+        // show/hide manual skip buttons
+        if (showManualButtons && secondaryMode != SponsorBlockSecondaryMode.HIGHLIGHT) {
+            if (currentProgress < sponsorBlockSegment.endTime
+                    && currentProgress > sponsorBlockSegment.startTime) {
+                showAutoSkip();
+            } else {
+                hideAutoSkip();
             }
 
-            // temporarily pause auto skipping
-            // bypass grace when this is an un-skip request
-            if (!isGracedRewind) {
-                if (autoSkipGracePeriod) {
-                    return;
-                }
+            if (currentProgress > sponsorBlockSegment.startTime
+                    && currentProgress < sponsorBlockSegment.endTime + UNSKIP_WINDOW_MILLIS) {
+                showAutoUnskip();
             } else {
-
-                autoSkipGracePeriod = true;
+                hideAutoUnskip();
             }
+        }
 
-            // prevent skip looping in unship window
-            if (lastSegment == sponsorBlockSegment && !bypassSecondaryMode) {
-                return;
-            }
+        if (DEBUG) {
+            Log.d("SPONSOR_BLOCK", "Un-skip grace: isGracedRewind = "
+                    + isGracedRewind + ", autoSkipGracePeriod = " + autoSkipGracePeriod);
+        }
 
-            // Do not skip if highlight mode. Do not skip if manual mode + no explicit bypass
-            if (secondaryMode == SponsorBlockSecondaryMode.HIGHLIGHT
-                    || (secondaryMode == SponsorBlockSecondaryMode.MANUAL
-                    && !bypassSecondaryMode)) {
+        // temporarily pause auto skipping
+        // bypass grace when this is an un-skip request
+        if (!isGracedRewind) {
+            if (autoSkipGracePeriod) {
                 return;
             }
+        } else {
 
-            int skipTarget = isRewind
-                    ? (int) Math.ceil((sponsorBlockSegment.startTime)) - 1
-                    : (int) Math.ceil((sponsorBlockSegment.endTime));
+            autoSkipGracePeriod = true;
+        }
 
-            if (skipTarget < 0) {
-                skipTarget = 0;
-            }
+        // prevent skip looping in unship window
+        if (lastSegment == sponsorBlockSegment && !bypassSecondaryMode) {
+            return;
+        }
 
-            // temporarily force EXACT seek parameters to prevent infinite skip looping
-            final SeekParameters seekParams = simpleExoPlayer.getSeekParameters();
-            simpleExoPlayer.setSeekParameters(SeekParameters.EXACT);
+        // Do not skip if highlight mode. Do not skip if manual mode + no explicit bypass
+        if (secondaryMode == SponsorBlockSecondaryMode.HIGHLIGHT
+                || (secondaryMode == SponsorBlockSecondaryMode.MANUAL
+                && !bypassSecondaryMode)) {
+            return;
+        }
 
-            seekTo(skipTarget);
+        int skipTarget = isRewind
+                ? (int) Math.ceil((sponsorBlockSegment.startTime)) - 1
+                : (int) Math.ceil((sponsorBlockSegment.endTime));
 
-            simpleExoPlayer.setSeekParameters(seekParams);
-            if (!isRewind || isGracedRewind) {
-                // DO NOT TRACK for non-graced rewinds to work, BUT always track for graced
-                lastSegment = sponsorBlockSegment;
-            }
+        if (skipTarget < 0) {
+            skipTarget = 0;
+        }
 
-            if (isUnSkip) {
-                return;
-            }
+        // temporarily force EXACT seek parameters to prevent infinite skip looping
+        final SeekParameters seekParams = simpleExoPlayer.getSeekParameters();
+        simpleExoPlayer.setSeekParameters(SeekParameters.EXACT);
 
-            final boolean canShowNotifications = prefs.getBoolean(
+        seekTo(skipTarget);
+
+        simpleExoPlayer.setSeekParameters(seekParams);
+        if (!isRewind || isGracedRewind) {
+            // DO NOT TRACK for non-graced rewinds to work, BUT always track for graced
+            lastSegment = sponsorBlockSegment;
+        }
+
+        if (isUnSkip) {
+            return;
+        }
+
+        if (sponsorBlockNotifications == null) {
+            sponsorBlockNotifications = prefs.getBoolean(
                     context.getString(R.string.sponsor_block_notifications_key), false);
+        }
 
-            if (canShowNotifications) {
-                final String toastText =
-                        SponsorBlockHelper.convertCategoryToSkipMessage(
-                                context, sponsorBlockSegment.category);
+        if (sponsorBlockNotifications) {
+            final String toastText =
+                    SponsorBlockHelper.convertCategoryToSkipMessage(
+                            context, sponsorBlockSegment.category);
 
-                Toast.makeText(context, toastText, Toast.LENGTH_SHORT).show();
-            }
+            Toast.makeText(context, toastText, Toast.LENGTH_SHORT).show();
+        }
 
-            if (DEBUG) {
-                Log.d("SPONSOR_BLOCK", "Skipped segment: currentProgress = ["
-                        + currentProgress + "], skipped to = [" + skipTarget + "]");
-            }
-        });
+        if (DEBUG) {
+            Log.d("SPONSOR_BLOCK", "Skipped segment: currentProgress = ["
+                    + currentProgress + "], skipped to = [" + skipTarget + "]");
+        }
     }
 
     public void showAutoUnskip() {
@@ -1990,6 +2027,29 @@ public final class Player implements
         triggerProgressUpdate(false, true, true, false);
     }
 
+    /**
+     * Shows the statistics of the {@link LoadController} on top of the video, updated every
+     * second, if enabled in the debug settings. They are only updated while the video is shown,
+     * i.e. not in the background or audio player, nor behind a stopped video detail fragment.
+     */
+    private void updateBufferStatistics() {
+        if (!prefs.getBoolean(context.getString(R.string.show_buffer_statistics_key), false)
+                || isAudioOnly || !(popupPlayerSelected() || fragmentIsVisible)) {
+            binding.bufferStatisticsTextView.setVisibility(View.GONE);
+            bufferStatisticsDisposable.set(null);
+            return;
+        } else if (bufferStatisticsDisposable.get() != null) {
+            return; // already updating
+        }
+
+        binding.bufferStatisticsTextView.setVisibility(View.VISIBLE);
+        bufferStatisticsDisposable.set(Observable.interval(0, BUFFER_STATISTICS_INTERVAL_MILLIS,
+                        MILLISECONDS, AndroidSchedulers.mainThread())
+                .subscribe(ignored -> binding.bufferStatisticsTextView
+                                .setText(loadController.getDebugInfo()),
+                        error -> Log.e(TAG, "Buffer statistics update failure: ", error)));
+    }
+
     private Disposable getProgressUpdateDisposable() {
         return Observable.interval(PROGRESS_LOOP_INTERVAL_MILLIS, MILLISECONDS,
                         AndroidSchedulers.mainThread())
@@ -2281,6 +2341,10 @@ public final class Player implements
                     isPrepared = true;
                     onPrepared(playWhenReady);
                 }
+                if (isAudioOnly && playQueueManager != null) {
+                    // no frame will be rendered
+                    playQueueManager.onFirstFrameRendered();
+                }
                 changeState(playWhenReady ? STATE_PLAYING : STATE_PAUSED);
                 break;
             case com.google.android.exoplayer2.Player.STATE_ENDED: // 4
@@ -3005,6 +3069,9 @@ public final class Player implements
     public void onRenderedFirstFrame() {
         //TODO check if this causes black screen when switching to fullscreen
         animate(binding.surfaceForeground, false, DEFAULT_CONTROLS_DURATION);
+        if (playQueueManager != null) {
+            playQueueManager.onFirstFrameRendered();
+        }
     }
 
     @Override
@@ -3499,6 +3566,7 @@ public final class Player implements
         }
 
         initThumbnail(info.getThumbnailUrl());
+        updateSponsorBlockSegments(info);
         registerStreamViewed();
         updateStreamRelatedViews();
         showHideKodiButton();
@@ -3857,6 +3925,25 @@ public final class Player implements
         return videoResolver.resolve(info);
     }
 
+    @Override // own playback listener
+    @NonNull
+    public List<MediaSource> prefetchSourcesOf(final PlayQueueItem item, final StreamInfo info) {
+        // new resolvers, since the ones of the player keep the source type of the current item
+        final VideoPlaybackResolver videoPrefetchResolver =
+                new VideoPlaybackResolver(context, dataSource, getQualityResolver());
+        videoPrefetchResolver.setSelectedIndex(videoResolver.getSelectedIndex());
+
+        if (audioPlayerSelected() || isAudioOnly) {
+            final MediaSource audioSource =
+                    new AudioPlaybackResolver(context, dataSource).resolve(info);
+            if (audioSource != null) {
+                return Collections.singletonList(audioSource);
+            }
+        }
+        final List<MediaSource> sources = videoPrefetchResolver.resolveSources(info);
+        return sources == null ? Collections.emptyList() : sources;
+    }
+
     public void disablePreloadingOfCurrentTrack() {
         loadController.disablePreloadingOfCurrentTrack();
     }
@@ -4645,6 +4732,7 @@ public final class Player implements
         notifyMetadataUpdateToListeners();
         notifyPlaybackUpdateToListeners();
         triggerProgressUpdate();
+        updateBufferStatistics();
     }
 
     public void removeFragmentListener(final PlayerServiceEventListener listener) {
@@ -4758,6 +4846,7 @@ public final class Player implements
         }
 
         isAudioOnly = !videoEnabled;
+        updateBufferStatistics();
         // When a user returns from background, controls could be hidden but SystemUI will be shown
         // 100%. Hide it.
         if (!isAudioOnly && !isControlsVisible()) {
@@ -5137,47 +5226,77 @@ public final class Player implements
         sponsorBlockMode = mode;
         // Also set pref
         prefs.edit().putString(context.getString(R.string.pref_sponsorblock_mode_key), mode.name()).apply();
+        updateSponsorBlockSegments(getCurrentStreamInfo().orElse(null));
     }
 
-    public Optional<SponsorBlockSegment> getSkippableSponsorBlockSegment(final int progress) {
-        return getCurrentStreamInfo().map(info -> {
-            final SponsorBlockSegment[] sponsorBlockSegments = info.getSponsorBlockSegments();
-            if (sponsorBlockSegments == null) {
-                return null;
-            }
+    @Nullable
+    public SponsorBlockSegment getSkippableSponsorBlockSegment(final int progress) {
+        final SponsorBlockSegment sponsorBlockSegment = sponsorBlockIndex.getSegmentAt(progress);
+        if (sponsorBlockSegment != null) {
+            return sponsorBlockSegment;
+        }
 
-            for (final SponsorBlockSegment sponsorBlockSegment : sponsorBlockSegments) {
-                if (sponsorBlockSegment.action != SponsorBlockAction.SKIP) {
-                    continue;
-                }
+        // fallback on old SponsorBlockSegment (for un-skip)
+        if (lastSegment != null
+                && progress > lastSegment.endTime + UNSKIP_WINDOW_MILLIS) {
+            // un-skip window is over
+            hideUnskipButtons();
+            destroyUnskipVars();
+        } else if (lastSegment != null
+                && progress < lastSegment.endTime + UNSKIP_WINDOW_MILLIS
+                && progress >= lastSegment.startTime) {
+            // use old sponsorBlockSegment if exists AND currentProgress in bounds
+            return lastSegment;
+        }
 
-                if (progress < sponsorBlockSegment.startTime) {
-                    continue;
-                }
+        hideUnskipButtons();
+        return null;
+    }
 
-                if (progress > sponsorBlockSegment.endTime) {
-                    continue;
-                }
+    /**
+     * Indexes the segments of the stream and schedules a message at the start of each of them,
+     * so that they are skipped as soon as the playback reaches them.
+     *
+     * @param streamInfo the stream currently played
+     */
+    private void updateSponsorBlockSegments(@Nullable final StreamInfo streamInfo) {
+        for (final PlayerMessage message : sponsorBlockMessages) {
+            message.cancel();
+        }
+        sponsorBlockMessages.clear();
 
-                return sponsorBlockSegment;
-            }
+        sponsorBlockIndex = streamInfo == null
+                ? SponsorBlockSegmentIndex.EMPTY
+                : SponsorBlockSegmentIndex.of(streamInfo.getSponsorBlockSegments());
+        if (sponsorBlockMode != SponsorBlockMode.ENABLED || exoPlayerIsNull()) {
+            return;
+        }
 
-            // fallback on old SponsorBlockSegment (for un-skip)
-            if (lastSegment != null
-                    && progress > lastSegment.endTime + UNSKIP_WINDOW_MILLIS) {
-                // un-skip window is over
-                hideUnskipButtons();
-                destroyUnskipVars();
-            } else if (lastSegment != null
-                    && progress < lastSegment.endTime + UNSKIP_WINDOW_MILLIS
-                    && progress >= lastSegment.startTime) {
-                // use old sponsorBlockSegment if exists AND currentProgress in bounds
-                return lastSegment;
-            }
+        final int mediaItemIndex = simpleExoPlayer.getCurrentMediaItemIndex();
+        final Timeline timeline = simpleExoPlayer.getCurrentTimeline();
+        if (!timeline.isEmpty() && mediaItemIndex >= timeline.getWindowCount()) {
+            return;
+        }
+        for (final SponsorBlockSegment segment : sponsorBlockIndex.getSegments()) {
+            sponsorBlockMessages.add(simpleExoPlayer
+                    .createMessage((messageType, payload) ->
+                            onSponsorBlockSegmentReached((SponsorBlockSegment) payload))
+                    .setLooper(Looper.getMainLooper())
+                    .setPayload(segment)
+                    .setPosition(mediaItemIndex, (long) segment.startTime)
+                    .setDeleteAfterDelivery(false)
+                    .send());
+        }
+    }
 
-            hideUnskipButtons();
-            return null;
-        });
+    private void onSponsorBlockSegmentReached(@NonNull final SponsorBlockSegment segment) {
+        if (exoPlayerIsNull()) {
+            return;
+        }
+        // the message may be delivered a little before the fractional start time
+        final int progress = Math.max((int) simpleExoPlayer.getCurrentPosition(),
+                (int) Math.ceil(segment.startTime));
+        triggerCheckForSponsorBlockSegments(progress, false, false, false, false);
     }
 
     private void hideUnskipButtons() {
@@ -5202,6 +5321,16 @@ public final class Player implements
             return SponsorBlockSecondaryMode.DISABLED;
         }
 
+        SponsorBlockSecondaryMode secondaryMode = sponsorBlockSecondaryModes.get(segment.category);
+        if (secondaryMode == null) {
+            secondaryMode = readSecondaryMode(segment);
+            sponsorBlockSecondaryModes.put(segment.category, secondaryMode);
+        }
+        return secondaryMode;
+    }
+
+    private SponsorBlockSecondaryMode readSecondaryMode(@NonNull final SponsorBlockSegment segment) {
+
         // get pref
         final String defaultValue = context.getString(R.string.sponsor_block_skip_mode_enabled);
         final String key;
@@ -5280,6 +5409,8 @@ public final class Player implements
 
     public void onMarkSeekbarRequested(@NonNull final StreamInfo streamInfo) {
         SponsorBlockHelper.markSegments(context, binding.playbackSeekBar, streamInfo);
+        // the segments of the stream were edited
+        updateSponsorBlockSegments(streamInfo);
     }
     //endregion
 
@@ -0,0 +1,176 @@
+package org.schabi.newpipe.player.bulletComments;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import org.schabi.newpipe.extractor.bulletComments.BulletCommentsInfoItem;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps the chunks of comments of a stream on disk, so that the {@link BulletCommentsTimeline}
+ * only holds those around the playback position in memory. Chunks that can't be written are kept
+ * in memory instead.
+ * <p>
+ * Chunks are written once, by {@link #write(Map)}, before being read. Reads and writes do I/O
+ * and must not happen on the main thread.
+ * </p>
+ * <p>
+ * The stores of a process are kept in a directory of its own, so that the first write of a
+ * process can delete the stores left behind by processes that were killed before deleting them.
+ * </p>
+ */
+final class BulletCommentsChunkStore {
+    private static final String TAG = BulletCommentsChunkStore.class.getSimpleName();
+    private static final String ROOT_DIRECTORY = "bullet_comments";
+    private static final String PROCESS_DIRECTORY = UUID.randomUUID().toString();
+    private static final AtomicBoolean STALE_STORES_DELETED = new AtomicBoolean();
+
+    @NonNull
+    private final File rootDirectory;
+    @NonNull
+    private final File directory;
+    private final Set<Integer> chunkIndexes =
+            Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private final Map<Integer, BulletCommentsInfoItem[]> unwrittenChunks =
+            new ConcurrentHashMap<>();
+    private volatile int lastChunkIndex = -1;
+    private boolean deleted;
+
+    private BulletCommentsChunkStore(@NonNull final File rootDirectory) {
+        this.rootDirectory = rootDirectory;
+        this.directory = new File(new File(rootDirectory, PROCESS_DIRECTORY),
+                UUID.randomUUID().toString());
+    }
+
+    /**
+     * @param cacheDirectory the cache directory of the app
+     * @return a new empty store, in a directory of its own
+     */
+    @NonNull
+    static BulletCommentsChunkStore inCacheDirectory(@NonNull final File cacheDirectory) {
+        return new BulletCommentsChunkStore(new File(cacheDirectory, ROOT_DIRECTORY));
+    }
+
+    /**
+     * @param chunks the comments of the stream, grouped by chunk index
+     */
+    synchronized void write(@NonNull final Map<Integer, BulletCommentsInfoItem[]> chunks) {
+        if (deleted) {
+            return;
+        }
+        if (STALE_STORES_DELETED.compareAndSet(false, true)) {
+            deleteStaleStores();
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.w(TAG, "Could not create directory: " + directory);
+        }
+
+        for (final Map.Entry<Integer, BulletCommentsInfoItem[]> chunk : chunks.entrySet()) {
+            try (ObjectOutputStream output = new ObjectOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(fileOf(chunk.getKey()))))) {
+                output.writeObject(chunk.getValue());
+            } catch (final IOException e) {
+                Log.w(TAG, "Could not write chunk " + chunk.getKey() + ", keeping it in memory",
+                        e);
+                unwrittenChunks.put(chunk.getKey(), chunk.getValue());
+            }
+            chunkIndexes.add(chunk.getKey());
+            lastChunkIndex = Math.max(lastChunkIndex, chunk.getKey());
+        }
+    }
+
+    /**
+     * @param chunkIndex the index of a chunk
+     * @return whether the chunk has comments
+     */
+    boolean contains(final int chunkIndex) {
+        return chunkIndexes.contains(chunkIndex);
+    }
+
+    /**
+     * @return the index of the last chunk having comments, or -1 if there is none
+     */
+    int getLastChunkIndex() {
+        return lastChunkIndex;
+    }
+
+    @NonNull
+    BulletCommentsInfoItem[] read(final int chunkIndex) throws IOException {
+        final BulletCommentsInfoItem[] unwrittenChunk = unwrittenChunks.get(chunkIndex);
+        if (unwrittenChunk != null) {
+            return unwrittenChunk;
+        }
+
+        try (ObjectInputStream input = new ObjectInputStream(new BufferedInputStream(
+                new FileInputStream(fileOf(chunkIndex))))) {
+            return (BulletCommentsInfoItem[]) input.readObject();
+        } catch (final ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Could not read chunk " + chunkIndex, e);
+        }
+    }
+
+    /**
+     * Deletes the chunks. Later writes are ignored.
+     */
+    synchronized void delete() {
+        deleted = true;
+        unwrittenChunks.clear();
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                if (!file.delete()) {
+                    Log.w(TAG, "Could not delete " + file);
+                }
+            }
+        }
+        if (directory.exists() && !directory.delete()) {
+            Log.w(TAG, "Could not delete " + directory);
+        }
+    }
+
+    /**
+     * Deletes the directories of the other processes, which can only have been left behind.
+     */
+    private void deleteStaleStores() {
+        final File[] processDirectories = rootDirectory.listFiles();
+        if (processDirectories != null) {
+            for (final File processDirectory : processDirectories) {
+                if (!processDirectory.getName().equals(PROCESS_DIRECTORY)) {
+                    deleteRecursively(processDirectory);
+                }
+            }
+        }
+    }
+
+    private static void deleteRecursively(@NonNull final File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (final File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        if (!file.delete()) {
+            Log.w(TAG, "Could not delete " + file);
+        }
+    }
+
+    @NonNull
+    private File fileOf(final int chunkIndex) {
+        return new File(directory, chunkIndex + ".chunk");
+    }
+}
@@ -0,0 +1,186 @@
+package org.schabi.newpipe.player.bulletComments;
+
+import androidx.annotation.NonNull;
+
+import org.schabi.newpipe.extractor.bulletComments.BulletCommentsInfoItem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The comments of a stream around the playback position, split into chunks of
+ * {@link #CHUNK_MILLIS}. Each chunk keeps its comments sorted by time along with a primitive
+ * array of their times, so the comments of a time window are found with binary searches.
+ * <p>
+ * Chunks are added as they are loaded and evicted once playback is far from them, see
+ * {@link #retainChunks(int, int)}. This class is not thread safe.
+ * </p>
+ */
+final class BulletCommentsTimeline {
+    static final long CHUNK_MILLIS = 60_000;
+
+    private static final BulletCommentsInfoItem[] NO_COMMENTS = new BulletCommentsInfoItem[0];
+
+    /**
+     * The comments of a chunk, sorted by time.
+     */
+    static final class Chunk {
+        @NonNull
+        final BulletCommentsInfoItem[] items;
+        @NonNull
+        final long[] times;
+
+        Chunk(@NonNull final BulletCommentsInfoItem[] items) {
+            this.items = items.clone();
+            Arrays.sort(this.items, Comparator.comparingLong(BulletCommentsTimeline::timeOf));
+            this.times = new long[items.length];
+            for (int i = 0; i < items.length; i++) {
+                times[i] = timeOf(this.items[i]);
+            }
+        }
+
+        /**
+         * @param time a time, in milliseconds
+         * @return the index of the first comment at or after the time
+         */
+        int indexOf(final long time) {
+            int low = 0;
+            int high = times.length;
+            while (low < high) {
+                final int middle = (low + high) >>> 1;
+                if (times[middle] < time) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+
+    private final Map<Integer, Chunk> chunks = new HashMap<>();
+
+    static long timeOf(@NonNull final BulletCommentsInfoItem item) {
+        return item.getDuration().toMillis();
+    }
+
+    /**
+     * @param time a time, in milliseconds
+     * @return the index of the chunk holding the comments at that time
+     */
+    static int chunkIndexOf(final long time) {
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(0, time) / CHUNK_MILLIS);
+    }
+
+    /**
+     * @param items the comments of a stream, in any order
+     * @return the comments grouped by chunk index, in chunk order; chunks without comments are
+     * left out
+     */
+    @NonNull
+    static TreeMap<Integer, BulletCommentsInfoItem[]> split(
+            @NonNull final List<BulletCommentsInfoItem> items) {
+        final TreeMap<Integer, List<BulletCommentsInfoItem>> lists = new TreeMap<>();
+        for (final BulletCommentsInfoItem item : items) {
+            final int chunkIndex = chunkIndexOf(timeOf(item));
+            List<BulletCommentsInfoItem> list = lists.get(chunkIndex);
+            if (list == null) {
+                list = new ArrayList<>();
+                lists.put(chunkIndex, list);
+            }
+            list.add(item);
+        }
+
+        final TreeMap<Integer, BulletCommentsInfoItem[]> result = new TreeMap<>();
+        for (final Map.Entry<Integer, List<BulletCommentsInfoItem>> entry : lists.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().toArray(NO_COMMENTS));
+        }
+        return result;
+    }
+
+    boolean contains(final int chunkIndex) {
+        return chunks.containsKey(chunkIndex);
+    }
+
+    void put(final int chunkIndex, @NonNull final Chunk chunk) {
+        chunks.put(chunkIndex, chunk);
+    }
+
+    /**
+     * Evicts the chunks outside the given range.
+     *
+     * @param firstChunkIndex the first chunk to keep
+     * @param lastChunkIndex  the last chunk to keep
+     */
+    void retainChunks(final int firstChunkIndex, final int lastChunkIndex) {
+        final Iterator<Integer> iterator = chunks.keySet().iterator();
+        while (iterator.hasNext()) {
+            final int chunkIndex = iterator.next();
+            if (chunkIndex < firstChunkIndex || chunkIndex > lastChunkIndex) {
+                iterator.remove();
+            }
+        }
+    }
+
+    void clear() {
+        chunks.clear();
+    }
+
+    /**
+     * @return the number of comments currently held
+     */
+    int size() {
+        int size = 0;
+        for (final Chunk chunk : chunks.values()) {
+            size += chunk.items.length;
+        }
+        return size;
+    }
+
+    /**
+     * @param from the start of the window, inclusive, in milliseconds
+     * @param to   the end of the window, exclusive, in milliseconds
+     * @return the comments of the loaded chunks in the window, sorted by time
+     */
+    @NonNull
+    BulletCommentsInfoItem[] getComments(final long from, final long to) {
+        if (to <= from || chunks.isEmpty()) {
+            return NO_COMMENTS;
+        }
+
+        final int firstChunkIndex = chunkIndexOf(from);
+        final int lastChunkIndex =
+                Math.min(chunkIndexOf(to - 1), Collections.max(chunks.keySet()));
+
+        int count = 0;
+        for (int i = firstChunkIndex; i <= lastChunkIndex; i++) {
+            final Chunk chunk = chunks.get(i);
+            if (chunk != null) {
+                count += chunk.indexOf(to) - chunk.indexOf(from);
+            }
+        }
+        if (count == 0) {
+            return NO_COMMENTS;
+        }
+
+        final BulletCommentsInfoItem[] result = new BulletCommentsInfoItem[count];
+        int offset = 0;
+        for (int i = firstChunkIndex; i <= lastChunkIndex; i++) {
+            final Chunk chunk = chunks.get(i);
+            if (chunk != null) {
+                final int start = chunk.indexOf(from);
+                final int length = chunk.indexOf(to) - start;
+                System.arraycopy(chunk.items, start, result, offset, length);
+                offset += length;
+            }
+        }
+        return result;
+    }
+}
@@ -11,11 +11,15 @@ import org.schabi.newpipe.util.ExtractorHelper;
 import org.schabi.newpipe.views.BulletCommentsView;
 
 import java.time.Duration;
-import java.util.Arrays;
-import java.util.List;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Objects;
 
 import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
+import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.disposables.Disposable;
 import io.reactivex.rxjava3.schedulers.Schedulers;
 
 public class MovieBulletCommentsPlayer {
@@ -28,8 +32,16 @@ public class MovieBulletCommentsPlayer {
     protected int serviceId;
     protected String url;
     protected final BulletCommentsView bulletCommentsView;
-    protected List<BulletCommentsInfoItem> commentsInfoItems;
     private BulletCommentsExtractor extractor;
+    /**
+     * The comments of a stream which is not live are split into chunks kept in {@link #chunkStore},
+     * and only those around the playback position are loaded in {@link #timeline}.
+     */
+    private final BulletCommentsTimeline timeline = new BulletCommentsTimeline();
+    private BulletCommentsChunkStore chunkStore;
+    private final Map<Integer, Disposable> chunkLoads = new HashMap<>();
+    private int timelineChunkIndex = -1;
+    private Disposable initDisposable;
     public boolean isRoundPlayStream = false;
 
     /**
@@ -44,6 +56,10 @@ public class MovieBulletCommentsPlayer {
     }
 
     public final Duration INTERVAL = Duration.ofMillis(50);
+    /**
+     * A jump of the position larger than this is a seek: the comments in between are not shown.
+     */
+    private static final long SEEK_THRESHOLD_MILLIS = 5000;
     protected boolean isLoading = false;
 
     /**
@@ -53,9 +69,11 @@ public class MovieBulletCommentsPlayer {
     public void init() {
         this.bulletCommentsView.clearComments();
         isLoading = true;
+        chunkStore = BulletCommentsChunkStore.inCacheDirectory(
+                bulletCommentsView.getContext().getCacheDir());
         //See also: BaseListInfoFragment.java line 142
         try {
-            ExtractorHelper.getBulletCommentsInfo(this.serviceId, this.url, false)
+            initDisposable = ExtractorHelper.getBulletCommentsInfo(this.serviceId, this.url, false)
                     .filter(Objects::nonNull)
                     .map((BulletCommentsInfo commentsInfo) -> {
                                 extractor = commentsInfo.getBulletCommentsExtractor();
@@ -64,13 +82,18 @@ public class MovieBulletCommentsPlayer {
                             }
                     )
                     .filter(Objects::nonNull)
-                    .map(s -> s.stream().toArray(BulletCommentsInfoItem[]::new))
+                    .map(items -> {
+                        // live comments are polled from the extractor instead
+                        if (!extractor.isLive()) {
+                            chunkStore.write(BulletCommentsTimeline.split(items));
+                        }
+                        return items.size();
+                    })
                     .subscribeOn(Schedulers.io())
                     .observeOn(AndroidSchedulers.mainThread())
-                    .subscribe((BulletCommentsInfoItem[] newCommentsInfoItems) -> {
-                                this.commentsInfoItems = Arrays.asList(newCommentsInfoItems);
+                    .subscribe((Integer commentsCount) -> {
                                 Log.d(TAG, "Got "
-                                        + newCommentsInfoItems.length
+                                        + commentsCount
                                         + " comments."
                                         + this.url);
                                 isLoading = false;
@@ -109,19 +132,25 @@ public class MovieBulletCommentsPlayer {
             } catch (ParsingException e) {
                 throw new RuntimeException(e);
             }
-        }else {  // we can filter the messages because we have the full list
+        }else {  // we can look the messages up because we have the full list
             if(drawUntilPosition.toString().equals("PT0.049S")){
                 return;
             }
-            nextCommentsInfoItems = commentsInfoItems
-                    .stream()
-                    .filter(item -> {
-                                final Duration d = item.getDuration();
-                                return d.compareTo(lastPosition) >= 0
-                                        && d.compareTo(drawUntilPosition) < 0;
-                            }
-                    )
-                    .toArray(BulletCommentsInfoItem[]::new);
+            final boolean drawAll =
+                    drawUntilPosition.compareTo(Duration.ofSeconds(Long.MAX_VALUE)) == 0;
+            final long to = drawAll ? Long.MAX_VALUE : drawUntilPosition.toMillis();
+            if (!drawAll && (to < lastPosition.toMillis()
+                    || to - lastPosition.toMillis() > SEEK_THRESHOLD_MILLIS)) {
+                lastPosition = drawUntilPosition.minus(INTERVAL);
+            }
+            final long from = lastPosition.toMillis();
+
+            updateTimeline(from, drawAll ? from : to);
+            if (!drawAll && !isTimelineLoaded(from, to)) {
+                // wait for the chunk instead of skipping its comments
+                return;
+            }
+            nextCommentsInfoItems = timeline.getComments(from, to);
         }
         bulletCommentsView.drawComments(nextCommentsInfoItems, drawUntilPosition);
         this.lastPosition = drawUntilPosition;
@@ -155,6 +184,98 @@ public class MovieBulletCommentsPlayer {
         if(extractor!= null && extractor.isLive()){
             extractor.disconnect();
         }
+        releaseTimeline();
+    }
+
+    /**
+     * Load the chunks of comments of the window and the next one, and evict the others.
+     *
+     * @param fromMillis the start of the window to draw.
+     * @param toMillis   the playback position, at the end of the window.
+     */
+    private void updateTimeline(final long fromMillis, final long toMillis) {
+        final int chunkIndex = BulletCommentsTimeline.chunkIndexOf(toMillis);
+        // keep the previous chunk for short backward seeks
+        final int firstChunkIndex = chunkIndex - 1;
+        if (chunkIndex != timelineChunkIndex) {
+            timelineChunkIndex = chunkIndex;
+
+            final int lastChunkIndex = chunkIndex + 2;
+            timeline.retainChunks(firstChunkIndex, lastChunkIndex);
+            final Iterator<Map.Entry<Integer, Disposable>> iterator =
+                    chunkLoads.entrySet().iterator();
+            while (iterator.hasNext()) {
+                final Map.Entry<Integer, Disposable> chunkLoad = iterator.next();
+                if (chunkLoad.getKey() < firstChunkIndex
+                        || chunkLoad.getKey() > lastChunkIndex) {
+                    chunkLoad.getValue().dispose();
+                    iterator.remove();
+                }
+            }
+        }
+
+        // the window may start in the previous chunk, e.g. after a backward seek, and the next
+        // chunk is loaded so that it is ready when playback reaches it
+        final int windowChunkIndex = Math.max(firstChunkIndex,
+                BulletCommentsTimeline.chunkIndexOf(fromMillis));
+        for (int i = windowChunkIndex; i <= chunkIndex + 1; i++) {
+            if (chunkStore.contains(i) && !timeline.contains(i) && !chunkLoads.containsKey(i)) {
+                loadChunk(i);
+            }
+        }
+    }
+
+    private void loadChunk(final int chunkIndex) {
+        final BulletCommentsChunkStore store = chunkStore;
+        chunkLoads.put(chunkIndex, Single.fromCallable(() ->
+                        new BulletCommentsTimeline.Chunk(store.read(chunkIndex)))
+                .subscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(chunk -> {
+                    chunkLoads.remove(chunkIndex);
+                    timeline.put(chunkIndex, chunk);
+                }, throwable -> {
+                    chunkLoads.remove(chunkIndex);
+                    Log.e(TAG, "Could not load comments chunk " + chunkIndex, throwable);
+                    // skip its comments rather than trying again on every frame
+                    timeline.put(chunkIndex,
+                            new BulletCommentsTimeline.Chunk(new BulletCommentsInfoItem[0]));
+                }));
+    }
+
+    /**
+     * @param from the start of the window, inclusive, in milliseconds.
+     * @param to   the end of the window, exclusive, in milliseconds.
+     * @return whether every chunk having comments in the window is loaded.
+     */
+    private boolean isTimelineLoaded(final long from, final long to) {
+        final int lastChunkIndex = Math.min(BulletCommentsTimeline.chunkIndexOf(to - 1),
+                chunkStore.getLastChunkIndex());
+        for (int i = BulletCommentsTimeline.chunkIndexOf(from); i <= lastChunkIndex; i++) {
+            if (chunkStore.contains(i) && !timeline.contains(i) && chunkLoads.containsKey(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @SuppressLint("CheckResult")
+    private void releaseTimeline() {
+        if (initDisposable != null) {
+            initDisposable.dispose();
+        }
+        for (final Disposable chunkLoad : chunkLoads.values()) {
+            chunkLoad.dispose();
+        }
+        chunkLoads.clear();
+        timeline.clear();
+        timelineChunkIndex = -1;
+        if (chunkStore != null) {
+            Completable.fromAction(chunkStore::delete)
+                    .subscribeOn(Schedulers.io())
+                    .subscribe(() -> { }, throwable -> Log.e(TAG,
+                            "Could not delete comments chunks", throwable));
+        }
     }
 
     /**
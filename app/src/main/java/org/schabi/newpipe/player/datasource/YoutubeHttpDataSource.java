@@ -19,9 +19,9 @@ import static org.schabi.newpipe.extractor.services.youtube.YoutubeParsingHelper
 import static org.schabi.newpipe.extractor.services.youtube.YoutubeParsingHelper.isWebStreamingUrl;
 import static org.schabi.newpipe.extractor.services.youtube.YoutubeParsingHelper.isTvHtml5SimplyEmbeddedPlayerStreamingUrl;
 import static java.lang.Math.min;
-import static org.schabi.newpipe.util.ExtractorHelper.getNewStreamInfo;
 
 import android.net.Uri;
+import android.util.LruCache;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -41,34 +41,45 @@ import com.google.android.exoplayer2.upstream.TransferListener;
 import com.google.android.exoplayer2.util.Log;
 import com.google.android.exoplayer2.util.Util;
 import com.google.common.base.Predicate;
-import com.google.common.collect.ForwardingMap;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Sets;
 import com.google.common.net.HttpHeaders;
+
+import org.schabi.newpipe.DownloaderImpl;
 import org.schabi.newpipe.extractor.ServiceList;
 import org.schabi.newpipe.extractor.StreamingService;
 import org.schabi.newpipe.extractor.exceptions.ExtractionException;
+import org.schabi.newpipe.extractor.exceptions.ParsingException;
 import org.schabi.newpipe.extractor.services.youtube.extractors.YoutubeStreamExtractor;
-import org.schabi.newpipe.extractor.stream.AudioStream;
-import org.schabi.newpipe.extractor.stream.StreamInfo;
-import org.schabi.newpipe.extractor.stream.VideoStream;
-import org.schabi.newpipe.extractor.utils.Utils;
 import org.schabi.newpipe.util.SerializedCache;
+import org.schabi.newpipe.util.StreamUrlRegistry;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InterruptedIOException;
-import java.io.OutputStream;
-import java.lang.reflect.Method;
 import java.net.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.GZIPInputStream;
 
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
 /**
- * An {@link HttpDataSource} that uses Android's {@link HttpURLConnection}, based on
+ * An {@link HttpDataSource} that uses OkHttp, based on
  * {@link com.google.android.exoplayer2.upstream.DefaultHttpDataSource}, for YouTube streams.
  *
  * <p>
+ * Requests go through the connection pool shared with {@link DownloaderImpl}, so that the
+ * hundreds of range requests of a stream reuse their connections (multiplexed over HTTP/2 where
+ * the server supports it), and the URLs of data specs are parsed once.
+ * </p>
+ *
+ * <p>
  * It adds more headers to {@code videoplayback} URLs, such as {@code Origin}, {@code Referer}
  * (only where it's relevant) and also more parameters, such as {@code rn} and replaces the use of
  * the {@code Range} header by the corresponding parameter ({@code range}), if enabled.
@@ -286,17 +297,34 @@ public final class YoutubeHttpDataSource extends BaseDataSource implements HttpD
     private static final int MAX_REDIRECTS = 20; // Same limit as okhttp.
     private static final int HTTP_STATUS_TEMPORARY_REDIRECT = 307;
     private static final int HTTP_STATUS_PERMANENT_REDIRECT = 308;
-    private static final long MAX_BYTES_TO_DRAIN = 2048;
 
-    private static final String RN_PARAMETER = "&rn=";
+    private static final String RN_PARAMETER = "rn";
+    private static final String RANGE_PARAMETER = "range";
     private static final String YOUTUBE_BASE_URL = "https://www.youtube.com";
+    private static final RequestBody EMPTY_BODY = RequestBody.create(null, new byte[0]);
+    /**
+     * How long a load refused with a 403 waits for the stream to be extracted again.
+     */
+    private static final long REFRESH_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+    /**
+     * The clients of the data sources, by connect and read timeouts. They are derived from the
+     * client of {@link DownloaderImpl}, so that all requests share its connection pool and
+     * HTTP/2 connections are multiplexed.
+     */
+    private static final Map<Long, OkHttpClient> CLIENTS = new ConcurrentHashMap<>();
+    /**
+     * The parsed URLs of the latest data specs: all the ranges of a progressive stream and the
+     * retries of a chunk are requested with the same URL.
+     */
+    private static final LruCache<String, ParsedUrl> PARSED_URLS = new LruCache<>(32);
 
     private final boolean allowCrossProtocolRedirects;
     private final boolean rangeParameterEnabled;
     private final boolean rnParameterEnabled;
 
-    private final int connectTimeoutMillis;
-    private final int readTimeoutMillis;
+    @NonNull
+    private final OkHttpClient client;
     @Nullable
     private final String userAgent;
     @Nullable
@@ -309,7 +337,7 @@ public final class YoutubeHttpDataSource extends BaseDataSource implements HttpD
     @Nullable
     private DataSpec dataSpec;
     @Nullable
-    private HttpURLConnection connection;
+    private Response response;
     @Nullable
     private InputStream inputStream;
     private boolean opened;
@@ -319,11 +347,6 @@ public final class YoutubeHttpDataSource extends BaseDataSource implements HttpD
 
     private long requestNumber;
 
-    public static HashMap<Map.Entry<String, String>, String> backupUrlMap = new HashMap<>();
-    public static HashMap<Map.Entry<String, String>, Integer> retryCounts = new HashMap<>();
-
-    private boolean shouldRefetch = false;
-
     @SuppressWarnings("checkstyle:ParameterNumber")
     private YoutubeHttpDataSource(@Nullable final String userAgent,
                                   final int connectTimeoutMillis,
@@ -335,9 +358,9 @@ public final class YoutubeHttpDataSource extends BaseDataSource implements HttpD
                                   @Nullable final Predicate<String> contentTypePredicate,
                                   final boolean keepPostFor302Redirects) {
         super(true);
-        this.userAgent = userAgent;
-        this.connectTimeoutMillis = connectTimeoutMillis;
-        this.readTimeoutMillis = readTimeoutMillis;
+        // HttpURLConnection used the user agent of the platform by default
+        this.userAgent = userAgent != null ? userAgent : System.getProperty("http.agent");
+        this.client = getClient(connectTimeoutMillis, readTimeoutMillis);
         this.allowCrossProtocolRedirects = allowCrossProtocolRedirects;
         this.rangeParameterEnabled = rangeParameterEnabled;
         this.rnParameterEnabled = rnParameterEnabled;
@@ -348,34 +371,38 @@ public final class YoutubeHttpDataSource extends BaseDataSource implements HttpD
         this.requestNumber = 0;
     }
 
+    @NonNull
+    private static OkHttpClient getClient(final int connectTimeoutMillis,
+                                          final int readTimeoutMillis) {
+        return CLIENTS.computeIfAbsent(((long) connectTimeoutMillis << 32) | readTimeoutMillis,
+                key -> {
+                    final DownloaderImpl downloader = DownloaderImpl.getInstance();
+                    final OkHttpClient.Builder builder = downloader != null
+                            ? downloader.newClientBuilder() : new OkHttpClient.Builder();
+                    // redirects are followed by makeConnection, with the rules of ExoPlayer
+                    return builder.connectTimeout(connectTimeoutMillis, TimeUnit.MILLISECONDS)
+                            .readTimeout(readTimeoutMillis, TimeUnit.MILLISECONDS)
+                            .followRedirects(false)
+                            .followSslRedirects(false)
+                            .build();
+                });
+    }
+
     @Override
     @Nullable
     public Uri getUri() {
-        return connection == null ? null : Uri.parse(connection.getURL().toString());
+        return response == null ? null : Uri.parse(response.request().url().toString());
     }
 
     @Override
     public int getResponseCode() {
-        return connection == null || responseCode <= 0 ? -1 : responseCode;
+        return response == null || responseCode <= 0 ? -1 : responseCode;
     }
 
     @NonNull
     @Override
     public Map<String, List<String>> getResponseHeaders() {
-        if (connection == null) {
-            return ImmutableMap.of();
-        }
-        // connection.getHeaderFields() always contains a null key with a value like
-        // ["HTTP/1.1 200 OK"]. The response code is available from
-        // HttpURLConnection#getResponseCode() and the HTTP version is fixed when establishing the
-        // connection.
-        // DataSource#getResponseHeaders() doesn't allow null keys in the returned map, so we need
-        // to remove it.
-        // connection.getHeaderFields() returns a special unmodifiable case-insensitive Map
-        // so we can't just remove the null key or make a copy without the null key. Instead we
-        // wrap it in a ForwardingMap subclass that ignores and filters out null keys in the read
-        // methods.
-        return new NullFilteringHeadersMap(connection.getHeaderFields());
+        return response == null ? ImmutableMap.of() : response.headers().toMultimap();
     }
 
     @Override
@@ -401,7 +428,6 @@ public final class YoutubeHttpDataSource extends BaseDataSource implements HttpD
      */
     @Override
     public long open(@NonNull final DataSpec dataSpecParameter) throws HttpDataSourceException {
-        String newUrl = null;
         // Get purified headers
         final Map<String, String> m1 = dataSpecParameter.httpRequestHeaders;
         final Map<String, String> m2 = new HashMap<>();
@@ -409,56 +435,29 @@ public final class YoutubeHttpDataSource extends BaseDataSource implements HttpD
             if(!entry.getKey().equals(IcyHeaders.REQUEST_HEADER_ENABLE_METADATA_NAME))
                 m2.put(entry.getKey(), entry.getValue());
 
-        String streamId = null, itag = null, mime = null;
-        try {
-            streamId = Utils.getQueryValue(new URL(dataSpecParameter.uri.toString()), "pppid");
-            itag = Utils.getQueryValue(new URL(dataSpecParameter.uri.toString()), "itag");
-            mime = Utils.getQueryValue(new URL(dataSpecParameter.uri.toString()), "mime");
-        } catch (MalformedURLException e) {
-            throw new RuntimeException(e);
-        }
-        Integer retryCount = retryCounts.get(new AbstractMap.SimpleEntry<>(streamId, itag));
-        if (retryCount == null) {
-            retryCount = 0;
-        }
-        if(retryCount > 0) {  // start retry
-            if (streamId == null || itag == null || mime == null) {
-                throw new RuntimeException("streamId, itag or mime is null");
-            }
-            try {
-                StreamInfo streamInfo = getNewStreamInfo(ServiceList.YouTube.getServiceId(), ServiceList.YouTube.getStreamLHFactory().getUrl(streamId));
-                if (mime.startsWith("video")) {
-                    List<VideoStream> videoStreams = streamInfo.getVideoOnlyStreams();
-                    videoStreams.addAll(streamInfo.getVideoStreams());
-                    for (int i = 0; i < videoStreams.size(); i++) {
-                        if (videoStreams.get(i).getItag() == Integer.parseInt(itag)) {
-                            newUrl = videoStreams.get(i).getContent();
-                            break;
-                        }
-                    }
-                } else if (mime.startsWith("audio")) {
-                    List<AudioStream> audioStreams = streamInfo.getAudioStreams();
-                    for (int i = 0; i < audioStreams.size(); i++) {
-                        if (audioStreams.get(i).getItag() == Integer.parseInt(itag)) {
-                            newUrl = audioStreams.get(i).getContent();
-                            break;
-                        }
-                    }
-                }
-                if (newUrl == null) {
-                    throw new RuntimeException("retry failed, newUrl is null");
-                }
-                retryCounts.put(new AbstractMap.SimpleEntry<>(streamId, itag), 0);
-                backupUrlMap.put(new AbstractMap.SimpleEntry<>(streamId, itag), newUrl);
-            } catch (ExtractionException | IOException e) {
-                throw new RuntimeException(e);
-            }
+        final ParsedUrl parsedUrl = parseUrl(dataSpecParameter.uri.toString());
+        if (parsedUrl.url == null) {
+            throw new RuntimeException(new MalformedURLException(
+                    "Invalid URL: " + dataSpecParameter.uri));
         }
+        final String streamId = parsedUrl.streamId;
+        final String itag = parsedUrl.itag;
+
         // existed handler code
         this.dataSpec = dataSpecParameter.withRequestHeaders(m2);
-        if (streamId != null &&
-                backupUrlMap.containsKey(new AbstractMap.SimpleEntry<>(streamId, itag))) {
-            this.dataSpec = this.dataSpec.withUri(Uri.parse(backupUrlMap.get(new AbstractMap.SimpleEntry<>(streamId, itag))));
+        final boolean isRefreshable = streamId != null && itag != null;
+        if (isRefreshable) {
+            // use the URL refreshed by an earlier request or by the downloader, if there is one
+            final String latestUrl = StreamUrlRegistry.getInstance().getUrl(streamId, itag);
+            if (latestUrl != null) {
+                this.dataSpec = this.dataSpec.withUri(Uri.parse(latestUrl));
+            } else {
+                final String streamUrl = getStreamUrl(streamId);
+                if (streamUrl != null) {
+                    StreamUrlRegistry.getInstance().register(ServiceList.YouTube.getServiceId(),
+                            streamUrl, streamId, itag, this.dataSpec.uri.toString());
+                }
+            }
         }
 //        if(ServiceList.YouTube.getAdditionalTokens() != null && !ServiceList.YouTube.getAdditionalTokens().isEmpty()
 //                && this.dataSpec.uri.getQueryParameter("pot") == null) {
@@ -468,25 +467,25 @@ public final class YoutubeHttpDataSource extends BaseDataSource implements HttpD
         bytesToRead = 0;
         transferInitializing(dataSpecParameter);
 
-        final HttpURLConnection httpURLConnection;
-        final String responseMessage;
-        try {
-            this.connection = makeConnection(dataSpec);
-            httpURLConnection = this.connection;
-            responseCode = httpURLConnection.getResponseCode();
-            responseMessage = httpURLConnection.getResponseMessage();
-        } catch (final IOException e) {
-            closeConnectionQuietly();
-            throw HttpDataSourceException.createForIOException(e, dataSpec,
-                    HttpDataSourceException.TYPE_OPEN);
+        Response currentResponse = connect(dataSpec);
+        if (currentResponse.code() == HttpURLConnection.HTTP_FORBIDDEN && isRefreshable) {
+            // the URL expired or was revoked, extract the stream again and retry once
+            final String refreshedUrl = refreshUrl(streamId, itag, dataSpec);
+            if (refreshedUrl != null && !refreshedUrl.equals(dataSpec.uri.toString())) {
+                closeConnectionQuietly();
+                dataSpec = dataSpec.withUri(Uri.parse(refreshedUrl));
+                currentResponse = connect(dataSpec);
+            }
         }
+        responseCode = currentResponse.code();
+        final String responseMessage = currentResponse.message();
 
         // Check for a valid response code.
         if (responseCode < 200 || responseCode > 299) {
-            final Map<String, List<String>> headers = httpURLConnection.getHeaderFields();
+            final Map<String, List<String>> headers = currentResponse.headers().toMultimap();
             if (responseCode == 416) {
                 final long documentSize = HttpUtil.getDocumentSize(
-                        httpURLConnection.getHeaderField(HttpHeaders.CONTENT_RANGE));
+                        currentResponse.header(HttpHeaders.CONTENT_RANGE));
                 if (dataSpecParameter.position == documentSize) {
                     opened = true;
                     transferStarted(dataSpecParameter);
@@ -496,19 +495,11 @@ public final class YoutubeHttpDataSource extends BaseDataSource implements HttpD
                 }
             }
 
-//            if (responseCode == 403) {
-//                if (retryCount >= 1) {
-//                    throw new RuntimeException("403 error. You IP is temporarily blocked from accessing this video.");
-//                }
-//                retryCount ++;
-//                retryCounts.put(new AbstractMap.SimpleEntry<>(streamId, itag), retryCount);
-//            }
-
-            final InputStream errorStream = httpURLConnection.getErrorStream();
+            final ResponseBody errorBody = currentResponse.body();
             byte[] errorResponseBody;
             try {
-                errorResponseBody = errorStream != null
-                        ? Util.toByteArray(errorStream)
+                errorResponseBody = errorBody != null
+                        ? errorBody.bytes()
                         : Util.EMPTY_BYTE_ARRAY;
             } catch (final IOException e) {
                 errorResponseBody = Util.EMPTY_BYTE_ARRAY;
@@ -523,7 +514,7 @@ public final class YoutubeHttpDataSource extends BaseDataSource implements HttpD
         }
 
         // Check for a valid content type.
-        final String contentType = httpURLConnection.getContentType();
+        final String contentType = currentResponse.header(HttpHeaders.CONTENT_TYPE);
         if (contentTypePredicate != null && !contentTypePredicate.apply(contentType)) {
             closeConnectionQuietly();
             throw new InvalidContentTypeException(contentType, dataSpecParameter);
@@ -543,14 +534,14 @@ public final class YoutubeHttpDataSource extends BaseDataSource implements HttpD
 
 
         // Determine the length of the data to be read, after skipping.
-        final boolean isCompressed = isCompressed(httpURLConnection);
+        final boolean isCompressed = isCompressed(currentResponse);
         if (!isCompressed) {
             if (dataSpecParameter.length != C.LENGTH_UNSET) {
                 bytesToRead = dataSpecParameter.length;
             } else {
                 final long contentLength = HttpUtil.getContentLength(
-                        httpURLConnection.getHeaderField(HttpHeaders.CONTENT_LENGTH),
-                        httpURLConnection.getHeaderField(HttpHeaders.CONTENT_RANGE));
+                        currentResponse.header(HttpHeaders.CONTENT_LENGTH),
+                        currentResponse.header(HttpHeaders.CONTENT_RANGE));
                 bytesToRead = contentLength != C.LENGTH_UNSET
                         ? (contentLength - bytesToSkip)
                         : C.LENGTH_UNSET;
@@ -563,7 +554,11 @@ public final class YoutubeHttpDataSource extends BaseDataSource implements HttpD
         }
 
         try {
-            inputStream = httpURLConnection.getInputStream();
+            final ResponseBody body = currentResponse.body();
+            if (body == null) {
+                throw new IOException("The response has no body");
+            }
+            inputStream = body.byteStream();
             if (isCompressed) {
                 inputStream = new GZIPInputStream(inputStream);
             }
@@ -608,12 +603,9 @@ public final class YoutubeHttpDataSource extends BaseDataSource implements HttpD
         try {
             final InputStream connectionInputStream = this.inputStream;
             if (connectionInputStream != null) {
-                final long bytesRemaining = bytesToRead == C.LENGTH_UNSET
-                        ? C.LENGTH_UNSET
-                        : bytesToRead - bytesRead;
-                maybeTerminateInputStream(connection, bytesRemaining);
-
                 try {
+                    // unread data is discarded by OkHttp, which only keeps the connection if
+                    // that's cheap (an HTTP/2 stream is just cancelled)
                     connectionInputStream.close();
                 } catch (final IOException e) {
                     throw new HttpDataSourceException(e, castNonNull(dataSpec),
@@ -632,55 +624,104 @@ public final class YoutubeHttpDataSource extends BaseDataSource implements HttpD
     }
 
     @NonNull
-    private HttpURLConnection makeConnection(@NonNull final DataSpec dataSpecToUse)
+    private Response connect(@NonNull final DataSpec dataSpecToUse)
+            throws HttpDataSourceException {
+        try {
+            response = makeConnection(dataSpecToUse);
+            return response;
+        } catch (final IOException e) {
+            closeConnectionQuietly();
+            throw HttpDataSourceException.createForIOException(e, dataSpecToUse,
+                    HttpDataSourceException.TYPE_OPEN);
+        }
+    }
+
+    /**
+     * Extracts the stream again, or reuses a recent extraction, to get a new URL of the format.
+     * The loader waits for the extraction for at most {@link #REFRESH_TIMEOUT_MILLIS}: past that
+     * the load fails, and the retry of the player uses the URL once the extraction is done.
+     *
+     * @return the new URL of the format, or {@code null} if it could not be refreshed
+     */
+    @Nullable
+    private String refreshUrl(@NonNull final String streamId, @NonNull final String itag,
+                              @NonNull final DataSpec dataSpecToUse)
+            throws HttpDataSourceException {
+        final String streamUrl = getStreamUrl(streamId);
+        if (streamUrl == null) {
+            return null;
+        }
+
+        try {
+            return StreamUrlRegistry.getInstance().refreshUrl(
+                    ServiceList.YouTube.getServiceId(), streamUrl, streamId, itag,
+                    REFRESH_TIMEOUT_MILLIS);
+        } catch (final InterruptedIOException e) {
+            closeConnectionQuietly();
+            throw HttpDataSourceException.createForIOException(e, dataSpecToUse,
+                    HttpDataSourceException.TYPE_OPEN);
+        } catch (final ExtractionException | IOException e) {
+            Log.w(TAG, "Could not refresh the URL of stream " + streamId, e);
+            return null;
+        }
+    }
+
+    @Nullable
+    private static String getStreamUrl(@NonNull final String streamId) {
+        try {
+            return ServiceList.YouTube.getStreamLHFactory().getUrl(streamId);
+        } catch (final ParsingException e) {
+            Log.w(TAG, "Invalid stream id: " + streamId, e);
+            return null;
+        }
+    }
+
+    @NonNull
+    private Response makeConnection(@NonNull final DataSpec dataSpecToUse)
             throws IOException {
-        URL url = new URL(dataSpecToUse.uri.toString());
+        ParsedUrl parsedUrl = parseUrl(dataSpecToUse.uri.toString());
+        if (parsedUrl.url == null) {
+            throw new MalformedURLException("Invalid URL: " + dataSpecToUse.uri);
+        }
         @HttpMethod int httpMethod = dataSpecToUse.httpMethod;
         @Nullable byte[] httpBody = dataSpecToUse.httpBody;
         final long position = dataSpecToUse.position;
         final long length = dataSpecToUse.length;
         final boolean allowGzip = dataSpecToUse.isFlagSet(DataSpec.FLAG_ALLOW_GZIP);
 
-        if (!allowCrossProtocolRedirects && !keepPostFor302Redirects) {
-            // HttpURLConnection disallows cross-protocol redirects, but otherwise performs
-            // redirection automatically. This is the behavior we want, so use it.
-            return makeConnection(url, httpMethod, httpBody, position, length, allowGzip, true,
-                    dataSpecToUse.httpRequestHeaders);
-        }
-
-        // We need to handle redirects ourselves to allow cross-protocol redirects or to keep the
-        // POST request method for 302.
+        // Redirects are handled here to allow cross-protocol redirects or to keep the POST
+        // request method for 302, if enabled.
         int redirectCount = 0;
         while (redirectCount++ <= MAX_REDIRECTS) {
-            final HttpURLConnection httpURLConnection = makeConnection(url, httpMethod, httpBody,
-                    position, length, allowGzip, false, dataSpecToUse.httpRequestHeaders);
-            final int httpURLConnectionResponseCode = httpURLConnection.getResponseCode();
-            final String location = httpURLConnection.getHeaderField("Location");
+            final Response currentResponse = makeConnection(parsedUrl, httpMethod, httpBody,
+                    position, length, allowGzip, dataSpecToUse.httpRequestHeaders);
+            final int currentResponseCode = currentResponse.code();
+            final String location = currentResponse.header(HttpHeaders.LOCATION);
             if ((httpMethod == DataSpec.HTTP_METHOD_GET || httpMethod == DataSpec.HTTP_METHOD_HEAD)
-                    && (httpURLConnectionResponseCode == HttpURLConnection.HTTP_MULT_CHOICE
-                    || httpURLConnectionResponseCode == HttpURLConnection.HTTP_MOVED_PERM
-                    || httpURLConnectionResponseCode == HttpURLConnection.HTTP_MOVED_TEMP
-                    || httpURLConnectionResponseCode == HttpURLConnection.HTTP_SEE_OTHER
-                    || httpURLConnectionResponseCode == HTTP_STATUS_TEMPORARY_REDIRECT
-                    || httpURLConnectionResponseCode == HTTP_STATUS_PERMANENT_REDIRECT)) {
-                httpURLConnection.disconnect();
-                url = handleRedirect(url, location, dataSpecToUse);
+                    && (currentResponseCode == HttpURLConnection.HTTP_MULT_CHOICE
+                    || currentResponseCode == HttpURLConnection.HTTP_MOVED_PERM
+                    || currentResponseCode == HttpURLConnection.HTTP_MOVED_TEMP
+                    || currentResponseCode == HttpURLConnection.HTTP_SEE_OTHER
+                    || currentResponseCode == HTTP_STATUS_TEMPORARY_REDIRECT
+                    || currentResponseCode == HTTP_STATUS_PERMANENT_REDIRECT)) {
+                currentResponse.close();
+                parsedUrl = new ParsedUrl(handleRedirect(parsedUrl.url, location, dataSpecToUse));
             } else if (httpMethod == DataSpec.HTTP_METHOD_POST
-                    && (httpURLConnectionResponseCode == HttpURLConnection.HTTP_MULT_CHOICE
-                    || httpURLConnectionResponseCode == HttpURLConnection.HTTP_MOVED_PERM
-                    || httpURLConnectionResponseCode == HttpURLConnection.HTTP_MOVED_TEMP
-                    || httpURLConnectionResponseCode == HttpURLConnection.HTTP_SEE_OTHER)) {
-                httpURLConnection.disconnect();
+                    && (currentResponseCode == HttpURLConnection.HTTP_MULT_CHOICE
+                    || currentResponseCode == HttpURLConnection.HTTP_MOVED_PERM
+                    || currentResponseCode == HttpURLConnection.HTTP_MOVED_TEMP
+                    || currentResponseCode == HttpURLConnection.HTTP_SEE_OTHER)) {
+                currentResponse.close();
                 final boolean shouldKeepPost = keepPostFor302Redirects
-                        && responseCode == HttpURLConnection.HTTP_MOVED_TEMP;
+                        && currentResponseCode == HttpURLConnection.HTTP_MOVED_TEMP;
                 if (!shouldKeepPost) {
                     // POST request follows the redirect and is transformed into a GET request.
                     httpMethod = DataSpec.HTTP_METHOD_GET;
                     httpBody = null;
                 }
-                url = handleRedirect(url, location, dataSpecToUse);
+                parsedUrl = new ParsedUrl(handleRedirect(parsedUrl.url, location, dataSpecToUse));
             } else {
-                return httpURLConnection;
+                return currentResponse;
             }
         }
 
@@ -693,49 +734,47 @@ public final class YoutubeHttpDataSource extends BaseDataSource implements HttpD
     }
 
     /**
-     * Configures a connection and opens it.
+     * Configures a request and executes it.
      *
-     * @param url               The url to connect to.
+     * @param parsedUrl         The url to connect to, which must be valid.
      * @param httpMethod        The http method.
      * @param httpBody          The body data, or {@code null} if not required.
      * @param position          The byte offset of the requested data.
      * @param length            The length of the requested data, or {@link C#LENGTH_UNSET}.
      * @param allowGzip         Whether to allow the use of gzip.
-     * @param followRedirects   Whether to follow redirects.
      * @param requestParameters parameters (HTTP headers) to include in request.
-     * @return the connection opened
+     * @return the response, whose body must be closed
      */
     @SuppressWarnings("checkstyle:ParameterNumber")
     @NonNull
-    private HttpURLConnection makeConnection(
-            @NonNull final URL url,
+    private Response makeConnection(
+            @NonNull final ParsedUrl parsedUrl,
             @HttpMethod final int httpMethod,
             @Nullable final byte[] httpBody,
             final long position,
             final long length,
             final boolean allowGzip,
-            final boolean followRedirects,
             final Map<String, String> requestParameters) throws IOException {
-        String requestUrl = url.toString();
+        HttpUrl requestUrl = castNonNull(parsedUrl.url);
 
         // Don't add the request number parameter if it has been already added (for instance in
         // DASH manifests) or if that's not a videoplayback URL
-        final boolean isVideoPlaybackUrl = url.getPath().startsWith("/videoplayback");
-        if (isVideoPlaybackUrl && rnParameterEnabled && !requestUrl.contains(RN_PARAMETER)) {
-            requestUrl += RN_PARAMETER + requestNumber;
-            ++requestNumber;
-        }
-
-        if (rangeParameterEnabled && isVideoPlaybackUrl) {
-            final String rangeParameterBuilt = buildRangeParameter(position, length);
-            if (rangeParameterBuilt != null) {
-                requestUrl += rangeParameterBuilt;
+        if (parsedUrl.isVideoPlaybackUrl) {
+            final HttpUrl.Builder urlBuilder = requestUrl.newBuilder();
+            if (rnParameterEnabled && !parsedUrl.hasRnParameter) {
+                urlBuilder.addEncodedQueryParameter(RN_PARAMETER, String.valueOf(requestNumber));
+                ++requestNumber;
+            }
+            if (rangeParameterEnabled) {
+                final String rangeParameterBuilt = buildRangeParameter(position, length);
+                if (rangeParameterBuilt != null) {
+                    urlBuilder.addEncodedQueryParameter(RANGE_PARAMETER, rangeParameterBuilt);
+                }
             }
+            requestUrl = urlBuilder.build();
         }
 
-        final HttpURLConnection httpURLConnection = openConnection(new URL(requestUrl));
-        httpURLConnection.setConnectTimeout(connectTimeoutMillis);
-        httpURLConnection.setReadTimeout(readTimeoutMillis);
+        final Request.Builder requestBuilder = new Request.Builder().url(requestUrl);
 
         final Map<String, String> requestHeaders = new HashMap<>();
         if (defaultRequestProperties != null) {
@@ -745,71 +784,54 @@ public final class YoutubeHttpDataSource extends BaseDataSource implements HttpD
         requestHeaders.putAll(requestParameters);
 
         for (final Map.Entry<String, String> property : requestHeaders.entrySet()) {
-            httpURLConnection.setRequestProperty(property.getKey(), property.getValue());
+            requestBuilder.header(property.getKey(), property.getValue());
         }
 
         if (!rangeParameterEnabled) {
             final String rangeHeader = buildRangeRequestHeader(position, length);
             if (rangeHeader != null) {
-                httpURLConnection.setRequestProperty(HttpHeaders.RANGE, rangeHeader);
+                requestBuilder.header(HttpHeaders.RANGE, rangeHeader);
             }
         }
 
-        if (isWebStreamingUrl(requestUrl)
-                || isTvHtml5SimplyEmbeddedPlayerStreamingUrl(requestUrl)) {
-            httpURLConnection.setRequestProperty(HttpHeaders.ORIGIN, YOUTUBE_BASE_URL);
-            httpURLConnection.setRequestProperty(HttpHeaders.REFERER, YOUTUBE_BASE_URL);
-            httpURLConnection.setRequestProperty(HttpHeaders.SEC_FETCH_DEST, "empty");
-            httpURLConnection.setRequestProperty(HttpHeaders.SEC_FETCH_MODE, "cors");
-            httpURLConnection.setRequestProperty(HttpHeaders.SEC_FETCH_SITE, "cross-site");
+        if (parsedUrl.isWebOrTvHtml5EmbedStreamingUrl) {
+            requestBuilder.header(HttpHeaders.ORIGIN, YOUTUBE_BASE_URL);
+            requestBuilder.header(HttpHeaders.REFERER, YOUTUBE_BASE_URL);
+            requestBuilder.header(HttpHeaders.SEC_FETCH_DEST, "empty");
+            requestBuilder.header(HttpHeaders.SEC_FETCH_MODE, "cors");
+            requestBuilder.header(HttpHeaders.SEC_FETCH_SITE, "cross-site");
         }
 
-        httpURLConnection.setRequestProperty(HttpHeaders.TE, "trailers");
+        requestBuilder.header(HttpHeaders.TE, "trailers");
 
-        final boolean isAnAndroidStreamingUrl = isAndroidStreamingUrl(requestUrl);
-        final boolean isAnIosStreamingUrl = isIosStreamingUrl(requestUrl);
-        if (isAnAndroidStreamingUrl) {
+        if (parsedUrl.isAndroidStreamingUrl) {
             // Improvement which may be done: find the content country used to request YouTube
             // contents to add it in the user agent instead of using the default
-            httpURLConnection.setRequestProperty(HttpHeaders.USER_AGENT,
-                    getAndroidUserAgent(null));
-        } else if (isAnIosStreamingUrl) {
-            httpURLConnection.setRequestProperty(HttpHeaders.USER_AGENT,
-                    getIosUserAgent(null));
+            requestBuilder.header(HttpHeaders.USER_AGENT, getAndroidUserAgent(null));
+        } else if (parsedUrl.isIosStreamingUrl) {
+            requestBuilder.header(HttpHeaders.USER_AGENT, getIosUserAgent(null));
         } else if (userAgent != null) {
-            httpURLConnection.setRequestProperty(HttpHeaders.USER_AGENT, userAgent);
+            requestBuilder.header(HttpHeaders.USER_AGENT, userAgent);
         }
 
-        httpURLConnection.setRequestProperty(HttpHeaders.ACCEPT_ENCODING,
-                allowGzip ? "gzip" : "identity");
-        httpURLConnection.setInstanceFollowRedirects(followRedirects);
-        httpURLConnection.setDoOutput(httpBody != null);
+        // OkHttp only decompresses transparently when it added the header itself
+        requestBuilder.header(HttpHeaders.ACCEPT_ENCODING, allowGzip ? "gzip" : "identity");
 
         // Mobile clients uses POST requests to fetch contents
-        httpURLConnection.setRequestMethod(isAnAndroidStreamingUrl || isAnIosStreamingUrl
+        final String method = parsedUrl.isAndroidStreamingUrl || parsedUrl.isIosStreamingUrl
                 ? "POST"
-                : DataSpec.getStringForHttpMethod(httpMethod));
-
+                : DataSpec.getStringForHttpMethod(httpMethod);
+        final RequestBody requestBody;
         if (httpBody != null) {
-            httpURLConnection.setFixedLengthStreamingMode(httpBody.length);
-            httpURLConnection.connect();
-            final OutputStream os = httpURLConnection.getOutputStream();
-            os.write(httpBody);
-            os.close();
+            requestBody = RequestBody.create(null, httpBody);
+        } else if ("POST".equals(method)) {
+            requestBody = EMPTY_BODY;
         } else {
-            httpURLConnection.connect();
+            requestBody = null;
         }
-        return httpURLConnection;
-    }
+        requestBuilder.method(method, requestBody);
 
-    /**
-     * Creates an {@link HttpURLConnection} that is connected with the {@code url}.
-     *
-     * @param url the {@link URL} to create an {@link HttpURLConnection}
-     * @return an {@link HttpURLConnection} created with the {@code url}
-     */
-    private HttpURLConnection openConnection(@NonNull final URL url) throws IOException {
-        return (HttpURLConnection) url.openConnection();
+        return client.newCall(requestBuilder.build()).execute();
     }
 
     /**
@@ -822,9 +844,9 @@ public final class YoutubeHttpDataSource extends BaseDataSource implements HttpD
      * @throws HttpDataSourceException If redirection isn't possible.
      */
     @NonNull
-    private URL handleRedirect(final URL originalUrl,
-                               @Nullable final String location,
-                               final DataSpec dataSpecToHandleRedirect)
+    private HttpUrl handleRedirect(final HttpUrl originalUrl,
+                                   @Nullable final String location,
+                                   final DataSpec dataSpecToHandleRedirect)
             throws HttpDataSourceException {
         if (location == null) {
             throw new HttpDataSourceException("Null location redirect", dataSpecToHandleRedirect,
@@ -832,29 +854,20 @@ public final class YoutubeHttpDataSource extends BaseDataSource implements HttpD
                     HttpDataSourceException.TYPE_OPEN);
         }
 
-        // Form the new url.
-        final URL url;
-        try {
-            url = new URL(originalUrl, location);
-        } catch (final MalformedURLException e) {
-            throw new HttpDataSourceException(e, dataSpecToHandleRedirect,
-                    PlaybackException.ERROR_CODE_IO_NETWORK_CONNECTION_FAILED,
-                    HttpDataSourceException.TYPE_OPEN);
-        }
-
-        // Check that the protocol of the new url is supported.
-        final String protocol = url.getProtocol();
-        if (!"https".equals(protocol) && !"http".equals(protocol)) {
-            throw new HttpDataSourceException("Unsupported protocol redirect: " + protocol,
+        // Form the new url. Only http and https URLs can be resolved by OkHttp.
+        final HttpUrl url = originalUrl.resolve(location);
+        if (url == null) {
+            throw new HttpDataSourceException("Unsupported protocol redirect: " + location,
                     dataSpecToHandleRedirect,
                     PlaybackException.ERROR_CODE_IO_NETWORK_CONNECTION_FAILED,
                     HttpDataSourceException.TYPE_OPEN);
         }
 
-        if (!allowCrossProtocolRedirects && !protocol.equals(originalUrl.getProtocol())) {
+        final String protocol = url.scheme();
+        if (!allowCrossProtocolRedirects && !protocol.equals(originalUrl.scheme())) {
             throw new HttpDataSourceException(
                     "Disallowed cross-protocol redirect ("
-                            + originalUrl.getProtocol()
+                            + originalUrl.scheme()
                             + " to "
                             + protocol
                             + ")",
@@ -944,69 +957,22 @@ public final class YoutubeHttpDataSource extends BaseDataSource implements HttpD
         return read;
     }
 
-    /**
-     * On platform API levels 19 and 20, okhttp's implementation of {@link InputStream#close} can
-     * block for a long time if the stream has a lot of data remaining. Call this method before
-     * closing the input stream to make a best effort to cause the input stream to encounter an
-     * unexpected end of input, working around this issue. On other platform API levels, the method
-     * does nothing.
-     *
-     * @param connection     The connection whose {@link InputStream} should be terminated.
-     * @param bytesRemaining The number of bytes remaining to be read from the input stream if its
-     *                       length is known. {@link C#LENGTH_UNSET} otherwise.
-     */
-    private static void maybeTerminateInputStream(@Nullable final HttpURLConnection connection,
-                                                  final long bytesRemaining) {
-        if (connection == null || Util.SDK_INT < 19 || Util.SDK_INT > 20) {
-            return;
-        }
-
-        try {
-            final InputStream inputStream = connection.getInputStream();
-            if (bytesRemaining == C.LENGTH_UNSET) {
-                // If the input stream has already ended, do nothing. The socket may be re-used.
-                if (inputStream.read() == -1) {
-                    return;
-                }
-            } else if (bytesRemaining <= MAX_BYTES_TO_DRAIN) {
-                // There isn't much data left. Prefer to allow it to drain, which may allow the
-                // socket to be re-used.
-                return;
-            }
-            final String className = inputStream.getClass().getName();
-            if ("com.android.okhttp.internal.http.HttpTransport$ChunkedInputStream"
-                    .equals(className)
-                    || "com.android.okhttp.internal.http.HttpTransport$FixedLengthInputStream"
-                    .equals(className)) {
-                final Class<?> superclass = inputStream.getClass().getSuperclass();
-                final Method unexpectedEndOfInput = checkNotNull(superclass).getDeclaredMethod(
-                        "unexpectedEndOfInput");
-                unexpectedEndOfInput.setAccessible(true);
-                unexpectedEndOfInput.invoke(inputStream);
-            }
-        } catch (final Exception e) {
-            // If an IOException then the connection didn't ever have an input stream, or it was
-            // closed already. If another type of exception then something went wrong, most likely
-            // the device isn't using okhttp.
-        }
-    }
-
     /**
      * Closes the current connection quietly, if there is one.
      */
     private void closeConnectionQuietly() {
-        if (connection != null) {
+        if (response != null) {
             try {
-                connection.disconnect();
+                response.close();
             } catch (final Exception e) {
-                Log.e(TAG, "Unexpected error while disconnecting", e);
+                Log.e(TAG, "Unexpected error while closing the response", e);
             }
-            connection = null;
+            response = null;
         }
     }
 
-    private static boolean isCompressed(@NonNull final HttpURLConnection connection) {
-        final String contentEncoding = connection.getHeaderField("Content-Encoding");
+    private static boolean isCompressed(@NonNull final Response response) {
+        final String contentEncoding = response.header(HttpHeaders.CONTENT_ENCODING);
         return "gzip".equalsIgnoreCase(contentEncoding);
     }
 
@@ -1025,8 +991,8 @@ public final class YoutubeHttpDataSource extends BaseDataSource implements HttpD
      *
      * @param position The request position.
      * @param length The request length, or {@link C#LENGTH_UNSET} if the request is unbounded.
-     * @return The corresponding {@code range} parameter, or {@code null} if this parameter is
-     * unnecessary because the whole resource is being requested.
+     * @return The value of the corresponding {@code range} parameter, or {@code null} if this
+     * parameter is unnecessary because the whole resource is being requested.
      */
     @Nullable
     private static String buildRangeParameter(final long position, final long length) {
@@ -1035,7 +1001,6 @@ public final class YoutubeHttpDataSource extends BaseDataSource implements HttpD
         }
 
         final StringBuilder rangeParameter = new StringBuilder();
-        rangeParameter.append("&range=");
         rangeParameter.append(position);
         rangeParameter.append("-");
         if (length != C.LENGTH_UNSET) {
@@ -1044,67 +1009,57 @@ public final class YoutubeHttpDataSource extends BaseDataSource implements HttpD
         return rangeParameter.toString();
     }
 
-    private static final class NullFilteringHeadersMap
-            extends ForwardingMap<String, List<String>> {
-        private final Map<String, List<String>> headers;
-
-        NullFilteringHeadersMap(final Map<String, List<String>> headers) {
-            this.headers = headers;
-        }
-
-        @NonNull
-        @Override
-        protected Map<String, List<String>> delegate() {
-            return headers;
-        }
-
-        @Override
-        public boolean containsKey(@Nullable final Object key) {
-            return key != null && super.containsKey(key);
+    @NonNull
+    private static ParsedUrl parseUrl(@NonNull final String url) {
+        ParsedUrl parsedUrl = PARSED_URLS.get(url);
+        if (parsedUrl == null) {
+            parsedUrl = new ParsedUrl(HttpUrl.parse(url));
+            PARSED_URLS.put(url, parsedUrl);
         }
+        return parsedUrl;
+    }
 
+    /**
+     * What the data source needs to know about a URL, extracted once from it.
+     */
+    private static final class ParsedUrl {
+        /**
+         * The URL, or {@code null} if it isn't a valid HTTP or HTTPS URL.
+         */
         @Nullable
-        @Override
-        public List<String> get(@Nullable final Object key) {
-            return key == null ? null : super.get(key);
-        }
-
-        @NonNull
-        @Override
-        public Set<String> keySet() {
-            return Sets.filter(super.keySet(), Objects::nonNull);
-        }
-
-        @NonNull
-        @Override
-        public Set<Entry<String, List<String>>> entrySet() {
-            return Sets.filter(super.entrySet(), entry -> entry.getKey() != null);
-        }
-
-        @Override
-        public int size() {
-            return super.size() - (super.containsKey(null) ? 1 : 0);
-        }
-
-        @Override
-        public boolean isEmpty() {
-            return super.isEmpty() || (super.size() == 1 && super.containsKey(null));
-        }
-
-        @Override
-        public boolean containsValue(@Nullable final Object value) {
-            return super.standardContainsValue(value);
-        }
-
-        @Override
-        public boolean equals(@Nullable final Object object) {
-            return object != null && super.standardEquals(object);
-        }
+        final HttpUrl url;
+        @Nullable
+        final String streamId;
+        @Nullable
+        final String itag;
+        final boolean isVideoPlaybackUrl;
+        final boolean hasRnParameter;
+        final boolean isWebOrTvHtml5EmbedStreamingUrl;
+        final boolean isAndroidStreamingUrl;
+        final boolean isIosStreamingUrl;
+
+        ParsedUrl(@Nullable final HttpUrl url) {
+            this.url = url;
+            if (url == null) {
+                streamId = null;
+                itag = null;
+                isVideoPlaybackUrl = false;
+                hasRnParameter = false;
+                isWebOrTvHtml5EmbedStreamingUrl = false;
+                isAndroidStreamingUrl = false;
+                isIosStreamingUrl = false;
+                return;
+            }
 
-        @Override
-        public int hashCode() {
-            return super.standardHashCode();
+            final String urlString = url.toString();
+            streamId = url.queryParameter("pppid");
+            itag = url.queryParameter("itag");
+            isVideoPlaybackUrl = url.encodedPath().startsWith("/videoplayback");
+            hasRnParameter = url.queryParameter(RN_PARAMETER) != null;
+            isWebOrTvHtml5EmbedStreamingUrl = isWebStreamingUrl(urlString)
+                    || isTvHtml5SimplyEmbeddedPlayerStreamingUrl(urlString);
+            isAndroidStreamingUrl = isAndroidStreamingUrl(urlString);
+            isIosStreamingUrl = isIosStreamingUrl(urlString);
         }
     }
 }
-
@@ -0,0 +1,170 @@
+package org.schabi.newpipe.player.helper;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+/**
+ * The buffer sizes of the {@link LoadController}, derived from how fast the network is compared
+ * to the bitrate of the selected tracks, from the recent rebuffers and from the memory class of
+ * the device.
+ *
+ * <ul>
+ *     <li>On a network much faster than the stream, little is buffered ahead; on a slow one, or
+ *     after rebuffers, more is.</li>
+ *     <li>The buffer never holds more bytes than a share of the memory class of the app.</li>
+ *     <li>Audio-only playback, which mostly happens in the background, keeps a small buffer.</li>
+ * </ul>
+ */
+final class BufferPolicy {
+    @VisibleForTesting
+    static final long DEFAULT_VIDEO_BITRATE = 1_000_000;
+    @VisibleForTesting
+    static final long DEFAULT_AUDIO_BITRATE = 128_000;
+
+    /** The ratio of the bandwidth to the bitrate above which the network is fast. */
+    @VisibleForTesting
+    static final double FAST_NETWORK_RATIO = 4;
+    /** The ratio of the bandwidth to the bitrate below which the network is slow. */
+    @VisibleForTesting
+    static final double SLOW_NETWORK_RATIO = 1.5;
+
+    @VisibleForTesting
+    static final int MIN_BUFFER_MS_FAST = 15_000;
+    @VisibleForTesting
+    static final int MIN_BUFFER_MS_MEDIUM = 30_000;
+    @VisibleForTesting
+    static final int MIN_BUFFER_MS_SLOW = 50_000;
+    @VisibleForTesting
+    static final int MIN_BUFFER_MS_AUDIO = 10_000;
+    /** Added to the minimum buffer for each recent rebuffer, up to {@link #MAX_REBUFFERS}. */
+    @VisibleForTesting
+    static final int MIN_BUFFER_MS_PER_REBUFFER = 10_000;
+    @VisibleForTesting
+    static final int MAX_REBUFFERS = 3;
+
+    @VisibleForTesting
+    static final int MAX_BUFFER_MS_LOWER_BOUND = 20_000;
+    @VisibleForTesting
+    static final int MAX_BUFFER_MS_UPPER_BOUND = 120_000;
+    @VisibleForTesting
+    static final int MAX_BUFFER_MS_AUDIO = 30_000;
+
+    private static final int BUFFER_FOR_PLAYBACK_MS = 2_500;
+    private static final int BUFFER_FOR_PLAYBACK_MS_SLOW = 5_000;
+    @VisibleForTesting
+    static final int BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS = 5_000;
+    @VisibleForTesting
+    static final int MAX_BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS = 15_000;
+
+    private static final int MIB = 1024 * 1024;
+    /** The share of the memory class the buffer may use. */
+    private static final int MEMORY_CLASS_SHARE = 4;
+    @VisibleForTesting
+    static final int MIN_TARGET_BYTES = 8 * MIB;
+    @VisibleForTesting
+    static final int MAX_TARGET_BYTES = 128 * MIB;
+    @VisibleForTesting
+    static final int MAX_TARGET_BYTES_AUDIO = 4 * MIB;
+
+    final int minBufferMs;
+    final int maxBufferMs;
+    final int bufferForPlaybackMs;
+    final int bufferForPlaybackAfterRebufferMs;
+    final int targetBufferBytes;
+
+    private BufferPolicy(final int minBufferMs,
+                         final int maxBufferMs,
+                         final int bufferForPlaybackMs,
+                         final int bufferForPlaybackAfterRebufferMs,
+                         final int targetBufferBytes) {
+        this.minBufferMs = minBufferMs;
+        this.maxBufferMs = maxBufferMs;
+        this.bufferForPlaybackMs = bufferForPlaybackMs;
+        this.bufferForPlaybackAfterRebufferMs = bufferForPlaybackAfterRebufferMs;
+        this.targetBufferBytes = targetBufferBytes;
+    }
+
+    /**
+     * @param bandwidthBps    the estimated bandwidth in bits per second, or a value {@code <= 0}
+     *                        if it is unknown
+     * @param bitrateBps      the total bitrate of the selected tracks in bits per second, or a
+     *                        value {@code <= 0} if it is unknown
+     * @param audioOnly       whether no video track is selected
+     * @param memoryClassMb   the memory class of the device in megabytes, see
+     *                        {@link android.app.ActivityManager#getMemoryClass()}
+     * @param recentRebuffers the number of rebuffers in the last few minutes
+     * @return the buffer sizes for these conditions
+     */
+    @NonNull
+    static BufferPolicy of(final long bandwidthBps,
+                           final long bitrateBps,
+                           final boolean audioOnly,
+                           final int memoryClassMb,
+                           final int recentRebuffers) {
+        final long bitrate = bitrateBps > 0 ? bitrateBps
+                : (audioOnly ? DEFAULT_AUDIO_BITRATE : DEFAULT_VIDEO_BITRATE);
+        final int rebuffers = Math.max(0, Math.min(recentRebuffers, MAX_REBUFFERS));
+
+        final long memoryBudget = (long) memoryClassMb * MIB / MEMORY_CLASS_SHARE;
+        final int targetBufferBytes = audioOnly
+                ? (int) clamp(memoryBudget, MIB, MAX_TARGET_BYTES_AUDIO)
+                : (int) clamp(memoryBudget, MIN_TARGET_BYTES, MAX_TARGET_BYTES);
+
+        // buffer at most what fits in the target size at the current bitrate
+        final long fittingMs = targetBufferBytes * 8L * 1000 / bitrate;
+        final int maxBufferMs = audioOnly
+                ? (int) Math.min(fittingMs, MAX_BUFFER_MS_AUDIO)
+                : (int) clamp(fittingMs, MAX_BUFFER_MS_LOWER_BOUND, MAX_BUFFER_MS_UPPER_BOUND);
+
+        final boolean slowNetwork;
+        int minBufferMs;
+        if (audioOnly) {
+            slowNetwork = false;
+            minBufferMs = MIN_BUFFER_MS_AUDIO;
+        } else if (bandwidthBps <= 0) {
+            slowNetwork = false;
+            minBufferMs = MIN_BUFFER_MS_MEDIUM;
+        } else {
+            final double ratio = (double) bandwidthBps / bitrate;
+            slowNetwork = ratio < SLOW_NETWORK_RATIO;
+            if (ratio >= FAST_NETWORK_RATIO) {
+                minBufferMs = MIN_BUFFER_MS_FAST;
+            } else if (!slowNetwork) {
+                minBufferMs = MIN_BUFFER_MS_MEDIUM;
+            } else {
+                minBufferMs = MIN_BUFFER_MS_SLOW;
+            }
+        }
+        minBufferMs = Math.min(minBufferMs + rebuffers * MIN_BUFFER_MS_PER_REBUFFER, maxBufferMs);
+
+        final int bufferForPlaybackMs = Math.min(minBufferMs,
+                slowNetwork ? BUFFER_FOR_PLAYBACK_MS_SLOW : BUFFER_FOR_PLAYBACK_MS);
+        final int bufferForPlaybackAfterRebufferMs = Math.min(minBufferMs, Math.min(
+                BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS * (1 + rebuffers),
+                MAX_BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS));
+
+        return new BufferPolicy(minBufferMs, maxBufferMs, bufferForPlaybackMs,
+                bufferForPlaybackAfterRebufferMs, targetBufferBytes);
+    }
+
+    /**
+     * The back buffer is read once by ExoPlayer, when the player is created, so it only depends
+     * on the memory of the device.
+     *
+     * @param memoryClassMb the memory class of the device in megabytes
+     * @return how much of the media already played is kept, to seek back without loading it
+     * again
+     */
+    static int backBufferMsOf(final int memoryClassMb) {
+        if (memoryClassMb >= 256) {
+            return 30_000;
+        } else if (memoryClassMb >= 128) {
+            return 10_000;
+        }
+        return 0;
+    }
+
+    private static long clamp(final long value, final long min, final long max) {
+        return Math.max(min, Math.min(value, max));
+    }
+}
@@ -1,30 +1,135 @@
 package org.schabi.newpipe.player.helper;
 
+import android.app.ActivityManager;
+import android.content.Context;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.core.content.ContextCompat;
+
+import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.DefaultLoadControl;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.Renderer;
+import com.google.android.exoplayer2.source.TrackGroupArray;
+import com.google.android.exoplayer2.trackselection.ExoTrackSelection;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+import com.google.android.exoplayer2.upstream.DefaultAllocator;
+import com.google.android.exoplayer2.util.Util;
+
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Sizes the buffers of the player from the estimated bandwidth, the bitrate of the selected
+ * tracks and the memory of the device, see {@link BufferPolicy}, and keeps statistics about
+ * rebuffers and buffer levels for the debug overlay, see {@link #getDebugInfo()}.
+ *
+ * <p>ExoPlayer calls it on the playback thread, while {@link #getDebugInfo()} is called on the
+ * main thread.</p>
+ */
 public class LoadController extends DefaultLoadControl {
 
     public static final String TAG = "LoadController";
+
+    /** Rebuffers older than this no longer grow the buffer. */
+    private static final long REBUFFER_WINDOW_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    /** How often the policy is recomputed and the buffer level sampled while loading. */
+    private static final long SAMPLE_INTERVAL_MILLIS = 500;
+    /** The upper bounds, in seconds, of the buckets of the buffer level histogram. */
+    private static final int[] BUFFER_LEVEL_BUCKETS = {2, 5, 10, 20, 40, 80};
+    /** Loading is never stopped below this buffer, as in {@link DefaultLoadControl}. */
+    private static final long MIN_BUFFER_US = 500_000;
+    private static final int LOW_RAM_MEMORY_CLASS_MB = 32;
+
+    @NonNull
+    private final BandwidthMeter bandwidthMeter;
+    private final int memoryClassMb;
+    private final long backBufferDurationUs;
+
     private boolean preloadingEnabled = true;
+    private boolean isLoading;
+    private boolean isRebuffering;
+    private long lastSampleMillis;
+
+    private volatile long selectedBitrate;
+    private volatile boolean audioOnly;
+    @NonNull
+    private volatile BufferPolicy policy;
+
+    // statistics, guarded by this
+    private int rebufferCount;
+    private final ArrayDeque<Long> recentRebufferMillis = new ArrayDeque<>();
+    private final long[] bufferLevelSamples = new long[BUFFER_LEVEL_BUCKETS.length + 1];
+
+    public LoadController(@NonNull final Context context,
+                          @NonNull final BandwidthMeter bandwidthMeter) {
+        super();
+        this.bandwidthMeter = bandwidthMeter;
+        final ActivityManager activityManager =
+                ContextCompat.getSystemService(context, ActivityManager.class);
+        this.memoryClassMb = activityManager == null
+                ? LOW_RAM_MEMORY_CLASS_MB : activityManager.getMemoryClass();
+        this.backBufferDurationUs = Util.msToUs(BufferPolicy.backBufferMsOf(memoryClassMb));
+        this.policy = BufferPolicy.of(C.TIME_UNSET, Format.NO_VALUE, false, memoryClassMb, 0);
+    }
 
     @Override
     public void onPrepared() {
         preloadingEnabled = true;
+        isLoading = false;
+        isRebuffering = false;
         super.onPrepared();
     }
 
+    @Override
+    public void onTracksSelected(@NonNull final Renderer[] renderers,
+                                 @NonNull final TrackGroupArray trackGroups,
+                                 @NonNull final ExoTrackSelection[] trackSelections) {
+        super.onTracksSelected(renderers, trackGroups, trackSelections);
+
+        long bitrate = 0;
+        boolean hasVideo = false;
+        for (int i = 0; i < renderers.length; i++) {
+            final ExoTrackSelection selection = trackSelections[i];
+            if (selection == null) {
+                continue;
+            }
+            if (renderers[i].getTrackType() == C.TRACK_TYPE_VIDEO) {
+                hasVideo = true;
+            }
+            final int formatBitrate = selection.getSelectedFormat().bitrate;
+            if (formatBitrate != Format.NO_VALUE) {
+                bitrate += formatBitrate;
+            }
+        }
+        selectedBitrate = bitrate;
+        audioOnly = !hasVideo;
+        updatePolicy();
+    }
+
     @Override
     public void onStopped() {
         preloadingEnabled = true;
+        isLoading = false;
+        isRebuffering = false;
         super.onStopped();
     }
 
     @Override
     public void onReleased() {
         preloadingEnabled = true;
+        isLoading = false;
+        isRebuffering = false;
         super.onReleased();
     }
 
+    @Override
+    public long getBackBufferDurationUs() {
+        return backBufferDurationUs;
+    }
+
     @Override
     public boolean shouldContinueLoading(final long playbackPositionUs,
                                          final long bufferedDurationUs,
@@ -32,11 +137,142 @@ public class LoadController extends DefaultLoadControl {
         if (!preloadingEnabled) {
             return false;
         }
-        return super.shouldContinueLoading(
-                playbackPositionUs, bufferedDurationUs, playbackSpeed);
+
+        final long now = SystemClock.elapsedRealtime();
+        if (now - lastSampleMillis >= SAMPLE_INTERVAL_MILLIS) {
+            lastSampleMillis = now;
+            sampleBufferLevel(bufferedDurationUs);
+            updatePolicy();
+        }
+
+        // the same as DefaultLoadControl, but with the thresholds of the current policy
+        final BufferPolicy currentPolicy = policy;
+        final boolean targetBufferSizeReached =
+                getAllocator().getTotalBytesAllocated() >= currentPolicy.targetBufferBytes;
+        final long maxBufferUs = Util.msToUs(currentPolicy.maxBufferMs);
+        long minBufferUs = Util.msToUs(currentPolicy.minBufferMs);
+        if (playbackSpeed > 1) {
+            // the buffer is consumed faster, so a larger one is needed for the same duration
+            minBufferUs = Math.min(
+                    Util.getMediaDurationForPlayoutDuration(minBufferUs, playbackSpeed),
+                    maxBufferUs);
+        }
+        minBufferUs = Math.max(minBufferUs, MIN_BUFFER_US);
+
+        if (bufferedDurationUs < minBufferUs) {
+            isLoading = !targetBufferSizeReached;
+        } else if (bufferedDurationUs >= maxBufferUs || targetBufferSizeReached) {
+            isLoading = false;
+        }
+        return isLoading;
+    }
+
+    @Override
+    public boolean shouldStartPlayback(final long bufferedDurationUs,
+                                       final float playbackSpeed,
+                                       final boolean rebuffering,
+                                       final long targetLiveOffsetUs) {
+        if (rebuffering && !isRebuffering) {
+            isRebuffering = true;
+            onRebuffer(SystemClock.elapsedRealtime());
+        }
+
+        final BufferPolicy currentPolicy = policy;
+        final long playoutDurationUs =
+                Util.getPlayoutDurationForMediaDuration(bufferedDurationUs, playbackSpeed);
+        long minBufferUs = Util.msToUs(rebuffering
+                ? currentPolicy.bufferForPlaybackAfterRebufferMs
+                : currentPolicy.bufferForPlaybackMs);
+        if (targetLiveOffsetUs != C.TIME_UNSET) {
+            minBufferUs = Math.min(targetLiveOffsetUs / 2, minBufferUs);
+        }
+
+        final boolean shouldStart = minBufferUs <= 0
+                || playoutDurationUs >= minBufferUs
+                || getAllocator().getTotalBytesAllocated() >= currentPolicy.targetBufferBytes;
+        if (shouldStart) {
+            isRebuffering = false;
+        }
+        return shouldStart;
     }
 
     public void disablePreloadingOfCurrentTrack() {
         preloadingEnabled = false;
     }
+
+    private void updatePolicy() {
+        policy = BufferPolicy.of(bandwidthMeter.getBitrateEstimate(), selectedBitrate, audioOnly,
+                memoryClassMb, getRecentRebufferCount(SystemClock.elapsedRealtime()));
+        ((DefaultAllocator) getAllocator()).setTargetBufferSize(policy.targetBufferBytes);
+    }
+
+    private synchronized void onRebuffer(final long now) {
+        rebufferCount++;
+        recentRebufferMillis.addLast(now);
+        updatePolicy();
+    }
+
+    private synchronized int getRecentRebufferCount(final long now) {
+        while (!recentRebufferMillis.isEmpty()
+                && now - recentRebufferMillis.peekFirst() > REBUFFER_WINDOW_MILLIS) {
+            recentRebufferMillis.removeFirst();
+        }
+        return recentRebufferMillis.size();
+    }
+
+    private synchronized void sampleBufferLevel(final long bufferedDurationUs) {
+        final long bufferedSeconds = TimeUnit.MICROSECONDS.toSeconds(bufferedDurationUs);
+        int bucket = 0;
+        while (bucket < BUFFER_LEVEL_BUCKETS.length
+                && bufferedSeconds >= BUFFER_LEVEL_BUCKETS[bucket]) {
+            bucket++;
+        }
+        bufferLevelSamples[bucket]++;
+    }
+
+    /**
+     * @return a few lines describing the current buffer policy, the rebuffers, how full the
+     * buffer was while loading and the memory used, meant for developers and therefore not
+     * translated
+     */
+    @NonNull
+    public synchronized String getDebugInfo() {
+        final BufferPolicy currentPolicy = policy;
+        final StringBuilder info = new StringBuilder();
+        info.append(String.format(Locale.US,
+                "bandwidth %.2f Mbit/s, bitrate %.2f Mbit/s%s%n",
+                bandwidthMeter.getBitrateEstimate() / 1e6, selectedBitrate / 1e6,
+                audioOnly ? ", audio only" : ""));
+        info.append(String.format(Locale.US,
+                "buffer %d-%d s, back %d s, start after %.1f s (%.1f s after rebuffer)%n",
+                currentPolicy.minBufferMs / 1000, currentPolicy.maxBufferMs / 1000,
+                TimeUnit.MICROSECONDS.toSeconds(backBufferDurationUs),
+                currentPolicy.bufferForPlaybackMs / 1000.0,
+                currentPolicy.bufferForPlaybackAfterRebufferMs / 1000.0));
+        info.append(String.format(Locale.US, "rebuffers %d, %d in the last %d min%n",
+                rebufferCount, getRecentRebufferCount(SystemClock.elapsedRealtime()),
+                TimeUnit.MILLISECONDS.toMinutes(REBUFFER_WINDOW_MILLIS)));
+
+        long samples = 0;
+        for (final long count : bufferLevelSamples) {
+            samples += count;
+        }
+        info.append("buffered");
+        for (int i = 0; i < bufferLevelSamples.length; i++) {
+            final String bucket = i < BUFFER_LEVEL_BUCKETS.length
+                    ? "<" + BUFFER_LEVEL_BUCKETS[i] : ">=" + BUFFER_LEVEL_BUCKETS[i - 1];
+            info.append(String.format(Locale.US, " %ss %d%%", bucket,
+                    samples == 0 ? 0 : bufferLevelSamples[i] * 100 / samples));
+        }
+        info.append(String.format(Locale.US, "%n"));
+
+        final Runtime runtime = Runtime.getRuntime();
+        info.append(String.format(Locale.US,
+                "memory buffer %.1f/%.1f MiB, heap %.1f/%.1f MiB, class %d MB",
+                getAllocator().getTotalBytesAllocated() / (double) (1 << 20),
+                currentPolicy.targetBufferBytes / (double) (1 << 20),
+                (runtime.totalMemory() - runtime.freeMemory()) / (double) (1 << 20),
+                runtime.maxMemory() / (double) (1 << 20), memoryClassMb));
+        return info.toString();
+    }
 }
@@ -0,0 +1,213 @@
+package org.schabi.newpipe.player.helper;
+
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.collection.LruCache;
+
+import com.google.android.exoplayer2.source.dash.manifest.DashManifest;
+import com.google.android.exoplayer2.source.dash.manifest.DashManifestParser;
+import com.google.android.exoplayer2.source.hls.playlist.HlsPlaylist;
+import com.google.android.exoplayer2.source.hls.playlist.HlsPlaylistParser;
+import com.google.android.exoplayer2.upstream.ParsingLoadable;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import okhttp3.HttpUrl;
+import okio.ByteString;
+
+/**
+ * Memoizes the parsed DASH manifests and HLS playlists of the streams, so that replaying a
+ * stream, switching its quality or rebuilding its media source for another player type neither
+ * generates nor parses its manifest again.
+ *
+ * <p>Parsed manifests are kept in memory until the URL of their stream expires, see
+ * {@link #expireTimestampOf(String)}. Generated manifests are also written to disk once a
+ * {@link #setDiskCacheDirectory(File) directory} is set, so that they survive the death of the
+ * process; they only need to be parsed again then.</p>
+ */
+public final class ManifestCache {
+    private static final int MAX_MEMORY_ENTRIES = 32;
+    private static final long MAX_DISK_BYTES = 4 * 1024 * 1024;
+    /**
+     * The lifetime of the manifests of URLs without an {@code expire} parameter.
+     */
+    @VisibleForTesting
+    static final long DEFAULT_TTL_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private static final String DASH = "dash:";
+    private static final String HLS = "hls:";
+
+    private static final ManifestCache INSTANCE = new ManifestCache();
+
+    private final LruCache<String, Entry> parsedManifests = new LruCache<>(MAX_MEMORY_ENTRIES);
+    @Nullable
+    private volatile ManifestDiskCache diskCache;
+
+    @VisibleForTesting
+    ManifestCache() {
+    }
+
+    @NonNull
+    public static ManifestCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Enables the disk tier, which is disabled until this is called.
+     *
+     * @param directory the directory where the generated manifests are written
+     */
+    public void setDiskCacheDirectory(@NonNull final File directory) {
+        setDiskCache(new ManifestDiskCache(directory, MAX_DISK_BYTES,
+                Executors.newSingleThreadExecutor()));
+    }
+
+    @VisibleForTesting
+    void setDiskCache(@Nullable final ManifestDiskCache diskCache) {
+        this.diskCache = diskCache;
+    }
+
+    /**
+     * @param streamUrl the URL the manifest is generated from, which identifies it
+     * @param baseUrl   the URL the relative URLs of the manifest are resolved against
+     * @param generator generates the manifest, if it is neither in memory nor on disk
+     * @return the parsed manifest
+     * @throws IOException if the manifest could not be parsed
+     */
+    @NonNull
+    public DashManifest getGeneratedDashManifest(@NonNull final String streamUrl,
+                                                 @NonNull final String baseUrl,
+                                                 @NonNull final Supplier<String> generator)
+            throws IOException {
+        return get(DASH + baseUrl + " " + streamUrl, expireTimestampOf(streamUrl), baseUrl,
+                generator, true, new DashManifestParser());
+    }
+
+    /**
+     * @param manifest the DASH manifest given by the service
+     * @param baseUrl  the URL the relative URLs of the manifest are resolved against
+     * @return the parsed manifest
+     * @throws IOException if the manifest could not be parsed
+     */
+    @NonNull
+    public DashManifest getDashManifest(@NonNull final String manifest,
+                                        @NonNull final String baseUrl) throws IOException {
+        return get(DASH + baseUrl + " " + hashOf(manifest), defaultExpireTimestamp(), baseUrl,
+                () -> manifest, false, new DashManifestParser());
+    }
+
+    /**
+     * @param playlist the HLS playlist given by the service
+     * @param baseUrl  the URL the relative URLs of the playlist are resolved against
+     * @return the parsed playlist
+     * @throws IOException if the playlist could not be parsed
+     */
+    @NonNull
+    public HlsPlaylist getHlsPlaylist(@NonNull final String playlist,
+                                      @NonNull final String baseUrl) throws IOException {
+        return get(HLS + baseUrl + " " + hashOf(playlist), defaultExpireTimestamp(), baseUrl,
+                () -> playlist, false, new HlsPlaylistParser());
+    }
+
+    /**
+     * Drops the parsed manifests and the files of the disk tier.
+     */
+    public void clearCache() {
+        synchronized (parsedManifests) {
+            parsedManifests.evictAll();
+        }
+
+        final ManifestDiskCache disk = diskCache;
+        if (disk != null) {
+            disk.clear();
+        }
+    }
+
+    @NonNull
+    @SuppressWarnings("unchecked")
+    private <T> T get(@NonNull final String key,
+                      final long expireTimestamp,
+                      @NonNull final String baseUrl,
+                      @NonNull final Supplier<String> manifestSupplier,
+                      final boolean persist,
+                      @NonNull final ParsingLoadable.Parser<T> parser) throws IOException {
+        synchronized (parsedManifests) {
+            final Entry entry = parsedManifests.get(key);
+            if (entry != null) {
+                if (System.currentTimeMillis() < entry.expireTimestamp) {
+                    // the key starts with the type of the manifest
+                    return (T) entry.manifest;
+                }
+                parsedManifests.remove(key);
+            }
+        }
+
+        final ManifestDiskCache disk = persist ? diskCache : null;
+        String manifest = disk == null ? null : disk.get(key);
+        if (manifest == null) {
+            manifest = manifestSupplier.get();
+            if (disk != null) {
+                disk.put(key, manifest, expireTimestamp);
+            }
+        }
+
+        final T parsed = parser.parse(Uri.parse(baseUrl),
+                new ByteArrayInputStream(manifest.getBytes(StandardCharsets.UTF_8)));
+        synchronized (parsedManifests) {
+            parsedManifests.put(key, new Entry(parsed, expireTimestamp));
+        }
+        return parsed;
+    }
+
+    /**
+     * @param streamUrl a stream URL
+     * @return the time given by the {@code expire} parameter of the URL, in milliseconds, or
+     * {@link #DEFAULT_TTL_MILLIS} from now if it has none
+     */
+    @VisibleForTesting
+    static long expireTimestampOf(@NonNull final String streamUrl) {
+        final HttpUrl url = HttpUrl.parse(streamUrl);
+        final String expire = url == null ? null : url.queryParameter("expire");
+        if (expire != null) {
+            try {
+                return TimeUnit.SECONDS.toMillis(Long.parseLong(expire));
+            } catch (final NumberFormatException ignored) {
+                // use the default lifetime
+            }
+        }
+        return defaultExpireTimestamp();
+    }
+
+    private static long defaultExpireTimestamp() {
+        return System.currentTimeMillis() + DEFAULT_TTL_MILLIS;
+    }
+
+    /**
+     * Manifests given as content are identified by their hash, which is much cheaper to compute
+     * than parsing them.
+     */
+    @NonNull
+    private static String hashOf(@NonNull final String manifest) {
+        return ByteString.encodeUtf8(manifest).sha1().hex();
+    }
+
+    private static final class Entry {
+        @NonNull
+        final Object manifest;
+        final long expireTimestamp;
+
+        private Entry(@NonNull final Object manifest, final long expireTimestamp) {
+            this.manifest = manifest;
+            this.expireTimestamp = expireTimestamp;
+        }
+    }
+}
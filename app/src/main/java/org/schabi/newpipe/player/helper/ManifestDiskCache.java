@@ -0,0 +1,161 @@
+package org.schabi.newpipe.player.helper;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.Executor;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import okio.ByteString;
+
+/**
+ * The on-disk tier of the {@link ManifestCache}: every entry is a gzipped generated manifest
+ * preceded by its expiration time and its key, in a file named after the hash of the key.
+ * Manifests are repetitive XML documents, so they shrink to a fraction of their size.
+ *
+ * <p>Reads happen on the calling thread, writes and deletions on the given executor. Expired or
+ * unreadable entries are deleted when they are read, and the least recently used files are
+ * deleted when the directory grows over its size budget.</p>
+ */
+final class ManifestDiskCache {
+    private static final String TAG = ManifestDiskCache.class.getSimpleName();
+    /**
+     * Bumped whenever the format of the files changes, so that old files are ignored.
+     */
+    private static final int FORMAT_VERSION = 1;
+    private static final String FILE_SUFFIX = ".mpd.gz";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    @NonNull
+    private final File directory;
+    private final long maxSizeBytes;
+    @NonNull
+    private final Executor executor;
+
+    ManifestDiskCache(@NonNull final File directory, final long maxSizeBytes,
+                      @NonNull final Executor executor) {
+        this.directory = directory;
+        this.maxSizeBytes = maxSizeBytes;
+        this.executor = executor;
+    }
+
+    /**
+     * @param key the key the manifest was {@link #put(String, String, long) put} with
+     * @return the manifest, or {@code null} if there is none or it expired
+     */
+    @Nullable
+    String get(@NonNull final String key) {
+        final File file = fileOf(key);
+        if (!file.exists()) {
+            return null;
+        }
+
+        try (DataInputStream input = new DataInputStream(new GZIPInputStream(
+                new BufferedInputStream(new FileInputStream(file))))) {
+            final int version = input.readInt();
+            final long expireTimestamp = input.readLong();
+            if (version != FORMAT_VERSION || System.currentTimeMillis() > expireTimestamp
+                    || !key.equals(input.readUTF())) {
+                delete(file);
+                return null;
+            }
+            final byte[] manifest = new byte[input.readInt()];
+            input.readFully(manifest);
+            // the files used least recently are deleted first
+            //noinspection ResultOfMethodCallIgnored
+            file.setLastModified(System.currentTimeMillis());
+            return new String(manifest, StandardCharsets.UTF_8);
+        } catch (final IOException | NegativeArraySizeException e) {
+            // written by an older version of the app or by a write that didn't complete
+            Log.w(TAG, "Could not read cached manifest, deleting it: " + file.getName(), e);
+            delete(file);
+            return null;
+        }
+    }
+
+    void put(@NonNull final String key, @NonNull final String manifest,
+             final long expireTimestamp) {
+        executor.execute(() -> {
+            final File file = fileOf(key);
+            final File tempFile = new File(directory, file.getName() + TEMP_SUFFIX);
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                Log.w(TAG, "Could not create the cache directory " + directory);
+                return;
+            }
+
+            final byte[] bytes = manifest.getBytes(StandardCharsets.UTF_8);
+            try (DataOutputStream output = new DataOutputStream(new GZIPOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tempFile))))) {
+                output.writeInt(FORMAT_VERSION);
+                output.writeLong(expireTimestamp);
+                output.writeUTF(key);
+                output.writeInt(bytes.length);
+                output.write(bytes);
+            } catch (final IOException e) {
+                Log.w(TAG, "Could not write manifest to the cache: " + key, e);
+                delete(tempFile);
+                return;
+            }
+
+            if (!tempFile.renameTo(file)) {
+                delete(tempFile);
+                return;
+            }
+            trimToSize(maxSizeBytes);
+        });
+    }
+
+    void clear() {
+        executor.execute(() -> trimToSize(0));
+    }
+
+    private void trimToSize(final long sizeBytes) {
+        final File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        long totalSize = 0;
+        for (final File file : files) {
+            totalSize += file.length();
+        }
+        if (totalSize <= sizeBytes) {
+            return;
+        }
+
+        // the least recently used first
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (final File file : files) {
+            if (totalSize <= sizeBytes) {
+                break;
+            }
+            final long length = file.length();
+            if (delete(file)) {
+                totalSize -= length;
+            }
+        }
+    }
+
+    @NonNull
+    private File fileOf(@NonNull final String key) {
+        return new File(directory, ByteString.encodeUtf8(key).sha1().hex() + FILE_SUFFIX);
+    }
+
+    private static boolean delete(@NonNull final File file) {
+        return file.delete() || !file.exists();
+    }
+}
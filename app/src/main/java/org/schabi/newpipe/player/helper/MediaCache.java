@@ -0,0 +1,191 @@
+package org.schabi.newpipe.player.helper;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.database.StandaloneDatabaseProvider;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSource;
+import com.google.android.exoplayer2.upstream.cache.SimpleCache;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The cache shared by all the players, see {@link CacheFactory}.
+ *
+ * <p>Its size is a user preference, see {@link PlayerHelper#getPreferredCacheSize(Context)}, and
+ * the stream being played and the beginning of the queued and recently watched streams are
+ * evicted last, see {@link MediaCacheEvictor}. It also counts the bytes read from the cache and
+ * from the network.</p>
+ */
+public final class MediaCache {
+    private static final String TAG = MediaCache.class.getSimpleName();
+
+    private static final String CACHE_FOLDER_NAME = "exoplayer";
+    private static final MediaCache INSTANCE = new MediaCache();
+
+    private final MediaCacheEvictor evictor = new MediaCacheEvictor(Long.MAX_VALUE);
+    @Nullable
+    private SimpleCache cache;
+
+    private final AtomicLong cachedBytesRead = new AtomicLong();
+    private final AtomicLong networkBytesRead = new AtomicLong();
+
+    private final CacheDataSource.EventListener eventListener =
+            new CacheDataSource.EventListener() {
+                @Override
+                public void onCachedBytesRead(final long cacheSizeBytes,
+                                              final long bytesRead) {
+                    cachedBytesRead.addAndGet(bytesRead);
+                }
+
+                @Override
+                public void onCacheIgnored(final int reason) {
+                    // the bytes are then counted as network bytes
+                }
+            };
+
+    private final TransferListener networkTransferListener = new TransferListener() {
+        @Override
+        public void onTransferInitializing(@NonNull final DataSource source,
+                                           @NonNull final DataSpec dataSpec,
+                                           final boolean isNetwork) {
+            // only the bytes are counted
+        }
+
+        @Override
+        public void onTransferStart(@NonNull final DataSource source,
+                                    @NonNull final DataSpec dataSpec,
+                                    final boolean isNetwork) {
+            // only the bytes are counted
+        }
+
+        @Override
+        public void onBytesTransferred(@NonNull final DataSource source,
+                                       @NonNull final DataSpec dataSpec,
+                                       final boolean isNetwork,
+                                       final int bytesTransferred) {
+            if (isNetwork) {
+                networkBytesRead.addAndGet(bytesTransferred);
+            }
+        }
+
+        @Override
+        public void onTransferEnd(@NonNull final DataSource source,
+                                  @NonNull final DataSpec dataSpec,
+                                  final boolean isNetwork) {
+            // only the bytes are counted
+        }
+    };
+
+    private MediaCache() {
+    }
+
+    @NonNull
+    public static MediaCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param context a context, to read the preferred size and to create the cache on first use
+     * @return the cache, sized as the user prefers
+     */
+    @NonNull
+    synchronized SimpleCache getCache(@NonNull final Context context) {
+        evictor.setMaxBytes(PlayerHelper.getPreferredCacheSize(context));
+        if (cache != null) {
+            return cache;
+        }
+
+        final File cacheDir = new File(context.getExternalCacheDir(), CACHE_FOLDER_NAME);
+        if (!cacheDir.exists()) {
+            //noinspection ResultOfMethodCallIgnored
+            cacheDir.mkdir();
+        }
+
+        try {
+            cache = new SimpleCache(cacheDir, evictor, new StandaloneDatabaseProvider(context));
+            Log.d(TAG, "initExoPlayerCache: cacheDir = " + cacheDir.getAbsolutePath());
+        } catch (Exception e) {
+            clearCacheFolderLock(cacheDir);
+            cache = new SimpleCache(cacheDir, evictor, new StandaloneDatabaseProvider(context));
+        }
+        return cache;
+    }
+
+    @NonNull
+    CacheDataSource.EventListener getEventListener() {
+        return eventListener;
+    }
+
+    /**
+     * @return a listener to add to the upstream data sources of the cache, counting the bytes
+     * they read from the network
+     */
+    @NonNull
+    TransferListener getNetworkTransferListener() {
+        return networkTransferListener;
+    }
+
+    /**
+     * Keeps the media of a stream in the cache as long as there is other media to evict.
+     *
+     * @param streamUrl the URL of the stream being played, or {@code null} if none is
+     */
+    public void pin(@Nullable final String streamUrl) {
+        evictor.setPinnedStream(streamUrl);
+    }
+
+    /**
+     * Keeps the beginning of the given streams in the cache longer than other media.
+     *
+     * @param streamUrls the URLs of the upcoming streams of the play queue
+     */
+    public void setQueuedStreams(@NonNull final Collection<String> streamUrls) {
+        evictor.setQueuedStreams(streamUrls);
+    }
+
+    /**
+     * @return the number of bytes read from the cache since the app started, which did not have
+     * to be loaded again
+     */
+    public long getCachedBytesRead() {
+        return cachedBytesRead.get();
+    }
+
+    /**
+     * @return the number of bytes the cached data sources read from the network since the app
+     * started
+     */
+    public long getNetworkBytesRead() {
+        return networkBytesRead.get();
+    }
+
+    /**
+     * @return the share of the bytes read from the cache, between 0 and 1, or -1 if nothing was
+     * read yet
+     */
+    public double getHitRate() {
+        final long cached = getCachedBytesRead();
+        final long total = cached + getNetworkBytesRead();
+        return total == 0 ? -1 : (double) cached / total;
+    }
+
+    private static void clearCacheFolderLock(File cacheDir) {
+        try {
+            Method method = SimpleCache.class.getDeclaredMethod("unlockFolder", File.class);
+            method.setAccessible(true);
+            method.invoke(null, cacheDir);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
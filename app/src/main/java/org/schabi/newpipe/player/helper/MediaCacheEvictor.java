@@ -0,0 +1,325 @@
+package org.schabi.newpipe.player.helper;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.collection.LruCache;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.cache.Cache;
+import com.google.android.exoplayer2.upstream.cache.CacheEvictor;
+import com.google.android.exoplayer2.upstream.cache.CacheSpan;
+
+import org.schabi.newpipe.extractor.NewPipe;
+import org.schabi.newpipe.extractor.ServiceList;
+import org.schabi.newpipe.extractor.StreamingService;
+import org.schabi.newpipe.extractor.exceptions.ExtractionException;
+import org.schabi.newpipe.extractor.linkhandler.LinkHandlerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import okhttp3.HttpUrl;
+
+/**
+ * Evicts the spans of the media cache once it exceeds its size, in this order:
+ * <ol>
+ *     <li>ordinary spans;</li>
+ *     <li>the first {@link #HEAD_BYTES} of the streams in the play queue and of the streams
+ *     watched last, so that they start without buffering;</li>
+ *     <li>the spans of the pinned stream, the one being played.</li>
+ * </ol>
+ * Within a group, spans are taken from the partition using the most space, and the least
+ * recently used span of the partition goes first. Partitions are per service: the service of the
+ * stream page for the spans with a {@link PlayerHelper#cacheKeyOf custom cache key}, which start
+ * with the stream URL, and the service of the media host for the others.
+ *
+ * <p>Stream URLs are normalized with the link handler of their service before they are compared,
+ * since the URLs of the play queue and of the extracted streams may differ.</p>
+ */
+final class MediaCacheEvictor implements CacheEvictor {
+    /**
+     * The size of the first file of a stream in the cache, see
+     * {@link PlayerHelper#getPreferredFileSize()}.
+     */
+    @VisibleForTesting
+    static final long HEAD_BYTES = 2 * 1024 * 1024;
+    @VisibleForTesting
+    static final int RECENT_STREAM_COUNT = 8;
+
+    private static final int ORDINARY = 0;
+    private static final int HEAD = 1;
+    private static final int PINNED = 2;
+
+    /**
+     * The hosts serving the media of a service from another domain than its stream pages.
+     */
+    private static final Map<String, StreamingService> MEDIA_HOSTS =
+            Collections.singletonMap("googlevideo.com", ServiceList.YouTube);
+
+    private final Map<String, Partition> partitions = new HashMap<>();
+    /**
+     * The parsed cache keys, since a span is added, touched and removed with the same key.
+     */
+    private final LruCache<String, ParsedKey> parsedKeys = new LruCache<>(64);
+    private long maxBytes;
+    private long currentSize;
+
+    @Nullable
+    private String pinnedStreamUrl;
+    private Set<String> queuedStreamUrls = Collections.emptySet();
+    private final ArrayDeque<String> recentStreamUrls = new ArrayDeque<>();
+
+    MediaCacheEvictor(final long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @param newMaxBytes the new size of the cache, applied when the next file is written
+     */
+    synchronized void setMaxBytes(final long newMaxBytes) {
+        maxBytes = newMaxBytes;
+    }
+
+    /**
+     * @param streamUrl the URL of the stream to keep, or {@code null} to keep none. The
+     *                  previously pinned stream becomes a recently watched one.
+     */
+    synchronized void setPinnedStream(@Nullable final String streamUrl) {
+        final String normalizedUrl = streamUrl == null ? null : normalize(streamUrl);
+        if (pinnedStreamUrl != null && !pinnedStreamUrl.equals(normalizedUrl)) {
+            recentStreamUrls.remove(pinnedStreamUrl);
+            recentStreamUrls.addFirst(pinnedStreamUrl);
+            while (recentStreamUrls.size() > RECENT_STREAM_COUNT) {
+                recentStreamUrls.removeLast();
+            }
+        }
+        pinnedStreamUrl = normalizedUrl;
+    }
+
+    /**
+     * @param streamUrls the URLs of the streams in the play queue
+     */
+    synchronized void setQueuedStreams(@NonNull final Collection<String> streamUrls) {
+        final Set<String> normalizedUrls = new HashSet<>();
+        for (final String streamUrl : streamUrls) {
+            normalizedUrls.add(normalize(streamUrl));
+        }
+        queuedStreamUrls = normalizedUrls;
+    }
+
+    @Override
+    public boolean requiresCacheSpanTouches() {
+        return true;
+    }
+
+    @Override
+    public void onCacheInitialized() {
+        // do nothing
+    }
+
+    @Override
+    public synchronized void onStartFile(@NonNull final Cache cache, @NonNull final String key,
+                                         final long position, final long length) {
+        if (length != C.LENGTH_UNSET) {
+            evictCache(cache, length);
+        }
+    }
+
+    @Override
+    public synchronized void onSpanAdded(@NonNull final Cache cache,
+                                         @NonNull final CacheSpan span) {
+        final String partitionName = parse(span.key).partition;
+        Partition partition = partitions.get(partitionName);
+        if (partition == null) {
+            partition = new Partition();
+            partitions.put(partitionName, partition);
+        }
+        partition.spans.add(span);
+        partition.bytes += span.length;
+        currentSize += span.length;
+        evictCache(cache, 0);
+    }
+
+    @Override
+    public synchronized void onSpanRemoved(@NonNull final Cache cache,
+                                           @NonNull final CacheSpan span) {
+        final String partitionName = parse(span.key).partition;
+        final Partition partition = partitions.get(partitionName);
+        if (partition == null || !partition.spans.remove(span)) {
+            return;
+        }
+        partition.bytes -= span.length;
+        currentSize -= span.length;
+        if (partition.spans.isEmpty()) {
+            partitions.remove(partitionName);
+        }
+    }
+
+    @Override
+    public synchronized void onSpanTouched(@NonNull final Cache cache,
+                                           @NonNull final CacheSpan oldSpan,
+                                           @NonNull final CacheSpan newSpan) {
+        onSpanRemoved(cache, oldSpan);
+        onSpanAdded(cache, newSpan);
+    }
+
+    @VisibleForTesting
+    synchronized long getCurrentSize() {
+        return currentSize;
+    }
+
+    private void evictCache(@NonNull final Cache cache, final long requiredSpace) {
+        while (currentSize + requiredSpace > maxBytes) {
+            final CacheSpan victim = findVictim();
+            if (victim == null) {
+                return;
+            }
+            cache.removeSpan(victim);
+        }
+    }
+
+    @Nullable
+    private CacheSpan findVictim() {
+        for (int priority = ORDINARY; priority <= PINNED; priority++) {
+            CacheSpan victim = null;
+            long victimPartitionBytes = -1;
+            for (final Partition partition : partitions.values()) {
+                if (partition.bytes <= victimPartitionBytes) {
+                    continue;
+                }
+                for (final CacheSpan span : partition.spans) {
+                    if (priorityOf(span) == priority) {
+                        victim = span;
+                        victimPartitionBytes = partition.bytes;
+                        break;
+                    }
+                }
+            }
+            if (victim != null) {
+                return victim;
+            }
+        }
+        return null;
+    }
+
+    private int priorityOf(@NonNull final CacheSpan span) {
+        final String streamUrl = parse(span.key).streamUrl;
+        if (streamUrl == null) {
+            return ORDINARY;
+        } else if (streamUrl.equals(pinnedStreamUrl)) {
+            return PINNED;
+        } else if (span.position < HEAD_BYTES && (queuedStreamUrls.contains(streamUrl)
+                || recentStreamUrls.contains(streamUrl))) {
+            return HEAD;
+        }
+        return ORDINARY;
+    }
+
+    @NonNull
+    private ParsedKey parse(@NonNull final String key) {
+        ParsedKey parsedKey = parsedKeys.get(key);
+        if (parsedKey == null) {
+            final String streamUrl = streamUrlOf(key);
+            parsedKey = new ParsedKey(streamUrl == null ? null : normalize(streamUrl),
+                    partitionOf(key));
+            parsedKeys.put(key, parsedKey);
+        }
+        return parsedKey;
+    }
+
+    /**
+     * @param key a cache key
+     * @return the URL of the stream page the key starts with, if it is a custom cache key, or
+     * {@code null}
+     */
+    @Nullable
+    @VisibleForTesting
+    static String streamUrlOf(@NonNull final String key) {
+        final int separator = key.indexOf(' ');
+        return separator > 0 ? key.substring(0, separator) : null;
+    }
+
+    /**
+     * @param streamUrl the URL of a stream page
+     * @return the URL the link handler of its service gives for the stream, or the URL itself if
+     * no service handles it
+     */
+    @NonNull
+    @VisibleForTesting
+    static String normalize(@NonNull final String streamUrl) {
+        try {
+            final LinkHandlerFactory factory =
+                    NewPipe.getServiceByUrl(streamUrl).getStreamLHFactory();
+            if (factory != null && factory.acceptUrl(streamUrl)) {
+                return factory.fromUrl(streamUrl).getUrl();
+            }
+        } catch (final ExtractionException ignored) {
+            // not a stream of a known service
+        }
+        return streamUrl;
+    }
+
+    /**
+     * @param key a cache key
+     * @return the name of the service of the stream page or of the media host, or the domain of
+     * the host if no service is known for it
+     */
+    @NonNull
+    @VisibleForTesting
+    static String partitionOf(@NonNull final String key) {
+        final String streamUrl = streamUrlOf(key);
+        final String urlString = streamUrl != null ? streamUrl : key;
+        final HttpUrl url = HttpUrl.parse(urlString);
+        if (url == null) {
+            return "";
+        }
+
+        // the last two labels, e.g. googlevideo.com for rr1---sn-abc.googlevideo.com
+        final String host = url.host();
+        final int lastDot = host.lastIndexOf('.');
+        final int domainStart = lastDot <= 0 ? 0 : host.lastIndexOf('.', lastDot - 1) + 1;
+        final String domain = host.substring(domainStart);
+
+        StreamingService service = MEDIA_HOSTS.get(domain);
+        if (service == null) {
+            try {
+                service = NewPipe.getServiceByUrl(urlString);
+            } catch (final ExtractionException e) {
+                return domain;
+            }
+        }
+        return service.getServiceInfo().getName();
+    }
+
+    private static final class ParsedKey {
+        @Nullable
+        final String streamUrl;
+        @NonNull
+        final String partition;
+
+        ParsedKey(@Nullable final String streamUrl, @NonNull final String partition) {
+            this.streamUrl = streamUrl;
+            this.partition = partition;
+        }
+    }
+
+    private static final class Partition {
+        /**
+         * The spans, least recently used first.
+         */
+        final TreeSet<CacheSpan> spans = new TreeSet<>((lhs, rhs) -> {
+            if (lhs.lastTouchTimestamp == rhs.lastTouchTimestamp) {
+                return lhs.compareTo(rhs);
+            }
+            return lhs.lastTouchTimestamp < rhs.lastTouchTimestamp ? -1 : 1;
+        });
+        long bytes;
+    }
+}
@@ -78,6 +78,7 @@ public class PlayerDataSource {
     private final DataSource.Factory biliCachelessDataSourceFactory;
     private final TransferListener transferListener;
     private final Context context;
+    private final String userAgent;
 
     private NicoWebSocketClient nicoWebSocketClient;
 
@@ -92,6 +93,7 @@ public class PlayerDataSource {
                 .setTransferListener(transferListener);
 
         this.context = context;
+        this.userAgent = userAgent;
         this.transferListener = transferListener;
 
         YoutubeProgressiveDashManifestCreator.getCache().setMaximumSize(
@@ -158,6 +160,26 @@ public class PlayerDataSource {
         return new SingleSampleMediaSource.Factory(cacheDataSourceFactoryBuilder.build());
     }
 
+    /**
+     * Creates a data source writing to the same cache as the media sources of the service, to
+     * load media ahead of its playback.
+     *
+     * @param serviceId the service of the media
+     * @return a data source using the request parameters the service expects
+     */
+    @NonNull
+    public CacheDataSource createPrefetchDataSource(final int serviceId) {
+        // a new builder, as the shared one keeps the upstream of the last media source created
+        final CacheFactory.Builder builder = new CacheFactory.Builder(context, userAgent,
+                transferListener);
+        if (serviceId == ServiceList.YouTube.getServiceId()) {
+            builder.setUpstreamDataSourceFactory(getYoutubeHttpDataSourceFactory(true, true));
+        } else if (serviceId == ServiceList.BiliBili.getServiceId()) {
+            builder.setUpstreamDataSourceFactory(biliCachelessDataSourceFactory);
+        }
+        return builder.build().createDataSource();
+    }
+
     @NonNull
     private DefaultDashChunkSource.Factory getDefaultDashChunkSourceFactory(
             final DataSource.Factory dataSourceFactory) {
@@ -198,7 +220,12 @@ public class PlayerDataSource {
     // NicoNicoMediaSourceFactories
     public String getNicoLiveUrl(String url) throws ParsingException, IOException, ReCaptchaException, JsonParserException {
         DownloaderImpl downloader = DownloaderImpl.getInstance();
-        Document liveResponse = Jsoup.parse(downloader.get(url).responseBody());
+        final Document liveResponse;
+        try (DownloaderImpl.StreamingResponse response = downloader.getStreaming(url)) {
+            // the watch page is large, parse it while it is downloaded instead of buffering it
+            liveResponse = Jsoup.parse(response.stream(), StandardCharsets.UTF_8.name(),
+                    response.latestUrl());
+        }
         String result = JsonParser.object().from(liveResponse
                         .select("script#embedded-data").attr("data-props"))
                 .getObject("site").getObject("relive").getString("webSocketUrl");
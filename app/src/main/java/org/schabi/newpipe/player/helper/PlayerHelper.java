@@ -392,8 +392,10 @@ public final class PlayerHelper {
         return isUsingInexactSeek(context) ? SeekParameters.CLOSEST_SYNC : SeekParameters.EXACT;
     }
 
-    public static long getPreferredCacheSize() {
-        return 64 * 1024 * 1024L;
+    public static long getPreferredCacheSize(@NonNull final Context context) {
+        return Long.parseLong(getPreferences(context).getString(
+                context.getString(R.string.media_cache_size_key),
+                context.getString(R.string.media_cache_size_default_value))) * 1024 * 1024L;
     }
 
     public static long getPreferredFileSize() {
@@ -500,6 +502,16 @@ public final class PlayerHelper {
         return Integer.parseInt(preferredIntervalBytes) * 1024;
     }
 
+    /**
+     * @param context the context to read the preference with
+     * @return how many items after the current one should be loaded in advance
+     */
+    public static int getPrefetchItemCount(@NonNull final Context context) {
+        return Integer.parseInt(getPreferences(context).getString(
+                context.getString(R.string.prefetch_queue_items_key),
+                context.getString(R.string.prefetch_queue_items_default_value)));
+    }
+
     ////////////////////////////////////////////////////////////////////////////
     // Private helpers
     ////////////////////////////////////////////////////////////////////////////
@@ -13,6 +13,7 @@ import com.google.android.exoplayer2.source.MediaSource;
 import org.reactivestreams.Subscriber;
 import org.reactivestreams.Subscription;
 import org.schabi.newpipe.extractor.exceptions.ExtractionException;
+import org.schabi.newpipe.player.helper.PlayerDataSource;
 import org.schabi.newpipe.player.mediaitem.MediaItemTag;
 import org.schabi.newpipe.player.mediasource.FailedMediaSource;
 import org.schabi.newpipe.player.mediasource.LoadedMediaSource;
@@ -29,6 +30,7 @@ import org.schabi.newpipe.util.ServiceHelper;
 import java.io.UnsupportedEncodingException;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -127,12 +129,18 @@ public class MediaSourceManager {
     @NonNull
     private ManagedMediaSourcePlaylist playlist;
 
+    @NonNull
+    private final MediaSourcePrefetcher prefetcher;
+    @Nullable
+    private PlayQueueItem currentItem;
+
     private final Handler removeMediaSourceHandler = new Handler();
 
     public MediaSourceManager(@NonNull final Context context,
                               @NonNull final PlaybackListener listener,
-                              @NonNull final PlayQueue playQueue) {
-        this(context, listener, playQueue, 400L,
+                              @NonNull final PlayQueue playQueue,
+                              @NonNull final PlayerDataSource dataSource) {
+        this(context, listener, playQueue, dataSource, 400L,
                 /*playbackNearEndGapMillis=*/TimeUnit.MILLISECONDS.convert(30, TimeUnit.SECONDS),
                 /*progressUpdateIntervalMillis*/TimeUnit.MILLISECONDS.convert(2, TimeUnit.SECONDS));
     }
@@ -140,6 +148,7 @@ public class MediaSourceManager {
     private MediaSourceManager(@NonNull final Context context,
                                @NonNull final PlaybackListener listener,
                                @NonNull final PlayQueue playQueue,
+                               @NonNull final PlayerDataSource dataSource,
                                final long loadDebounceMillis,
                                final long playbackNearEndGapMillis,
                                final long progressUpdateIntervalMillis) {
@@ -173,6 +182,8 @@ public class MediaSourceManager {
 
         this.loadingItems = Collections.synchronizedSet(new ArraySet<>());
 
+        this.prefetcher = new MediaSourcePrefetcher(context, listener, dataSource);
+
         playQueue.getBroadcastReceiver()
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(getReactor());
@@ -195,6 +206,15 @@ public class MediaSourceManager {
 
         playQueueReactor.cancel();
         loaderReactor.dispose();
+        prefetcher.dispose();
+    }
+
+    /**
+     * Reports that the first frame of the current item was rendered, or that the item is ready
+     * if it is played without video.
+     */
+    public void onFirstFrameRendered() {
+        prefetcher.onFirstFrameRendered();
     }
 
     /*//////////////////////////////////////////////////////////////////////////
@@ -401,6 +421,12 @@ public class MediaSourceManager {
         for (final PlayQueueItem item : itemsToLoad.neighbors) {
             maybeLoadItem(item);
         }
+
+        if (itemsToLoad.center != currentItem) {
+            currentItem = itemsToLoad.center;
+            prefetcher.onItemStarted(currentItem);
+        }
+        prefetcher.prefetch(getUpcomingItems(playQueue));
     }
 
     private void maybeLoadItem(@NonNull final PlayQueueItem item) {
@@ -592,6 +618,12 @@ public class MediaSourceManager {
         return new ItemsToLoad(currentItem, neighbors);
     }
 
+    @NonNull
+    private static List<PlayQueueItem> getUpcomingItems(@NonNull final PlayQueue playQueue) {
+        final int nextIndex = Math.min(playQueue.getIndex() + 1, playQueue.size());
+        return playQueue.getStreams().subList(nextIndex, playQueue.size());
+    }
+
     private static class ItemsToLoad {
         @NonNull
         private final PlayQueueItem center;
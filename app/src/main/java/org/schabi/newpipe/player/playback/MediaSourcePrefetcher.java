@@ -0,0 +1,317 @@
+package org.schabi.newpipe.player.playback;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.Uri;
+import android.os.BatteryManager;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
+
+import com.google.android.exoplayer2.MediaItem;
+import com.google.android.exoplayer2.source.MediaSource;
+import com.google.android.exoplayer2.source.dash.DashMediaSource;
+import com.google.android.exoplayer2.source.hls.HlsMediaSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.cache.CacheWriter;
+
+import org.schabi.newpipe.extractor.stream.StreamInfo;
+import org.schabi.newpipe.extractor.stream.StreamType;
+import org.schabi.newpipe.player.helper.MediaCache;
+import org.schabi.newpipe.player.helper.PlayerDataSource;
+import org.schabi.newpipe.player.helper.PlayerHelper;
+import org.schabi.newpipe.player.playqueue.PlayQueueItem;
+import org.schabi.newpipe.util.ExtractorHelper;
+import org.schabi.newpipe.util.ListHelper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
+import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+
+import static org.schabi.newpipe.player.playqueue.PlayQueue.DEBUG;
+
+/**
+ * Loads the upcoming items of the play queue ahead of their playback: their stream infos are
+ * put in the {@link org.schabi.newpipe.util.InfoCache InfoCache} and, on unmetered networks,
+ * the first seconds of their media (or their manifest) are written to the player cache. The
+ * {@link MediaCache} is told which streams are playing and upcoming, to keep them longer.
+ * <p>
+ * How far it goes depends on the user preference and on the state of the device, see
+ * {@link PrefetchPolicy}. All methods have to be called from the main thread.
+ * </p>
+ */
+public class MediaSourcePrefetcher {
+    private static final String TAG = MediaSourcePrefetcher.class.getSimpleName();
+
+    /**
+     * A rough bitrate (512 kbit/s) used to turn the seconds of media to prefetch into bytes.
+     */
+    private static final long ASSUMED_BYTES_PER_SECOND = 64 * 1024;
+    /**
+     * The number of upcoming items whose beginning is kept longer in the player cache.
+     */
+    private static final int QUEUED_STREAMS_KEPT_IN_CACHE = 5;
+
+    private static final AtomicLong PREFETCHED_STARTS = new AtomicLong();
+    private static final AtomicLong PREFETCHED_STARTS_TOTAL_MILLIS = new AtomicLong();
+    private static final AtomicLong COLD_STARTS = new AtomicLong();
+    private static final AtomicLong COLD_STARTS_TOTAL_MILLIS = new AtomicLong();
+
+    @NonNull
+    private final Context context;
+    @NonNull
+    private final PlaybackListener playbackListener;
+    @NonNull
+    private final PlayerDataSource dataSource;
+
+    private final Map<PlayQueueItem, Disposable> loaders = new HashMap<>();
+    /**
+     * The upcoming items whose prefetch ended, and whether it succeeded.
+     */
+    private final Map<PlayQueueItem, Boolean> finishedItems = new HashMap<>();
+
+    @Nullable
+    private PlayQueueItem startingItem;
+    private boolean isStartingItemPrefetched;
+    private long startingItemTime;
+
+    public MediaSourcePrefetcher(@NonNull final Context context,
+                                 @NonNull final PlaybackListener playbackListener,
+                                 @NonNull final PlayerDataSource dataSource) {
+        this.context = context;
+        this.playbackListener = playbackListener;
+        this.dataSource = dataSource;
+    }
+
+    /*//////////////////////////////////////////////////////////////////////////
+    // Prefetching
+    //////////////////////////////////////////////////////////////////////////*/
+
+    /**
+     * Starts prefetching the given items, as far as the current {@link PrefetchPolicy} allows,
+     * and cancels the prefetch of the items which are not upcoming anymore.
+     *
+     * @param upcomingItems the items after the current one, in playback order
+     */
+    public void prefetch(@NonNull final List<PlayQueueItem> upcomingItems) {
+        final List<String> queuedStreamUrls = new ArrayList<>();
+        for (final PlayQueueItem item : upcomingItems.subList(0,
+                Math.min(upcomingItems.size(), QUEUED_STREAMS_KEPT_IN_CACHE))) {
+            queuedStreamUrls.add(item.getUrl());
+        }
+        MediaCache.getInstance().setQueuedStreams(queuedStreamUrls);
+
+        final PrefetchPolicy policy = getPolicy();
+        final List<PlayQueueItem> items = upcomingItems.subList(0,
+                Math.min(upcomingItems.size(), policy.getItemCount()));
+
+        final Iterator<Map.Entry<PlayQueueItem, Disposable>> iterator =
+                loaders.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<PlayQueueItem, Disposable> entry = iterator.next();
+            if (!items.contains(entry.getKey())) {
+                entry.getValue().dispose();
+                iterator.remove();
+            }
+        }
+        finishedItems.keySet().retainAll(items);
+
+        for (final PlayQueueItem item : items) {
+            if (!loaders.containsKey(item) && !finishedItems.containsKey(item)) {
+                if (DEBUG) {
+                    Log.d(TAG, "Prefetching=[" + item.getTitle() + "] "
+                            + "with url=[" + item.getUrl() + "]");
+                }
+                loaders.put(item, load(item, policy.getMediaSeconds()));
+            }
+        }
+    }
+
+    public void dispose() {
+        for (final Disposable loader : loaders.values()) {
+            loader.dispose();
+        }
+        loaders.clear();
+        finishedItems.clear();
+        MediaCache.getInstance().pin(null);
+    }
+
+    @NonNull
+    private Disposable load(@NonNull final PlayQueueItem item, final int mediaSeconds) {
+        return ExtractorHelper.getStreamInfo(item.getServiceId(), item.getUrl(), false)
+                .flatMapCompletable(info -> mediaSeconds > 0
+                        ? cacheMedia(item, info, mediaSeconds) : Completable.complete())
+                .subscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(() -> onLoadFinished(item, true), throwable -> {
+                    if (DEBUG) {
+                        Log.d(TAG, "Could not prefetch url=[" + item.getUrl() + "]", throwable);
+                    }
+                    onLoadFinished(item, false);
+                });
+    }
+
+    private void onLoadFinished(@NonNull final PlayQueueItem item, final boolean succeeded) {
+        // the item may have become current or been removed from the queue in the meantime
+        if (loaders.remove(item) != null) {
+            finishedItems.put(item, succeeded);
+        }
+    }
+
+    @NonNull
+    private Completable cacheMedia(@NonNull final PlayQueueItem item,
+                                   @NonNull final StreamInfo info, final int mediaSeconds) {
+        if (info.getStreamType() == StreamType.LIVE_STREAM
+                || info.getStreamType() == StreamType.AUDIO_LIVE_STREAM) {
+            return Completable.complete();
+        }
+
+        // e.g. the video and the audio of a stream whose audio is separate
+        final List<Completable> writers = new ArrayList<>();
+        for (final MediaSource source : playbackListener.prefetchSourcesOf(item, info)) {
+            final Completable writer = cacheSource(item, source, mediaSeconds);
+            if (writer != null) {
+                writers.add(writer);
+            }
+        }
+        return Completable.concat(writers);
+    }
+
+    @Nullable
+    private Completable cacheSource(@NonNull final PlayQueueItem item,
+                                    @NonNull final MediaSource source, final int mediaSeconds) {
+        final MediaItem.LocalConfiguration localConfiguration =
+                source.getMediaItem().localConfiguration;
+        if (localConfiguration == null || !isHttp(localConfiguration.uri)) {
+            return null;
+        }
+
+        // Progressive sources read their media with the custom cache key, while the chunks and
+        // manifests of adaptive sources are cached under their URL
+        final String cacheKey = source instanceof DashMediaSource
+                || source instanceof HlsMediaSource
+                || localConfiguration.customCacheKey == null
+                ? localConfiguration.uri.toString() : localConfiguration.customCacheKey;
+        final DataSpec dataSpec = new DataSpec.Builder()
+                .setUri(localConfiguration.uri)
+                .setKey(cacheKey)
+                .setLength(mediaSeconds * ASSUMED_BYTES_PER_SECOND)
+                .build();
+
+        return Completable.create(emitter -> {
+            final CacheWriter cacheWriter = new CacheWriter(
+                    dataSource.createPrefetchDataSource(item.getServiceId()), dataSpec,
+                    null, null);
+            emitter.setCancellable(cacheWriter::cancel);
+            cacheWriter.cache();
+            emitter.onComplete();
+        });
+    }
+
+    private static boolean isHttp(@NonNull final Uri uri) {
+        return "http".equals(uri.getScheme()) || "https".equals(uri.getScheme());
+    }
+
+    @NonNull
+    private PrefetchPolicy getPolicy() {
+        final PowerManager powerManager =
+                ContextCompat.getSystemService(context, PowerManager.class);
+        final Intent batteryStatus = context.registerReceiver(null,
+                new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+
+        int batteryPercent = -1;
+        boolean isCharging = false;
+        if (batteryStatus != null) {
+            final int level = batteryStatus.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+            final int scale = batteryStatus.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+            if (level >= 0 && scale > 0) {
+                batteryPercent = level * 100 / scale;
+            }
+            isCharging = batteryStatus.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+        }
+
+        return PrefetchPolicy.of(PlayerHelper.getPrefetchItemCount(context),
+                ListHelper.isMeteredNetwork(context),
+                powerManager != null && powerManager.isPowerSaveMode(),
+                batteryPercent, isCharging);
+    }
+
+    /*//////////////////////////////////////////////////////////////////////////
+    // Time to first frame
+    //////////////////////////////////////////////////////////////////////////*/
+
+    /**
+     * Starts measuring the time until the first frame of the item is rendered, which is reported
+     * with {@link #onFirstFrameRendered()}.
+     *
+     * @param item the item which just became the current one
+     */
+    public void onItemStarted(@NonNull final PlayQueueItem item) {
+        // a previous measure that never ended is dropped
+        startingItem = item;
+        MediaCache.getInstance().pin(item.getUrl());
+        isStartingItemPrefetched = Boolean.TRUE.equals(finishedItems.remove(item));
+        startingItemTime = SystemClock.elapsedRealtime();
+
+        final Disposable loader = loaders.remove(item);
+        if (loader != null) {
+            // the player is loading it now, the single flight of the extractor keeps the request
+            loader.dispose();
+        }
+    }
+
+    public void onFirstFrameRendered() {
+        if (startingItem == null) {
+            return;
+        }
+
+        final long millis = SystemClock.elapsedRealtime() - startingItemTime;
+        if (isStartingItemPrefetched) {
+            PREFETCHED_STARTS.incrementAndGet();
+            PREFETCHED_STARTS_TOTAL_MILLIS.addAndGet(millis);
+        } else {
+            COLD_STARTS.incrementAndGet();
+            COLD_STARTS_TOTAL_MILLIS.addAndGet(millis);
+        }
+        if (DEBUG) {
+            Log.d(TAG, "First frame of [" + startingItem.getTitle() + "] after " + millis
+                    + " ms, prefetched=" + isStartingItemPrefetched);
+        }
+        startingItem = null;
+    }
+
+    /**
+     * @param prefetched whether to get the value for prefetched items or for the others
+     * @return the number of items whose first frame was rendered
+     */
+    public static long getStartCount(final boolean prefetched) {
+        return prefetched ? PREFETCHED_STARTS.get() : COLD_STARTS.get();
+    }
+
+    /**
+     * @param prefetched whether to get the value for prefetched items or for the others
+     * @return the average time between an item becoming current and its first rendered frame,
+     * in milliseconds, or -1 if no such item was started yet
+     */
+    public static long getAverageTimeToFirstFrameMillis(final boolean prefetched) {
+        final long count = getStartCount(prefetched);
+        if (count == 0) {
+            return -1;
+        }
+        return (prefetched ? PREFETCHED_STARTS_TOTAL_MILLIS.get()
+                : COLD_STARTS_TOTAL_MILLIS.get()) / count;
+    }
+}
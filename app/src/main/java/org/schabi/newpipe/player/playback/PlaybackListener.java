@@ -8,6 +8,8 @@ import com.google.android.exoplayer2.source.MediaSource;
 import org.schabi.newpipe.extractor.stream.StreamInfo;
 import org.schabi.newpipe.player.playqueue.PlayQueueItem;
 
+import java.util.List;
+
 public interface PlaybackListener {
     /**
      * Called to check if the currently playing stream is approaching the end of its playback.
@@ -69,6 +71,20 @@ public interface PlaybackListener {
     @Nullable
     MediaSource sourceOf(PlayQueueItem item, StreamInfo info);
 
+    /**
+     * Resolves an upcoming stream info into the media sources {@link #sourceOf} is expected to
+     * play once the item is current, e.g. its video and audio, to prefetch their media.
+     * <p>
+     * May be called from any thread, and must not change the state of the listener, which
+     * belongs to the current item.
+     * </p>
+     * @param item the upcoming item
+     * @param info the stream info of the item
+     * @return the media sources the item will most likely be played with, unmerged
+     */
+    @NonNull
+    List<MediaSource> prefetchSourcesOf(PlayQueueItem item, StreamInfo info);
+
     /**
      * Called when the play queue can no longer be played or used.
      * Currently, this means the play queue is empty and complete.
@@ -0,0 +1,66 @@
+package org.schabi.newpipe.player.playback;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Decides how much of the upcoming play queue items the {@link MediaSourcePrefetcher} loads in
+ * advance, given the state of the device.
+ */
+final class PrefetchPolicy {
+    /**
+     * The duration of media, from the start of each item, written to the player cache.
+     */
+    static final int MEDIA_PREFETCH_SECONDS = 10;
+    /**
+     * Below this battery level, nothing is prefetched unless the device is charging.
+     */
+    static final int LOW_BATTERY_PERCENT = 20;
+
+    static final PrefetchPolicy NONE = new PrefetchPolicy(0, 0);
+
+    private final int itemCount;
+    private final int mediaSeconds;
+
+    private PrefetchPolicy(final int itemCount, final int mediaSeconds) {
+        this.itemCount = itemCount;
+        this.mediaSeconds = mediaSeconds;
+    }
+
+    /**
+     * @param preferredItemCount the number of items the user wants to be prefetched
+     * @param isMetered          whether the active network is metered
+     * @param isPowerSaveMode    whether the battery saver is enabled
+     * @param batteryPercent     the battery level, or a negative value if unknown
+     * @param isCharging         whether the device is plugged in
+     * @return the policy to apply
+     */
+    @NonNull
+    static PrefetchPolicy of(final int preferredItemCount, final boolean isMetered,
+                             final boolean isPowerSaveMode, final int batteryPercent,
+                             final boolean isCharging) {
+        if (preferredItemCount <= 0 || isPowerSaveMode
+                || (!isCharging && batteryPercent >= 0 && batteryPercent < LOW_BATTERY_PERCENT)) {
+            return NONE;
+        }
+        if (isMetered) {
+            // stream infos are small, but media is not worth the data if the item is skipped
+            return new PrefetchPolicy(1, 0);
+        }
+        return new PrefetchPolicy(preferredItemCount, MEDIA_PREFETCH_SECONDS);
+    }
+
+    /**
+     * @return how many items after the current one have their stream info loaded
+     */
+    int getItemCount() {
+        return itemCount;
+    }
+
+    /**
+     * @return how many seconds of media are written to the player cache for each item, 0 to only
+     * load the stream infos
+     */
+    int getMediaSeconds() {
+        return mediaSeconds;
+    }
+}
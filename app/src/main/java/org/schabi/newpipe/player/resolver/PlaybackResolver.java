@@ -12,10 +12,8 @@ import com.google.android.exoplayer2.source.MediaSource;
 import com.google.android.exoplayer2.source.ProgressiveMediaSource;
 import com.google.android.exoplayer2.source.dash.DashMediaSource;
 import com.google.android.exoplayer2.source.dash.manifest.DashManifest;
-import com.google.android.exoplayer2.source.dash.manifest.DashManifestParser;
 import com.google.android.exoplayer2.source.hls.HlsMediaSource;
 import com.google.android.exoplayer2.source.hls.playlist.HlsPlaylist;
-import com.google.android.exoplayer2.source.hls.playlist.HlsPlaylistParser;
 import com.google.android.exoplayer2.source.smoothstreaming.SsMediaSource;
 import com.google.android.exoplayer2.source.smoothstreaming.manifest.SsManifest;
 import com.google.android.exoplayer2.source.smoothstreaming.manifest.SsManifestParser;
@@ -42,6 +40,7 @@ import org.schabi.newpipe.extractor.stream.Stream;
 import org.schabi.newpipe.extractor.stream.StreamInfo;
 import org.schabi.newpipe.extractor.stream.StreamType;
 import org.schabi.newpipe.extractor.stream.VideoStream;
+import org.schabi.newpipe.player.helper.ManifestCache;
 import org.schabi.newpipe.player.helper.NonUriHlsPlaylistParserFactory;
 import org.schabi.newpipe.player.helper.PlayerDataSource;
 import org.schabi.newpipe.player.mediaitem.MediaItemTag;
@@ -56,6 +55,7 @@ import java.io.IOException;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.util.Objects;
+import java.util.function.Supplier;
 
 public interface PlaybackResolver extends Resolver<StreamInfo, MediaSource> {
     String TAG = PlaybackResolver.class.getSimpleName();
@@ -220,19 +220,36 @@ public interface PlaybackResolver extends Resolver<StreamInfo, MediaSource> {
             @NonNull final String manifestContent,
             @NonNull final T stream) throws IOException {
         try {
-            final ByteArrayInputStream dashManifestInput = new ByteArrayInputStream(
-                    manifestContent.getBytes(StandardCharsets.UTF_8));
-            String baseUrl = stream.getManifestUrl();
-            if (baseUrl == null) {
-                baseUrl = "";
-            }
+            return ManifestCache.getInstance().getDashManifest(manifestContent,
+                    baseUrlOf(stream));
+        } catch (final IOException e) {
+            throw new IOException("Error when parsing manual DASH manifest", e);
+        }
+    }
 
-            return new DashManifestParser().parse(Uri.parse(baseUrl), dashManifestInput);
+    /**
+     * @param stream    a stream whose manifest is generated from its URL
+     * @param generator generates the manifest, if it isn't cached yet
+     * @return the parsed manifest, see {@link ManifestCache#getGeneratedDashManifest}
+     */
+    @NonNull
+    private static <T extends Stream> DashManifest createGeneratedDashManifest(
+            @NonNull final T stream,
+            @NonNull final Supplier<String> generator) throws IOException {
+        try {
+            return ManifestCache.getInstance().getGeneratedDashManifest(stream.getContent(),
+                    baseUrlOf(stream), generator);
         } catch (final IOException e) {
             throw new IOException("Error when parsing manual DASH manifest", e);
         }
     }
 
+    @NonNull
+    private static <T extends Stream> String baseUrlOf(@NonNull final T stream) {
+        final String baseUrl = stream.getManifestUrl();
+        return baseUrl == null ? "" : baseUrl;
+    }
+
     @NonNull
     private static <T extends Stream> HlsMediaSource buildHlsMediaSource(
             @NonNull final PlayerDataSource dataSource,
@@ -253,18 +270,10 @@ public interface PlaybackResolver extends Resolver<StreamInfo, MediaSource> {
                             .setCustomCacheKey(cacheKey)
                             .build());
         } else {
-            String baseUrl = stream.getManifestUrl();
-            if (baseUrl == null) {
-                baseUrl = "";
-            }
-
-            final Uri uri = Uri.parse(baseUrl);
-
             final HlsPlaylist hlsPlaylist;
             try {
-                final ByteArrayInputStream hlsManifestInput = new ByteArrayInputStream(
-                        stream.getContent().getBytes(StandardCharsets.UTF_8));
-                hlsPlaylist = new HlsPlaylistParser().parse(uri, hlsManifestInput);
+                hlsPlaylist = ManifestCache.getInstance().getHlsPlaylist(stream.getContent(),
+                        baseUrlOf(stream));
             } catch (final IOException e) {
                 throw new IOException("Error when parsing manual HLS manifest", e);
             }
@@ -349,13 +358,13 @@ public interface PlaybackResolver extends Resolver<StreamInfo, MediaSource> {
 
             try {
                 final ItagItem itagItem = Objects.requireNonNull(stream.getItagItem());
-                final String manifestString = YoutubePostLiveStreamDvrDashManifestCreator
-                        .fromPostLiveStreamDvrStreamingUrl(stream.getContent(),
-                                itagItem,
-                                itagItem.getTargetDurationSec(),
-                                streamInfo.getDuration());
-                return buildYoutubeManualDashMediaSource(dataSource,
-                        createDashManifest(manifestString, stream), stream, cacheKey,
+                final DashManifest manifest = createGeneratedDashManifest(stream, () ->
+                        YoutubePostLiveStreamDvrDashManifestCreator
+                                .fromPostLiveStreamDvrStreamingUrl(stream.getContent(),
+                                        itagItem,
+                                        itagItem.getTargetDurationSec(),
+                                        streamInfo.getDuration()));
+                return buildYoutubeManualDashMediaSource(dataSource, manifest, stream, cacheKey,
                         metadata);
             } catch (final CreationException | NullPointerException e) {
                 Log.e(TAG, "Error when generating the DASH manifest of YouTube ended live stream",
@@ -381,13 +390,13 @@ public interface PlaybackResolver extends Resolver<StreamInfo, MediaSource> {
                 if ((stream instanceof VideoStream && ((VideoStream) stream).isVideoOnly())
                         || stream instanceof AudioStream) {
                     try {
-                        final String manifestString = YoutubeProgressiveDashManifestCreator
-                                .fromProgressiveStreamingUrl(stream.getContent(),
-                                        Objects.requireNonNull(stream.getItagItem()),
-                                        streamInfo.getDuration());
-                        return buildYoutubeManualDashMediaSource(dataSource,
-                                createDashManifest(manifestString, stream), stream, cacheKey,
-                                metadata);
+                        final ItagItem itagItem = Objects.requireNonNull(stream.getItagItem());
+                        final DashManifest manifest = createGeneratedDashManifest(stream, () ->
+                                YoutubeProgressiveDashManifestCreator
+                                        .fromProgressiveStreamingUrl(stream.getContent(),
+                                                itagItem, streamInfo.getDuration()));
+                        return buildYoutubeManualDashMediaSource(dataSource, manifest, stream,
+                                cacheKey, metadata);
                     } catch (final CreationException | IOException | NullPointerException e) {
                         Log.w(TAG, "Error when generating or parsing DASH manifest of "
                                 + "YouTube progressive stream, falling back to a "
@@ -408,13 +417,12 @@ public interface PlaybackResolver extends Resolver<StreamInfo, MediaSource> {
                 // the base URL of the OTF stream).
 
                 try {
-                    final String manifestString = YoutubeOtfDashManifestCreator
-                            .fromOtfStreamingUrl(stream.getContent(),
-                                    Objects.requireNonNull(stream.getItagItem()),
-                                    streamInfo.getDuration());
-                    return buildYoutubeManualDashMediaSource(dataSource,
-                            createDashManifest(manifestString, stream), stream, cacheKey,
-                            metadata);
+                    final ItagItem itagItem = Objects.requireNonNull(stream.getItagItem());
+                    final DashManifest manifest = createGeneratedDashManifest(stream, () ->
+                            YoutubeOtfDashManifestCreator.fromOtfStreamingUrl(
+                                    stream.getContent(), itagItem, streamInfo.getDuration()));
+                    return buildYoutubeManualDashMediaSource(dataSource, manifest, stream,
+                            cacheKey, metadata);
                 } catch (final CreationException | NullPointerException e) {
                     Log.e(TAG,
                             "Error when generating the DASH manifest of YouTube OTF stream", e);
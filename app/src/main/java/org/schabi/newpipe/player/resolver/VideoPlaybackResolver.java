@@ -26,6 +26,7 @@ import org.schabi.newpipe.util.ListHelper;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
@@ -65,10 +66,29 @@ public class VideoPlaybackResolver implements PlaybackResolver {
     @Override
     @Nullable
     public MediaSource resolve(@NonNull final StreamInfo info) {
+        final List<MediaSource> mediaSources = resolveSources(info);
+        if (mediaSources == null) {
+            return null;
+        } else if (mediaSources.size() == 1) {
+            return mediaSources.get(0);
+        } else {
+            return new MergingMediaSource(true, mediaSources.toArray(new MediaSource[0]));
+        }
+    }
+
+    /**
+     * Resolves the sources {@link #resolve(StreamInfo)} merges: the video, the audio if it is
+     * separate, and the subtitles.
+     *
+     * @param info the stream info to resolve
+     * @return the sources, or {@code null} if the stream cannot be played back
+     */
+    @Nullable
+    public List<MediaSource> resolveSources(@NonNull final StreamInfo info) {
         final MediaSource liveSource = PlaybackResolver.maybeBuildLiveMediaSource(dataSource, info);
         if (liveSource != null) {
             streamSourceType = SourceType.LIVE_STREAM;
-            return liveSource;
+            return Collections.singletonList(liveSource);
         }
 
         final List<MediaSource> mediaSources = new ArrayList<>();
@@ -176,11 +196,7 @@ public class VideoPlaybackResolver implements PlaybackResolver {
             }
         }
 
-        if (mediaSources.size() == 1) {
-            return mediaSources.get(0);
-        } else {
-            return new MergingMediaSource(true, mediaSources.toArray(new MediaSource[0]));
-        }
+        return mediaSources;
     }
 
     /**
@@ -1,8 +1,15 @@
 package org.schabi.newpipe.settings;
 
 import android.os.Bundle;
+import android.text.format.Formatter;
 
 import androidx.annotation.Nullable;
+import androidx.preference.Preference;
+
+import org.schabi.newpipe.R;
+import org.schabi.newpipe.player.helper.MediaCache;
+
+import java.text.NumberFormat;
 
 public class ExoPlayerSettingsFragment extends BasePreferenceFragment {
 
@@ -11,4 +18,29 @@ public class ExoPlayerSettingsFragment extends BasePreferenceFragment {
                                     @Nullable final String rootKey) {
         addPreferencesFromResourceRegistry();
     }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+        updateMediaCacheStatistics();
+    }
+
+    private void updateMediaCacheStatistics() {
+        final Preference statistics =
+                findPreference(getString(R.string.media_cache_statistics_key));
+        if (statistics == null) {
+            return;
+        }
+
+        final MediaCache mediaCache = MediaCache.getInstance();
+        final double hitRate = mediaCache.getHitRate();
+        if (hitRate < 0) {
+            statistics.setSummary(R.string.media_cache_statistics_empty);
+        } else {
+            statistics.setSummary(getString(R.string.media_cache_statistics_summary,
+                    NumberFormat.getPercentInstance().format(hitRate),
+                    Formatter.formatShortFileSize(requireContext(),
+                            mediaCache.getCachedBytesRead())));
+        }
+    }
 }
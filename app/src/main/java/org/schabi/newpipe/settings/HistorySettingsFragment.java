@@ -15,6 +15,7 @@ import org.schabi.newpipe.error.ErrorUtil;
 import org.schabi.newpipe.error.ReCaptchaActivity;
 import org.schabi.newpipe.error.UserAction;
 import org.schabi.newpipe.local.history.HistoryRecordManager;
+import org.schabi.newpipe.player.helper.ManifestCache;
 import org.schabi.newpipe.util.InfoCache;
 
 import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
@@ -54,12 +55,19 @@ public class HistorySettingsFragment extends BasePreferenceFragment {
         if (defaultPreferences.getString(getString(R.string.recaptcha_cookies_key), "").isEmpty()) {
             clearCookiePref.setEnabled(false);
         }
+
+        requirePreference(R.string.http_cache_key).setOnPreferenceChangeListener((p, value) -> {
+            DownloaderImpl.getInstance().setHttpCacheEnabled(requireContext(), (Boolean) value);
+            return true;
+        });
     }
 
     @Override
     public boolean onPreferenceTreeClick(final Preference preference) {
         if (preference.getKey().equals(cacheWipeKey)) {
             InfoCache.getInstance().clearCache();
+            ManifestCache.getInstance().clearCache();
+            DownloaderImpl.getInstance().clearHttpCache();
             Toast.makeText(requireContext(),
                     R.string.metadata_cache_wipe_complete_notice, Toast.LENGTH_SHORT).show();
         } else if (preference.getKey().equals(viewsHistoryClearKey)) {
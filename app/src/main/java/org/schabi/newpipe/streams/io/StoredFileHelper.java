@@ -20,11 +20,14 @@ import org.schabi.newpipe.MainActivity;
 import org.schabi.newpipe.settings.NewPipeSettings;
 import org.schabi.newpipe.util.FilePickerActivityHelper;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
 import java.net.URI;
 
+import us.shandian.giga.io.FileChannelStream;
 import us.shandian.giga.io.FileStream;
 import us.shandian.giga.io.FileStreamSAF;
 
@@ -186,6 +189,55 @@ public class StoredFileHelper implements Serializable {
         return instance;
     }
 
+    /**
+     * Writes the fields required by {@link #deserialize(StoredFileHelper, Context)}.
+     *
+     * @param out the output
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeTo(@NonNull final DataOutput out) throws IOException {
+        writeNullableString(out, source);
+        writeNullableString(out, sourceTree);
+        writeNullableString(out, tag);
+        writeNullableString(out, srcName);
+        writeNullableString(out, srcType);
+    }
+
+    /**
+     * Reads the fields written by {@link #writeTo(DataOutput)}. The returned instance must be
+     * passed to {@link #deserialize(StoredFileHelper, Context)} before use.
+     *
+     * @param in the input
+     * @return an instance holding only the persisted fields
+     * @throws IOException if an I/O error occurs
+     */
+    @NonNull
+    public static StoredFileHelper readFrom(@NonNull final DataInput in) throws IOException {
+        final StoredFileHelper storage = new StoredFileHelper();
+        storage.source = readNullableString(in);
+        storage.sourceTree = readNullableString(in);
+        storage.tag = readNullableString(in);
+        storage.srcName = readNullableString(in);
+        storage.srcType = readNullableString(in);
+        return storage;
+    }
+
+    private StoredFileHelper() {
+    }
+
+    private static void writeNullableString(final DataOutput out, @Nullable final String str)
+            throws IOException {
+        out.writeBoolean(str != null);
+        if (str != null) {
+            out.writeUTF(str);
+        }
+    }
+
+    @Nullable
+    private static String readNullableString(final DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
     public SharpStream getStream() throws IOException {
         assertValid();
 
@@ -196,6 +248,23 @@ public class StoredFileHelper implements Serializable {
         }
     }
 
+    /**
+     * Opens the file as a {@link FileChannelStream}, which allows positional writes without a
+     * shared seek pointer and kernel-side copies between files.
+     *
+     * @return a new stream for the file
+     * @throws IOException if the file cannot be opened
+     */
+    public FileChannelStream getChannelStream() throws IOException {
+        assertValid();
+
+        if (docFile == null) {
+            return new FileChannelStream(ioFile);
+        } else {
+            return new FileChannelStream(context.getContentResolver(), docFile.getUri());
+        }
+    }
+
     /**
      * Indicates whether it's using the {@code java.io} API.
      *
@@ -66,6 +66,16 @@ import io.reactivex.rxjava3.disposables.CompositeDisposable;
 public final class ExtractorHelper {
     private static final String TAG = ExtractorHelper.class.getSimpleName();
     private static final InfoCache CACHE = InfoCache.getInstance();
+    private static final SingleFlight IN_FLIGHT_LOADS = new SingleFlight();
+
+    /*
+     * Identify the loaders returning a different result for the same item, so that their
+     * in-flight loads are never shared.
+     */
+    static final String LOADER_DEFAULT = "";
+    static final String LOADER_WITHOUT_EXCEPTION = "noexc";
+    static final String LOADER_FULL_ITEMS = "full";
+    static final String LOADER_KIOSK = "kiosk";
 
     private ExtractorHelper() {
         //no instance
@@ -150,7 +160,7 @@ public final class ExtractorHelper {
                                                    final boolean forceLoad) {
         checkServiceId(serviceId);
         return checkCache(forceLoad, serviceId, url, InfoItem.InfoType.STREAM,
-                Single.fromCallable(() -> {
+                LOADER_WITHOUT_EXCEPTION, Single.fromCallable(() -> {
                     try{
                         return StreamInfo.getInfo(NewPipe.getService(serviceId), url);
                     } catch (Exception e){
@@ -273,7 +283,7 @@ public final class ExtractorHelper {
                                                        final boolean forceLoad) {
         checkServiceId(serviceId);
         return checkCache(forceLoad, serviceId, url, InfoItem.InfoType.PLAYLIST,
-                Single.fromCallable(() ->
+                LOADER_FULL_ITEMS, Single.fromCallable(() ->
                         PlaylistInfo.getInfoWithFullItems(NewPipe.getService(serviceId), url)));
     }
 
@@ -287,7 +297,7 @@ public final class ExtractorHelper {
 
     public static Single<KioskInfo> getKioskInfo(final int serviceId, final String url,
                                                  final boolean forceLoad) {
-        return checkCache(forceLoad, serviceId, url, InfoItem.InfoType.PLAYLIST,
+        return checkCache(forceLoad, serviceId, url, InfoItem.InfoType.PLAYLIST, LOADER_KIOSK,
                 Single.fromCallable(() -> KioskInfo.getInfo(NewPipe.getService(serviceId), url)));
     }
 
@@ -306,22 +316,47 @@ public final class ExtractorHelper {
      * Check if we can load it from the cache (forceLoad parameter), if we can't,
      * load from the network (Single loadFromNetwork)
      * and put the results in the cache.
+     * <p>
+     * Concurrent network loads of the same item are coalesced into one, which is only disposed
+     * once all of its subscribers are disposed.
+     *
+     * @param <I>             the item type's class that extends {@link Info}
+     * @param forceLoad       whether to force loading from the network instead of from the cache
+     * @param serviceId       the service to load from
+     * @param url             the URL to load
+     * @param infoType        the {@link InfoItem.InfoType} of the item
+     * @param loadFromNetwork the {@link Single} to load the item from the network
+     * @return a {@link Single} that loads the item
+     */
+    private static <I extends Info> Single<I> checkCache(final boolean forceLoad,
+                                                         final int serviceId, final String url,
+                                                         final InfoItem.InfoType infoType,
+                                                         final Single<I> loadFromNetwork) {
+        return checkCache(forceLoad, serviceId, url, infoType, LOADER_DEFAULT, loadFromNetwork);
+    }
+
+    /**
+     * Same as {@link #checkCache(boolean, int, String, InfoItem.InfoType, Single)}, for the
+     * loaders whose result differs from the one of the default loader of the item type.
      *
      * @param <I>             the item type's class that extends {@link Info}
      * @param forceLoad       whether to force loading from the network instead of from the cache
      * @param serviceId       the service to load from
      * @param url             the URL to load
      * @param infoType        the {@link InfoItem.InfoType} of the item
+     * @param loader          identifies the loader, only loads of the same loader are coalesced
      * @param loadFromNetwork the {@link Single} to load the item from the network
      * @return a {@link Single} that loads the item
      */
     private static <I extends Info> Single<I> checkCache(final boolean forceLoad,
                                                          final int serviceId, final String url,
                                                          final InfoItem.InfoType infoType,
+                                                         final String loader,
                                                          final Single<I> loadFromNetwork) {
         checkServiceId(serviceId);
-        final Single<I> actualLoadFromNetwork = loadFromNetwork
-                .doOnSuccess(info -> CACHE.putInfo(serviceId, url, info, infoType));
+        final Single<I> actualLoadFromNetwork = IN_FLIGHT_LOADS.load(
+                SingleFlight.keyOf(serviceId, infoType, loader, url),
+                loadFromNetwork.doOnSuccess(info -> CACHE.putInfo(serviceId, url, info, infoType)));
 
         final Single<I> load;
         if (forceLoad) {
@@ -365,9 +400,29 @@ public final class ExtractorHelper {
         });
     }
 
+    /**
+     * @return the number of network loads of infos that were started
+     */
+    public static long getInfoLoadCount() {
+        return IN_FLIGHT_LOADS.getLoadCount();
+    }
+
+    /**
+     * @return the number of network loads of infos that joined an identical load in flight
+     * instead of starting a new one
+     */
+    public static long getDeduplicatedInfoLoadCount() {
+        return IN_FLIGHT_LOADS.getDeduplicatedCount();
+    }
+
+    /**
+     * Only looks in the memory tier of the {@link InfoCache}, so that it can be called from the
+     * main thread.
+     */
     public static boolean isCached(final int serviceId, final String url,
                                    final InfoItem.InfoType infoType) {
-        return null != loadFromCache(serviceId, url, infoType).blockingGet();
+        checkServiceId(serviceId);
+        return CACHE.isInMemory(serviceId, url, infoType);
     }
 
     /**
@@ -23,59 +23,143 @@ import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 import androidx.collection.LruCache;
 
 import org.schabi.newpipe.MainActivity;
 import org.schabi.newpipe.extractor.Info;
 import org.schabi.newpipe.extractor.InfoItem;
+import org.schabi.newpipe.extractor.ListInfo;
+import org.schabi.newpipe.extractor.stream.StreamInfo;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
+import static org.schabi.newpipe.extractor.utils.Utils.isNullOrEmpty;
+
+/**
+ * Caches the infos loaded by the {@link ExtractorHelper} until they expire, see
+ * {@link ServiceHelper#getCacheExpirationMillis(int)}.
+ *
+ * <p>The memory tier is split in stripes, each with its own lock and a share of the byte
+ * budget, and the entries are weighted by an estimation of their size. Streams, channels and
+ * playlists are also written to disk once a {@link #setDiskCacheDirectory(File) directory} is
+ * set, so that they survive the death of the process.</p>
+ */
 public final class InfoCache {
     private final String TAG = getClass().getSimpleName();
     private static final boolean DEBUG = MainActivity.DEBUG;
 
-    private static final InfoCache INSTANCE = new InfoCache();
-    private static final int MAX_ITEMS_ON_CACHE = 60;
+    private static final int STRIPE_COUNT = 8;
+    private static final int MAX_MEMORY_BYTES = (int) Math.min(
+            Runtime.getRuntime().maxMemory() / 32, 16 * 1024 * 1024);
+    private static final long MAX_DISK_BYTES = 20 * 1024 * 1024;
+    /**
+     * Trim the cache to this fraction of its budget.
+     */
+    private static final int TRIM_CACHE_DIVISOR = 2;
+
     /**
-     * Trim the cache to this size.
+     * Rough weights, in bytes, of an {@link Info} without any list, of each of its items and of
+     * each of the streams of a {@link StreamInfo}.
      */
-    private static final int TRIM_CACHE_TO = 30;
+    private static final int INFO_WEIGHT = 2048;
+    private static final int ITEM_WEIGHT = 1024;
+    private static final int STREAM_WEIGHT = 512;
 
-    private static final LruCache<String, CacheData> LRU_CACHE = new LruCache<>(MAX_ITEMS_ON_CACHE);
+    private static final InfoCache INSTANCE = new InfoCache(MAX_MEMORY_BYTES);
+
+    private final List<LruCache<String, CacheData>> stripes = new ArrayList<>(STRIPE_COUNT);
+    private final int maxMemoryBytes;
+    private final Map<InfoItem.InfoType, Counters> counters =
+            new EnumMap<>(InfoItem.InfoType.class);
+    @Nullable
+    private volatile InfoDiskCache diskCache;
 
-    private InfoCache() {
-        // no instance
+    @VisibleForTesting
+    InfoCache(final int maxMemoryBytes) {
+        this.maxMemoryBytes = maxMemoryBytes;
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            stripes.add(new LruCache<String, CacheData>(maxMemoryBytes / STRIPE_COUNT) {
+                @Override
+                protected int sizeOf(@NonNull final String key, @NonNull final CacheData value) {
+                    return value.weight;
+                }
+            });
+        }
+        for (final InfoItem.InfoType infoType : InfoItem.InfoType.values()) {
+            counters.put(infoType, new Counters());
+        }
     }
 
     public static InfoCache getInstance() {
         return INSTANCE;
     }
 
+    /**
+     * Enables the disk tier, which is disabled until this is called.
+     *
+     * @param directory the directory where the streams, channels and playlists are written
+     */
+    public void setDiskCacheDirectory(@NonNull final File directory) {
+        setDiskCache(new InfoDiskCache(directory, MAX_DISK_BYTES,
+                Executors.newSingleThreadExecutor()));
+    }
+
+    @VisibleForTesting
+    void setDiskCache(@Nullable final InfoDiskCache diskCache) {
+        this.diskCache = diskCache;
+    }
+
     @NonNull
     private static String keyOf(final int serviceId, @NonNull final String url,
                                 @NonNull final InfoItem.InfoType infoType) {
-        return serviceId + url + infoType.toString();
+        return serviceId + ":" + infoType + ":" + url;
     }
 
-    private static void removeStaleCache() {
-        for (final Map.Entry<String, CacheData> entry : InfoCache.LRU_CACHE.snapshot().entrySet()) {
-            final CacheData data = entry.getValue();
-            if (data != null && data.isExpired()) {
-                InfoCache.LRU_CACHE.remove(entry.getKey());
-            }
+    @NonNull
+    private LruCache<String, CacheData> stripeOf(@NonNull final String key) {
+        return stripes.get((key.hashCode() & Integer.MAX_VALUE) % STRIPE_COUNT);
+    }
+
+    private static boolean isPersisted(@NonNull final InfoItem.InfoType infoType) {
+        return infoType == InfoItem.InfoType.STREAM
+                || infoType == InfoItem.InfoType.CHANNEL
+                || infoType == InfoItem.InfoType.PLAYLIST;
+    }
+
+    /**
+     * @return a rough estimation of the memory used by the info, in bytes
+     */
+    private static int estimateWeight(@NonNull final Info info) {
+        long weight = INFO_WEIGHT;
+        if (info instanceof ListInfo) {
+            weight += (long) ((ListInfo<?>) info).getRelatedItems().size() * ITEM_WEIGHT;
+        } else if (info instanceof StreamInfo) {
+            final StreamInfo streamInfo = (StreamInfo) info;
+            weight += (long) streamInfo.getRelatedItems().size() * ITEM_WEIGHT;
+            weight += (long) (streamInfo.getVideoStreams().size()
+                    + streamInfo.getVideoOnlyStreams().size()
+                    + streamInfo.getAudioStreams().size()) * STREAM_WEIGHT;
         }
+        return (int) Math.min(weight, Integer.MAX_VALUE);
     }
 
     @Nullable
-    private static Info getInfo(@NonNull final String key) {
-        final CacheData data = InfoCache.LRU_CACHE.get(key);
+    private static Info getInfo(@NonNull final LruCache<String, CacheData> stripe,
+                                @NonNull final String key) {
+        final CacheData data = stripe.get(key);
         if (data == null) {
             return null;
         }
 
         if (data.isExpired()) {
-            InfoCache.LRU_CACHE.remove(key);
+            stripe.remove(key);
             return null;
         }
 
@@ -89,8 +173,45 @@ public final class InfoCache {
             Log.d(TAG, "getFromKey() called with: "
                     + "serviceId = [" + serviceId + "], url = [" + url + "]");
         }
-        synchronized (LRU_CACHE) {
-            return getInfo(keyOf(serviceId, url, infoType));
+        final String key = keyOf(serviceId, url, infoType);
+        final LruCache<String, CacheData> stripe = stripeOf(key);
+        final Counters infoTypeCounters = counters.get(infoType);
+
+        final Info info;
+        synchronized (stripe) {
+            info = getInfo(stripe, key);
+        }
+        if (info != null) {
+            infoTypeCounters.memoryHits.incrementAndGet();
+            return info;
+        }
+
+        final InfoDiskCache disk = diskCache;
+        if (disk != null && isPersisted(infoType)) {
+            final InfoDiskCache.Entry entry = disk.get(key);
+            if (entry != null) {
+                infoTypeCounters.diskHits.incrementAndGet();
+                final CacheData data = new CacheData(entry.info, entry.expireTimestamp);
+                synchronized (stripe) {
+                    stripe.put(key, data);
+                }
+                return entry.info;
+            }
+        }
+
+        infoTypeCounters.misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * @return whether the info is in the memory tier, without reading the disk
+     */
+    public boolean isInMemory(final int serviceId, @NonNull final String url,
+                              @NonNull final InfoItem.InfoType infoType) {
+        final String key = keyOf(serviceId, url, infoType);
+        final LruCache<String, CacheData> stripe = stripeOf(key);
+        synchronized (stripe) {
+            return getInfo(stripe, key) != null;
         }
     }
 
@@ -100,10 +221,18 @@ public final class InfoCache {
             Log.d(TAG, "putInfo() called with: info = [" + info + "]");
         }
 
-        final long expirationMillis = ServiceHelper.getCacheExpirationMillis(info.getServiceId());
-        synchronized (LRU_CACHE) {
-            final CacheData data = new CacheData(info, expirationMillis);
-            LRU_CACHE.put(keyOf(serviceId, url, infoType), data);
+        final long expireTimestamp = System.currentTimeMillis()
+                + ServiceHelper.getCacheExpirationMillis(info.getServiceId());
+        final String key = keyOf(serviceId, url, infoType);
+        final LruCache<String, CacheData> stripe = stripeOf(key);
+        synchronized (stripe) {
+            stripe.put(key, new CacheData(info, expireTimestamp));
+        }
+
+        final InfoDiskCache disk = diskCache;
+        // placeholder infos returned on errors have no url and must not outlive the process
+        if (disk != null && isPersisted(infoType) && !isNullOrEmpty(info.getUrl())) {
+            disk.put(key, info, expireTimestamp);
         }
     }
 
@@ -113,8 +242,15 @@ public final class InfoCache {
             Log.d(TAG, "removeInfo() called with: "
                     + "serviceId = [" + serviceId + "], url = [" + url + "]");
         }
-        synchronized (LRU_CACHE) {
-            LRU_CACHE.remove(keyOf(serviceId, url, infoType));
+        final String key = keyOf(serviceId, url, infoType);
+        final LruCache<String, CacheData> stripe = stripeOf(key);
+        synchronized (stripe) {
+            stripe.remove(key);
+        }
+
+        final InfoDiskCache disk = diskCache;
+        if (disk != null && isPersisted(infoType)) {
+            disk.remove(key);
         }
     }
 
@@ -122,8 +258,15 @@ public final class InfoCache {
         if (DEBUG) {
             Log.d(TAG, "clearCache() called");
         }
-        synchronized (LRU_CACHE) {
-            LRU_CACHE.evictAll();
+        for (final LruCache<String, CacheData> stripe : stripes) {
+            synchronized (stripe) {
+                stripe.evictAll();
+            }
+        }
+
+        final InfoDiskCache disk = diskCache;
+        if (disk != null) {
+            disk.clear();
         }
     }
 
@@ -131,25 +274,62 @@ public final class InfoCache {
         if (DEBUG) {
             Log.d(TAG, "trimCache() called");
         }
-        synchronized (LRU_CACHE) {
-            removeStaleCache();
-            LRU_CACHE.trimToSize(TRIM_CACHE_TO);
+        for (final LruCache<String, CacheData> stripe : stripes) {
+            synchronized (stripe) {
+                stripe.trimToSize(stripe.maxSize() / TRIM_CACHE_DIVISOR);
+            }
+        }
+
+        final InfoDiskCache disk = diskCache;
+        if (disk != null) {
+            disk.trim(MAX_DISK_BYTES / TRIM_CACHE_DIVISOR);
         }
     }
 
+    /**
+     * @return the estimated size of the memory tier, in bytes
+     */
     public long getSize() {
-        synchronized (LRU_CACHE) {
-            return LRU_CACHE.size();
+        long size = 0;
+        for (final LruCache<String, CacheData> stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
         }
+        return size;
+    }
+
+    public int getMaxSize() {
+        return maxMemoryBytes;
+    }
+
+    public long getMemoryHitCount(@NonNull final InfoItem.InfoType infoType) {
+        return counters.get(infoType).memoryHits.get();
+    }
+
+    public long getDiskHitCount(@NonNull final InfoItem.InfoType infoType) {
+        return counters.get(infoType).diskHits.get();
+    }
+
+    public long getMissCount(@NonNull final InfoItem.InfoType infoType) {
+        return counters.get(infoType).misses.get();
+    }
+
+    private static final class Counters {
+        private final AtomicLong memoryHits = new AtomicLong();
+        private final AtomicLong diskHits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
     }
 
     private static final class CacheData {
         private final long expireTimestamp;
         private final Info info;
+        private final int weight;
 
-        private CacheData(@NonNull final Info info, final long timeoutMillis) {
-            this.expireTimestamp = System.currentTimeMillis() + timeoutMillis;
+        private CacheData(@NonNull final Info info, final long expireTimestamp) {
+            this.expireTimestamp = expireTimestamp;
             this.info = info;
+            this.weight = estimateWeight(info);
         }
 
         private boolean isExpired() {
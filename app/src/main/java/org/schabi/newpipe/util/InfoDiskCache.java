@@ -0,0 +1,188 @@
+package org.schabi.newpipe.util;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.schabi.newpipe.extractor.Info;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.Executor;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The on-disk tier of the {@link InfoCache}: every entry is a gzipped serialized {@link Info}
+ * preceded by its expiration time, in a file named after the hash of the cache key.
+ *
+ * <p>Reads happen on the calling thread, writes and deletions on the given executor. Expired or
+ * unreadable entries are deleted when they are read, and the oldest files are deleted when the
+ * directory grows over its size budget.</p>
+ */
+final class InfoDiskCache {
+    private static final String TAG = InfoDiskCache.class.getSimpleName();
+    /**
+     * Bumped whenever the format of the files changes, so that old files are ignored.
+     */
+    private static final int FORMAT_VERSION = 1;
+    private static final String FILE_SUFFIX = ".info";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    @NonNull
+    private final File directory;
+    private final long maxSizeBytes;
+    @NonNull
+    private final Executor executor;
+
+    InfoDiskCache(@NonNull final File directory, final long maxSizeBytes,
+                  @NonNull final Executor executor) {
+        this.directory = directory;
+        this.maxSizeBytes = maxSizeBytes;
+        this.executor = executor;
+    }
+
+    @Nullable
+    Entry get(@NonNull final String key) {
+        final File file = fileOf(key);
+        if (!file.exists()) {
+            return null;
+        }
+
+        try (ObjectInputStream input = new ObjectInputStream(new GZIPInputStream(
+                new BufferedInputStream(new FileInputStream(file))))) {
+            final int version = input.readInt();
+            final long expireTimestamp = input.readLong();
+            if (version != FORMAT_VERSION || System.currentTimeMillis() > expireTimestamp
+                    || !key.equals(input.readUTF())) {
+                delete(file);
+                return null;
+            }
+            return new Entry((Info) input.readObject(), expireTimestamp);
+        } catch (final IOException | ClassNotFoundException | ClassCastException e) {
+            // written by an older version of the app or by a write that didn't complete
+            Log.w(TAG, "Could not read cached info, deleting it: " + file.getName(), e);
+            delete(file);
+            return null;
+        }
+    }
+
+    void put(@NonNull final String key, @NonNull final Info info, final long expireTimestamp) {
+        executor.execute(() -> {
+            final File file = fileOf(key);
+            final File tempFile = new File(directory, file.getName() + TEMP_SUFFIX);
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                Log.w(TAG, "Could not create the cache directory " + directory);
+                return;
+            }
+
+            try (ObjectOutputStream output = new ObjectOutputStream(new GZIPOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tempFile))))) {
+                output.writeInt(FORMAT_VERSION);
+                output.writeLong(expireTimestamp);
+                output.writeUTF(key);
+                output.writeObject(info);
+            } catch (final IOException e) {
+                Log.w(TAG, "Could not write info to the cache: " + info.getUrl(), e);
+                delete(tempFile);
+                return;
+            }
+
+            if (!tempFile.renameTo(file)) {
+                delete(tempFile);
+                return;
+            }
+            trimToSize(maxSizeBytes);
+        });
+    }
+
+    void remove(@NonNull final String key) {
+        executor.execute(() -> delete(fileOf(key)));
+    }
+
+    void clear() {
+        executor.execute(() -> trimToSize(0));
+    }
+
+    void trim(final long sizeBytes) {
+        executor.execute(() -> trimToSize(sizeBytes));
+    }
+
+    private void trimToSize(final long sizeBytes) {
+        final File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        long totalSize = 0;
+        for (final File file : files) {
+            totalSize += file.length();
+        }
+        if (totalSize <= sizeBytes) {
+            return;
+        }
+
+        // the least recently written first
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (final File file : files) {
+            if (totalSize <= sizeBytes) {
+                break;
+            }
+            final long length = file.length();
+            if (delete(file)) {
+                totalSize -= length;
+            }
+        }
+    }
+
+    @NonNull
+    private File fileOf(@NonNull final String key) {
+        return new File(directory, sha1Hex(key) + FILE_SUFFIX);
+    }
+
+    private static boolean delete(@NonNull final File file) {
+        return file.delete() || !file.exists();
+    }
+
+    @NonNull
+    private static String sha1Hex(@NonNull final String text) {
+        final byte[] hash;
+        try {
+            hash = MessageDigest.getInstance("SHA-1")
+                    .digest(text.getBytes(StandardCharsets.UTF_8));
+        } catch (final NoSuchAlgorithmException e) {
+            // every Java implementation is required to support SHA-1
+            throw new IllegalStateException(e);
+        }
+
+        final StringBuilder hex = new StringBuilder(hash.length * 2);
+        for (final byte b : hash) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16))
+                    .append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    static final class Entry {
+        @NonNull
+        final Info info;
+        final long expireTimestamp;
+
+        private Entry(@NonNull final Info info, final long expireTimestamp) {
+            this.info = info;
+            this.expireTimestamp = expireTimestamp;
+        }
+    }
+}
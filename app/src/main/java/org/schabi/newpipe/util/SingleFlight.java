@@ -0,0 +1,95 @@
+package org.schabi.newpipe.util;
+
+import androidx.annotation.NonNull;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.reactivex.rxjava3.core.Single;
+
+/**
+ * Shares a single in-flight load per key among all its subscribers.
+ *
+ * <p>The load starts with the first subscriber and is disposed only once every subscriber has
+ * disposed. Subscribers arriving after it terminated start a new load.</p>
+ */
+final class SingleFlight {
+    private final Map<String, Single<?>> inFlight = new HashMap<>();
+    private final AtomicLong loadCount = new AtomicLong();
+    private final AtomicLong deduplicatedCount = new AtomicLong();
+
+    /**
+     * @param key    identifies the loads that return the same result
+     * @param source the load to run if none is in flight for the key
+     * @param <T>    the type of the result
+     * @return a {@link Single} joining the load in flight for the key, or starting the source
+     */
+    @NonNull
+    <T> Single<T> load(@NonNull final String key, @NonNull final Single<T> source) {
+        return Single.defer(() -> {
+            Single<?> shared;
+            synchronized (inFlight) {
+                shared = inFlight.get(key);
+                if (shared == null) {
+                    shared = share(key, source);
+                    inFlight.put(key, shared);
+                    loadCount.incrementAndGet();
+                } else {
+                    deduplicatedCount.incrementAndGet();
+                }
+            }
+            //noinspection unchecked
+            return (Single<T>) shared;
+        });
+    }
+
+    /**
+     * @param parts the values identifying the load, in a fixed order
+     * @return a key joining the parts
+     */
+    @NonNull
+    static String keyOf(@NonNull final Object... parts) {
+        final StringBuilder key = new StringBuilder();
+        for (final Object part : parts) {
+            if (key.length() > 0) {
+                key.append(':');
+            }
+            key.append(part);
+        }
+        return key.toString();
+    }
+
+    @NonNull
+    private <T> Single<T> share(@NonNull final String key, @NonNull final Single<T> source) {
+        final AtomicReference<Single<T>> self = new AtomicReference<>();
+        final Single<T> shared = source
+                .doFinally(() -> {
+                    synchronized (inFlight) {
+                        if (inFlight.get(key) == self.get()) {
+                            inFlight.remove(key);
+                        }
+                    }
+                })
+                .toObservable()
+                .share()
+                .singleOrError();
+        self.set(shared);
+        return shared;
+    }
+
+    /**
+     * @return the number of loads that were started
+     */
+    long getLoadCount() {
+        return loadCount.get();
+    }
+
+    /**
+     * @return the number of subscriptions that joined a load already in flight
+     */
+    long getDeduplicatedCount() {
+        return deduplicatedCount.get();
+    }
+}
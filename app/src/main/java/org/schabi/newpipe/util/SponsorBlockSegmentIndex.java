@@ -0,0 +1,104 @@
+package org.schabi.newpipe.util;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.schabi.newpipe.extractor.sponsorblock.SponsorBlockAction;
+import org.schabi.newpipe.extractor.sponsorblock.SponsorBlockSegment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The skippable {@link SponsorBlockSegment}s of a stream, sorted by start time so that the
+ * segment at a playback position is found with a binary search.
+ * <p>
+ * Segments may overlap: each position keeps the greatest end time of the segments starting at or
+ * before it, which bounds how far back the search has to go.
+ * </p>
+ */
+public final class SponsorBlockSegmentIndex {
+    public static final SponsorBlockSegmentIndex EMPTY =
+            new SponsorBlockSegmentIndex(new SponsorBlockSegment[0]);
+
+    @NonNull
+    private final SponsorBlockSegment[] segments;
+    @NonNull
+    private final double[] maxEndTimes;
+
+    private SponsorBlockSegmentIndex(@NonNull final SponsorBlockSegment[] segments) {
+        this.segments = segments;
+        this.maxEndTimes = new double[segments.length];
+
+        double maxEndTime = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < segments.length; i++) {
+            maxEndTime = Math.max(maxEndTime, segments[i].endTime);
+            maxEndTimes[i] = maxEndTime;
+        }
+    }
+
+    /**
+     * @param segments the segments of the stream, in any order
+     * @return the index of the segments having the {@link SponsorBlockAction#SKIP skip} action
+     */
+    @NonNull
+    public static SponsorBlockSegmentIndex of(@Nullable final SponsorBlockSegment[] segments) {
+        if (segments == null || segments.length == 0) {
+            return EMPTY;
+        }
+
+        final List<SponsorBlockSegment> skippable = new ArrayList<>(segments.length);
+        for (final SponsorBlockSegment segment : segments) {
+            if (segment.action == SponsorBlockAction.SKIP) {
+                skippable.add(segment);
+            }
+        }
+        final SponsorBlockSegment[] sorted = skippable.toArray(new SponsorBlockSegment[0]);
+        Arrays.sort(sorted, Comparator.comparingDouble(segment -> segment.startTime));
+        return new SponsorBlockSegmentIndex(sorted);
+    }
+
+    /**
+     * @param positionMillis the playback position
+     * @return the segment containing the position, bounds included, or {@code null} if there is
+     * none; if several segments contain it, the one ending last
+     */
+    @Nullable
+    public SponsorBlockSegment getSegmentAt(final long positionMillis) {
+        // the last segment starting at or before the position
+        int low = 0;
+        int high = segments.length - 1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            if (segments[middle].startTime <= positionMillis) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        SponsorBlockSegment result = null;
+        for (int i = high; i >= 0 && maxEndTimes[i] >= positionMillis; i--) {
+            if (segments[i].endTime >= positionMillis
+                    && (result == null || segments[i].endTime > result.endTime)) {
+                result = segments[i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the indexed segments, sorted by start time
+     */
+    @NonNull
+    public List<SponsorBlockSegment> getSegments() {
+        return Collections.unmodifiableList(Arrays.asList(segments));
+    }
+
+    public boolean isEmpty() {
+        return segments.length == 0;
+    }
+}
@@ -0,0 +1,430 @@
+package org.schabi.newpipe.util;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import org.schabi.newpipe.extractor.InfoItem;
+import org.schabi.newpipe.extractor.exceptions.ExtractionException;
+import org.schabi.newpipe.extractor.stream.AudioStream;
+import org.schabi.newpipe.extractor.stream.Stream;
+import org.schabi.newpipe.extractor.stream.StreamInfo;
+import org.schabi.newpipe.extractor.stream.VideoStream;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.LongSupplier;
+
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import okhttp3.HttpUrl;
+
+/**
+ * Keeps the latest URLs of the streams being played or downloaded, by stream id and itag, and
+ * extracts the streams again once their URLs expire or are refused.
+ *
+ * <p>Refreshes of the same stream, e.g. by the audio and video loaders of the player and by the
+ * downloader, collapse into a single extraction, and an extraction finished less than
+ * {@link #REUSE_MILLIS} ago is reused. URLs used recently are refreshed in the background shortly
+ * before they expire. Expired entries are evicted, and the least recently used ones once there
+ * are more than {@link #MAX_ENTRIES}.</p>
+ */
+public final class StreamUrlRegistry {
+    private static final String TAG = StreamUrlRegistry.class.getSimpleName();
+
+    @VisibleForTesting
+    static final int MAX_ENTRIES = 128;
+    /**
+     * The lifetime of the URLs without an {@code expire} parameter.
+     */
+    @VisibleForTesting
+    static final long DEFAULT_TTL_MILLIS = TimeUnit.HOURS.toMillis(5);
+    /**
+     * URLs used within this time are refreshed once they expire within
+     * {@link #REFRESH_AHEAD_MILLIS}.
+     */
+    @VisibleForTesting
+    static final long RECENT_USE_MILLIS = TimeUnit.HOURS.toMillis(1);
+    @VisibleForTesting
+    static final long REFRESH_AHEAD_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    private static final long SWEEP_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    @VisibleForTesting
+    static final long REUSE_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    interface StreamInfoLoader {
+        @NonNull
+        StreamInfo load(int serviceId, @NonNull String url)
+                throws ExtractionException, IOException;
+    }
+
+    private static final StreamUrlRegistry INSTANCE = new StreamUrlRegistry(
+            (serviceId, url) -> {
+                final StreamInfo info = ExtractorHelper.getNewStreamInfo(serviceId, url);
+                InfoCache.getInstance().putInfo(serviceId, url, info, InfoItem.InfoType.STREAM);
+                return info;
+            },
+            command -> Schedulers.io().scheduleDirect(command),
+            System::currentTimeMillis);
+
+    @NonNull
+    private final StreamInfoLoader loader;
+    @NonNull
+    private final Executor executor;
+    @NonNull
+    private final LongSupplier clock;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, Extraction> extractions = new ConcurrentHashMap<>();
+    private final Set<String> backgroundRefreshes =
+            Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private volatile long nextSweepTimestamp;
+
+    @VisibleForTesting
+    StreamUrlRegistry(@NonNull final StreamInfoLoader loader,
+                      @NonNull final Executor executor,
+                      @NonNull final LongSupplier clock) {
+        this.loader = loader;
+        this.executor = executor;
+        this.clock = clock;
+    }
+
+    @NonNull
+    public static StreamUrlRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param streamId the id of the stream
+     * @param itag     the itag of the stream format
+     * @return the latest URL of the format, or {@code null} if there is none which didn't expire
+     */
+    @Nullable
+    public String getUrl(@NonNull final String streamId, @NonNull final String itag) {
+        final long now = clock.getAsLong();
+        final String key = keyOf(streamId, itag);
+        final Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        } else if (entry.expireTimestamp <= now) {
+            entries.remove(key, entry);
+            return null;
+        }
+
+        entry.accessTimestamp = now;
+        if (now >= nextSweepTimestamp) {
+            sweep(now);
+        }
+        return entry.url;
+    }
+
+    /**
+     * Registers a URL that is being used, so that it gets refreshed before it expires. Does
+     * nothing if a URL is already known for the format.
+     *
+     * @param serviceId the service of the stream
+     * @param streamUrl the URL of the stream page, to extract it again
+     * @param streamId  the id of the stream
+     * @param itag      the itag of the stream format
+     * @param url       the URL of the format
+     */
+    public void register(final int serviceId, @NonNull final String streamUrl,
+                         @NonNull final String streamId, @NonNull final String itag,
+                         @NonNull final String url) {
+        final long now = clock.getAsLong();
+        final Entry entry = new Entry(serviceId, streamUrl, url, expireTimestampOf(url, now));
+        entry.accessTimestamp = now;
+        if (entries.putIfAbsent(keyOf(streamId, itag), entry) == null) {
+            trim(now);
+        }
+    }
+
+    /**
+     * Extracts the stream again in the background, unless it was extracted less than
+     * {@link #REUSE_MILLIS} ago, and returns the new URL of the format. The extraction goes on
+     * if it takes longer than the timeout, so that a later call gets its result.
+     *
+     * @param serviceId     the service of the stream
+     * @param streamUrl     the URL of the stream page
+     * @param streamId      the id of the stream
+     * @param itag          the itag of the stream format
+     * @param timeoutMillis how long to wait for the extraction
+     * @return the new URL of the format, or {@code null} if the stream doesn't have it anymore
+     * @throws ExtractionException    if the stream could not be extracted
+     * @throws InterruptedIOException if the extraction timed out or the thread was interrupted
+     * @throws IOException            if the stream could not be loaded
+     */
+    @Nullable
+    public String refreshUrl(final int serviceId, @NonNull final String streamUrl,
+                             @NonNull final String streamId, @NonNull final String itag,
+                             final long timeoutMillis)
+            throws ExtractionException, IOException {
+        await(extractionOf(serviceId, streamUrl, true), streamUrl, timeoutMillis);
+        return getUrl(streamId, itag);
+    }
+
+    /**
+     * Extracts the stream again, unless it was extracted less than {@link #REUSE_MILLIS} ago,
+     * and registers the URLs of its formats. Waits for the extraction in flight for the stream,
+     * if there is one.
+     *
+     * @param serviceId the service of the stream
+     * @param streamUrl the URL of the stream page
+     * @return the stream
+     * @throws ExtractionException if the stream could not be extracted
+     * @throws IOException         if the stream could not be loaded
+     */
+    @NonNull
+    public StreamInfo refresh(final int serviceId, @NonNull final String streamUrl)
+            throws ExtractionException, IOException {
+        return await(extractionOf(serviceId, streamUrl, false), streamUrl, 0);
+    }
+
+    /**
+     * @param inBackground whether to run a new extraction on the executor rather than on the
+     *                     calling thread
+     * @return the extraction in flight for the stream, a recent one, or a new one
+     */
+    @NonNull
+    private Extraction extractionOf(final int serviceId, @NonNull final String streamUrl,
+                                    final boolean inBackground) {
+        final String key = serviceId + ":" + streamUrl;
+        Extraction extraction;
+        while (true) {
+            extraction = extractions.get(key);
+            if (extraction != null && (!extraction.task.isDone()
+                    || clock.getAsLong() - extraction.doneTimestamp < REUSE_MILLIS)) {
+                break;
+            }
+
+            final Extraction newExtraction = new Extraction();
+            newExtraction.task = new FutureTask<>(() -> {
+                try {
+                    return loader.load(serviceId, streamUrl);
+                } finally {
+                    // set before the task is done, so that it is never reused past its time
+                    newExtraction.doneTimestamp = clock.getAsLong();
+                }
+            });
+            if (extraction == null
+                    ? extractions.putIfAbsent(key, newExtraction) == null
+                    : extractions.replace(key, extraction, newExtraction)) {
+                extraction = newExtraction;
+                if (inBackground) {
+                    executor.execute(() -> run(key, serviceId, streamUrl, newExtraction));
+                } else {
+                    run(key, serviceId, streamUrl, extraction);
+                }
+                break;
+            }
+        }
+        return extraction;
+    }
+
+    /**
+     * @param timeoutMillis how long to wait for the extraction, or 0 to wait until it is done
+     */
+    @NonNull
+    private static StreamInfo await(@NonNull final Extraction extraction,
+                                    @NonNull final String streamUrl,
+                                    final long timeoutMillis)
+            throws ExtractionException, IOException {
+        try {
+            return timeoutMillis > 0
+                    ? extraction.task.get(timeoutMillis, TimeUnit.MILLISECONDS)
+                    : extraction.task.get();
+        } catch (final TimeoutException e) {
+            throw new InterruptedIOException("Timed out extracting " + streamUrl);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while extracting " + streamUrl);
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof ExtractionException) {
+                throw (ExtractionException) cause;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new ExtractionException(cause);
+        }
+    }
+
+    @VisibleForTesting
+    int size() {
+        return entries.size();
+    }
+
+    private void run(@NonNull final String key, final int serviceId,
+                     @NonNull final String streamUrl, @NonNull final Extraction extraction) {
+        extraction.task.run();
+        final long now = extraction.doneTimestamp;
+
+        final StreamInfo info;
+        try {
+            info = extraction.task.get();
+        } catch (final ExecutionException | InterruptedException e) {
+            // failures are reported to the callers, but not reused
+            extractions.remove(key, extraction);
+            return;
+        }
+
+        for (final VideoStream stream : info.getVideoStreams()) {
+            registerStream(serviceId, streamUrl, info.getId(), stream.getItag(), stream, now);
+        }
+        for (final VideoStream stream : info.getVideoOnlyStreams()) {
+            registerStream(serviceId, streamUrl, info.getId(), stream.getItag(), stream, now);
+        }
+        for (final AudioStream stream : info.getAudioStreams()) {
+            registerStream(serviceId, streamUrl, info.getId(), stream.getItag(), stream, now);
+        }
+        trim(now);
+
+        // forget the extractions which can't be reused anymore
+        final Iterator<Extraction> iterator = extractions.values().iterator();
+        while (iterator.hasNext()) {
+            final Extraction other = iterator.next();
+            if (other.task.isDone() && now - other.doneTimestamp >= REUSE_MILLIS) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private void registerStream(final int serviceId, @NonNull final String streamUrl,
+                                @NonNull final String streamId, final int itag,
+                                @NonNull final Stream stream, final long now) {
+        if (itag < 0 || !stream.isUrl()) {
+            return;
+        }
+
+        final Entry entry = new Entry(serviceId, streamUrl, stream.getContent(),
+                expireTimestampOf(stream.getContent(), now));
+        final Entry previous = entries.put(keyOf(streamId, String.valueOf(itag)), entry);
+        if (previous != null) {
+            entry.accessTimestamp = previous.accessTimestamp;
+        }
+    }
+
+    /**
+     * Evicts the expired entries and refreshes in the background the streams with a URL used
+     * recently which expires soon.
+     */
+    private void sweep(final long now) {
+        nextSweepTimestamp = now + SWEEP_INTERVAL_MILLIS;
+        final Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            final Entry entry = iterator.next();
+            if (entry.expireTimestamp <= now) {
+                iterator.remove();
+            } else if (entry.expireTimestamp - now < REFRESH_AHEAD_MILLIS
+                    && now - entry.accessTimestamp < RECENT_USE_MILLIS) {
+                refreshInBackground(entry.serviceId, entry.streamUrl);
+            }
+        }
+    }
+
+    private void refreshInBackground(final int serviceId, @NonNull final String streamUrl) {
+        final String key = serviceId + ":" + streamUrl;
+        if (!backgroundRefreshes.add(key)) {
+            return;
+        }
+
+        executor.execute(() -> {
+            try {
+                refresh(serviceId, streamUrl);
+            } catch (final ExtractionException | IOException | RuntimeException e) {
+                Log.w(TAG, "Could not refresh the URLs of " + streamUrl, e);
+            } finally {
+                backgroundRefreshes.remove(key);
+            }
+        });
+    }
+
+    private void trim(final long now) {
+        if (entries.size() <= MAX_ENTRIES) {
+            return;
+        }
+
+        synchronized (entries) {
+            final Iterator<Entry> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().expireTimestamp <= now) {
+                    iterator.remove();
+                }
+            }
+            while (entries.size() > MAX_ENTRIES) {
+                Map.Entry<String, Entry> leastRecentlyUsed = null;
+                for (final Map.Entry<String, Entry> entry : entries.entrySet()) {
+                    if (leastRecentlyUsed == null || entry.getValue().accessTimestamp
+                            < leastRecentlyUsed.getValue().accessTimestamp) {
+                        leastRecentlyUsed = entry;
+                    }
+                }
+                entries.remove(leastRecentlyUsed.getKey(), leastRecentlyUsed.getValue());
+            }
+        }
+    }
+
+    @NonNull
+    private static String keyOf(@NonNull final String streamId, @NonNull final String itag) {
+        return streamId + ":" + itag;
+    }
+
+    /**
+     * @param url a stream URL
+     * @param now the current time
+     * @return the time given by the {@code expire} parameter of the URL, in milliseconds, or
+     * {@link #DEFAULT_TTL_MILLIS} from now if it has none
+     */
+    private static long expireTimestampOf(@NonNull final String url, final long now) {
+        final HttpUrl httpUrl = HttpUrl.parse(url);
+        final String expire = httpUrl == null ? null : httpUrl.queryParameter("expire");
+        if (expire != null) {
+            try {
+                return TimeUnit.SECONDS.toMillis(Long.parseLong(expire));
+            } catch (final NumberFormatException ignored) {
+                // use the default lifetime
+            }
+        }
+        return now + DEFAULT_TTL_MILLIS;
+    }
+
+    private static final class Entry {
+        final int serviceId;
+        @NonNull
+        final String streamUrl;
+        @NonNull
+        final String url;
+        final long expireTimestamp;
+        /**
+         * The last time the URL was returned, or 0 if it never was.
+         */
+        volatile long accessTimestamp;
+
+        Entry(final int serviceId, @NonNull final String streamUrl, @NonNull final String url,
+              final long expireTimestamp) {
+            this.serviceId = serviceId;
+            this.streamUrl = streamUrl;
+            this.url = url;
+            this.expireTimestamp = expireTimestamp;
+        }
+    }
+
+    private static final class Extraction {
+        FutureTask<StreamInfo> task;
+        volatile long doneTimestamp;
+    }
+}
@@ -0,0 +1,153 @@
+package org.schabi.newpipe.views;
+
+import java.util.Arrays;
+
+/**
+ * Assigns the rows of the {@link BulletCommentsView} to new comments so that they do not
+ * overlap. The state of the rows is kept in primitive arrays, reused while the row count does not
+ * grow.
+ * <p>
+ * Fixed (top and bottom) comments hold their row until they disappear. A scrolling comment can
+ * follow the previous comment of its row as soon as that one has fully entered the view, provided
+ * it will not catch up with it before it leaves the view.
+ * </p>
+ * <p>
+ * Times are in milliseconds, on any clock that stays still while comments are paused.
+ * </p>
+ */
+final class BulletCommentRowAllocator {
+    private int rowCount;
+    private int viewWidth;
+
+    /**
+     * When each row gets free of its fixed comment.
+     */
+    private long[] fixedRowsFreeTime = new long[0];
+    /**
+     * When the last scrolling comment of each row entered the view.
+     */
+    private long[] regularRowsStartTime = new long[0];
+    /**
+     * How long the last scrolling comment of each row takes to cross the view.
+     */
+    private long[] regularRowsDuration = new long[0];
+    /**
+     * The width of the last scrolling comment of each row.
+     */
+    private float[] regularRowsWidth = new float[0];
+
+    /**
+     * Frees all rows.
+     *
+     * @param newRowCount  the number of rows of the view
+     * @param newViewWidth the width of the view, in pixels
+     */
+    void reset(final int newRowCount, final int newViewWidth) {
+        rowCount = newRowCount;
+        viewWidth = newViewWidth;
+        if (fixedRowsFreeTime.length < newRowCount) {
+            fixedRowsFreeTime = new long[newRowCount];
+            regularRowsStartTime = new long[newRowCount];
+            regularRowsDuration = new long[newRowCount];
+            regularRowsWidth = new float[newRowCount];
+        }
+        Arrays.fill(fixedRowsFreeTime, Long.MIN_VALUE);
+        Arrays.fill(regularRowsStartTime, 0);
+        Arrays.fill(regularRowsDuration, 0);
+        Arrays.fill(regularRowsWidth, 0);
+    }
+
+    int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @param now     the current time
+     * @param maxRows how many rows from the top may be used
+     * @return the first free row from the top, or -1 if there is none
+     */
+    int findTopRow(final long now, final int maxRows) {
+        final int end = Math.min(maxRows, rowCount);
+        for (int row = 0; row < end; row++) {
+            if (fixedRowsFreeTime[row] <= now) {
+                return row;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param now     the current time
+     * @param maxRows how many rows from the bottom may be used
+     * @return the first free row from the bottom, or -1 if there is none
+     */
+    int findBottomRow(final long now, final int maxRows) {
+        final int end = Math.max(0, rowCount - maxRows);
+        for (int row = rowCount - 1; row >= end; row--) {
+            if (fixedRowsFreeTime[row] <= now) {
+                return row;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param row      a row returned by {@link #findTopRow(long, int)} or
+     *                 {@link #findBottomRow(long, int)}
+     * @param now      the current time
+     * @param duration how long the comment is shown
+     */
+    void occupyFixedRow(final int row, final long now, final long duration) {
+        fixedRowsFreeTime[row] = now + duration;
+    }
+
+    /**
+     * @param now      the current time
+     * @param duration how long the comment takes to cross the view
+     * @param width    the width of the comment, in pixels
+     * @param maxRows  how many rows from the top may be used
+     * @return the first row from the top where the comment can start scrolling, or -1 if there is
+     * none
+     */
+    int findRegularRow(final long now, final long duration, final float width,
+                       final int maxRows) {
+        final int end = Math.min(maxRows, rowCount);
+        for (int row = 0; row < end; row++) {
+            if (canFollow(row, now, duration, width)) {
+                return row;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param row      a row returned by {@link #findRegularRow(long, long, float, int)}
+     * @param now      the current time
+     * @param duration how long the comment takes to cross the view
+     * @param width    the width of the comment, in pixels
+     */
+    void occupyRegularRow(final int row, final long now, final long duration,
+                          final float width) {
+        regularRowsStartTime[row] = now;
+        regularRowsDuration[row] = duration;
+        regularRowsWidth[row] = width;
+    }
+
+    private boolean canFollow(final int row, final long now, final long duration,
+                              final float width) {
+        final long previousEndTime = regularRowsStartTime[row] + regularRowsDuration[row];
+        if (previousEndTime <= now) {
+            return true;
+        }
+
+        // the previous comment has to be fully visible...
+        final float previousWidth = regularRowsWidth[row];
+        final float previousSpeed = (viewWidth + previousWidth) / regularRowsDuration[row];
+        if (previousSpeed * (now - regularRowsStartTime[row]) < previousWidth) {
+            return false;
+        }
+        // ...and the new one must not reach the left edge before the previous one leaves
+        final float speed = (viewWidth + width) / Math.max(1, duration);
+        return speed * (previousEndTime - now) <= viewWidth;
+    }
+}
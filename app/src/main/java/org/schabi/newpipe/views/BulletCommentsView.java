@@ -1,52 +1,130 @@
 package org.schabi.newpipe.views;
 
-import android.animation.Animator;
-import android.animation.AnimatorListenerAdapter;
-import android.animation.ObjectAnimator;
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Typeface;
-import android.os.Build;
+import android.os.SystemClock;
+import android.text.TextPaint;
 import android.util.AttributeSet;
 import android.util.Log;
-import android.util.TypedValue;
-import android.view.LayoutInflater;
+import android.util.LruCache;
+import android.view.Choreographer;
 import android.view.View;
-import android.view.animation.LinearInterpolator;
-import android.widget.TextView;
 
 import androidx.annotation.NonNull;
-import androidx.constraintlayout.widget.ConstraintLayout;
-
+import androidx.annotation.VisibleForTesting;
 import androidx.core.content.res.ResourcesCompat;
 import androidx.preference.PreferenceManager;
+
+import org.schabi.newpipe.MainActivity;
 import org.schabi.newpipe.R;
-import org.schabi.newpipe.databinding.BulletCommentsPlayerBinding;
 import org.schabi.newpipe.extractor.bulletComments.BulletCommentsInfoItem;
 
 import java.time.Duration;
-import java.util.*;
-import java.util.stream.Collectors;
+import java.util.ArrayList;
+import java.util.PriorityQueue;
 
-public final class BulletCommentsView extends ConstraintLayout {
-    private final String TAG = "BulletCommentsView";
-    private SharedPreferences prefs;
+/**
+ * Draws bullet comments (danmaku) over the player.
+ * <p>
+ * All comments are drawn by this single view, in {@link #onDraw(Canvas)}, so that the
+ * hardware renderer batches their glyphs. Comments are recycled objects, their text is measured
+ * once and cached, their rows are assigned by a {@link BulletCommentRowAllocator}, and a single
+ * {@link Choreographer} callback moves them while any is visible.
+ * </p>
+ */
+public final class BulletCommentsView extends View implements Choreographer.FrameCallback {
+    private static final String TAG = "BulletCommentsView";
+    private static final boolean DEBUG = MainActivity.DEBUG;
 
     /**
-     * Tuple of TextView and ObjectAnimator.
+     * Number of comment rows.
      */
-    private static class AnimatedTextView {
-        AnimatedTextView(final TextView textView, final ObjectAnimator animator) {
-            this.textView = textView;
-            this.animator = animator;
-        }
+    private static final int COMMENTS_ROWS_COUNT = 11;
+    private static final double COMMENT_RELATIVE_TEXT_SIZE = 1 / 13.5;
+    /**
+     * Danmaku repeat a lot ("www", "888", ...), so measured texts are kept for a while.
+     */
+    private static final int TEXT_CACHE_SIZE = 512;
+
+    /**
+     * A comment on the screen. Instances are recycled through {@link #recycledComments}.
+     */
+    private static final class Comment {
+        MeasuredText text;
+        float x;
+        float y;
+        /**
+         * Pixels per millisecond, 0 for fixed comments.
+         */
+        float speed;
+        long startTime;
+        long endTime;
+    }
 
-        public final TextView textView;
-        public final ObjectAnimator animator;
+    /**
+     * A comment text, with the paint to draw it and its measures.
+     */
+    private static final class MeasuredText {
+        final String text;
+        final TextPaint paint;
+        final float width;
+        final float ascent;
+        final float height;
+
+        MeasuredText(final String text, final TextPaint paint) {
+            this.text = text;
+            this.paint = paint;
+            final Paint.FontMetrics fontMetrics = paint.getFontMetrics();
+            this.width = paint.measureText(text);
+            this.ascent = fontMetrics.ascent;
+            this.height = fontMetrics.descent - fontMetrics.ascent;
+        }
     }
 
+    private final PriorityQueue<BulletCommentsInfoItem> bulletCommentsInfoItemRegularPool =
+            new PriorityQueue<>();
+    private final PriorityQueue<BulletCommentsInfoItem> bulletCommentsInfoItemFixedPool =
+            new PriorityQueue<>();
+
+    private final ArrayList<Comment> comments = new ArrayList<>();
+    private final ArrayList<Comment> recycledComments = new ArrayList<>();
+    private final LruCache<String, MeasuredText> textCache = new LruCache<>(TEXT_CACHE_SIZE);
+    private final BulletCommentRowAllocator rowAllocator = new BulletCommentRowAllocator();
+    private final StringBuilder keyBuilder = new StringBuilder();
+
+    /**
+     * Duration of fixed comments. get from preferences. key: "top_bottom_bullet_comments_key"
+     */
+    private int commentsDuration;
+    private float durationFactor;
+    private int outlineRadius;
+    private int opacity; // 0~255, 0: hide
+    private Typeface typeface;
+    private Typeface superChatTypeface;
+
+    private int maxRowsTop = 1000000;
+    private int maxRowsBottom = 1000000;
+    private int maxRowsRegular = 1000000;
+
+    /**
+     * The time comments are moved to, in nanoseconds. It only advances with frames, so it stands
+     * still while the comments are paused.
+     */
+    private long clockNanos;
+    private long lastFrameTimeNanos;
+    private boolean paused;
+    private boolean frameScheduled;
+
+    private long frameCount;
+    private long totalFrameTimeNanos;
+    private long maxFrameTimeNanos;
+    private long drawCount;
+    private long totalDrawTimeNanos;
+
     public BulletCommentsView(final Context context) {
         super(context);
         init(context);
@@ -65,88 +143,83 @@ public final class BulletCommentsView extends ConstraintLayout {
         init(context);
     }
 
-    //How to create custom view: https://maku77.github.io/android/ui/create-custom-view.html
     private void init(final Context context) {
-        final View layout = LayoutInflater.from(context)
-                .inflate(R.layout.bullet_comments_player, this);
-        prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        final SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
         commentsDuration = prefs.getInt("top_bottom_bullet_comments_key", 8);
-        durationFactor = (float) prefs.getInt("regular_bullet_comments_duration_key", 8) / (float) commentsDuration;
+        durationFactor = (float) prefs.getInt("regular_bullet_comments_duration_key", 8)
+                / (float) commentsDuration;
         outlineRadius = prefs.getInt("bullet_comments_outline_radius_key", 2);
 
-
-        boolean limitMaxRows = prefs.getBoolean(context.getString(R.string.enable_max_rows_customization_key), false);
+        final boolean limitMaxRows = prefs.getBoolean(
+                context.getString(R.string.enable_max_rows_customization_key), false);
         if (limitMaxRows) {
-            maxRowsTop = prefs.getInt(context.getString(R.string.max_bullet_comments_rows_top_key), 15);
-            maxRowsBottom = prefs.getInt(context.getString(R.string.max_bullet_comments_rows_bottom_key), 15);
-            maxRowsRegular = prefs.getInt(context.getString(R.string.max_bullet_comments_rows_bottom_key), 15);
+            maxRowsTop = prefs.getInt(
+                    context.getString(R.string.max_bullet_comments_rows_top_key), 15);
+            maxRowsBottom = prefs.getInt(
+                    context.getString(R.string.max_bullet_comments_rows_bottom_key), 15);
+            maxRowsRegular = prefs.getInt(
+                    context.getString(R.string.max_bullet_comments_rows_regular_key), 15);
         }
 
-        font = prefs.getString("bullet_comments_font_key", "LXGW WenKai Screen");
+        final Typeface font = getFont(context,
+                prefs.getString("bullet_comments_font_key", "LXGW WenKai Screen"));
+        typeface = Typeface.create(font, Typeface.BOLD);
+        superChatTypeface = Typeface.create(font, Typeface.BOLD_ITALIC);
         opacity = prefs.getInt("bullet_comments_opacity_key", 0xFF);
-        //Not this: BulletCommentsPlayerBinding.inflate(LayoutInflater.from(context));
-        binding = BulletCommentsPlayerBinding.bind(this);
-        //This does not work. post(this::setLayout);
     }
 
-    /**
-     * Whether setLayout() is called.
-     */
-    private boolean layoutSet = false;
-
-    /**
-     * Needs additional space to draw comments longer than the view size.
-     */
-    private void setLayout() {
-        final int additionalWidth = additionalSpaceRelative * getWidth();
-        binding.bottomRight.getLayoutParams().width = additionalWidth;
-        requestLayout();
-        Log.i(TAG, "Additional width: " + additionalWidth
-                + ", container width: " + binding.bulletCommentsContainer.getWidth());
+    private static Typeface getFont(final Context context, final String font) {
+        switch (font) {
+            case "serif":
+                return Typeface.SERIF;
+            case "monospace":
+                return Typeface.MONOSPACE;
+            case "sans-serif":
+                return Typeface.SANS_SERIF;
+            case "LXGW WenKai Screen":
+                return ResourcesCompat.getFont(context, R.font.lxgw_wenkai);
+            default:
+                return Typeface.DEFAULT;
+        }
     }
 
-    /**
-     * Auto-generated binding class.
-     * https://developer.android.com/topic/libraries/data-binding/generated-binding
-     */
-    private BulletCommentsPlayerBinding binding;
-    /**
-     * Additional width of this ViewGroup relative to the parent ViewGroup
-     * to show comments longer than the view size.
-     */
-    private final int additionalSpaceRelative = 4;
-
-    /**
-     * Number of comment rows.
-     */
-    private final int commentsRowsCount = 11;
-    private int lastCalculatedCommentsRowsCount = 11;
-    List<Long> rows = Collections.synchronizedList(new ArrayList<Long>());
-    List<Map.Entry<Long, Integer>> rowsRegular = Collections.synchronizedList(new ArrayList<>());
-    private final double commentRelativeTextSize = 1 / 13.5;
-    PriorityQueue<BulletCommentsInfoItem> bulletCommentsInfoItemRegularPool = new PriorityQueue<>();
-    PriorityQueue<BulletCommentsInfoItem> bulletCommentsInfoItemFixedPool = new PriorityQueue<>();
+    @Override
+    protected void onSizeChanged(final int w, final int h, final int oldW, final int oldH) {
+        super.onSizeChanged(w, h, oldW, oldH);
+        // text sizes and rows depend on the size of the view
+        clearComments();
+        textCache.evictAll();
+        rowAllocator.reset(w == 0 || h == 0 ? 0 : h / Math.min(h, w) * COMMENTS_ROWS_COUNT, w);
+    }
 
-    /**
-     * Duration of comments. get from preferences. key: "bullet_comments_key"
-     */
-    private int commentsDuration;
-    private float durationFactor;
-    private int outlineRadius;
-    private String font;
-    private int opacity; // 0~255, 0: hide
-    private final List<AnimatedTextView> animatedTextViews = new ArrayList<>();
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        scheduleFrame();
+    }
 
-    private int maxRowsTop = 1000000;
-    private int maxRowsBottom = 1000000;
-    private int maxRowsRegular = 1000000;
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        stopFrames();
+    }
 
     /**
-     * Clear all child views.
+     * Clear all comments.
      */
     public void clearComments() {
-        animatedTextViews.clear();
-        binding.bulletCommentsContainer.removeAllViews();
+        if (DEBUG && frameCount > 0) {
+            Log.d(TAG, "Average frame time: " + getAverageFrameTimeMillis() + " ms, max: "
+                    + maxFrameTimeNanos / 1_000_000f + " ms, average draw time: "
+                    + getAverageDrawTimeMillis() + " ms");
+        }
+        for (final Comment comment : comments) {
+            recycle(comment);
+        }
+        comments.clear();
+        rowAllocator.reset(rowAllocator.getRowCount(), getWidth());
+        stopFrames();
+        invalidate();
     }
 
     /**
@@ -166,216 +239,287 @@ public final class BulletCommentsView extends ConstraintLayout {
      * Pause animation of comments.
      */
     public void pauseComments() {
-        animatedTextViews.stream().forEach(s -> s.animator.pause());
+        paused = true;
+        stopFrames();
     }
 
     /**
      * Resume animation of comments.
      */
     public void resumeComments() {
-        animatedTextViews.stream().forEach(s -> s.animator.resume());
+        paused = false;
+        scheduleFrame();
     }
 
     /**
-     * Draw comments by creating textViews.
+     * Queue comments and show those due before the given position.
      *
      * @param items             comments.
-     * @param drawUntilPosition
+     * @param drawUntilPosition the position until which comments are shown, or
+     *                          {@code Duration.ofSeconds(Long.MAX_VALUE)} to show them all.
      */
-    public void drawComments(@NonNull final BulletCommentsInfoItem[] items, Duration drawUntilPosition) {
-        if (!layoutSet) {
-            setLayout();
-            layoutSet = true;
+    public void drawComments(@NonNull final BulletCommentsInfoItem[] items,
+                             final Duration drawUntilPosition) {
+        for (final BulletCommentsInfoItem item : items) {
+            if (item.getPosition() == BulletCommentsInfoItem.Position.REGULAR) {
+                bulletCommentsInfoItemRegularPool.add(item);
+            } else {
+                bulletCommentsInfoItemFixedPool.add(item);
+            }
         }
-//        if(bulletCommentsInfoItemPool.size() > 0
-//                && !(drawUntilPosition.compareTo(Duration.ofSeconds(Long.MAX_VALUE)) == 0)
-//                && bulletCommentsInfoItemPool.peek().getDuration().toMillis() - drawUntilPosition.toMillis() > 30000){
-//            // should only apply when the stream is a YouTube live replay
-//            bulletCommentsInfoItemPool.clear();
-//        }
-        bulletCommentsInfoItemRegularPool.addAll(Arrays.asList(items).stream().filter(x->x.getPosition() == BulletCommentsInfoItem.Position.REGULAR).collect(Collectors.toList()));
-        bulletCommentsInfoItemFixedPool.addAll(Arrays.asList(items).stream().filter(x->x.getPosition() != BulletCommentsInfoItem.Position.REGULAR).collect(Collectors.toList()));
-        //Log.v(TAG, "New comments count: " + items.length);
-        final int height = getHeight();
-        final int width = getWidth();
-        final int calculatedCommentRowsCount = height / Math.min(height, width) * commentsRowsCount;
-        if(calculatedCommentRowsCount != lastCalculatedCommentsRowsCount){
-            lastCalculatedCommentsRowsCount = calculatedCommentRowsCount;
-            rows.clear();
-            rowsRegular.clear();
+        if (rowAllocator.getRowCount() == 0) {
+            // not laid out yet, comments wait in the pools
+            return;
         }
-        while(rowsRegular.size() < calculatedCommentRowsCount){
-            rowsRegular.add(new AbstractMap.SimpleEntry<>(0L, 0));
+        addCommentsFromPool(bulletCommentsInfoItemRegularPool, drawUntilPosition);
+        addCommentsFromPool(bulletCommentsInfoItemFixedPool, drawUntilPosition);
+    }
+
+    private void addCommentsFromPool(final PriorityQueue<BulletCommentsInfoItem> pool,
+                                     final Duration drawUntilPosition) {
+        final boolean drawAll =
+                drawUntilPosition.compareTo(Duration.ofSeconds(Long.MAX_VALUE)) == 0;
+        final long drawUntilMillis = drawAll ? Long.MAX_VALUE : drawUntilPosition.toMillis();
+        while (!pool.isEmpty() && pool.peek().getDuration().toMillis() < drawUntilMillis) {
+            final BulletCommentsInfoItem item = pool.peek();
+            // live comments only come once, so they wait for a free row
+            if (!addComment(item.getCommentText(), item.getArgbColor(),
+                    item.getRelativeFontSize(), item.getPosition(), item.getLastingTime())
+                    && item.isLive()) {
+                return;
+            }
+            pool.poll();
         }
-        while(rows.size() < calculatedCommentRowsCount){
-            rows.add(0L);
+    }
+
+    /**
+     * Start showing a comment, if there is a free row for it.
+     *
+     * @param text             the text of the comment
+     * @param argbColor        its color
+     * @param relativeFontSize its size, relative to the default one
+     * @param position         where it is shown
+     * @param lastingTime      how long it is shown in milliseconds, or -1 for the default
+     * @return whether the comment is shown or could be skipped; {@code false} if there was no
+     * free row
+     */
+    @VisibleForTesting
+    boolean addComment(@NonNull final String text, final int argbColor,
+                       final double relativeFontSize,
+                       @NonNull final BulletCommentsInfoItem.Position position,
+                       final long lastingTime) {
+        if (text.isEmpty()) {
+            return true;
         }
-        drawCommentsByPool(bulletCommentsInfoItemRegularPool, drawUntilPosition, height, width, calculatedCommentRowsCount);
-        drawCommentsByPool(bulletCommentsInfoItemFixedPool, drawUntilPosition, height, width, calculatedCommentRowsCount);
-        //Log.v(TAG, "Child count: " + binding.bulletCommentsContainer.getChildCount());
-        //Log.v(TAG, "AnimatedTextView count: " + (long) animatedTextViews.size());
-    }
-
-    public int tryToDrawComment(BulletCommentsInfoItem item, int calculatedCommentRowsCount, int width, boolean reallyDo) {
-        long current = new Date().getTime();
-        int row = -1;
-        int comparedDuration = (int) (commentsDuration * 1000);
-        if(item.getPosition().equals(BulletCommentsInfoItem.Position.TOP)
-                || item.getPosition().equals(BulletCommentsInfoItem.Position.SUPERCHAT)){
-            for(int i = 0; i < Math.min(maxRowsTop, calculatedCommentRowsCount) ;i++){
-                long last = rows.get(i);
-                if(current - last >= comparedDuration){
-                    if (reallyDo) {
-                        rows.set(i, current);
-                    }
-                    row = i;
-                    break;
-                }
-            }
-        } else if (item.getPosition().equals(BulletCommentsInfoItem.Position.REGULAR)) {
-            for(int i = 0; i < Math.min(maxRowsRegular, calculatedCommentRowsCount) ;i++){
-                long last_time = rowsRegular.get(i).getKey();
-                long last_length = rowsRegular.get(i).getValue();
-                long t = current - last_time;
-                double t_all = comparedDuration * durationFactor;
-                double lx = (last_length / 25.0 + 1) * width;
-                double ly = (item.getCommentText().length() / 25.0 + 1) * width;
-                double vx = lx / t_all;
-                double vy = ly / t_all;
-                if((vy - vx) * (t_all - t) < t * vx - (last_length / 25.0) * width && t * vx - (last_length / 25.0) * width > 0) {
-                    if (reallyDo) {
-                        rowsRegular.set(i, new AbstractMap.SimpleEntry<>(current, item.getCommentText().length()));
-                    }
-                    row = i;
-                    break;
-                }
+
+        final boolean isRegular = position == BulletCommentsInfoItem.Position.REGULAR;
+        final long now = getClockMillis();
+        final long duration = lastingTime != -1 ? lastingTime
+                : (long) (commentsDuration * 1000 * (isRegular ? durationFactor : 1));
+        final MeasuredText measuredText = getMeasuredText(text, argbColor, relativeFontSize,
+                position == BulletCommentsInfoItem.Position.SUPERCHAT);
+
+        final int row;
+        if (isRegular) {
+            row = rowAllocator.findRegularRow(now, duration, measuredText.width, maxRowsRegular);
+            if (row != -1) {
+                rowAllocator.occupyRegularRow(row, now, duration, measuredText.width);
             }
         } else {
-            for(int i = calculatedCommentRowsCount - 1; i >= Math.max(0, calculatedCommentRowsCount - maxRowsBottom) ;i--){
-                long last = rows.get(i);
-                if(current - last >= comparedDuration){
-                    if (reallyDo) {
-                        rows.set(i, current);
-                    }
-                    row = i;
-                    break;
-                }
+            row = position == BulletCommentsInfoItem.Position.TOP
+                    || position == BulletCommentsInfoItem.Position.SUPERCHAT
+                    ? rowAllocator.findTopRow(now, maxRowsTop)
+                    : rowAllocator.findBottomRow(now, maxRowsBottom);
+            if (row != -1) {
+                rowAllocator.occupyFixedRow(row, now, duration);
             }
         }
-        return row;
+        if (row == -1) {
+            return false;
+        }
+
+        final int width = getWidth();
+        final Comment comment = obtainComment();
+        comment.text = measuredText;
+        comment.x = isRegular ? width : (width - measuredText.width) / 2;
+        comment.y = (float) (getHeight() * (0.5 + row) / rowAllocator.getRowCount()
+                - measuredText.height / 2);
+        comment.speed = isRegular ? (width + measuredText.width) / Math.max(1, duration) : 0;
+        comment.startTime = now;
+        comment.endTime = now + duration;
+        comments.add(comment);
+
+        invalidate();
+        scheduleFrame();
+        return true;
     }
 
-    private void drawCommentsByPool(PriorityQueue<BulletCommentsInfoItem> pool, Duration drawUntilPosition, int height, int width, int calculatedCommentRowsCount) {
-        final Context context = binding.bulletCommentsContainer.getContext();
-        while(!pool.isEmpty()
-                && (drawUntilPosition.compareTo(Duration.ofSeconds(Long.MAX_VALUE)) == 0
-                || pool.peek().getDuration().toMillis() < drawUntilPosition.toMillis())) {
-            BulletCommentsInfoItem item = pool.peek();
-            if (item.isLive() && tryToDrawComment(item, calculatedCommentRowsCount, width, false) == -1) {
-                return;
-            }
-            pool.poll();
-            //Create TextView.
-            final TextView textView = new TextView(context);
-            final Typeface fontToBeUsed;
-            switch (font) {
-                case "serif":
-                    fontToBeUsed = Typeface.SERIF;
-                    break;
-                case "monospace":
-                    fontToBeUsed = Typeface.MONOSPACE;
-                    break;
-                case "sans-serif":
-                    fontToBeUsed = Typeface.SANS_SERIF;
-                    break;
-                case "LXGW WenKai Screen":
-                    fontToBeUsed = ResourcesCompat.getFont(context, R.font.lxgw_wenkai);
-                    break;
-                default:
-                    fontToBeUsed = Typeface.DEFAULT;
-                    break;
-            }
-            textView.setGravity(View.TEXT_ALIGNMENT_CENTER);
-            int color = item.getArgbColor();
-            if(opacity != 0xFF) {
-                color &= 0x00FFFFFF;
-                color |= ((opacity & 0xFF) << 24);
-            }
-            textView.setTextColor(color);
-            textView.setText(item.getCommentText());
-            if(item.getCommentText().length() == 0){
-                continue;
-            }
-            textView.setTextSize(TypedValue.COMPLEX_UNIT_PX,
-                    (float) (Math.min(height, width) * commentRelativeTextSize * item.getRelativeFontSize()));
-            textView.setMaxLines(1);
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
-                textView.setTypeface(Typeface.create(fontToBeUsed, Typeface.BOLD, item.getPosition().equals(BulletCommentsInfoItem.Position.SUPERCHAT)));
-            } else {
-                textView.setTypeface(Typeface.create(fontToBeUsed, Typeface.BOLD));
-            }
-            Paint paint = textView.getPaint();
+    @NonNull
+    private MeasuredText getMeasuredText(@NonNull final String text, final int argbColor,
+                                         final double relativeFontSize,
+                                         final boolean isSuperChat) {
+        int color = argbColor;
+        if (opacity != 0xFF) {
+            color &= 0x00FFFFFF;
+            color |= ((opacity & 0xFF) << 24);
+        }
+        final float textSize = (float) (Math.min(getHeight(), getWidth())
+                * COMMENT_RELATIVE_TEXT_SIZE * relativeFontSize);
+
+        keyBuilder.setLength(0);
+        keyBuilder.append(color).append(':').append(textSize).append(':').append(isSuperChat)
+                .append(':').append(text);
+        final String key = keyBuilder.toString();
+        MeasuredText measuredText = textCache.get(key);
+        if (measuredText == null) {
+            final TextPaint paint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+            paint.setColor(color);
+            paint.setTextSize(textSize);
+            paint.setTypeface(isSuperChat ? superChatTypeface : typeface);
             int shadowColor = Color.BLACK & 0x00FFFFFF;
             shadowColor |= ((opacity & 0xFF) << 24);
             paint.setShadowLayer(outlineRadius, 0, 0, shadowColor);
-            textView.setLayerType(View.LAYER_TYPE_SOFTWARE, paint);
-
-            final double commentSpace = 1 / 4.4 * height;
-            if (true) {
-                //Setting initial position by addView() won't work properly.
-                //setTop(), ... etc. won't work.
-                int row = tryToDrawComment(item, calculatedCommentRowsCount, width, true);
-                if(row == -1){
-                    continue;
-                }
-                textView.setX(width);
-                //To get width with getWidth(), it should be called inside post().
-                //or it returns 0.
-                textView.post(() -> {
-                    //Create ObjectAnimator.
-                    final int textWidth = textView.getWidth();
-                    final int textHeight = textView.getHeight();
-                    ObjectAnimator animator;
-                    if(!item.getPosition().equals(BulletCommentsInfoItem.Position.REGULAR)){
-                        animator = ObjectAnimator.ofFloat(
-                                textView,
-                                View.TRANSLATION_X,
-                                (float) ((width - textWidth)/2.0),
-                                (float) ((width - textWidth)/2.0)
-                        );
-                    } else {
-                        animator = ObjectAnimator.ofFloat(
-                                textView,
-                                View.TRANSLATION_X,
-                                width,
-                                -textWidth
-                        );
-                    }
-                    textView.setY((float) (height * (0.5 + row) / calculatedCommentRowsCount - textHeight / 2));
-
-                    final AnimatedTextView animatedTextView = new AnimatedTextView(
-                            textView, animator);
-                    animatedTextViews.add(animatedTextView);
-                    animator.setFrameDelay(1);
-                    animator.setInterpolator(new LinearInterpolator());
-                    animator.setDuration(item.getLastingTime() != -1?
-                            item.getLastingTime():
-                            (long) (commentsDuration * 1000 *
-                                    (item.getPosition().equals(BulletCommentsInfoItem.Position.REGULAR)
-                                            ? durationFactor:1)));
-                    animator.addListener(new AnimatorListenerAdapter() {
-                        public void onAnimationEnd(final Animator animation) {
-                            binding.bulletCommentsContainer.removeView(textView);
-                            animatedTextViews.remove(animatedTextView);
-                        }
-                    });
-                    animator.start();
-                });
+            measuredText = new MeasuredText(text, paint);
+            textCache.put(key, measuredText);
+        }
+        return measuredText;
+    }
+
+    @NonNull
+    private Comment obtainComment() {
+        final int size = recycledComments.size();
+        return size == 0 ? new Comment() : recycledComments.remove(size - 1);
+    }
+
+    private void recycle(@NonNull final Comment comment) {
+        comment.text = null;
+        recycledComments.add(comment);
+    }
+
+    /*//////////////////////////////////////////////////////////////////////////
+    // Animation
+    //////////////////////////////////////////////////////////////////////////*/
+
+    private long getClockMillis() {
+        return clockNanos / 1_000_000;
+    }
+
+    private void scheduleFrame() {
+        if (!paused && !frameScheduled && !comments.isEmpty()) {
+            frameScheduled = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    private void stopFrames() {
+        if (frameScheduled) {
+            frameScheduled = false;
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+        // the time spent without frames does not move the comments
+        lastFrameTimeNanos = 0;
+    }
+
+    @Override
+    public void doFrame(final long frameTimeNanos) {
+        frameScheduled = false;
+        advanceFrame(frameTimeNanos);
+        if (comments.isEmpty()) {
+            lastFrameTimeNanos = 0;
+        } else {
+            scheduleFrame();
+        }
+    }
+
+    /**
+     * Move the comments to the given frame and remove those which ended.
+     *
+     * @param frameTimeNanos the time of the frame, as given by {@link Choreographer}
+     */
+    @VisibleForTesting
+    void advanceFrame(final long frameTimeNanos) {
+        if (lastFrameTimeNanos != 0) {
+            final long frameTime = frameTimeNanos - lastFrameTimeNanos;
+            clockNanos += frameTime;
+            frameCount++;
+            totalFrameTimeNanos += frameTime;
+            maxFrameTimeNanos = Math.max(maxFrameTimeNanos, frameTime);
+        }
+        lastFrameTimeNanos = frameTimeNanos;
+
+        removeEndedComments();
+        invalidate();
+    }
+
+    private void removeEndedComments() {
+        final long now = getClockMillis();
+        int kept = 0;
+        for (int i = 0; i < comments.size(); i++) {
+            final Comment comment = comments.get(i);
+            if (comment.endTime <= now) {
+                recycle(comment);
             } else {
-                // TODO: Non-regular comments not implemented.
-                //textView.setY(random.nextInt(maxTextViewPosY));
+                comments.set(kept++, comment);
             }
-            binding.bulletCommentsContainer.addView(textView);
         }
+        for (int i = comments.size() - 1; i >= kept; i--) {
+            comments.remove(i);
+        }
+    }
+
+    @Override
+    protected void onDraw(final Canvas canvas) {
+        super.onDraw(canvas);
+        final long drawStart = SystemClock.elapsedRealtimeNanos();
+        final long now = getClockMillis();
+        for (int i = 0; i < comments.size(); i++) {
+            final Comment comment = comments.get(i);
+            final MeasuredText text = comment.text;
+            final float x = comment.x - comment.speed * (now - comment.startTime);
+            canvas.drawText(text.text, x, comment.y - text.ascent, text.paint);
+        }
+        drawCount++;
+        totalDrawTimeNanos += SystemClock.elapsedRealtimeNanos() - drawStart;
+    }
+
+    /*//////////////////////////////////////////////////////////////////////////
+    // Frame statistics
+    //////////////////////////////////////////////////////////////////////////*/
+
+    /**
+     * @return the number of comments on the screen
+     */
+    public int getCommentCount() {
+        return comments.size();
+    }
+
+    /**
+     * @return the average time between two animation frames, in milliseconds, or 0 if no frame
+     * was rendered since the last {@link #resetFrameStatistics()}
+     */
+    public float getAverageFrameTimeMillis() {
+        return frameCount == 0 ? 0 : totalFrameTimeNanos / (float) frameCount / 1_000_000f;
+    }
+
+    /**
+     * @return the longest time between two animation frames, in milliseconds
+     */
+    public float getMaxFrameTimeMillis() {
+        return maxFrameTimeNanos / 1_000_000f;
+    }
+
+    /**
+     * @return the average time spent drawing the comments of a frame, in milliseconds
+     */
+    public float getAverageDrawTimeMillis() {
+        return drawCount == 0 ? 0 : totalDrawTimeNanos / (float) drawCount / 1_000_000f;
+    }
+
+    public void resetFrameStatistics() {
+        frameCount = 0;
+        totalFrameTimeNanos = 0;
+        maxFrameTimeNanos = 0;
+        drawCount = 0;
+        totalDrawTimeNanos = 0;
     }
 }
@@ -9,9 +9,9 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import org.schabi.newpipe.DownloaderImpl;
 import org.schabi.newpipe.streams.io.StoredFileHelper;
+import us.shandian.giga.io.ByteBufferPool;
 import us.shandian.giga.postprocessing.Postprocessing;
 import us.shandian.giga.service.DownloadManagerService;
-import us.shandian.giga.util.Utility;
 
 import javax.net.ssl.SSLException;
 import java.io.*;
@@ -20,6 +20,9 @@ import java.nio.channels.ClosedByInterruptException;
 import java.util.Objects;
 
 import static org.schabi.newpipe.BuildConfig.DEBUG;
+import static us.shandian.giga.postprocessing.Postprocessing.ALGORITHM_MP4_FROM_DASH_MUXER;
+import static us.shandian.giga.postprocessing.Postprocessing.ALGORITHM_OGG_FROM_WEBM_DEMUXER;
+import static us.shandian.giga.postprocessing.Postprocessing.ALGORITHM_WEBM_MUXER;
 import static us.shandian.giga.postprocessing.Postprocessing.NICONICO_MUXER;
 import static us.shandian.giga.util.Utility.setRequestPropertyIfDownloadingBilibili;
 
@@ -29,6 +32,11 @@ public class DownloadMission extends Mission {
     static final int BUFFER_SIZE = 64 * 1024;
     static final int BLOCK_SIZE = 512 * 1024;
 
+    /**
+     * Direct buffers shared by the download threads of all missions
+     */
+    static final ByteBufferPool BUFFER_POOL = new ByteBufferPool(BUFFER_SIZE, 16);
+
     private static final String TAG = "DownloadMission";
 
     public static final int ERROR_NOTHING = -1;
@@ -134,8 +142,16 @@ public class DownloadMission extends Mission {
     public Exception errObject = null;
 
     public transient Handler mHandler;
-    private transient boolean[] blockAcquired;
+    private transient SegmentScheduler scheduler;
+    private transient boolean recoveryClaimed;
 
+    /**
+     * Post-processing thread started while the last resource is still downloading
+     */
+    private transient Thread psThread;
+    private transient volatile boolean psStreaming;
+
+    private transient MissionJournal journal;
     private transient long writingToFileNext;
     private transient volatile boolean writingToFile;
 
@@ -165,41 +181,68 @@ public class DownloadMission extends Mission {
     }
 
     /**
-     * Acquire a block
+     * Acquire a block, or a part of an in-flight block if no untouched block is left
      *
-     * @return the block or {@code null} if no more blocks left
+     * @return the block or {@code null} if the calling thread must exit
      */
     @Nullable
     Block acquireBlock() {
+        return scheduler.acquire();
+    }
+
+    /**
+     * Release an block
+     *
+     * @param block the block (or a part of it) to release
+     */
+    void releaseBlock(@NonNull Block block) {
+        int lost;
         synchronized (LOCK) {
-            for (int i = 0; i < blockAcquired.length; i++) {
-                if (!blockAcquired[i] && blocks[i] >= 0) {
-                    Block block = new Block();
-                    block.position = i;
-                    block.done = blocks[i];
-
-                    blockAcquired[i] = true;
-                    return block;
-                }
-            }
+            lost = scheduler.release(block);
+            if (psStreaming) LOCK.notifyAll();
         }
 
-        return null;
+        // bytes downloaded after a gap in the block cannot be resumed
+        if (lost > 0) notifyProgress(-lost);
     }
 
     /**
-     * Release an block
+     * Accounts the bytes transferred by a download thread, spawning a new thread if the
+     * scheduler measured that more connections are worth it
      *
-     * @param position the index of the block
-     * @param done     amount of bytes downloaded
+     * @param bytes amount of bytes transferred
      */
-    void releaseBlock(int position, int done) {
-        synchronized (LOCK) {
-            blockAcquired[position] = false;
-            blocks[position] = done;
+    void notifyTransfer(int bytes) {
+        if (scheduler.onTransfer(bytes)) addDownloadThread();
+    }
+
+    private synchronized void addDownloadThread() {
+        if (!running || errCode != ERROR_NOTHING) return;
+
+        int id = threads.length;
+        Thread[] newThreads = new Thread[id + 1];
+        System.arraycopy(threads, 0, newThreads, 0, id);
+
+        scheduler.registerConnection();
+        newThreads[id] = runAsync(id + 1, new DownloadRunnable(this, id));
+        threads = newThreads;
+
+        if (DEBUG) {
+            Log.d(TAG, "spawned a new download thread, total=" + threads.length);
         }
     }
 
+    /**
+     * Claims the execution of the recovery procedure, only one download thread should do it
+     *
+     * @return {@code true} if the calling thread must execute the recovery
+     */
+    synchronized boolean claimRecovery() {
+        if (recoveryClaimed) return false;
+        recoveryClaimed = true;
+        return true;
+    }
+
     /**
      * Opens a connection
      *
@@ -243,6 +286,21 @@ public class DownloadMission extends Mission {
         return conn;
     }
 
+    /**
+     * Gets the host of the current resource, used to account connections per host
+     *
+     * @return the host name or an empty string if the url is malformed
+     */
+    @NonNull
+    String getHost() {
+        try {
+            String host = new URL(urls[current]).getHost();
+            return host == null ? "" : host;
+        } catch (MalformedURLException e) {
+            return "";
+        }
+    }
+
     /**
      * @param threadId id of the calling thread
      * @param conn     Opens and establish the communication
@@ -381,8 +439,17 @@ public class DownloadMission extends Mission {
         }
 
         if (psAlgorithm != null && psState == 0) {
+            if (psStreaming) {
+                // the post-processing is already running, let it write the output file
+                done = 0;
+                length = Math.max(storage.length() - offsets[0], nearLength);
+                threads = new Thread[]{psThread};
+                notifyPostProcessing(1);
+                return;
+            }
+
             threads = new Thread[]{
-                    runAsync(1, this::doPostprocessing)
+                    runAsync(1, () -> doPostprocessing(false))
             };
             return;
         }
@@ -422,6 +489,7 @@ public class DownloadMission extends Mission {
             // don't return without fully write the current state
             psState = state;
             writeThisToFile();
+            LOCK.notifyAll();
         }
     }
 
@@ -462,7 +530,7 @@ public class DownloadMission extends Mission {
 
         init = null;
         finishCount = 0;
-        blockAcquired = new boolean[blocks.length];
+        recoveryClaimed = false;
 
         if (blocks.length < 1) {
             threads = new Thread[]{runAsync(1, new DownloadRunnableFallback(this))};
@@ -475,11 +543,100 @@ public class DownloadMission extends Mission {
                 return;
             }
 
-            threads = new Thread[Math.min(threadCount, remainingBlocks)];
+            int count = Math.min(threadCount, remainingBlocks);
+            scheduler = new SegmentScheduler(blocks, length, threadCount);
+            threads = new Thread[count];
 
             for (int i = 0; i < threads.length; i++) {
+                scheduler.registerConnection();
                 threads[i] = runAsync(i + 1, new DownloadRunnable(this, i));
             }
+
+            if (canStreamPostprocessing()) {
+                psStreaming = true;
+                psThread = runAsync(-3, () -> doPostprocessing(true));
+            }
+        }
+    }
+
+    /**
+     * Indicates if the post-processing can consume the last resource while is downloaded. Only
+     * the muxers reading the sources sequentially are supported, and the resource must be
+     * downloaded in blocks (the server supports range requests)
+     */
+    private boolean canStreamPostprocessing() {
+        if (psAlgorithm == null || psState != 0 || psStreaming) return false;
+        if (!psAlgorithm.worksOnSameFile || current != urls.length - 1) return false;
+        if (unknownLength || blocks == null || blocks.length < 1) return false;
+
+        switch (psAlgorithm.name) {
+            case ALGORITHM_MP4_FROM_DASH_MUXER:
+            case ALGORITHM_WEBM_MUXER:
+            case ALGORITHM_OGG_FROM_WEBM_DEMUXER:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Indicates if the post-processing was started before the download finished
+     *
+     * @return {@code true} if the post-processing runs in streaming mode
+     */
+    public boolean isPsStreaming() {
+        return psStreaming;
+    }
+
+    /**
+     * Gets the offset in the file where the downloaded data stops being contiguous
+     *
+     * @return the absolute offset (exclusive)
+     */
+    private long getCommittedOffset() {
+        if (current >= urls.length) return Long.MAX_VALUE;
+        if (blocks == null) return offsets[current];
+
+        int i = 0;
+        while (i < blocks.length && blocks[i] < 0) i++;
+
+        return offsets[current] + Math.min(length, (long) i * BLOCK_SIZE);
+    }
+
+    /**
+     * Blocks until the bytes before the given offset are downloaded
+     *
+     * @param position absolute offset in the file (exclusive)
+     * @throws InterruptedIOException if the download was paused or failed
+     */
+    public void awaitCommitted(long position) throws InterruptedIOException {
+        synchronized (LOCK) {
+            while (getCommittedOffset() < position) awaitDownload();
+        }
+    }
+
+    /**
+     * Blocks until all resources are downloaded and the mission switched to the
+     * post-processing state
+     *
+     * @throws InterruptedIOException if the download was paused or failed
+     */
+    public void awaitDownloadFinished() throws InterruptedIOException {
+        synchronized (LOCK) {
+            while (psState == 0) awaitDownload();
+        }
+    }
+
+    private void awaitDownload() throws InterruptedIOException {
+        if (!running || errCode != ERROR_NOTHING) {
+            throw new InterruptedIOException("the download was stopped");
+        }
+
+        try {
+            // the state is polled, the download threads only notify finished blocks
+            LOCK.wait(1000);
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("interrupted while waiting the download");
         }
     }
 
@@ -552,7 +709,7 @@ public class DownloadMission extends Mission {
         threads = new Thread[0];
         fallbackResumeOffset = 0;
         blocks = null;
-        blockAcquired = null;
+        scheduler = null;
 
         if (rollback) current = 0;
         if (persistChanges) writeThisToFile();
@@ -567,13 +724,22 @@ public class DownloadMission extends Mission {
     }
 
     /**
-     * Write this {@link DownloadMission} to the meta file asynchronously
-     * if no thread is already running.
+     * Write this {@link DownloadMission} to the meta file, see {@link MissionJournal}
      */
-    void writeThisToFile() {
+    public void writeThisToFile() {
         synchronized (LOCK) {
             if (metadata == null) return;
-            Utility.writeToFile(metadata, this);
+
+            if (journal == null || !journal.getFile().equals(metadata)) {
+                journal = new MissionJournal(metadata);
+            }
+
+            try {
+                journal.write(this);
+            } catch (IOException e) {
+                Log.e(TAG, "writeThisToFile() failed", e);
+            }
+
             writingToFile = false;
         }
     }
@@ -691,22 +857,33 @@ public class DownloadMission extends Mission {
         return threads.length > 0 && threads[0] instanceof DownloadMissionRecover && threads[0].isAlive();
     }
 
-    private void doPostprocessing() {
-        errCode = ERROR_NOTHING;
-        errObject = null;
+    private void doPostprocessing(boolean streaming) {
         Thread thread = Thread.currentThread();
 
-        notifyPostProcessing(1);
+        if (!streaming) {
+            errCode = ERROR_NOTHING;
+            errObject = null;
+            notifyPostProcessing(1);
+        }
 
         if (DEBUG) {
             thread.setName("[" + TAG + "]  ps = " + psAlgorithm + "  filename = " + storage.getName());
         }
 
         Exception exception = null;
+        boolean aborted = false;
 
         try {
             psAlgorithm.run(this);
         } catch (Exception err) {
+            if (streaming && abortPsStreaming()) {
+                // nothing was written on the sources, the post-processing runs again once the
+                // download is finished
+                Log.w(TAG, "Streaming post-processing aborted. " + psAlgorithm.toString(), err);
+                aborted = true;
+                return;
+            }
+
             Log.e(TAG, "Post-processing failed. " + psAlgorithm.toString(), err);
 
             if (err instanceof InterruptedIOException || err instanceof ClosedByInterruptException || thread.isInterrupted()) {
@@ -718,7 +895,7 @@ public class DownloadMission extends Mission {
 
             exception = err;
         } finally {
-            notifyPostProcessing(errCode == ERROR_NOTHING ? 2 : 0);
+            if (!aborted) notifyPostProcessing(errCode == ERROR_NOTHING ? 2 : 0);
         }
 
         if (errCode != ERROR_NOTHING) {
@@ -730,6 +907,13 @@ public class DownloadMission extends Mission {
         notifyFinished();
     }
 
+    private synchronized boolean abortPsStreaming() {
+        // the mission switches to the post-processing state while holding this monitor
+        psStreaming = false;
+        psThread = null;
+        return psState == 0;
+    }
+
     /**
      * Attempts to recover the download
      *
@@ -778,6 +962,7 @@ public class DownloadMission extends Mission {
      */
     private Thread runAsync(int id, Thread who) {
         // known thread ids:
+        //   -3:     streaming post-processing
         //   -2:     state saving by  notifyProgress()  method
         //   -1:     wait for saving the state by  pause()  method
         //    0:     initializer
@@ -813,6 +998,20 @@ public class DownloadMission extends Mission {
             }
         }
 
+        Thread ps = psThread;
+        if (ps != null && ps != currentThread && ps.isAlive() && psState == 0) {
+            // abort the streaming post-processing, runs again once the download is finished
+            ps.interrupt();
+
+            if (millis > 0) {
+                try {
+                    ps.join(millis);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException("The post-processing thread is still running", e);
+                }
+            }
+        }
+
         // if a thread is still alive, possible reasons:
         //      slow device
         //      the user is spamming start/pause buttons
@@ -852,7 +1051,31 @@ public class DownloadMission extends Mission {
 
     public static class Block {
         public int position;
-        public int done;
+
+        /**
+         * Offset inside the block where the next byte must be written
+         */
+        public volatile int done;
+
+        /**
+         * Offset inside the block where this slice starts, non-zero if stolen from another thread
+         */
+        int start;
+
+        /**
+         * Offset inside the block where this slice ends (exclusive), lowered if another thread
+         * steals the second half of the remaining range
+         */
+        volatile int end;
+
+        /**
+         * Value of {@link #done} and timestamp when the slice was acquired, used to estimate
+         * the slice throughput
+         */
+        int initialDone;
+        long startedAt;
+
+        boolean released;
     }
 
     private static class Lock implements Serializable {
@@ -9,10 +9,11 @@ import org.schabi.newpipe.extractor.exceptions.ParsingException;
 import org.schabi.newpipe.extractor.exceptions.ReCaptchaException;
 import org.schabi.newpipe.extractor.services.bilibili.BilibiliService;
 import org.schabi.newpipe.extractor.stream.AudioStream;
-import org.schabi.newpipe.extractor.stream.StreamExtractor;
+import org.schabi.newpipe.extractor.stream.StreamInfo;
 import org.schabi.newpipe.extractor.stream.SubtitlesStream;
 import org.schabi.newpipe.extractor.stream.VideoStream;
 import org.schabi.newpipe.player.helper.PlayerDataSource;
+import org.schabi.newpipe.util.StreamUrlRegistry;
 
 import java.io.IOException;
 import java.io.InterruptedIOException;
@@ -39,7 +40,7 @@ public class DownloadMissionRecover extends Thread {
 
     private HttpURLConnection mConn;
     private MissionRecoveryInfo mRecovery;
-    private StreamExtractor mExtractor;
+    private StreamInfo mInfo;
 
     DownloadMissionRecover(DownloadMission mission, int errCode) {
         mMission = mission;
@@ -74,15 +75,10 @@ public class DownloadMissionRecover extends Thread {
     }
 
     private void tryRecover() throws ExtractionException, IOException, HttpError {
-        if (mExtractor == null) {
-            try {
-                StreamingService svr = NewPipe.getServiceByUrl(mMission.source);
-                mExtractor = svr.getStreamExtractor(mMission.source);
-                mExtractor.fetchPage();
-            } catch (ExtractionException e) {
-                mExtractor = null;
-                throw e;
-            }
+        if (mInfo == null) {
+            // shared with the player, which may have refreshed the stream a moment ago
+            StreamingService svr = NewPipe.getServiceByUrl(mMission.source);
+            mInfo = StreamUrlRegistry.getInstance().refresh(svr.getServiceId(), mMission.source);
         }
 
         // maybe the following check is redundant
@@ -130,8 +126,8 @@ public class DownloadMissionRecover extends Thread {
 
     private void resolveStream() throws IOException, ExtractionException, HttpError {
         // FIXME: this getErrorMessage() always returns "video is unavailable"
-        /*if (mExtractor.getErrorMessage() != null) {
-            mMission.notifyError(mErrCode, new ExtractionException(mExtractor.getErrorMessage()));
+        /*if (mInfo.getErrorMessage() != null) {
+            mMission.notifyError(mErrCode, new ExtractionException(mInfo.getErrorMessage()));
             return;
         }*/
 
@@ -139,7 +135,7 @@ public class DownloadMissionRecover extends Thread {
 
         switch (mRecovery.getKind()) {
             case 'a':
-                for (AudioStream audio : mExtractor.getAudioStreams()) {
+                for (AudioStream audio : mInfo.getAudioStreams()) {
                     if (audio.getAverageBitrate() == mRecovery.getDesiredBitrate() && audio.getFormat() == mRecovery.getFormat()) {
                         url = audio.getUrl();
                         break;
@@ -149,9 +145,9 @@ public class DownloadMissionRecover extends Thread {
             case 'v':
                 List<VideoStream> videoStreams;
                 if (mRecovery.isDesired2())
-                    videoStreams = mExtractor.getVideoOnlyStreams();
+                    videoStreams = mInfo.getVideoOnlyStreams();
                 else
-                    videoStreams = mExtractor.getVideoStreams();
+                    videoStreams = mInfo.getVideoStreams();
                 for (VideoStream video : videoStreams) {
                     if (video.resolution.equals(mRecovery.getDesired()) && video.getFormat() == mRecovery.getFormat()) {
                         url = video.getUrl();
@@ -159,7 +155,8 @@ public class DownloadMissionRecover extends Thread {
                 }
                 break;
             case 's':
-                for (SubtitlesStream subtitles : mExtractor.getSubtitles(mRecovery.getFormat())) {
+                for (SubtitlesStream subtitles : mInfo.getSubtitles()) {
+                    if (subtitles.getFormat() != mRecovery.getFormat()) continue;
                     String tag = subtitles.getLanguageTag();
                     if (tag.equals(mRecovery.getDesired()) && subtitles.isAutoGenerated() == mRecovery.isDesired2()) {
                         url = subtitles.getUrl();
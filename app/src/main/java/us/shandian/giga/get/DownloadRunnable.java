@@ -2,16 +2,18 @@ package us.shandian.giga.get;
 
 import android.util.Log;
 
-import org.schabi.newpipe.streams.io.SharpStream;
-
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.HttpURLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ReadableByteChannel;
 import java.util.Objects;
 
 import us.shandian.giga.get.DownloadMission.Block;
 import us.shandian.giga.get.DownloadMission.HttpError;
+import us.shandian.giga.io.FileChannelStream;
+import us.shandian.giga.service.DownloadBudget;
 
 import static org.schabi.newpipe.BuildConfig.DEBUG;
 import static us.shandian.giga.get.DownloadMission.ERROR_HTTP_AUTH;
@@ -26,34 +28,33 @@ public class DownloadRunnable extends Thread {
     private static final String TAG = "DownloadRunnable";
 
     private final DownloadMission mMission;
+    private final DownloadBudget mBudget = DownloadBudget.getInstance();
     private final int mId;
 
     private HttpURLConnection mConn;
+    private ByteBuffer mBuffer;
 
     DownloadRunnable(DownloadMission mission, int id) {
         mMission = Objects.requireNonNull(mission);
         mId = id;
     }
 
-    private void releaseBlock(Block block, long remain) {
-        // set the block offset to -1 if it is completed
-        mMission.releaseBlock(block.position, remain < 0 ? -1 : block.done);
-    }
-
     @Override
     public void run() {
         boolean retry = false;
         Block block = null;
         int retryCount = 0;
-        SharpStream f;
+        FileChannelStream f;
 
         try {
-            f = mMission.storage.getStream();
+            f = mMission.storage.getChannelStream();
         } catch (IOException e) {
             mMission.notifyError(e);// this never should happen
             return;
         }
 
+        mBuffer = DownloadMission.BUFFER_POOL.acquire();
+
         while (mMission.running && mMission.errCode == DownloadMission.ERROR_NOTHING) {
             if (!retry) {
                 block = mMission.acquireBlock();
@@ -71,25 +72,26 @@ public class DownloadRunnable extends Thread {
                     Log.d(TAG, mId + ":acquired block at position=" + block.position + " done=" + block.done);
             }
 
-            long start = (long)block.position * DownloadMission.BLOCK_SIZE;
-            long end = start + DownloadMission.BLOCK_SIZE - 1;
-
-            start += block.done;
+            long blockStart = (long) block.position * DownloadMission.BLOCK_SIZE;
+            long start = blockStart + block.done;
+            long end = blockStart + block.end - 1;
 
-            if (end >= mMission.length) {
-                end = mMission.length - 1;
-            }
+            String host = mMission.getHost();
+            boolean connected = false;
 
             try {
+                mBudget.acquireConnection(mMission, host);
+                connected = true;
+
                 mConn = mMission.openConnection(false, start, end);
                 mMission.establishConnection(mId, mConn);
 
                 // check if the download can be resumed
                 if (mConn.getResponseCode() == 416) {
-                    if (block.done > 0) {
+                    if (block.done > block.start) {
                         // try again from the start (of the block)
-                        mMission.notifyProgress(-block.done);
-                        block.done = 0;
+                        mMission.notifyProgress(-(block.done - block.start));
+                        block.done = block.start;
                         retry = true;
                         mConn.disconnect();
                         continue;
@@ -109,19 +111,27 @@ public class DownloadRunnable extends Thread {
                     break;
                 }
 
-                f.seek(mMission.offsets[mMission.current] + start);
+                long offset = mMission.offsets[mMission.current];
 
-                try (InputStream is = mConn.getInputStream()) {
-                    byte[] buf = new byte[DownloadMission.BUFFER_SIZE];
+                try (ReadableByteChannel is = Channels.newChannel(mConn.getInputStream())) {
                     int len;
 
                     // use always start <= end
                     // fixes a deadlock because in some videos, youtube is sending one byte alone
-                    while (start <= end && mMission.running && (len = is.read(buf, 0, buf.length)) != -1) {
-                        f.write(buf, 0, len);
+                    while (start <= end && mMission.running && (len = read(is)) != -1) {
+                        // the block end can be lowered by another thread stealing the remaining range
+                        end = blockStart + block.end - 1;
+                        if (start + len > end + 1) len = (int) Math.max(0, end + 1 - start);
+
+                        mBuffer.flip();
+                        mBuffer.limit(len);
+
+                        mBudget.consume(mMission, len);
+                        f.write(mBuffer, offset + start);
                         start += len;
                         block.done += len;
                         mMission.notifyProgress(len);
+                        mMission.notifyTransfer(len);
                     }
                 }
 
@@ -134,9 +144,11 @@ public class DownloadRunnable extends Thread {
                 if (e instanceof HttpError && (((HttpError) e).statusCode == ERROR_HTTP_FORBIDDEN || ((HttpError) e).statusCode == ERROR_HTTP_AUTH)) {
                     // for youtube streams. The url has expired, recover
                     f.close();
+                    DownloadMission.BUFFER_POOL.release(mBuffer);
+                    retry = false;
 
-                    if (mId == 1) {
-                        // only the first thread will execute the recovery procedure
+                    if (mMission.claimRecovery()) {
+                        // only one thread will execute the recovery procedure
                         mMission.doRecover(ERROR_HTTP_FORBIDDEN);
                     }
                     return;
@@ -149,11 +161,16 @@ public class DownloadRunnable extends Thread {
 
                 retry = true;
             } finally {
-                if (!retry) releaseBlock(block, end - start);
+                if (connected) mBudget.releaseConnection(host);
+                if (!retry) mMission.releaseBlock(block);
             }
         }
 
+        // the loop can exit while retrying a block
+        if (retry && block != null) mMission.releaseBlock(block);
+
         f.close();
+        DownloadMission.BUFFER_POOL.release(mBuffer);
 
         if (DEBUG) {
             Log.d(TAG, "thread " + mId + " exited from main download loop");
@@ -171,6 +188,11 @@ public class DownloadRunnable extends Thread {
         }
     }
 
+    private int read(ReadableByteChannel channel) throws IOException {
+        mBuffer.clear();
+        return channel.read(mBuffer);
+    }
+
     @Override
     public void interrupt() {
         super.interrupt();
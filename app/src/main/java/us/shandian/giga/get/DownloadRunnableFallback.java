@@ -4,14 +4,17 @@ import android.util.Log;
 
 import androidx.annotation.NonNull;
 
-import org.schabi.newpipe.streams.io.SharpStream;
-
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ReadableByteChannel;
 
 import us.shandian.giga.get.DownloadMission.HttpError;
+import us.shandian.giga.io.FileChannelStream;
+import us.shandian.giga.service.DownloadBudget;
 import us.shandian.giga.util.Utility;
 
 import static org.schabi.newpipe.BuildConfig.DEBUG;
@@ -25,10 +28,13 @@ public class DownloadRunnableFallback extends Thread {
     private static final String TAG = "DownloadRunnableFallback";
 
     private final DownloadMission mMission;
+    private final DownloadBudget mBudget = DownloadBudget.getInstance();
 
     private int mRetryCount = 0;
+    private String mHost = null;
     private InputStream mIs;
-    private SharpStream mF;
+    private FileChannelStream mF;
+    private ByteBuffer mBuffer;
     private HttpURLConnection mConn;
 
     DownloadRunnableFallback(@NonNull DownloadMission mission) {
@@ -36,17 +42,33 @@ public class DownloadRunnableFallback extends Thread {
     }
 
     private void dispose() {
+        if (mHost != null) {
+            mBudget.releaseConnection(mHost);
+            mHost = null;
+        }
+
+        // acquireConnection() may have been interrupted before a connection was opened
         try {
             try {
                 if (mIs != null) mIs.close();
             } finally {
-                mConn.disconnect();
+                if (mConn != null) mConn.disconnect();
             }
         } catch (IOException e) {
             // nothing to do
         }
+        mIs = null;
+        mConn = null;
 
-        if (mF != null) mF.close();
+        if (mF != null) {
+            mF.close();
+            mF = null;
+        }
+
+        if (mBuffer != null) {
+            DownloadMission.BUFFER_POOL.release(mBuffer);
+            mBuffer = null;
+        }
     }
 
     @Override
@@ -62,6 +84,10 @@ public class DownloadRunnableFallback extends Thread {
             long rangeStart = (mMission.unknownLength || start < 1) ? -1 : start;
 
             int mId = 1;
+            String host = mMission.getHost();
+            mBudget.acquireConnection(mMission, host);
+            mHost = host;
+
             mConn = mMission.openConnection(false, rangeStart, -1);
 
             if (mRetryCount == 0 && rangeStart == -1) {
@@ -88,16 +114,20 @@ public class DownloadRunnableFallback extends Thread {
                 mMission.done = mMission.offsets[mMission.current] - mMission.offsets[0];
             }
 
-            mF = mMission.storage.getStream();
-            mF.seek(mMission.offsets[mMission.current] + start);
+            mF = mMission.storage.getChannelStream();
+            long offset = mMission.offsets[mMission.current];
 
             mIs = mConn.getInputStream();
+            ReadableByteChannel channel = Channels.newChannel(mIs);
 
-            byte[] buf = new byte[DownloadMission.BUFFER_SIZE];
+            mBuffer = DownloadMission.BUFFER_POOL.acquire();
             int len = 0;
 
-            while (mMission.running && (len = mIs.read(buf, 0, buf.length)) != -1) {
-                mF.write(buf, 0, len);
+            while (mMission.running && (len = channel.read(mBuffer)) != -1) {
+                mBuffer.flip();
+                mBudget.consume(mMission, len);
+                mF.write(mBuffer, offset + start);
+                mBuffer.clear();
                 start += len;
                 mMission.notifyProgress(len);
             }
@@ -145,9 +175,10 @@ public class DownloadRunnableFallback extends Thread {
     public void interrupt() {
         super.interrupt();
 
-        if (mConn != null) {
+        final HttpURLConnection conn = mConn;
+        if (conn != null) {
             try {
-                mConn.disconnect();
+                conn.disconnect();
             } catch (Exception e) {
                 // nothing to do
             }
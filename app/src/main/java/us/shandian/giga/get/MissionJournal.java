@@ -0,0 +1,516 @@
+package us.shandian.giga.get;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.schabi.newpipe.extractor.MediaFormat;
+import org.schabi.newpipe.streams.io.StoredFileHelper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import us.shandian.giga.postprocessing.Postprocessing;
+import us.shandian.giga.postprocessing.PostprocessingArgs;
+
+/**
+ * Binary journal where the state of a pending {@link DownloadMission} is saved.
+ * <p>
+ * The file starts with a header followed by checksummed records. A snapshot record holds the
+ * whole mission, a progress record only holds the progress counters and the blocks changed since
+ * the previous record. Progress records are appended, any other change (or too many appended
+ * records) rewrites the file with a single snapshot. A torn record (the process was killed while
+ * appending) is detected by its checksum and the mission is restored from the previous records.
+ * <p>
+ * Files written with Java serialization (older versions) are detected with
+ * {@link #isJournal(File)}, and must be loaded with {@link us.shandian.giga.util.Utility#readFromFile(File)}.
+ */
+public final class MissionJournal {
+    private static final String TAG = "MissionJournal";
+
+    private static final int MAGIC = 0x4E504A4C;// "NPJL"
+    private static final int VERSION = 1;
+
+    private static final byte RECORD_SNAPSHOT = 1;
+    private static final byte RECORD_PROGRESS = 2;
+
+    private static final int MAX_RECORD_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * Amount of progress records appended before rewriting the file
+     */
+    static final int COMPACT_THRESHOLD = 128;
+
+    private final File file;
+
+    private byte[] lastState = null;
+    private int[] lastBlocks = null;
+    private int appended = -1;
+
+    MissionJournal(@NonNull File file) {
+        this.file = file;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * Saves the mission state, only the changes are appended if possible
+     *
+     * @param mission the mission to save, the caller must hold the mission lock
+     * @throws IOException if an I/O error occurs
+     */
+    void write(@NonNull DownloadMission mission) throws IOException {
+        byte[] state = encodeState(mission);
+        int[] blocks = mission.blocks;
+
+        boolean sameShape = blocks == null
+                ? lastBlocks == null
+                : lastBlocks != null && lastBlocks.length == blocks.length;
+
+        if (appended < 0 || appended >= COMPACT_THRESHOLD || !sameShape
+                || !Arrays.equals(state, lastState) || !file.exists()) {
+            writeSnapshot(mission, state, blocks);
+        } else {
+            appendProgress(mission, blocks);
+        }
+    }
+
+    private void writeSnapshot(DownloadMission mission, byte[] state, int[] blocks)
+            throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(state.length + 256);
+        DataOutputStream payload = new DataOutputStream(buffer);
+
+        payload.write(state);
+        writeProgress(payload, mission);
+
+        if (blocks == null) {
+            payload.writeInt(-1);
+        } else {
+            payload.writeInt(blocks.length);
+            for (int block : blocks) payload.writeInt(block);
+        }
+
+        // write aside and replace, the previous state is kept if the process is killed
+        File temp = new File(file.getParentFile(), "." + file.getName() + ".tmp");
+
+        try (FileOutputStream stream = new FileOutputStream(temp)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            writeRecord(out, RECORD_SNAPSHOT, buffer.toByteArray());
+            out.flush();
+            stream.getFD().sync();
+        }
+
+        if (!temp.renameTo(file)) {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            throw new IOException("Cannot replace the journal " + file.getName());
+        }
+
+        lastState = state;
+        lastBlocks = blocks == null ? null : blocks.clone();
+        appended = 0;
+    }
+
+    private void appendProgress(DownloadMission mission, int[] blocks) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(128);
+        DataOutputStream payload = new DataOutputStream(buffer);
+
+        writeProgress(payload, mission);
+
+        int changes = 0;
+        if (blocks != null) {
+            for (int i = 0; i < blocks.length; i++) {
+                if (blocks[i] != lastBlocks[i]) changes++;
+            }
+        }
+
+        payload.writeInt(changes);
+        if (changes > 0) {
+            for (int i = 0; i < blocks.length; i++) {
+                if (blocks[i] == lastBlocks[i]) continue;
+                payload.writeInt(i);
+                payload.writeInt(blocks[i]);
+                lastBlocks[i] = blocks[i];
+            }
+        }
+
+        try (FileOutputStream stream = new FileOutputStream(file, true)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+            writeRecord(out, RECORD_PROGRESS, buffer.toByteArray());
+            out.flush();
+        } catch (IOException e) {
+            appended = -1;// the file may have a torn record, rewrite it
+            throw e;
+        }
+
+        appended++;
+    }
+
+    private static void writeRecord(DataOutputStream out, byte type, byte[] payload)
+            throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload, 0, payload.length);
+
+        out.writeInt(payload.length);
+        out.writeByte(type);
+        out.write(payload);
+        out.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * Indicates if the file is a journal, otherwise, was written with Java serialization
+     *
+     * @param file the file to check
+     * @return {@code true} if the file starts with the journal header
+     */
+    public static boolean isJournal(@NonNull File file) {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readInt() == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Loads a mission, the records after a torn or corrupted record are ignored
+     *
+     * @param file the journal file
+     * @return the mission, or {@code null} if the file cannot be read
+     */
+    @Nullable
+    public static DownloadMission read(@NonNull File file) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) throw new IOException("Not a journal");
+
+            int version = in.readUnsignedByte();
+            if (version != VERSION) throw new IOException("Unsupported journal version " + version);
+
+            DownloadMission mission = null;
+            CRC32 crc = new CRC32();
+
+            while (true) {
+                byte type;
+                byte[] payload;
+
+                try {
+                    int length = in.readInt();
+                    if (length < 0 || length > MAX_RECORD_SIZE) break;
+
+                    type = in.readByte();
+                    payload = new byte[length];
+                    in.readFully(payload);
+
+                    crc.reset();
+                    crc.update(type);
+                    crc.update(payload, 0, length);
+                    if (in.readInt() != (int) crc.getValue()) break;
+                } catch (EOFException e) {
+                    break;
+                }
+
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+
+                if (type == RECORD_SNAPSHOT) {
+                    mission = readSnapshot(record);
+                } else if (type == RECORD_PROGRESS && mission != null) {
+                    readProgress(record, mission);
+                } else {
+                    break;
+                }
+            }
+
+            return mission;
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to read the journal " + file.getName(), e);
+            return null;
+        }
+    }
+
+    private static byte[] encodeState(DownloadMission mission) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(1024);
+        DataOutputStream out = new DataOutputStream(buffer);
+
+        writeString(out, mission.source);
+        out.writeLong(mission.timestamp);
+        out.writeChar(mission.kind);
+
+        out.writeBoolean(mission.storage != null);
+        if (mission.storage != null) mission.storage.writeTo(out);
+
+        out.writeInt(mission.urls.length);
+        for (String url : mission.urls) writeString(out, url);
+
+        out.writeBoolean(mission.unknownLength);
+        out.writeInt(mission.psState);
+        writePostprocessing(out, mission.psAlgorithm);
+        out.writeLong(mission.nearLength);
+        out.writeInt(mission.threadCount);
+        writeRecoveryInfo(out, mission.recoveryInfo);
+        out.writeBoolean(mission.enqueued);
+        out.writeInt(mission.errCode);
+        writeError(out, mission.errObject);
+
+        out.flush();
+        return buffer.toByteArray();
+    }
+
+    private static DownloadMission readSnapshot(DataInput in) throws IOException {
+        String source = readString(in);
+        long timestamp = in.readLong();
+        char kind = in.readChar();
+        StoredFileHelper storage = in.readBoolean() ? StoredFileHelper.readFrom(in) : null;
+
+        String[] urls = new String[in.readInt()];
+        for (int i = 0; i < urls.length; i++) urls[i] = readString(in);
+
+        boolean unknownLength = in.readBoolean();
+        int psState = in.readInt();
+        Postprocessing psAlgorithm = readPostprocessing(in);
+
+        // a dead mission has no urls, but the constructor requires at least one
+        DownloadMission mission = new DownloadMission(
+                urls.length > 0 ? urls : new String[1], storage, kind, psAlgorithm, null
+        );
+
+        mission.urls = urls;
+        mission.source = source;
+        mission.timestamp = timestamp;
+        mission.unknownLength = unknownLength;
+        mission.psState = psState;
+        mission.nearLength = in.readLong();
+        mission.threadCount = in.readInt();
+        mission.recoveryInfo = readRecoveryInfo(in);
+        mission.enqueued = in.readBoolean();
+        mission.errCode = in.readInt();
+        mission.errObject = readError(in);
+
+        readProgressCounters(in, mission);
+
+        int blocks = in.readInt();
+        if (blocks >= 0) {
+            mission.blocks = new int[blocks];
+            for (int i = 0; i < blocks; i++) mission.blocks[i] = in.readInt();
+        }
+
+        return mission;
+    }
+
+    private static void writeProgress(DataOutput out, DownloadMission mission) throws IOException {
+        out.writeLong(mission.length);
+        out.writeLong(mission.done);
+        out.writeInt(mission.current);
+        out.writeLong(mission.fallbackResumeOffset);
+
+        out.writeInt(mission.offsets.length);
+        for (long offset : mission.offsets) out.writeLong(offset);
+    }
+
+    private static void readProgressCounters(DataInput in, DownloadMission mission)
+            throws IOException {
+        mission.length = in.readLong();
+        mission.done = in.readLong();
+        mission.current = in.readInt();
+        mission.fallbackResumeOffset = in.readLong();
+
+        mission.offsets = new long[in.readInt()];
+        for (int i = 0; i < mission.offsets.length; i++) mission.offsets[i] = in.readLong();
+    }
+
+    private static void readProgress(DataInput in, DownloadMission mission) throws IOException {
+        readProgressCounters(in, mission);
+
+        int changes = in.readInt();
+        for (int i = 0; i < changes; i++) {
+            int index = in.readInt();
+            int value = in.readInt();
+
+            if (mission.blocks == null || index < 0 || index >= mission.blocks.length) {
+                throw new IOException("Invalid block index " + index);
+            }
+            mission.blocks[index] = value;
+        }
+    }
+
+    private static void writePostprocessing(DataOutput out, @Nullable Postprocessing algorithm)
+            throws IOException {
+        out.writeBoolean(algorithm != null);
+        if (algorithm == null) return;
+
+        writeString(out, algorithm.name);
+        writeStrings(out, PostprocessingArgs.get(algorithm));
+        out.writeBoolean(algorithm.worksOnSameFile);
+        out.writeBoolean(algorithm.reserveSpace);
+    }
+
+    @Nullable
+    private static Postprocessing readPostprocessing(DataInput in) throws IOException {
+        if (!in.readBoolean()) return null;
+
+        String name = readString(in);
+        if (name == null) throw new IOException("Missing post-processing algorithm name");
+
+        Postprocessing algorithm = Postprocessing.getAlgorithm(name, readStrings(in));
+        algorithm.worksOnSameFile = in.readBoolean();
+        algorithm.reserveSpace = in.readBoolean();
+
+        return algorithm;
+    }
+
+    private static void writeRecoveryInfo(DataOutput out, @Nullable MissionRecoveryInfo[] info)
+            throws IOException {
+        out.writeInt(info == null ? -1 : info.length);
+        if (info == null) return;
+
+        for (MissionRecoveryInfo entry : info) {
+            writeString(out, entry.getFormat().name());
+            writeString(out, entry.getDesired());
+            out.writeBoolean(entry.isDesired2());
+            out.writeInt(entry.getDesiredBitrate());
+            out.writeChar(entry.getKind());
+            writeString(out, entry.getValidateCondition());
+        }
+    }
+
+    @Nullable
+    private static MissionRecoveryInfo[] readRecoveryInfo(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) return null;
+
+        MissionRecoveryInfo[] info = new MissionRecoveryInfo[length];
+        for (int i = 0; i < length; i++) {
+            String format = readString(in);
+            if (format == null) throw new IOException("Missing recovery format");
+
+            info[i] = new MissionRecoveryInfo(
+                    MediaFormat.valueOf(format),
+                    readString(in),
+                    in.readBoolean(),
+                    in.readInt(),
+                    in.readChar(),
+                    readString(in)
+            );
+        }
+
+        return info;
+    }
+
+    private static void writeError(DataOutput out, @Nullable Exception err) throws IOException {
+        out.writeBoolean(err != null);
+        if (err == null) return;
+
+        writeString(out, err.toString());
+
+        StackTraceElement[] trace = err.getStackTrace();
+        out.writeInt(trace.length);
+        for (StackTraceElement element : trace) {
+            writeString(out, element.getClassName());
+            writeString(out, element.getMethodName());
+            writeString(out, element.getFileName());
+            out.writeInt(element.getLineNumber());
+        }
+    }
+
+    @Nullable
+    private static Exception readError(DataInput in) throws IOException {
+        if (!in.readBoolean()) return null;
+
+        RestoredException err = new RestoredException(readString(in));
+
+        StackTraceElement[] trace = new StackTraceElement[in.readInt()];
+        for (int i = 0; i < trace.length; i++) {
+            String className = readString(in);
+            String methodName = readString(in);
+            String fileName = readString(in);
+
+            trace[i] = new StackTraceElement(
+                    className == null ? "" : className,
+                    methodName == null ? "" : methodName,
+                    fileName,
+                    in.readInt()
+            );
+        }
+        err.setStackTrace(trace);
+
+        return err;
+    }
+
+    private static void writeStrings(DataOutput out, @Nullable String[] array) throws IOException {
+        out.writeInt(array == null ? -1 : array.length);
+        if (array == null) return;
+
+        for (String str : array) writeString(out, str);
+    }
+
+    @Nullable
+    private static String[] readStrings(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) return null;
+
+        String[] array = new String[length];
+        for (int i = 0; i < length; i++) array[i] = readString(in);
+
+        return array;
+    }
+
+    private static void writeString(DataOutput out, @Nullable String str) throws IOException {
+        if (str == null) {
+            out.writeInt(-1);
+            return;
+        }
+
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    @Nullable
+    private static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) return null;
+        if (length > MAX_RECORD_SIZE) throw new IOException("Invalid string length " + length);
+
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Error restored from the journal, keeps the description and the stack trace of the
+     * original exception
+     */
+    static class RestoredException extends Exception {
+        private final String description;
+
+        RestoredException(@Nullable String description) {
+            super(description);
+            this.description = description;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return description == null ? super.toString() : description;
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package us.shandian.giga.get;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.function.LongSupplier;
+
+import us.shandian.giga.get.DownloadMission.Block;
+
+/**
+ * Hands out the blocks of a {@link DownloadMission} to its {@link DownloadRunnable}s.
+ * <p>
+ * When there are no untouched blocks left, the remaining byte range of the in-flight block that
+ * will take the longest to finish is split and the idle connection steals the second half. A
+ * block can be split in several slices, the block offset stored in
+ * {@link DownloadMission#blocks} is always the contiguous amount of bytes downloaded from the
+ * start of the block, so the pending-mission metadata stays resumable as before.
+ * <p>
+ * The amount of connections is adapted between 1 and the amount chosen by the user by comparing
+ * the aggregate throughput of consecutive measure windows (hill climbing). Surplus connections
+ * exit at the next block boundary, missing ones are spawned by the mission.
+ */
+final class SegmentScheduler {
+    /**
+     * Minimum size of the range given to a thief (and kept by the victim)
+     */
+    static final int MIN_STEAL_SIZE = 2 * DownloadMission.BUFFER_SIZE;
+
+    /**
+     * Duration of every throughput measure window
+     */
+    static final long ADAPT_WINDOW_MILLIS = 4000;
+
+    /**
+     * Relative throughput change required to keep a change in the amount of connections
+     */
+    static final float ADAPT_GAIN = 0.10f;
+
+    /**
+     * Windows to wait after reverting a change before probing again
+     */
+    static final int ADAPT_COOLDOWN = 3;
+
+    private final int[] blocks;
+    private final boolean[] acquired;
+    private final long length;
+    private final int maxConnections;
+    private final LongSupplier clock;
+
+    private final ArrayList<Block> slices = new ArrayList<>();
+
+    private int activeConnections;
+    private int targetConnections;
+
+    private long windowStart;
+    private long windowBytes;
+    private long lastThroughput = -1;
+    private int lastAction = 0;
+    private int cooldown = 0;
+
+    SegmentScheduler(@NonNull int[] blocks, long length, int maxConnections) {
+        this(blocks, length, maxConnections, System::currentTimeMillis);
+    }
+
+    SegmentScheduler(@NonNull int[] blocks, long length, int maxConnections,
+                     @NonNull LongSupplier clock) {
+        this.blocks = blocks;
+        this.acquired = new boolean[blocks.length];
+        this.length = length;
+        this.maxConnections = Math.max(1, maxConnections);
+        this.targetConnections = this.maxConnections;
+        this.clock = clock;
+        this.windowStart = clock.getAsLong();
+    }
+
+    /**
+     * Size of the block at the given position, the last block can be shorter
+     *
+     * @param position index of the block
+     * @return the block size in bytes
+     */
+    int blockSize(int position) {
+        long start = (long) position * DownloadMission.BLOCK_SIZE;
+        return (int) Math.min(DownloadMission.BLOCK_SIZE, length - start);
+    }
+
+    /**
+     * Registers a new download connection
+     */
+    synchronized void registerConnection() {
+        activeConnections++;
+    }
+
+    /**
+     * Acquires a block, or steals a part of an in-flight block if no untouched block is left
+     *
+     * @return the block slice or {@code null} if the calling connection must exit, because
+     * there is nothing left to download or there are too many connections
+     */
+    @Nullable
+    synchronized Block acquire() {
+        if (activeConnections > targetConnections) {
+            activeConnections--;
+            return null;
+        }
+
+        for (int i = 0; i < acquired.length; i++) {
+            if (!acquired[i] && blocks[i] >= 0) {
+                acquired[i] = true;
+
+                Block block = new Block();
+                block.position = i;
+                block.done = blocks[i];
+                block.start = 0;
+                block.end = blockSize(i);
+                block.startedAt = clock.getAsLong();
+                block.initialDone = block.done;
+
+                slices.add(block);
+                return block;
+            }
+        }
+
+        Block stolen = steal();
+        if (stolen == null) activeConnections--;
+
+        return stolen;
+    }
+
+    @Nullable
+    private Block steal() {
+        long now = clock.getAsLong();
+        Block victim = null;
+        double victimEta = 0;
+
+        for (Block slice : slices) {
+            if (!isStealable(slice)) continue;
+
+            int remain = stealableBytesOf(slice);
+
+            // estimate the remaining time, a slice without progress is the slowest one
+            long elapsed = Math.max(1, now - slice.startedAt);
+            double rate = (slice.done - slice.initialDone) / (double) elapsed;
+            double eta = rate > 0 ? remain / rate : Double.MAX_VALUE;
+
+            if (victim == null || eta > victimEta) {
+                victim = slice;
+                victimEta = eta;
+            }
+        }
+
+        if (victim == null) return null;
+
+        // the victim may be writing a buffer right now, keep it out of the stolen range
+        int done = victim.done + DownloadMission.BUFFER_SIZE;
+        int middle = done + (victim.end - done) / 2;
+
+        Block thief = new Block();
+        thief.position = victim.position;
+        thief.start = middle;
+        thief.done = middle;
+        thief.end = victim.end;
+        thief.startedAt = now;
+        thief.initialDone = middle;
+
+        victim.end = middle;
+
+        slices.add(thief);
+        return thief;
+    }
+
+    /**
+     * Releases a block slice. The block offset is committed once all its slices are released.
+     *
+     * @param slice the block slice to release
+     * @return amount of downloaded bytes that cannot be persisted (downloaded after a gap in the
+     * block) and must be discounted from the mission progress
+     */
+    synchronized int release(@NonNull Block slice) {
+        slice.released = true;
+
+        ArrayList<Block> siblings = new ArrayList<>(2);
+        for (Block block : slices) {
+            if (block.position != slice.position) continue;
+            if (!block.released) return 0;// another connection is still working on the block
+            siblings.add(block);
+        }
+
+        siblings.sort((a, b) -> Integer.compare(a.start, b.start));
+
+        int covered = 0;
+        int contiguous = 0;
+        boolean gap = false;
+
+        for (Block block : siblings) {
+            covered += block.done - block.start;
+            if (gap) continue;
+
+            if (block.start != contiguous) {
+                gap = true;
+                continue;
+            }
+
+            contiguous = block.done;
+            if (block.done < block.end) gap = true;
+        }
+
+        slices.removeAll(siblings);
+        acquired[slice.position] = false;
+        blocks[slice.position] = contiguous >= blockSize(slice.position) ? -1 : contiguous;
+
+        return covered - contiguous;
+    }
+
+    /**
+     * Accounts transferred bytes and adapts the amount of connections at the end of every
+     * measure window
+     *
+     * @param bytes amount of bytes transferred
+     * @return {@code true} if a new connection should be spawned
+     */
+    synchronized boolean onTransfer(long bytes) {
+        windowBytes += bytes;
+
+        long now = clock.getAsLong();
+        long elapsed = now - windowStart;
+        if (elapsed < ADAPT_WINDOW_MILLIS) return false;
+
+        long throughput = windowBytes * 1000 / elapsed;
+        windowStart = now;
+        windowBytes = 0;
+
+        adapt(throughput);
+
+        return activeConnections < targetConnections && hasPendingWork();
+    }
+
+    private void adapt(long throughput) {
+        if (lastThroughput < 0) {
+            lastThroughput = throughput;
+            return;
+        }
+
+        if (lastAction > 0 && throughput < lastThroughput * (1 + ADAPT_GAIN)) {
+            // the new connection did not help, revert
+            targetConnections--;
+            lastAction = 0;
+            cooldown = ADAPT_COOLDOWN;
+        } else if (lastAction < 0 && throughput < lastThroughput * (1 - ADAPT_GAIN)) {
+            // fewer connections are slower, revert
+            targetConnections++;
+            lastAction = 0;
+            cooldown = ADAPT_COOLDOWN;
+        } else if (cooldown > 0) {
+            cooldown--;
+            lastAction = 0;
+        } else if (lastAction >= 0 && targetConnections < maxConnections) {
+            targetConnections++;
+            lastAction = 1;
+        } else if (targetConnections > 1) {
+            targetConnections--;
+            lastAction = -1;
+        } else {
+            lastAction = 0;
+        }
+
+        lastThroughput = throughput;
+    }
+
+    private boolean hasPendingWork() {
+        for (int i = 0; i < acquired.length; i++) {
+            if (!acquired[i] && blocks[i] >= 0) return true;
+        }
+        for (Block slice : slices) {
+            if (isStealable(slice)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Bytes of a slice a thief could take, the buffer the owner may be writing is excluded
+     */
+    private static int stealableBytesOf(@NonNull Block slice) {
+        return slice.end - slice.done - DownloadMission.BUFFER_SIZE;
+    }
+
+    /**
+     * A slice can be split if both halves get at least {@link #MIN_STEAL_SIZE} bytes
+     */
+    private static boolean isStealable(@NonNull Block slice) {
+        return !slice.released && stealableBytesOf(slice) >= MIN_STEAL_SIZE * 2;
+    }
+
+    synchronized int getTargetConnections() {
+        return targetConnections;
+    }
+
+    synchronized int getActiveConnections() {
+        return activeConnections;
+    }
+}
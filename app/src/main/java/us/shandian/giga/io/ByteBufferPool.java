@@ -0,0 +1,59 @@
+package us.shandian.giga.io;
+
+import androidx.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Bounded pool of direct {@link ByteBuffer}s of the same capacity, used by the download threads
+ * to avoid allocating a new buffer for every block.
+ */
+public final class ByteBufferPool {
+    private final int capacity;
+    private final int maxPooled;
+    private final ArrayDeque<ByteBuffer> pool;
+
+    public ByteBufferPool(int capacity, int maxPooled) {
+        this.capacity = capacity;
+        this.maxPooled = maxPooled;
+        this.pool = new ArrayDeque<>(maxPooled);
+    }
+
+    /**
+     * Takes a buffer from the pool, or allocates a new one if the pool is empty
+     *
+     * @return a cleared direct buffer
+     */
+    @NonNull
+    public ByteBuffer acquire() {
+        ByteBuffer buffer;
+        synchronized (pool) {
+            buffer = pool.pollFirst();
+        }
+
+        if (buffer == null) return ByteBuffer.allocateDirect(capacity);
+
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer to the pool, the buffer is discarded if the pool is full
+     *
+     * @param buffer the buffer to return, must not be used after calling this method
+     */
+    public void release(@NonNull ByteBuffer buffer) {
+        if (buffer.capacity() != capacity || !buffer.isDirect()) return;
+
+        synchronized (pool) {
+            if (pool.size() < maxPooled) pool.addFirst(buffer);
+        }
+    }
+
+    public int getPooledCount() {
+        synchronized (pool) {
+            return pool.size();
+        }
+    }
+}
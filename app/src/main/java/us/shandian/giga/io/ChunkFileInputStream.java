@@ -14,9 +14,20 @@ public class ChunkFileInputStream extends SharpStream {
 
     private long progressReport;
     private final ProgressReport onProgress;
+    private final CommitBarrier barrier;
 
     public ChunkFileInputStream(SharpStream target, long start, long end, ProgressReport callback) throws IOException {
+        this(target, start, end, callback, null);
+    }
+
+    /**
+     * @param barrier if not {@code null}, reads block until the requested bytes are written in the
+     *                file, used to consume a chunk that is still being downloaded
+     */
+    public ChunkFileInputStream(SharpStream target, long start, long end, ProgressReport callback,
+                                CommitBarrier barrier) throws IOException {
         source = target;
+        this.barrier = barrier;
         offset = start;
         length = end - start;
         position = 0;
@@ -53,6 +64,8 @@ public class ChunkFileInputStream extends SharpStream {
             return 0;
         }
 
+        if (barrier != null) barrier.await(offset + position + 1);
+
         int res = source.read();
         if (res >= 0) {
             position++;
@@ -75,6 +88,8 @@ public class ChunkFileInputStream extends SharpStream {
             return 0;
         }
 
+        if (barrier != null) barrier.await(offset + position + len);
+
         int res = source.read(b, off, len);
         position += res;
 
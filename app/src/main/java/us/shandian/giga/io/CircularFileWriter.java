@@ -53,13 +53,23 @@ public class CircularFileWriter extends SharpStream {
         aux.flush();
 
         boolean underflow = aux.offset < aux.length || out.offset < out.length;
-        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        byte[] buffer = null;
 
         aux.target.seek(0);
         out.target.seek(out.length);
 
         long length = amount;
+        if (aux.target instanceof FileChannelStream && out.target instanceof FileChannelStream) {
+            // let the kernel move the data, without copying it through the heap
+            long transferred = out.transferProof((FileChannelStream) aux.target, amount);
+            aux.target.seek(transferred);
+            amount = transferred;
+            length = 0;
+        }
+
         while (length > 0) {
+            if (buffer == null) buffer = new byte[COPY_BUFFER_SIZE];
+
             int read = (int) Math.min(length, Integer.MAX_VALUE);
             read = aux.target.read(buffer, 0, Math.min(read, buffer.length));
 
@@ -104,6 +114,8 @@ public class CircularFileWriter extends SharpStream {
 
             aux.length -= amount;
             length = aux.length;
+            if (buffer == null) buffer = new byte[COPY_BUFFER_SIZE];
+
             while (length > 0) {
                 int read = (int) Math.min(length, Integer.MAX_VALUE);
                 read = aux.target.read(buffer, 0, Math.min(read, buffer.length));
@@ -383,7 +395,7 @@ public class CircularFileWriter extends SharpStream {
         private int queueSize;
 
         BufferedFile(File file) throws FileNotFoundException {
-            this.target = new FileStream(file);
+            this.target = new FileChannelStream(file);
         }
 
         BufferedFile(SharpStream target) {
@@ -470,6 +482,26 @@ public class CircularFileWriter extends SharpStream {
             }
         }
 
+        long transferProof(FileChannelStream source, long count) throws IOException {
+            FileChannelStream channelTarget = (FileChannelStream) target;
+            long sourceOffset = source.getPosition();
+            long targetOffset = channelTarget.getPosition();
+
+            while (true) {
+                // on retry, resume from the amount of bytes already moved
+                long transferred = channelTarget.getPosition() - targetOffset;
+
+                try {
+                    channelTarget.transferFrom(source, sourceOffset + transferred, count - transferred);
+                    return channelTarget.getPosition() - targetOffset;
+                } catch (Exception e) {
+                    if (onWriteError == null || !onWriteError.handle(e)) {
+                        throw e;// give up
+                    }
+                }
+            }
+        }
+
         @NonNull
         @Override
         public String toString() {
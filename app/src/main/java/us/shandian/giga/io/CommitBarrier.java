@@ -0,0 +1,14 @@
+package us.shandian.giga.io;
+
+import java.io.IOException;
+
+public interface CommitBarrier {
+
+    /**
+     * Blocks until all the bytes before the given offset are written in the file
+     *
+     * @param position absolute offset in the file (exclusive)
+     * @throws IOException if the writer stopped and the bytes will never be available
+     */
+    void await(long position) throws IOException;
+}
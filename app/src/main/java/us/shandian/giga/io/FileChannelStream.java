@@ -0,0 +1,275 @@
+package us.shandian.giga.io;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import org.schabi.newpipe.streams.io.SharpStream;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * {@link SharpStream} backed by NIO {@link FileChannel}s.
+ * <p>
+ * All reads and writes are positional, the stream position is kept by this instance and not by
+ * the file descriptor, so several instances (one per download thread) can write the same file
+ * without sharing a seek pointer. Direct {@link ByteBuffer}s can be written without copying them
+ * through the heap, and whole ranges can be moved between files with
+ * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}.
+ */
+public class FileChannelStream extends SharpStream {
+    private static final String TAG = "FileChannelStream";
+
+    private final FileChannel readChannel;
+    private final FileChannel writeChannel;
+    private final Closeable[] resources;
+
+    private final ByteBuffer single = ByteBuffer.allocate(1);
+    private long position;
+    private boolean disposed;
+
+    public FileChannelStream(@NonNull File target) throws FileNotFoundException {
+        RandomAccessFile file = new RandomAccessFile(target, "rw");
+
+        readChannel = file.getChannel();
+        writeChannel = readChannel;
+        resources = new Closeable[]{readChannel, file};
+    }
+
+    public FileChannelStream(@NonNull ContentResolver contentResolver, @NonNull Uri fileUri)
+            throws IOException {
+        // the file must exists first, see FileStreamSAF for more details
+        ParcelFileDescriptor file = contentResolver.openFileDescriptor(fileUri, "rw");
+
+        if (file == null) {
+            throw new IOException("Cannot get the ParcelFileDescriptor for " + fileUri);
+        }
+
+        // the channel of a FileOutputStream is not readable
+        FileInputStream in = new FileInputStream(file.getFileDescriptor());
+        FileOutputStream out = new FileOutputStream(file.getFileDescriptor());
+
+        readChannel = in.getChannel();
+        writeChannel = out.getChannel();
+        resources = new Closeable[]{readChannel, writeChannel, in, out, file};
+    }
+
+    /**
+     * Reads bytes at the given position, the stream position is not changed
+     *
+     * @param buffer   the buffer to fill
+     * @param position absolute position in the file
+     * @return amount of bytes read, or {@code -1} if the position is at the end of the file
+     * @throws IOException if an I/O error occurs
+     */
+    public int read(@NonNull ByteBuffer buffer, long position) throws IOException {
+        return readChannel.read(buffer, position);
+    }
+
+    /**
+     * Writes all the remaining bytes of the buffer at the given position, the stream position is
+     * not changed
+     *
+     * @param buffer   the buffer to write, preferably a direct one
+     * @param position absolute position in the file
+     * @throws IOException if an I/O error occurs
+     */
+    public void write(@NonNull ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += writeChannel.write(buffer, position);
+        }
+    }
+
+    /**
+     * Copies a range of another file at the current position of this stream, the bytes are moved
+     * by the kernel if possible. The stream position is advanced by the amount of bytes copied.
+     *
+     * @param source       the file to copy from
+     * @param sourceOffset absolute position in the source file
+     * @param count        amount of bytes to copy
+     * @return the amount of bytes copied, lower than {@code count} if the source is shorter
+     * @throws IOException if an I/O error occurs
+     */
+    public long transferFrom(@NonNull FileChannelStream source, long sourceOffset, long count)
+            throws IOException {
+        long transferred = 0;
+
+        while (transferred < count) {
+            writeChannel.position(position);
+            long amount = source.readChannel.transferTo(
+                    sourceOffset + transferred, count - transferred, writeChannel);
+
+            if (amount < 1) break;// end of the source file
+
+            transferred += amount;
+            position += amount;
+        }
+
+        return transferred;
+    }
+
+    @Override
+    public int read() throws IOException {
+        single.clear();
+        int read = readChannel.read(single, position);
+        if (read < 1) return -1;
+
+        position++;
+        return single.get(0) & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer) throws IOException {
+        return read(buffer, 0, buffer.length);
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int count) throws IOException {
+        if (count == 0) return 0;
+
+        int read = readChannel.read(ByteBuffer.wrap(buffer, offset, count), position);
+        if (read > 0) position += read;
+
+        return read;
+    }
+
+    @Override
+    public long skip(long amount) throws IOException {
+        if (amount <= 0) return 0;
+
+        long target = Math.min(position + amount, readChannel.size());
+        long skipped = Math.max(0, target - position);
+        position += skipped;
+
+        return skipped;
+    }
+
+    @Override
+    public long available() {
+        try {
+            return Math.max(0, readChannel.size() - position);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public void rewind() {
+        position = 0;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return disposed;
+    }
+
+    @Override
+    public void close() {
+        if (disposed) return;
+        disposed = true;
+
+        for (Closeable resource : resources) {
+            try {
+                resource.close();
+            } catch (IOException e) {
+                Log.e(TAG, "close() error", e);
+            }
+        }
+    }
+
+    @Override
+    public boolean canRewind() {
+        return true;
+    }
+
+    @Override
+    public boolean canRead() {
+        return true;
+    }
+
+    @Override
+    public boolean canWrite() {
+        return true;
+    }
+
+    @Override
+    public boolean canSetLength() {
+        return true;
+    }
+
+    @Override
+    public boolean canSeek() {
+        return true;
+    }
+
+    @Override
+    public void write(byte value) throws IOException {
+        single.clear();
+        single.put(0, value);
+        write(single, position);
+        position++;
+    }
+
+    @Override
+    public void write(byte[] buffer) throws IOException {
+        write(buffer, 0, buffer.length);
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int count) throws IOException {
+        write(ByteBuffer.wrap(buffer, offset, count), position);
+        position += count;
+    }
+
+    @Override
+    public void setLength(long length) throws IOException {
+        long size = writeChannel.size();
+
+        if (length < size) {
+            writeChannel.truncate(length);
+        } else if (length > size) {
+            // same as RandomAccessFile, extend the file
+            single.clear();
+            single.put(0, (byte) 0);
+            write(single, length - 1);
+        }
+
+        if (position > length) position = length;
+    }
+
+    @Override
+    public void seek(long offset) {
+        position = offset;
+    }
+
+    @Override
+    public long length() throws IOException {
+        return readChannel.size();
+    }
+
+    /**
+     * Gets the current position of this stream
+     *
+     * @return the absolute position in the file
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return TAG + "{position=" + position + " closed=" + disposed + "}";
+    }
+}
@@ -92,6 +92,7 @@ public abstract class Postprocessing implements Serializable {
     private transient DownloadMission mission;
 
     private transient File tempFile;
+    private transient File tempDirectory;
 
     Postprocessing(boolean reserveSpace, boolean worksOnSameFile, String algorithmName) {
         this.reserveSpace = reserveSpace;
@@ -100,6 +101,7 @@ public abstract class Postprocessing implements Serializable {
     }
 
     public void setTemporalDir(@NonNull File directory) {
+        tempDirectory = directory;
         long rnd = (int) (Math.random() * 100000.0f);
         tempFile = new File(directory, rnd + "_" + System.nanoTime() + ".tmp");
     }
@@ -122,12 +124,25 @@ public abstract class Postprocessing implements Serializable {
         int result;
         long finalLength = -1;
 
-        mission.done = 0;
+        // in streaming mode the last resource is still being downloaded, the mission progress
+        // belongs to the download until the mission switches to the post-processing state
+        final boolean streaming = target.isPsStreaming();
 
-        long length = mission.storage.length() - mission.offsets[0];
-        mission.length = Math.max(length, mission.nearLength);
+        if (!streaming) {
+            mission.done = 0;
+
+            long length = mission.storage.length() - mission.offsets[0];
+            mission.length = Math.max(length, mission.nearLength);
+        }
+
+        if (tempFile == null && tempDirectory != null) {
+            // a previous (aborted) run deleted the temporal file
+            setTemporalDir(tempDirectory);
+        }
 
         final ProgressReport readProgress = (long position) -> {
+            if (!mission.isPsRunning()) return;
+
             position -= mission.offsets[0];
             if (position > mission.done) mission.done = position;
         };
@@ -139,13 +154,25 @@ public abstract class Postprocessing implements Serializable {
                     SharpStream source = mission.storage.getStream();
                     long end = j < sources.length ? mission.offsets[j] : source.length();
 
-                    sources[i] = new ChunkFileInputStream(source, mission.offsets[i], end, readProgress);
+                    sources[i] = new ChunkFileInputStream(source, mission.offsets[i], end,
+                            readProgress, streaming ? mission::awaitCommitted : null);
                 }
 
                 if (test(sources)) {
                     for (SharpStream source : sources) source.rewind();
 
                     OffsetChecker checker = () -> {
+                        // the space reserved at the start of the file never holds source data
+                        long reserved = mission.offsets[0];
+
+                        if (streaming && !mission.isPsRunning()) {
+                            // the download is not finished, the sources are left untouched so
+                            // the post-processing can be aborted without corrupting them. The
+                            // output is written in the reserved space as it is produced, and
+                            // the rest goes to the temporal file until the download finishes
+                            return reserved;
+                        }
+
                         for (ChunkFileInputStream source : sources) {
                             /*
                              * WARNING: never use rewind() in any chunk after any writing (especially on first chunks)
@@ -155,15 +182,17 @@ public abstract class Postprocessing implements Serializable {
                                 continue;// the selected source is not used anymore
                             }
 
-                            return source.getFilePointer() - 1;
+                            return Math.max(reserved, source.getFilePointer() - 1);
                         }
 
                         return -1;
                     };
 
                     try (CircularFileWriter out = new CircularFileWriter(
-                            mission.storage.getStream(), tempFile, checker)) {
-                        out.onProgress = (long position) -> mission.done = position;
+                            mission.storage.getChannelStream(), tempFile, checker)) {
+                        out.onProgress = (long position) -> {
+                            if (mission.isPsRunning()) mission.done = position;
+                        };
 
                         out.onWriteError = err -> {
                             mission.psState = 3;
@@ -192,8 +221,11 @@ public abstract class Postprocessing implements Serializable {
                             result = process(target.storage.source, target.context, out, sources);
                         }
 
-                        if (result == OK_RESULT)
+                        if (result == OK_RESULT) {
+                            // never touch the sources before the download is finished
+                            if (streaming) mission.awaitDownloadFinished();
                             finalLength = out.finalizeFile();
+                        }
                     }
                 } else {
                     result = OK_RESULT;
@@ -218,6 +250,11 @@ public abstract class Postprocessing implements Serializable {
             result = test() ? process(target.storage.source, target.context, null) : OK_RESULT;
         }
 
+        if (streaming) {
+            // the mission state and the file can be changed only after the download is finished
+            mission.awaitDownloadFinished();
+        }
+
         if (result == OK_RESULT) {
             if (finalLength != -1) {
                 mission.length = finalLength;
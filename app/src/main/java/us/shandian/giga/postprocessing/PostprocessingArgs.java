@@ -0,0 +1,40 @@
+package us.shandian.giga.postprocessing;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+
+/**
+ * Reads the arguments of a {@link Postprocessing} instance, used to persist the algorithm without
+ * Java serialization.
+ * <p>
+ * {@link Postprocessing} does not declare a {@code serialVersionUID}, any change to its
+ * non-private members would make the old pending missions unreadable, so the arguments are read
+ * through {@link Postprocessing#getArgumentAt(int, String)} instead of adding a getter.
+ */
+public final class PostprocessingArgs {
+    private PostprocessingArgs() {
+    }
+
+    /**
+     * Gets the arguments of the algorithm
+     *
+     * @param algorithm the post-processing instance
+     * @return the arguments, or {@code null} if the algorithm has no arguments
+     */
+    public static String[] get(@NonNull Postprocessing algorithm) {
+        // unique instance, compared by reference to detect the end of the arguments
+        //noinspection StringOperationCanBeSimplified
+        final String end = new String();
+
+        ArrayList<String> args = new ArrayList<>();
+        while (true) {
+            String arg = algorithm.getArgumentAt(args.size(), end);
+            //noinspection StringEquality
+            if (arg == end) break;
+            args.add(arg);
+        }
+
+        return args.isEmpty() ? null : args.toArray(new String[0]);
+    }
+}
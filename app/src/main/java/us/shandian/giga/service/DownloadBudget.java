@@ -0,0 +1,300 @@
+package us.shandian.giga.service;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+
+import us.shandian.giga.get.DownloadMission;
+
+/**
+ * Connection and bandwidth budget shared by all the download threads of all the missions.
+ * <p>
+ * Enforces a global connection limit, a per-host connection limit and a token-bucket rate
+ * limit. The priority mission (the last one resumed by the user) takes free connection slots
+ * and tokens before any other mission, but it still waits for its tokens, so the rate limit
+ * holds for the total speed of all the running missions.
+ */
+public final class DownloadBudget {
+    public static final int DEFAULT_MAX_CONNECTIONS = 12;
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 6;
+
+    /**
+     * Maximum burst accepted by the token bucket, in seconds of the configured rate
+     */
+    private static final float BURST_SECONDS = 0.5f;
+
+    /**
+     * How long the other missions wait before checking again whether the priority mission took
+     * its tokens
+     */
+    private static final long PRIORITY_TURN_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    /**
+     * Smoothing factor of the exponential moving average of every mission throughput
+     */
+    private static final float SPEED_SMOOTHING = 0.3f;
+    private static final long SPEED_SAMPLE_MILLIS = 1000;
+
+    private static final DownloadBudget INSTANCE = new DownloadBudget();
+
+    private final Map<String, Integer> hostConnections = new HashMap<>();
+    private final Map<DownloadMission, Meter> meters = new WeakHashMap<>();
+
+    private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+    private int maxConnectionsPerHost = DEFAULT_MAX_CONNECTIONS_PER_HOST;
+    private int connections = 0;
+    private int priorityWaiters = 0;
+
+    @Nullable
+    private DownloadMission priority = null;
+
+    private final Object bucketLock = new Object();
+    private long bytesPerSecond = 0;
+    private double tokens = 0;
+    private long lastRefill = System.nanoTime();
+    private int bucketPriorityWaiters = 0;
+
+    DownloadBudget() {
+    }
+
+    public static DownloadBudget getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Changes the budget limits, the connections already open are not closed
+     *
+     * @param maxConnections        maximum amount of connections across all missions
+     * @param maxConnectionsPerHost maximum amount of connections to the same host
+     * @param bytesPerSecond        maximum download rate, or {@code 0} for unlimited
+     */
+    public void setLimits(int maxConnections, int maxConnectionsPerHost, long bytesPerSecond) {
+        synchronized (this) {
+            this.maxConnections = Math.max(1, maxConnections);
+            this.maxConnectionsPerHost = Math.max(1, maxConnectionsPerHost);
+            notifyAll();
+        }
+
+        synchronized (bucketLock) {
+            this.bytesPerSecond = Math.max(0, bytesPerSecond);
+            this.tokens = 0;
+            this.lastRefill = System.nanoTime();
+            bucketLock.notifyAll();
+        }
+    }
+
+    /**
+     * Sets the mission served first
+     *
+     * @param mission the mission, or {@code null} to serve all missions equally
+     */
+    public synchronized void setPriority(@Nullable DownloadMission mission) {
+        priority = mission;
+        notifyAll();
+    }
+
+    public synchronized boolean isPriority(@Nullable DownloadMission mission) {
+        return mission != null && mission == priority;
+    }
+
+    /**
+     * Waits until a connection slot is available for the given host
+     *
+     * @param mission the mission requesting the connection
+     * @param host    the host to connect to
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    public synchronized void acquireConnection(@NonNull DownloadMission mission,
+                                               @NonNull String host)
+            throws InterruptedException {
+        boolean isPriority = mission == priority;
+        if (isPriority) priorityWaiters++;
+
+        try {
+            while (connections >= maxConnections
+                    || getHostConnections(host) >= maxConnectionsPerHost
+                    || (!isPriority && priorityWaiters > 0)) {
+                wait();
+                isPriority = updatePriorityWaiter(mission, isPriority);
+            }
+        } finally {
+            if (isPriority) priorityWaiters--;
+        }
+
+        connections++;
+        hostConnections.put(host, getHostConnections(host) + 1);
+    }
+
+    private boolean updatePriorityWaiter(DownloadMission mission, boolean wasPriority) {
+        // the priority mission can change while waiting
+        boolean isPriority = mission == priority;
+        if (isPriority && !wasPriority) {
+            priorityWaiters++;
+        } else if (!isPriority && wasPriority) {
+            priorityWaiters--;
+        }
+        return isPriority;
+    }
+
+    /**
+     * Releases a connection slot previously acquired with
+     * {@link #acquireConnection(DownloadMission, String)}
+     *
+     * @param host the host of the connection
+     */
+    public synchronized void releaseConnection(@NonNull String host) {
+        int count = getHostConnections(host);
+        if (count <= 1) {
+            hostConnections.remove(host);
+        } else {
+            hostConnections.put(host, count - 1);
+        }
+
+        if (connections > 0) connections--;
+        notifyAll();
+    }
+
+    private int getHostConnections(String host) {
+        Integer count = hostConnections.get(host);
+        return count == null ? 0 : count;
+    }
+
+    public synchronized int getOpenConnections() {
+        return connections;
+    }
+
+    /**
+     * Takes tokens from the bucket, waiting while the bucket is empty, and accounts the bytes in
+     * the mission throughput counter. The bucket may go into debt by one read, which the next
+     * readers wait for. While the priority mission waits for tokens, the other missions wait
+     * behind it.
+     *
+     * @param mission the mission which downloaded the bytes
+     * @param bytes   amount of bytes downloaded
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    public void consume(@NonNull DownloadMission mission, int bytes) throws InterruptedException {
+        getMeter(mission).add(bytes);
+
+        synchronized (bucketLock) {
+            boolean isPriority = false;
+            try {
+                while (bytesPerSecond > 0) {
+                    isPriority = updateBucketPriorityWaiter(mission, isPriority);
+                    refillTokens();
+                    if (tokens >= 0 && (isPriority || bucketPriorityWaiters == 0)) {
+                        tokens -= bytes;
+                        return;
+                    }
+
+                    long waitNanos = tokens < 0
+                            ? (long) Math.ceil(-tokens * 1e9d / bytesPerSecond)
+                            : PRIORITY_TURN_NANOS;
+                    TimeUnit.NANOSECONDS.timedWait(bucketLock, Math.max(1, waitNanos));
+                }
+            } finally {
+                if (isPriority) bucketPriorityWaiters--;
+                // the other missions may be waiting for the priority mission to take its turn
+                bucketLock.notifyAll();
+            }
+        }
+    }
+
+    private boolean updateBucketPriorityWaiter(DownloadMission mission, boolean wasPriority) {
+        // the priority mission can change while waiting
+        boolean isPriority = isPriority(mission);
+        if (isPriority && !wasPriority) {
+            bucketPriorityWaiters++;
+        } else if (!isPriority && wasPriority) {
+            bucketPriorityWaiters--;
+        }
+        return isPriority;
+    }
+
+    private void refillTokens() {
+        long now = System.nanoTime();
+        double burst = bytesPerSecond * BURST_SECONDS;
+        tokens = Math.min(burst, tokens + (now - lastRefill) * bytesPerSecond / 1e9d);
+        lastRefill = now;
+    }
+
+    @NonNull
+    private synchronized Meter getMeter(@NonNull DownloadMission mission) {
+        Meter meter = meters.get(mission);
+        if (meter == null) {
+            meter = new Meter();
+            meters.put(mission, meter);
+        }
+        return meter;
+    }
+
+    /**
+     * Gets the smoothed download speed of a mission
+     *
+     * @param mission the mission
+     * @return the speed in bytes per second, or {@code 0} if unknown
+     */
+    public float getSpeed(@NonNull DownloadMission mission) {
+        Meter meter;
+        synchronized (this) {
+            meter = meters.get(mission);
+        }
+        return meter == null ? 0 : meter.getSpeed();
+    }
+
+    /**
+     * Gets the amount of bytes downloaded by a mission since the service started
+     *
+     * @param mission the mission
+     * @return the amount of bytes
+     */
+    public long getTransferred(@NonNull DownloadMission mission) {
+        Meter meter;
+        synchronized (this) {
+            meter = meters.get(mission);
+        }
+        return meter == null ? 0 : meter.total;
+    }
+
+    /**
+     * Forgets the throughput counter of a mission
+     *
+     * @param mission the mission
+     */
+    public synchronized void forget(@NonNull DownloadMission mission) {
+        meters.remove(mission);
+        if (mission == priority) priority = null;
+    }
+
+    private static final class Meter {
+        long total = 0;
+        long sampleBytes = 0;
+        long sampleStart = System.currentTimeMillis();
+        float speed = 0;
+
+        synchronized void add(int bytes) {
+            total += bytes;
+            sampleBytes += bytes;
+
+            long now = System.currentTimeMillis();
+            long elapsed = now - sampleStart;
+            if (elapsed < SPEED_SAMPLE_MILLIS) return;
+
+            float sample = sampleBytes * 1000f / elapsed;
+            speed = speed == 0 ? sample : speed + SPEED_SMOOTHING * (sample - speed);
+            sampleBytes = 0;
+            sampleStart = now;
+        }
+
+        synchronized float getSpeed() {
+            // decay the speed if the mission stopped receiving data
+            long elapsed = System.currentTimeMillis() - sampleStart;
+            if (elapsed > SPEED_SAMPLE_MILLIS * 3) return 0;
+            return speed;
+        }
+    }
+}
@@ -15,6 +15,7 @@ import java.util.*;
 import us.shandian.giga.get.DownloadMission;
 import us.shandian.giga.get.FinishedMission;
 import us.shandian.giga.get.Mission;
+import us.shandian.giga.get.MissionJournal;
 import us.shandian.giga.get.sqlite.FinishedMissionStore;
 import org.schabi.newpipe.streams.io.StoredDirectoryHelper;
 import org.schabi.newpipe.streams.io.StoredFileHelper;
@@ -50,6 +51,8 @@ public class DownloadManager {
     int mPrefMaxRetry;
     boolean mPrefMeteredDownloads;
     boolean mPrefQueueLimit = true;
+    int mPrefMaxConnections = DownloadBudget.DEFAULT_MAX_CONNECTIONS;
+    long mPrefBandwidthLimit = 0;
     private boolean mSelfMissionsControl;
 
     StoredDirectoryHelper mMainStorageAudio;
@@ -145,9 +148,16 @@ public class DownloadManager {
 
         for (File sub : subs) {
             if (!sub.isFile()) continue;
-            if (sub.getName().equals(".tmp")) continue;
+            if (sub.getName().startsWith(".")) {
+                // leftover of testDir() or of a journal rewrite interrupted by the system
+                //noinspection ResultOfMethodCallIgnored
+                sub.delete();
+                continue;
+            }
 
-            DownloadMission mis = Utility.readFromFile(sub);
+            // pending missions saved by older versions use Java serialization
+            boolean legacy = !MissionJournal.isJournal(sub);
+            DownloadMission mis = legacy ? Utility.readFromFile(sub) : MissionJournal.read(sub);
             if (mis == null) {
                 //noinspection ResultOfMethodCallIgnored
                 sub.delete();
@@ -212,6 +222,8 @@ public class DownloadManager {
             mis.mHandler = mHandler;
             mis.context = ctx;
 
+            if (legacy) mis.writeThisToFile();// migrate to the journal format
+
             mMissionsPending.add(mis);
         }
 
@@ -250,7 +262,7 @@ public class DownloadManager {
             mMissionsPending.add(mission);
 
             // Before continue, save the metadata in case the internet connection is not available
-            Utility.writeToFile(mission.metadata, mission);
+            mission.writeThisToFile();
 
             if (mission.storage == null) {
                 // noting to do here
@@ -275,7 +287,19 @@ public class DownloadManager {
         }
     }
 
+    /**
+     * Gives the connection and bandwidth priority to a mission, usually the one the user
+     * is looking at
+     *
+     * @param mission the mission, or {@code null} to serve all missions equally
+     */
+    public void setPriorityMission(@Nullable DownloadMission mission) {
+        DownloadBudget.getInstance().setPriority(mission);
+    }
+
     public void pauseMission(DownloadMission mission) {
+        if (DownloadBudget.getInstance().isPriority(mission)) setPriorityMission(null);
+
         if (mission.running) {
             mission.setEnqueued(false);
             mission.pause();
@@ -286,6 +310,7 @@ public class DownloadManager {
         synchronized (this) {
             if (mission instanceof DownloadMission) {
                 mMissionsPending.remove(mission);
+                DownloadBudget.getInstance().forget((DownloadMission) mission);
             } else if (mission instanceof FinishedMission) {
                 mMissionsFinished.remove(mission);
                 mFinishedMissionStore.deleteMission(mission);
@@ -437,6 +462,7 @@ public class DownloadManager {
     void setFinished(DownloadMission mission) {
         synchronized (this) {
             mMissionsPending.remove(mission);
+            DownloadBudget.getInstance().forget(mission);
             if(mission.storage.srcName.endsWith(".tmp")){
                 return;
             }
@@ -524,6 +550,14 @@ public class DownloadManager {
         }
     }
 
+    void updateBudget() {
+        DownloadBudget.getInstance().setLimits(
+                mPrefMaxConnections,
+                Math.min(mPrefMaxConnections, DownloadBudget.DEFAULT_MAX_CONNECTIONS_PER_HOST),
+                mPrefBandwidthLimit
+        );
+    }
+
     void updateMaximumAttempts() {
         synchronized (this) {
             for (DownloadMission mission : mMissionsPending) mission.maxRetry = mPrefMaxRetry;
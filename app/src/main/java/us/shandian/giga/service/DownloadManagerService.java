@@ -187,6 +187,8 @@ public class DownloadManagerService extends Service {
         handlePreferenceChange(mPrefs, getString(R.string.downloads_cross_network));
         handlePreferenceChange(mPrefs, getString(R.string.downloads_maximum_retry));
         handlePreferenceChange(mPrefs, getString(R.string.downloads_queue_limit));
+        handlePreferenceChange(mPrefs, getString(R.string.downloads_max_connections));
+        handlePreferenceChange(mPrefs, getString(R.string.downloads_bandwidth_limit));
 
         mLock = new LockManager(this);
     }
@@ -342,6 +344,22 @@ public class DownloadManagerService extends Service {
             mManager.mPrefMeteredDownloads = prefs.getBoolean(key, false);
         } else if (key.equals(getString(R.string.downloads_queue_limit))) {
             mManager.mPrefQueueLimit = prefs.getBoolean(key, true);
+        } else if (key.equals(getString(R.string.downloads_max_connections))) {
+            try {
+                String value = prefs.getString(key, getString(R.string.downloads_max_connections_default));
+                mManager.mPrefMaxConnections = Integer.parseInt(value);
+            } catch (Exception e) {
+                mManager.mPrefMaxConnections = DownloadBudget.DEFAULT_MAX_CONNECTIONS;
+            }
+            mManager.updateBudget();
+        } else if (key.equals(getString(R.string.downloads_bandwidth_limit))) {
+            try {
+                String value = prefs.getString(key, getString(R.string.downloads_bandwidth_limit_default));
+                mManager.mPrefBandwidthLimit = Long.parseLong(value) * 1024;
+            } catch (Exception e) {
+                mManager.mPrefBandwidthLimit = 0;
+            }
+            mManager.updateBudget();
         } else if (key.equals(getString(R.string.download_path_video_key))) {
             mManager.mMainStorageVideo = loadMainVideoStorage();
         } else if (key.equals(getString(R.string.download_path_audio_key))) {
@@ -66,6 +66,7 @@ import us.shandian.giga.get.FinishedMission;
 import us.shandian.giga.get.Mission;
 import us.shandian.giga.get.MissionRecoveryInfo;
 import org.schabi.newpipe.streams.io.StoredFileHelper;
+import us.shandian.giga.service.DownloadBudget;
 import us.shandian.giga.service.DownloadManager;
 import us.shandian.giga.service.DownloadManagerService;
 import us.shandian.giga.ui.common.Deleter;
@@ -332,6 +333,11 @@ public class MissionAdapter extends Adapter<ViewHolder> implements Handler.Callb
                 averageSpeed /= h.lastSpeed.length + 1.0f;
             }
 
+            // prefer the throughput counted by the download threads, it does not depend on the
+            // refresh rate of this adapter
+            float measuredSpeed = DownloadBudget.getInstance().getSpeed(mission);
+            if (measuredSpeed > 0) averageSpeed = measuredSpeed;
+
             String speedStr = Utility.formatSpeed(averageSpeed);
             String etaStr;
 
@@ -660,6 +666,7 @@ public class MissionAdapter extends Adapter<ViewHolder> implements Handler.Callb
             switch (id) {
                 case R.id.start:
                     h.status.setText(UNDEFINED_PROGRESS);
+                    mDownloadManager.setPriorityMission(mission);
                     mDownloadManager.resumeMission(mission);
                     return true;
                 case R.id.pause:
@@ -0,0 +1,128 @@
+package org.schabi.newpipe;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.schabi.newpipe.extractor.downloader.Response;
+
+import java.io.BufferedReader;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class DownloaderImplTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private MockWebServer server;
+    private DownloaderImpl downloader;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        downloader = DownloaderImpl.init(null);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        downloader.setHttpCache(null, 0);
+        server.shutdown();
+    }
+
+    @Test
+    public void testTimeoutClientsShareConnectionPool() {
+        final String url = server.url("/").toString();
+        final OkHttpClient base = downloader.getClient(url);
+
+        downloader.setCustomTimeout(10);
+        final OkHttpClient custom = downloader.getClient(url);
+
+        assertNotSame(base, custom);
+        assertSame(custom, downloader.getClient(url));
+        assertSame(base.connectionPool(), custom.connectionPool());
+        assertSame(base.dispatcher(), custom.dispatcher());
+        assertEquals(10_000, custom.readTimeoutMillis());
+
+        downloader.setCustomTimeout(null);
+        assertSame(base, downloader.getClient(url));
+    }
+
+    @Test
+    public void testCacheHit() throws Exception {
+        downloader.setHttpCache(folder.newFolder("cache"), 1024 * 1024);
+        server.enqueue(new MockResponse()
+                .setHeader("Cache-Control", "max-age=60")
+                .setBody("page"));
+
+        final String url = server.url("/page").toString();
+        downloader.get(url);
+        final Response response = downloader.get(url);
+
+        assertEquals("page", response.responseBody());
+        assertEquals(1, server.getRequestCount());
+        assertEquals(1, downloader.getCacheMissCount());
+        assertEquals(1, downloader.getCacheHitCount());
+    }
+
+    @Test
+    public void testCacheRevalidation() throws Exception {
+        downloader.setHttpCache(folder.newFolder("cache"), 1024 * 1024);
+        server.enqueue(new MockResponse()
+                .setHeader("Cache-Control", "no-cache")
+                .setHeader("ETag", "\"v1\"")
+                .setBody("{\"json\":true}"));
+        server.enqueue(new MockResponse().setResponseCode(304));
+
+        final String url = server.url("/api").toString();
+        downloader.get(url);
+        final Response response = downloader.get(url);
+
+        assertEquals(200, response.responseCode());
+        assertEquals("{\"json\":true}", response.responseBody());
+        server.takeRequest();
+        assertEquals("\"v1\"", server.takeRequest().getHeader("If-None-Match"));
+        assertEquals(1, downloader.getCacheRevalidationCount());
+        assertEquals(0, downloader.getCacheHitCount());
+    }
+
+    @Test
+    public void testBodyIsDecodedLazily() throws Exception {
+        server.enqueue(new MockResponse().setBody("{\"title\":\"\u00e9t\u00e9\"}"));
+        server.enqueue(new MockResponse().setResponseCode(204));
+
+        final String url = server.url("/json").toString();
+        final Response response = downloader.get(url);
+
+        final String body = response.responseBody();
+        assertEquals("{\"title\":\"\u00e9t\u00e9\"}", body);
+        // the decoded body is softly referenced, it stays cached while it is strongly reachable
+        assertSame(body, response.responseBody());
+        assertEquals("", downloader.get(url).responseBody());
+    }
+
+    @Test
+    public void testStreamingResponse() throws Exception {
+        server.enqueue(new MockResponse()
+                .setHeader("Content-Type", "text/html; charset=utf-8")
+                .setBody("<html>\n<body>page</body>\n</html>"));
+
+        final String url = server.url("/html").toString();
+        try (DownloaderImpl.StreamingResponse response = downloader.getStreaming(url)) {
+            assertEquals(200, response.responseCode());
+            assertEquals(url, response.latestUrl());
+            assertEquals("text/html; charset=utf-8", response.getHeader("Content-Type"));
+
+            final BufferedReader reader = new BufferedReader(response.reader());
+            assertEquals("<html>", reader.readLine());
+            assertEquals("<body>page</body>", reader.readLine());
+        }
+    }
+}
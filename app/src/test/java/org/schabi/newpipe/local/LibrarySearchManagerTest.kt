@@ -0,0 +1,34 @@
+package org.schabi.newpipe.local
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Test
+
+class LibrarySearchManagerTest {
+    @Test
+    fun `Every word is matched as a prefix`() {
+        assertEquals("never* gonna*", LibrarySearchManager.toFtsQuery("Never Gonna"))
+        assertEquals("rick*", LibrarySearchManager.toFtsQuery("  rick  "))
+    }
+
+    @Test
+    fun `Query syntax is not interpreted`() {
+        assertEquals("a* or* b*", LibrarySearchManager.toFtsQuery("a OR b"))
+        assertEquals("title* x*", LibrarySearchManager.toFtsQuery("\"title:x\"*"))
+        assertEquals("c* 20*", LibrarySearchManager.toFtsQuery("-c (20%)"))
+    }
+
+    @Test
+    fun `Non latin words with spaces are kept`() {
+        assertEquals("привет* мир*", LibrarySearchManager.toFtsQuery("Привет мир"))
+        assertEquals("café*", LibrarySearchManager.toFtsQuery("café"))
+    }
+
+    @Test
+    fun `Texts without words or spaces are not searched in the index`() {
+        assertNull(LibrarySearchManager.toFtsQuery(""))
+        assertNull(LibrarySearchManager.toFtsQuery("%_ "))
+        assertNull(LibrarySearchManager.toFtsQuery("東方 remix"))
+        assertNull(LibrarySearchManager.toFtsQuery("ボカロ"))
+    }
+}
@@ -0,0 +1,82 @@
+package org.schabi.newpipe.local.feed.service
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.schabi.newpipe.extractor.exceptions.ContentNotAvailableException
+import org.schabi.newpipe.extractor.exceptions.ReCaptchaException
+import java.net.SocketTimeoutException
+import java.util.concurrent.atomic.AtomicBoolean
+
+class ServiceConcurrencyLimiterTest {
+    private var now = 0L
+    private val notCancelled = AtomicBoolean()
+
+    private fun completeWithLatency(limiter: ServiceConcurrencyLimiter, error: Throwable?) {
+        val startTime = limiter.acquire(notCancelled)!!
+        now += 100
+        limiter.release(startTime, error)
+    }
+
+    @Test
+    fun `Limit grows while the service is healthy`() {
+        val limiter = ServiceConcurrencyLimiter(0) { now }
+
+        repeat(20) { completeWithLatency(limiter, null) }
+
+        assertTrue(limiter.currentLimit > ServiceConcurrencyLimiter.INITIAL_LIMIT)
+    }
+
+    @Test
+    fun `Limit does not grow on unrelated errors`() {
+        val limiter = ServiceConcurrencyLimiter(0) { now }
+
+        repeat(20) { completeWithLatency(limiter, ContentNotAvailableException("gone")) }
+
+        assertEquals(ServiceConcurrencyLimiter.INITIAL_LIMIT, limiter.currentLimit)
+    }
+
+    @Test
+    fun `Limit is halved and starts are delayed on push back`() {
+        val limiter = ServiceConcurrencyLimiter(0) { now }
+        repeat(20) { completeWithLatency(limiter, null) }
+        val grownLimit = limiter.currentLimit
+
+        completeWithLatency(limiter, ReCaptchaException("429", "https://example.com"))
+        assertEquals(grownLimit / 2, limiter.currentLimit)
+
+        val pushBackTime = now
+        now += 1000
+        assertEquals(pushBackTime + 1000, limiter.acquire(notCancelled))
+    }
+
+    @Test
+    fun `Limit never drops below one`() {
+        val limiter = ServiceConcurrencyLimiter(0) { now }
+
+        repeat(10) {
+            now += 60_000
+            completeWithLatency(limiter, RuntimeException(SocketTimeoutException()))
+        }
+
+        assertEquals(ServiceConcurrencyLimiter.MIN_LIMIT, limiter.currentLimit)
+    }
+
+    @Test
+    fun `Starts are spaced by the service interval`() {
+        val limiter = ServiceConcurrencyLimiter(500) { now }
+
+        assertEquals(0L, limiter.acquire(notCancelled))
+        now = 500
+        assertEquals(500L, limiter.acquire(notCancelled))
+    }
+
+    @Test
+    fun `Cancelled wait returns null`() {
+        val limiter = ServiceConcurrencyLimiter(500) { now }
+
+        assertEquals(0L, limiter.acquire(notCancelled))
+        assertNull(limiter.acquire(AtomicBoolean(true)))
+    }
+}
@@ -0,0 +1,85 @@
+package org.schabi.newpipe.local.playlist
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class PlaylistJoinDiffTest {
+    private val playlist = (0L until 3000L).toList()
+
+    /**
+     * Applies the diff the same way [LocalPlaylistManager.updateJoin] does, on join rows kept as
+     * a map from join index to stream id.
+     */
+    private fun apply(oldIds: List<Long>, diff: PlaylistJoinDiff): List<Long> {
+        val rows = oldIds.withIndex().associate { it.index to it.value }.toMutableMap()
+        (diff.deleteFrom until diff.deleteTo).forEach { rows.remove(it) }
+        val shifted = (diff.shiftFrom until diff.shiftTo).associateWith { rows.remove(it)!! }
+        shifted.forEach { (index, streamId) ->
+            assertTrue(rows.put(index + diff.shiftDelta, streamId) == null)
+        }
+        diff.inserted.forEachIndexed { i, streamId ->
+            assertTrue(rows.put(diff.insertAt + i, streamId) == null)
+        }
+        assertEquals((0 until rows.size).toList(), rows.keys.sorted())
+        return rows.toSortedMap().values.toList()
+    }
+
+    private fun assertDiff(newIds: List<Long>, maxTouchedRows: Int) {
+        val diff = PlaylistJoinDiff.compute(playlist, newIds)
+        assertEquals(newIds, apply(playlist, diff))
+        assertTrue("${diff.touchedRows} rows touched", diff.touchedRows <= maxTouchedRows)
+    }
+
+    private fun moved(from: Int, to: Int): List<Long> {
+        return playlist.toMutableList().apply { add(to, removeAt(from)) }
+    }
+
+    @Test
+    fun `Unchanged playlist needs no changes`() {
+        assertTrue(PlaylistJoinDiff.compute(playlist, playlist.toList()).isEmpty)
+    }
+
+    @Test
+    fun `Moves only touch the rows between both positions`() {
+        assertDiff(moved(10, 12), 4)
+        assertDiff(moved(12, 10), 4)
+        assertDiff(moved(2990, 5), 2987)
+        assertDiff(moved(0, 2999), 3001)
+    }
+
+    @Test
+    fun `Removals and appends`() {
+        assertDiff(playlist.filterIndexed { i, _ -> i != 2998 }, 2)
+        assertDiff(playlist.filterIndexed { i, _ -> i != 0 }, 3000)
+        assertDiff(playlist.subList(0, 2000), 1000)
+        assertDiff(playlist + listOf(5000L, 5001L), 2)
+    }
+
+    @Test
+    fun `Duplicates are removed`() {
+        val withDuplicates = playlist.subList(0, 100) + playlist.subList(50, 60) +
+            playlist.subList(100, 3000)
+
+        val diff = PlaylistJoinDiff.compute(withDuplicates, playlist)
+
+        assertEquals(playlist, apply(withDuplicates, diff))
+    }
+
+    @Test
+    fun `Several edits between two saves`() {
+        val newIds = moved(100, 200).toMutableList().apply {
+            removeAt(1500)
+            add(7000L)
+        }
+
+        // falls back to rewriting the rows between the first and the last change
+        assertDiff(newIds, 2 * (3000 - 100))
+    }
+
+    @Test
+    fun `Empty playlists`() {
+        assertDiff(emptyList(), 3000)
+        assertEquals(playlist, apply(emptyList(), PlaylistJoinDiff.compute(emptyList(), playlist)))
+    }
+}
@@ -0,0 +1,117 @@
+package org.schabi.newpipe.player.bulletComments;
+
+import org.junit.Test;
+import org.schabi.newpipe.extractor.bulletComments.BulletCommentsInfoItem;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.schabi.newpipe.player.bulletComments.BulletCommentsTimeline.CHUNK_MILLIS;
+
+public class BulletCommentsTimelineTest {
+    private static BulletCommentsInfoItem comment(final long millis) {
+        final BulletCommentsInfoItem item = mock(BulletCommentsInfoItem.class);
+        when(item.getDuration()).thenReturn(Duration.ofMillis(millis));
+        return item;
+    }
+
+    private static long[] timesOf(final BulletCommentsInfoItem[] items) {
+        final long[] times = new long[items.length];
+        for (int i = 0; i < items.length; i++) {
+            times[i] = BulletCommentsTimeline.timeOf(items[i]);
+        }
+        return times;
+    }
+
+    private static BulletCommentsTimeline timelineOf(final List<BulletCommentsInfoItem> items) {
+        final BulletCommentsTimeline timeline = new BulletCommentsTimeline();
+        for (final Map.Entry<Integer, BulletCommentsInfoItem[]> chunk
+                : BulletCommentsTimeline.split(items).entrySet()) {
+            timeline.put(chunk.getKey(), new BulletCommentsTimeline.Chunk(chunk.getValue()));
+        }
+        return timeline;
+    }
+
+    @Test
+    public void testWindowIsHalfOpenAndSorted() {
+        final BulletCommentsTimeline timeline = timelineOf(Arrays.asList(
+                comment(300), comment(100), comment(200), comment(200), comment(400)));
+
+        assertArrayEquals(new long[]{100, 200, 200, 300},
+                timesOf(timeline.getComments(100, 400)));
+        assertArrayEquals(new long[]{200, 200}, timesOf(timeline.getComments(101, 201)));
+        assertEquals(0, timeline.getComments(401, 500).length);
+        assertEquals(0, timeline.getComments(300, 300).length);
+    }
+
+    @Test
+    public void testWindowAcrossChunks() {
+        final BulletCommentsTimeline timeline = timelineOf(Arrays.asList(
+                comment(CHUNK_MILLIS - 1), comment(CHUNK_MILLIS), comment(3 * CHUNK_MILLIS)));
+
+        assertArrayEquals(new long[]{CHUNK_MILLIS - 1, CHUNK_MILLIS},
+                timesOf(timeline.getComments(CHUNK_MILLIS - 50, CHUNK_MILLIS + 50)));
+        assertArrayEquals(new long[]{CHUNK_MILLIS - 1, CHUNK_MILLIS, 3 * CHUNK_MILLIS},
+                timesOf(timeline.getComments(0, Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void testSplitLeavesOutEmptyChunks() {
+        final Map<Integer, BulletCommentsInfoItem[]> chunks = BulletCommentsTimeline.split(
+                Arrays.asList(comment(0), comment(10), comment(5 * CHUNK_MILLIS + 1)));
+
+        assertEquals(Arrays.asList(0, 5), new ArrayList<>(chunks.keySet()));
+        assertEquals(2, chunks.get(0).length);
+    }
+
+    @Test
+    public void testEvictedChunksAreNotReturned() {
+        final BulletCommentsTimeline timeline = timelineOf(Arrays.asList(
+                comment(0), comment(CHUNK_MILLIS), comment(2 * CHUNK_MILLIS)));
+
+        timeline.retainChunks(1, 2);
+        assertFalse(timeline.contains(0));
+        assertTrue(timeline.contains(1));
+        assertEquals(2, timeline.size());
+        assertArrayEquals(new long[]{CHUNK_MILLIS, 2 * CHUNK_MILLIS},
+                timesOf(timeline.getComments(0, Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void testMatchesLinearScan() {
+        final Random random = new Random(42);
+        final List<BulletCommentsInfoItem> items = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            items.add(comment(random.nextInt((int) (4 * CHUNK_MILLIS))));
+        }
+        final BulletCommentsTimeline timeline = timelineOf(items);
+
+        for (long from = 0; from < 4 * CHUNK_MILLIS; from += 7919) {
+            final long to = from + random.nextInt(90_000);
+            int expectedCount = 0;
+            for (final BulletCommentsInfoItem item : items) {
+                final long time = BulletCommentsTimeline.timeOf(item);
+                if (from <= time && time < to) {
+                    expectedCount++;
+                }
+            }
+
+            final long[] times = timesOf(timeline.getComments(from, to));
+            assertEquals(expectedCount, times.length);
+            for (int i = 0; i < times.length; i++) {
+                assertTrue(from <= times[i] && times[i] < to);
+                assertTrue(i == 0 || times[i - 1] <= times[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package org.schabi.newpipe.player.helper;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.schabi.newpipe.player.helper.BufferPolicy.BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS;
+import static org.schabi.newpipe.player.helper.BufferPolicy.MAX_BUFFER_MS_AUDIO;
+import static org.schabi.newpipe.player.helper.BufferPolicy.MAX_BUFFER_MS_LOWER_BOUND;
+import static org.schabi.newpipe.player.helper.BufferPolicy.MAX_BUFFER_MS_UPPER_BOUND;
+import static org.schabi.newpipe.player.helper.BufferPolicy.MAX_TARGET_BYTES;
+import static org.schabi.newpipe.player.helper.BufferPolicy.MAX_TARGET_BYTES_AUDIO;
+import static org.schabi.newpipe.player.helper.BufferPolicy.MIN_BUFFER_MS_AUDIO;
+import static org.schabi.newpipe.player.helper.BufferPolicy.MIN_BUFFER_MS_FAST;
+import static org.schabi.newpipe.player.helper.BufferPolicy.MIN_BUFFER_MS_MEDIUM;
+import static org.schabi.newpipe.player.helper.BufferPolicy.MIN_BUFFER_MS_PER_REBUFFER;
+import static org.schabi.newpipe.player.helper.BufferPolicy.MIN_BUFFER_MS_SLOW;
+import static org.schabi.newpipe.player.helper.BufferPolicy.MIN_TARGET_BYTES;
+
+public class BufferPolicyTest {
+    private static final long BITRATE = 2_000_000;
+    private static final int MEMORY_CLASS_MB = 256;
+
+    private static BufferPolicy video(final long bandwidth, final int rebuffers) {
+        return BufferPolicy.of(bandwidth, BITRATE, false, MEMORY_CLASS_MB, rebuffers);
+    }
+
+    @Test
+    public void testMinBufferGrowsAsTheNetworkGetsSlower() {
+        assertEquals(MIN_BUFFER_MS_FAST, video(10 * BITRATE, 0).minBufferMs);
+        assertEquals(MIN_BUFFER_MS_MEDIUM, video(2 * BITRATE, 0).minBufferMs);
+        assertEquals(MIN_BUFFER_MS_SLOW, video(BITRATE, 0).minBufferMs);
+        assertEquals(MIN_BUFFER_MS_MEDIUM, video(-1, 0).minBufferMs);
+    }
+
+    @Test
+    public void testRebuffersGrowTheBuffers() {
+        final BufferPolicy calm = video(10 * BITRATE, 0);
+        final BufferPolicy flaky = video(10 * BITRATE, 2);
+        assertEquals(MIN_BUFFER_MS_FAST + 2 * MIN_BUFFER_MS_PER_REBUFFER, flaky.minBufferMs);
+        assertEquals(BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS, calm.bufferForPlaybackAfterRebufferMs);
+        assertEquals(3 * BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS,
+                flaky.bufferForPlaybackAfterRebufferMs);
+
+        // more rebuffers than the maximum count as the maximum
+        assertEquals(video(10 * BITRATE, BufferPolicy.MAX_REBUFFERS).minBufferMs,
+                video(10 * BITRATE, 100).minBufferMs);
+        assertTrue(video(10 * BITRATE, 100).bufferForPlaybackAfterRebufferMs
+                <= BufferPolicy.MAX_BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS);
+    }
+
+    @Test
+    public void testTargetSizeFollowsTheMemoryClass() {
+        assertEquals(MEMORY_CLASS_MB / 4 * 1024 * 1024, video(BITRATE, 0).targetBufferBytes);
+        assertEquals(MIN_TARGET_BYTES,
+                BufferPolicy.of(BITRATE, BITRATE, false, 16, 0).targetBufferBytes);
+        assertEquals(MAX_TARGET_BYTES,
+                BufferPolicy.of(BITRATE, BITRATE, false, 1024, 0).targetBufferBytes);
+    }
+
+    @Test
+    public void testMaxBufferIsWhatFitsInTheTargetSize() {
+        // 64 MiB at 2 Mbit/s is about 268 seconds
+        assertEquals(MAX_BUFFER_MS_UPPER_BOUND, video(BITRATE, 0).maxBufferMs);
+
+        // 8 MiB at 8 Mbit/s is about 8 seconds
+        final BufferPolicy highBitrate = BufferPolicy.of(-1, 8_000_000, false, 32, 0);
+        assertEquals(MAX_BUFFER_MS_LOWER_BOUND, highBitrate.maxBufferMs);
+
+        // 8 MiB at 2 Mbit/s is about 33 seconds, and the minimum never exceeds the maximum
+        final BufferPolicy lowMemory = BufferPolicy.of(BITRATE, BITRATE, false, 32, 3);
+        assertEquals(8 * 1024 * 1024 * 8L * 1000 / BITRATE, lowMemory.maxBufferMs);
+        assertEquals(lowMemory.maxBufferMs, lowMemory.minBufferMs);
+    }
+
+    @Test
+    public void testAudioOnlyShrinksTheBuffers() {
+        final BufferPolicy audio = BufferPolicy.of(-1, 128_000, true, MEMORY_CLASS_MB, 0);
+        assertEquals(MAX_TARGET_BYTES_AUDIO, audio.targetBufferBytes);
+        assertEquals(MIN_BUFFER_MS_AUDIO, audio.minBufferMs);
+        assertEquals(MAX_BUFFER_MS_AUDIO, audio.maxBufferMs);
+    }
+
+    @Test
+    public void testStartBuffersNeverExceedTheMinimum() {
+        for (int rebuffers = 0; rebuffers <= 5; rebuffers++) {
+            for (final boolean audioOnly : new boolean[] {false, true}) {
+                final BufferPolicy policy =
+                        BufferPolicy.of(BITRATE, BITRATE, audioOnly, 32, rebuffers);
+                assertTrue(policy.bufferForPlaybackMs <= policy.minBufferMs);
+                assertTrue(policy.bufferForPlaybackAfterRebufferMs <= policy.minBufferMs);
+                assertTrue(policy.minBufferMs <= policy.maxBufferMs);
+            }
+        }
+    }
+
+    @Test
+    public void testBackBufferFollowsTheMemoryClass() {
+        assertEquals(0, BufferPolicy.backBufferMsOf(64));
+        assertEquals(10_000, BufferPolicy.backBufferMsOf(192));
+        assertEquals(30_000, BufferPolicy.backBufferMsOf(512));
+    }
+}
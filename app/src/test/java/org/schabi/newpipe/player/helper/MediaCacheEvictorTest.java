@@ -0,0 +1,165 @@
+package org.schabi.newpipe.player.helper;
+
+import com.google.android.exoplayer2.upstream.cache.Cache;
+import com.google.android.exoplayer2.upstream.cache.CacheSpan;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.schabi.newpipe.player.helper.MediaCacheEvictor.HEAD_BYTES;
+
+public class MediaCacheEvictorTest {
+    private static final String STREAM_A = "https://www.youtube.com/watch?v=aaaaaaaaaaa";
+    private static final String STREAM_B = "https://www.youtube.com/watch?v=bbbbbbbbbbb";
+    private static final String STREAM_C = "https://www.youtube.com/watch?v=ccccccccccc";
+    private static final long SPAN_BYTES = HEAD_BYTES;
+
+    private final MediaCacheEvictor evictor = new MediaCacheEvictor(4 * SPAN_BYTES);
+    private final Cache cache = mock(Cache.class);
+    private final List<CacheSpan> removedSpans = new ArrayList<>();
+    private long time;
+
+    @Before
+    public void setUp() {
+        doAnswer(invocation -> {
+            final CacheSpan span = invocation.getArgument(0);
+            removedSpans.add(span);
+            evictor.onSpanRemoved(cache, span);
+            return null;
+        }).when(cache).removeSpan(any());
+    }
+
+    private CacheSpan add(final String key, final int index) {
+        final CacheSpan span = new CacheSpan(key, index * SPAN_BYTES, SPAN_BYTES, ++time, null);
+        evictor.onSpanAdded(cache, span);
+        return span;
+    }
+
+    private static String keyOf(final String streamUrl) {
+        return streamUrl + " 18 MPEG-4 360p";
+    }
+
+    @Test
+    public void testLeastRecentlyUsedSpanIsEvictedFirst() {
+        final CacheSpan first = add(keyOf(STREAM_A), 0);
+        add(keyOf(STREAM_B), 0);
+        add(keyOf(STREAM_B), 1);
+        add(keyOf(STREAM_B), 2);
+        assertTrue(removedSpans.isEmpty());
+
+        add(keyOf(STREAM_C), 0);
+        assertEquals(Collections.singletonList(first), removedSpans);
+        assertEquals(4 * SPAN_BYTES, evictor.getCurrentSize());
+    }
+
+    @Test
+    public void testPinnedStreamIsEvictedLast() {
+        evictor.setPinnedStream(STREAM_A);
+        add(keyOf(STREAM_A), 0);
+        add(keyOf(STREAM_A), 1);
+        final CacheSpan other = add(keyOf(STREAM_B), 0);
+        add(keyOf(STREAM_A), 2);
+
+        add(keyOf(STREAM_A), 3);
+        assertEquals(Collections.singletonList(other), removedSpans);
+
+        // once only pinned spans are left, they are evicted too, to respect the size
+        add(keyOf(STREAM_A), 4);
+        assertEquals(2, removedSpans.size());
+        assertEquals(4 * SPAN_BYTES, evictor.getCurrentSize());
+    }
+
+    @Test
+    public void testHeadOfQueuedAndRecentStreamsIsKept() {
+        evictor.setQueuedStreams(Collections.singletonList(STREAM_A));
+        evictor.setPinnedStream(STREAM_B);
+        evictor.setPinnedStream(STREAM_C); // B is now a recently watched stream
+        evictor.setPinnedStream(null);     // and so is C
+
+        final CacheSpan queuedHead = add(keyOf(STREAM_A), 0);
+        final CacheSpan queuedTail = add(keyOf(STREAM_A), 1);
+        final CacheSpan recentHead = add(keyOf(STREAM_B), 0);
+        final CacheSpan recentTail = add(keyOf(STREAM_B), 1);
+        add("https://example.com/other", 0);
+
+        assertEquals(Collections.singletonList(queuedTail), removedSpans);
+        add("https://example.com/other", 1);
+        assertEquals(Arrays.asList(queuedTail, recentTail), removedSpans);
+        assertFalse(removedSpans.contains(queuedHead));
+        assertFalse(removedSpans.contains(recentHead));
+    }
+
+    @Test
+    public void testLargestPartitionGivesUpSpaceFirst() {
+        final CacheSpan otherService = add("https://www.bilibili.com/video/BV1 30280 M4A", 0);
+        add(keyOf(STREAM_A), 0);
+        add(keyOf(STREAM_A), 1);
+        add(keyOf(STREAM_A), 2);
+
+        final CacheSpan newest = add(keyOf(STREAM_B), 0);
+        assertEquals(1, removedSpans.size());
+        assertFalse(removedSpans.contains(otherService));
+        assertFalse(removedSpans.contains(newest));
+    }
+
+    @Test
+    public void testTouchedSpanBecomesMostRecentlyUsed() {
+        final CacheSpan first = add(keyOf(STREAM_A), 0);
+        final CacheSpan second = add(keyOf(STREAM_A), 1);
+        add(keyOf(STREAM_A), 2);
+        add(keyOf(STREAM_A), 3);
+        evictor.onSpanTouched(cache, first,
+                new CacheSpan(first.key, first.position, first.length, ++time, null));
+
+        add(keyOf(STREAM_B), 0);
+        assertEquals(Collections.singletonList(second), removedSpans);
+    }
+
+    @Test
+    public void testSmallerMaximumEvictsOnNextFile() {
+        add(keyOf(STREAM_A), 0);
+        add(keyOf(STREAM_A), 1);
+        evictor.setMaxBytes(SPAN_BYTES);
+
+        evictor.onStartFile(cache, keyOf(STREAM_A), 2 * SPAN_BYTES, SPAN_BYTES);
+        assertEquals(0, evictor.getCurrentSize());
+    }
+
+    @Test
+    public void testPinnedStreamMatchesOtherUrlsOfTheStream() {
+        evictor.setPinnedStream("https://youtu.be/aaaaaaaaaaa");
+        add(keyOf(STREAM_A), 0);
+        add(keyOf(STREAM_A), 1);
+        final CacheSpan other = add(keyOf(STREAM_B), 0);
+        add(keyOf(STREAM_A), 2);
+
+        add(keyOf(STREAM_A), 3);
+        assertEquals(Collections.singletonList(other), removedSpans);
+    }
+
+    @Test
+    public void testPartitions() {
+        // the stream pages and the media hosts of a service share a partition
+        assertEquals(MediaCacheEvictor.partitionOf(keyOf(STREAM_A)),
+                MediaCacheEvictor.partitionOf(
+                        "https://rr1---sn-abc.googlevideo.com/videoplayback?itag=18"));
+        assertEquals("example.com",
+                MediaCacheEvictor.partitionOf("https://cdn.example.com/chunk"));
+        assertEquals("", MediaCacheEvictor.partitionOf("not a url"));
+        assertEquals(STREAM_A, MediaCacheEvictor.normalize("https://youtu.be/aaaaaaaaaaa"));
+        assertEquals(STREAM_A, MediaCacheEvictor.streamUrlOf(keyOf(STREAM_A)));
+        assertNull(MediaCacheEvictor.streamUrlOf("https://example.com/chunk"));
+    }
+}
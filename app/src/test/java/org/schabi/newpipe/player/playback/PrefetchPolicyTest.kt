@@ -0,0 +1,39 @@
+package org.schabi.newpipe.player.playback
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class PrefetchPolicyTest {
+    @Test
+    fun `Unmetered network prefetches infos and media`() {
+        val policy = PrefetchPolicy.of(3, false, false, 80, false)
+
+        assertEquals(3, policy.itemCount)
+        assertEquals(PrefetchPolicy.MEDIA_PREFETCH_SECONDS, policy.mediaSeconds)
+    }
+
+    @Test
+    fun `Metered network only prefetches the next info`() {
+        val policy = PrefetchPolicy.of(3, true, false, 80, false)
+
+        assertEquals(1, policy.itemCount)
+        assertEquals(0, policy.mediaSeconds)
+    }
+
+    @Test
+    fun `Nothing is prefetched in battery saver`() {
+        assertEquals(PrefetchPolicy.NONE, PrefetchPolicy.of(3, false, true, 80, true))
+    }
+
+    @Test
+    fun `Low battery only prefetches while charging`() {
+        assertEquals(PrefetchPolicy.NONE, PrefetchPolicy.of(3, false, false, 10, false))
+        assertEquals(3, PrefetchPolicy.of(3, false, false, 10, true).itemCount)
+        assertEquals(3, PrefetchPolicy.of(3, false, false, -1, false).itemCount)
+    }
+
+    @Test
+    fun `Disabled preference prefetches nothing`() {
+        assertEquals(PrefetchPolicy.NONE, PrefetchPolicy.of(0, false, false, 80, true))
+    }
+}
@@ -0,0 +1,123 @@
+package org.schabi.newpipe.util
+
+import io.reactivex.rxjava3.core.Single
+import io.reactivex.rxjava3.subjects.SingleSubject
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotEquals
+import org.junit.Test
+import org.schabi.newpipe.extractor.InfoItem
+import java.util.concurrent.atomic.AtomicInteger
+
+class SingleFlightTest {
+    private val singleFlight = SingleFlight()
+    private val subscriptions = AtomicInteger()
+    private val disposals = AtomicInteger()
+    private var subject = SingleSubject.create<String>()
+
+    private fun load(key: String = "0:STREAM:url"): Single<String> {
+        return singleFlight.load(
+            key,
+            Single.defer { subject }
+                .doOnSubscribe { subscriptions.incrementAndGet() }
+                .doOnDispose { disposals.incrementAndGet() }
+        )
+    }
+
+    @Test
+    fun `Concurrent loads of the same key share one subscription`() {
+        val first = load().test()
+        val second = load().test()
+
+        subject.onSuccess("info")
+
+        first.assertValue("info")
+        second.assertValue("info")
+        assertEquals(1, subscriptions.get())
+        assertEquals(1L, singleFlight.loadCount)
+        assertEquals(1L, singleFlight.deduplicatedCount)
+    }
+
+    @Test
+    fun `Loads of different keys are not shared`() {
+        load("0:STREAM:a").test()
+        load("0:STREAM:b").test()
+
+        assertEquals(2, subscriptions.get())
+        assertEquals(0L, singleFlight.deduplicatedCount)
+    }
+
+    @Test
+    fun `Different loaders of the same URL do not share a result`() {
+        val url = "https://www.youtube.com/watch?v=aaaaaaaaaaa"
+        fun keyOf(type: InfoItem.InfoType, loader: String) =
+            SingleFlight.keyOf(0, type, loader, url)
+
+        val failing = SingleSubject.create<String>()
+        val recovering = SingleSubject.create<String>()
+        val first = singleFlight
+            .load(keyOf(InfoItem.InfoType.STREAM, ExtractorHelper.LOADER_DEFAULT), failing)
+            .test()
+        val second = singleFlight
+            .load(
+                keyOf(InfoItem.InfoType.STREAM, ExtractorHelper.LOADER_WITHOUT_EXCEPTION),
+                recovering
+            )
+            .test()
+
+        failing.onError(RuntimeException("failed"))
+        recovering.onSuccess("empty info")
+
+        first.assertError(RuntimeException::class.java)
+        second.assertValue("empty info")
+        assertEquals(0L, singleFlight.deduplicatedCount)
+
+        val playlist = keyOf(InfoItem.InfoType.PLAYLIST, ExtractorHelper.LOADER_DEFAULT)
+        val fullPlaylist = keyOf(InfoItem.InfoType.PLAYLIST, ExtractorHelper.LOADER_FULL_ITEMS)
+        val kiosk = keyOf(InfoItem.InfoType.PLAYLIST, ExtractorHelper.LOADER_KIOSK)
+        assertNotEquals(playlist, fullPlaylist)
+        assertNotEquals(playlist, kiosk)
+        assertNotEquals(fullPlaylist, kiosk)
+    }
+
+    @Test
+    fun `Disposing one subscriber keeps the load for the others`() {
+        val first = load().test()
+        val second = load().test()
+
+        first.dispose()
+        assertEquals(0, disposals.get())
+
+        subject.onSuccess("info")
+        second.assertValue("info")
+    }
+
+    @Test
+    fun `Load is disposed once every subscriber is disposed`() {
+        val first = load().test()
+        val second = load().test()
+
+        first.dispose()
+        second.dispose()
+
+        assertEquals(1, disposals.get())
+        assertFalse(subject.hasObservers())
+    }
+
+    @Test
+    fun `Errors are shared and a later load starts again`() {
+        val first = load().test()
+        val second = load().test()
+        subject.onError(RuntimeException("failed"))
+        first.assertError(RuntimeException::class.java)
+        second.assertError(RuntimeException::class.java)
+
+        subject = SingleSubject.create()
+        val third = load().test()
+        subject.onSuccess("info")
+
+        third.assertValue("info")
+        assertEquals(2, subscriptions.get())
+        assertEquals(2L, singleFlight.loadCount)
+    }
+}
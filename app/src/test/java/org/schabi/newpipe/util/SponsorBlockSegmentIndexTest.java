@@ -0,0 +1,101 @@
+package org.schabi.newpipe.util;
+
+import org.junit.Test;
+import org.schabi.newpipe.extractor.sponsorblock.SponsorBlockAction;
+import org.schabi.newpipe.extractor.sponsorblock.SponsorBlockCategory;
+import org.schabi.newpipe.extractor.sponsorblock.SponsorBlockSegment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SponsorBlockSegmentIndexTest {
+    private static SponsorBlockSegment segment(final int startTime, final int endTime) {
+        return segment(startTime, endTime, SponsorBlockAction.SKIP);
+    }
+
+    private static SponsorBlockSegment segment(final int startTime, final int endTime,
+                                               final SponsorBlockAction action) {
+        return new SponsorBlockSegment(startTime + "-" + endTime, startTime, endTime,
+                SponsorBlockCategory.SPONSOR, action, 0);
+    }
+
+    /**
+     * Seeks to each position in order and returns where the player skips to, or -1 where it
+     * keeps playing.
+     */
+    private static List<Long> replaySeeks(final SponsorBlockSegmentIndex index,
+                                          final long... positions) {
+        final List<Long> skipTargets = new ArrayList<>();
+        for (final long position : positions) {
+            final SponsorBlockSegment segment = index.getSegmentAt(position);
+            skipTargets.add(segment == null ? -1L : (long) Math.ceil(segment.endTime));
+        }
+        return skipTargets;
+    }
+
+    @Test
+    public void testSeeksInAndOutOfSegments() {
+        final SponsorBlockSegmentIndex index = SponsorBlockSegmentIndex.of(
+                new SponsorBlockSegment[]{segment(50_000, 60_000), segment(10_000, 20_000)});
+
+        assertEquals(Arrays.asList(-1L, 20_000L, 20_000L, 20_000L, -1L, 60_000L, -1L, 20_000L),
+                replaySeeks(index, 0, 10_000, 15_000, 20_000, 20_001, 55_000, 70_000, 12_000));
+    }
+
+    @Test
+    public void testOverlappingSegmentsSkipToTheLastEnd() {
+        final SponsorBlockSegment longSegment = segment(0, 100_000);
+        final SponsorBlockSegmentIndex index = SponsorBlockSegmentIndex.of(
+                new SponsorBlockSegment[]{longSegment, segment(10_000, 20_000),
+                        segment(30_000, 120_000)});
+
+        assertSame(longSegment, index.getSegmentAt(15_000));
+        assertEquals(Arrays.asList(100_000L, 100_000L, 120_000L, -1L),
+                replaySeeks(index, 5_000, 25_000, 110_000, 130_000));
+    }
+
+    @Test
+    public void testOnlySkippableSegmentsAreIndexed() {
+        final SponsorBlockSegmentIndex index = SponsorBlockSegmentIndex.of(
+                new SponsorBlockSegment[]{segment(0, 5_000, SponsorBlockAction.POI),
+                        segment(10_000, 20_000)});
+
+        assertNull(index.getSegmentAt(1_000));
+        assertEquals(1, index.getSegments().size());
+    }
+
+    @Test
+    public void testEmptyIndex() {
+        assertTrue(SponsorBlockSegmentIndex.of(null).isEmpty());
+        assertNull(SponsorBlockSegmentIndex.of(new SponsorBlockSegment[0]).getSegmentAt(0));
+    }
+
+    @Test
+    public void testMatchesLinearScan() {
+        final Random random = new Random(42);
+        final SponsorBlockSegment[] segments = new SponsorBlockSegment[40];
+        for (int i = 0; i < segments.length; i++) {
+            final int start = random.nextInt(600_000);
+            segments[i] = segment(start, start + random.nextInt(60_000));
+        }
+        final SponsorBlockSegmentIndex index = SponsorBlockSegmentIndex.of(segments);
+
+        for (int position = 0; position < 700_000; position += 997) {
+            long expectedEnd = -1;
+            for (final SponsorBlockSegment segment : segments) {
+                if (segment.startTime <= position && position <= segment.endTime) {
+                    expectedEnd = Math.max(expectedEnd, (long) segment.endTime);
+                }
+            }
+            final SponsorBlockSegment found = index.getSegmentAt(position);
+            assertEquals(expectedEnd, found == null ? -1 : (long) found.endTime);
+        }
+    }
+}
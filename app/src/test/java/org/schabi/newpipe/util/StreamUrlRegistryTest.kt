@@ -0,0 +1,172 @@
+package org.schabi.newpipe.util
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertThrows
+import org.junit.Test
+import org.mockito.Mockito.mock
+import org.mockito.Mockito.`when`
+import org.schabi.newpipe.extractor.stream.AudioStream
+import org.schabi.newpipe.extractor.stream.StreamInfo
+import java.io.IOException
+import java.io.InterruptedIOException
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.concurrent.thread
+
+class StreamUrlRegistryTest {
+    companion object {
+        private const val SERVICE_ID = 0
+        private const val STREAM_URL = "https://www.youtube.com/watch?v=id"
+        private const val STREAM_ID = "id"
+        private const val ITAG = "140"
+    }
+
+    private var now = TimeUnit.DAYS.toMillis(1000)
+    private val loads = AtomicInteger()
+    private val backgroundTasks = mutableListOf<Runnable>()
+    private var loader: () -> StreamInfo = { streamInfo(urlExpiringIn(TimeUnit.HOURS.toMillis(6))) }
+    private val registry = StreamUrlRegistry(
+        { _, _ ->
+            loads.incrementAndGet()
+            loader()
+        },
+        { backgroundTasks.add(it) },
+        { now }
+    )
+
+    private fun urlExpiringIn(millis: Long): String {
+        val expire = TimeUnit.MILLISECONDS.toSeconds(now + millis)
+        return "https://example.googlevideo.com/videoplayback?itag=$ITAG&expire=$expire&n=$now"
+    }
+
+    private fun streamInfo(url: String): StreamInfo {
+        val audioStream = mock(AudioStream::class.java)
+        `when`(audioStream.itag).thenReturn(ITAG.toInt())
+        `when`(audioStream.isUrl).thenReturn(true)
+        `when`(audioStream.content).thenReturn(url)
+
+        val info = mock(StreamInfo::class.java)
+        `when`(info.id).thenReturn(STREAM_ID)
+        `when`(info.audioStreams).thenReturn(listOf(audioStream))
+        return info
+    }
+
+    @Test
+    fun `Concurrent refreshes of a stream extract it once`() {
+        val loading = CountDownLatch(1)
+        val release = CountDownLatch(1)
+        val info = streamInfo(urlExpiringIn(TimeUnit.HOURS.toMillis(6)))
+        loader = {
+            loading.countDown()
+            release.await()
+            info
+        }
+
+        var first: StreamInfo? = null
+        val firstThread = thread { first = registry.refresh(SERVICE_ID, STREAM_URL) }
+        loading.await()
+        var second: StreamInfo? = null
+        val secondThread = thread { second = registry.refresh(SERVICE_ID, STREAM_URL) }
+        release.countDown()
+        firstThread.join()
+        secondThread.join()
+
+        assertSame(info, first)
+        assertSame(info, second)
+        assertEquals(1, loads.get())
+    }
+
+    @Test
+    fun `Refreshed URLs are returned until they expire`() {
+        val url = urlExpiringIn(TimeUnit.HOURS.toMillis(1))
+        loader = { streamInfo(url) }
+
+        registry.refresh(SERVICE_ID, STREAM_URL)
+        assertEquals(url, registry.getUrl(STREAM_ID, ITAG))
+
+        now += TimeUnit.HOURS.toMillis(1)
+        assertNull(registry.getUrl(STREAM_ID, ITAG))
+        assertEquals(0, registry.size())
+    }
+
+    @Test
+    fun `A URL refresh that times out goes on in the background`() {
+        val url = urlExpiringIn(TimeUnit.HOURS.toMillis(1))
+        loader = { streamInfo(url) }
+
+        assertThrows(InterruptedIOException::class.java) {
+            registry.refreshUrl(SERVICE_ID, STREAM_URL, STREAM_ID, ITAG, 1)
+        }
+        assertEquals(1, backgroundTasks.size)
+        backgroundTasks[0].run()
+
+        // the retry gets the result of the same extraction
+        assertEquals(url, registry.refreshUrl(SERVICE_ID, STREAM_URL, STREAM_ID, ITAG, 1))
+        assertEquals(1, loads.get())
+    }
+
+    @Test
+    fun `A recent extraction is reused`() {
+        registry.refresh(SERVICE_ID, STREAM_URL)
+        now += StreamUrlRegistry.REUSE_MILLIS - 1
+        registry.refresh(SERVICE_ID, STREAM_URL)
+        assertEquals(1, loads.get())
+
+        now += 1
+        registry.refresh(SERVICE_ID, STREAM_URL)
+        assertEquals(2, loads.get())
+    }
+
+    @Test
+    fun `Failed extractions are not reused`() {
+        loader = { throw IOException("failed") }
+        assertThrows(IOException::class.java) { registry.refresh(SERVICE_ID, STREAM_URL) }
+
+        loader = { streamInfo(urlExpiringIn(TimeUnit.HOURS.toMillis(6))) }
+        registry.refresh(SERVICE_ID, STREAM_URL)
+        assertEquals(2, loads.get())
+    }
+
+    @Test
+    fun `URLs used recently are refreshed before they expire`() {
+        val url = urlExpiringIn(StreamUrlRegistry.REFRESH_AHEAD_MILLIS / 2)
+        registry.register(SERVICE_ID, STREAM_URL, STREAM_ID, ITAG, url)
+        assertEquals(url, registry.getUrl(STREAM_ID, ITAG))
+
+        assertEquals(1, backgroundTasks.size)
+        backgroundTasks[0].run()
+        assertEquals(1, loads.get())
+        val refreshedUrl = registry.getUrl(STREAM_ID, ITAG)
+        assertEquals(urlExpiringIn(TimeUnit.HOURS.toMillis(6)), refreshedUrl)
+    }
+
+    @Test
+    fun `Registering a URL keeps the known one`() {
+        val url = urlExpiringIn(TimeUnit.HOURS.toMillis(1))
+        registry.register(SERVICE_ID, STREAM_URL, STREAM_ID, ITAG, url)
+        registry.register(SERVICE_ID, STREAM_URL, STREAM_ID, ITAG, url + "&other")
+
+        assertEquals(url, registry.getUrl(STREAM_ID, ITAG))
+    }
+
+    @Test
+    fun `Least recently used entries are evicted past the maximum`() {
+        for (i in 0 until StreamUrlRegistry.MAX_ENTRIES + 10) {
+            now += 1
+            registry.register(
+                SERVICE_ID, STREAM_URL, STREAM_ID, i.toString(),
+                urlExpiringIn(TimeUnit.HOURS.toMillis(1))
+            )
+        }
+
+        assertEquals(StreamUrlRegistry.MAX_ENTRIES, registry.size())
+        assertNull(registry.getUrl(STREAM_ID, "0"))
+        assertEquals(
+            urlExpiringIn(TimeUnit.HOURS.toMillis(1)),
+            registry.getUrl(STREAM_ID, (StreamUrlRegistry.MAX_ENTRIES + 9).toString())
+        )
+    }
+}
@@ -0,0 +1,77 @@
+package org.schabi.newpipe.views;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class BulletCommentRowAllocatorTest {
+    private static final int WIDTH = 1000;
+    private static final int MAX_ROWS = Integer.MAX_VALUE;
+
+    private BulletCommentRowAllocator allocator;
+
+    @Before
+    public void setUp() {
+        allocator = new BulletCommentRowAllocator();
+        allocator.reset(3, WIDTH);
+    }
+
+    @Test
+    public void testFixedRowsAreHeldUntilTheCommentEnds() {
+        allocator.occupyFixedRow(allocator.findTopRow(0, MAX_ROWS), 0, 8000);
+        assertEquals(1, allocator.findTopRow(0, MAX_ROWS));
+        allocator.occupyFixedRow(allocator.findBottomRow(0, MAX_ROWS), 0, 4000);
+        assertEquals(1, allocator.findBottomRow(0, MAX_ROWS));
+
+        allocator.occupyFixedRow(1, 0, 8000);
+        assertEquals(-1, allocator.findTopRow(3999, MAX_ROWS));
+        assertEquals(2, allocator.findTopRow(4000, MAX_ROWS));
+        assertEquals(0, allocator.findTopRow(8000, MAX_ROWS));
+    }
+
+    @Test
+    public void testMaxRowsLimitTheSearch() {
+        allocator.occupyFixedRow(0, 0, 8000);
+        assertEquals(-1, allocator.findTopRow(0, 1));
+        assertEquals(-1, allocator.findRegularRow(0, 8000, 100, 0));
+
+        allocator.occupyFixedRow(2, 0, 8000);
+        assertEquals(-1, allocator.findBottomRow(0, 1));
+        assertEquals(1, allocator.findBottomRow(0, 2));
+    }
+
+    @Test
+    public void testScrollingCommentWaitsForThePreviousToEnterTheView() {
+        // 1000 px wide comment crossing 2000 px in 8 s: fully entered after 4 s
+        allocator.occupyRegularRow(0, 0, 8000, 1000);
+
+        assertEquals(1, allocator.findRegularRow(3999, 8000, 1000, MAX_ROWS));
+        assertEquals(0, allocator.findRegularRow(4000, 8000, 1000, MAX_ROWS));
+    }
+
+    @Test
+    public void testFasterCommentDoesNotCatchUpWithThePrevious() {
+        allocator.occupyRegularRow(0, 0, 8000, 0);
+
+        // a wider comment is faster: it would reach the left edge before the previous leaves
+        assertEquals(1, allocator.findRegularRow(2000, 8000, 1000, MAX_ROWS));
+        assertEquals(0, allocator.findRegularRow(2000, 8000, 0, MAX_ROWS));
+        assertEquals(0, allocator.findRegularRow(6000, 8000, 1000, MAX_ROWS));
+    }
+
+    @Test
+    public void testFullRowsAndReset() {
+        for (int row = 0; row < 3; row++) {
+            allocator.occupyRegularRow(allocator.findRegularRow(0, 8000, 100, MAX_ROWS),
+                    0, 8000, 100);
+        }
+        assertEquals(-1, allocator.findRegularRow(0, 8000, 100, MAX_ROWS));
+        assertEquals(0, allocator.findRegularRow(8000, 8000, 100, MAX_ROWS));
+
+        allocator.reset(2, WIDTH);
+        assertEquals(2, allocator.getRowCount());
+        assertEquals(0, allocator.findRegularRow(0, 8000, 100, MAX_ROWS));
+        assertEquals(1, allocator.findBottomRow(0, MAX_ROWS));
+    }
+}
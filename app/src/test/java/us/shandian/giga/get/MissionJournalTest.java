@@ -0,0 +1,151 @@
+package us.shandian.giga.get;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MissionJournalTest {
+
+    private static File makeFile() throws IOException {
+        final File dir = Files.createTempDirectory("journal").toFile();
+        dir.deleteOnExit();
+        final File file = new File(dir, "1234");
+        file.deleteOnExit();
+        return file;
+    }
+
+    private static DownloadMission makeMission() {
+        final DownloadMission mission = new DownloadMission(
+                new String[]{"https://example.com/video"}, null, 'v', null, null);
+        mission.timestamp = 1234;
+        mission.source = "https://example.com/watch";
+        mission.length = 10L * DownloadMission.BLOCK_SIZE;
+        mission.nearLength = mission.length;
+        mission.blocks = new int[10];
+        return mission;
+    }
+
+    @Test
+    public void testSnapshotRoundTrip() throws IOException {
+        final File file = makeFile();
+        final DownloadMission mission = makeMission();
+        mission.errCode = DownloadMission.ERROR_TIMEOUT;
+        mission.errObject = new IOException("timeout");
+        mission.recoveryInfo = null;
+
+        new MissionJournal(file).write(mission);
+
+        assertTrue(MissionJournal.isJournal(file));
+        final DownloadMission loaded = MissionJournal.read(file);
+
+        assertNotNull(loaded);
+        assertEquals(mission.source, loaded.source);
+        assertEquals(mission.timestamp, loaded.timestamp);
+        assertEquals(mission.urls[0], loaded.urls[0]);
+        assertEquals(mission.length, loaded.length);
+        assertEquals(DownloadMission.ERROR_TIMEOUT, loaded.errCode);
+        assertEquals(mission.errObject.toString(), loaded.errObject.toString());
+        assertArrayEquals(mission.blocks, loaded.blocks);
+        assertNull(loaded.psAlgorithm);
+    }
+
+    @Test
+    public void testProgressIsAppended() throws IOException {
+        final File file = makeFile();
+        final DownloadMission mission = makeMission();
+        final MissionJournal journal = new MissionJournal(file);
+
+        journal.write(mission);
+        final long snapshotLength = file.length();
+
+        mission.blocks[0] = -1;
+        mission.blocks[1] = 4096;
+        mission.done = DownloadMission.BLOCK_SIZE + 4096;
+        journal.write(mission);
+
+        // only the counters and the two changed blocks are appended
+        assertTrue(file.length() - snapshotLength < 100);
+
+        final DownloadMission loaded = MissionJournal.read(file);
+        assertNotNull(loaded);
+        assertEquals(mission.done, loaded.done);
+        assertArrayEquals(mission.blocks, loaded.blocks);
+    }
+
+    @Test
+    public void testTornRecordIsIgnored() throws IOException {
+        final File file = makeFile();
+        final DownloadMission mission = makeMission();
+        final MissionJournal journal = new MissionJournal(file);
+
+        journal.write(mission);
+
+        mission.blocks[0] = -1;
+        mission.done = DownloadMission.BLOCK_SIZE;
+        journal.write(mission);
+        final long validLength = file.length();
+
+        mission.blocks[1] = -1;
+        mission.done = 2L * DownloadMission.BLOCK_SIZE;
+        journal.write(mission);
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(validLength + 6);
+        }
+
+        final DownloadMission loaded = MissionJournal.read(file);
+        assertNotNull(loaded);
+        assertEquals(DownloadMission.BLOCK_SIZE, loaded.done);
+        assertEquals(-1, loaded.blocks[0]);
+        assertEquals(0, loaded.blocks[1]);
+    }
+
+    @Test
+    public void testCompaction() throws IOException {
+        final File file = makeFile();
+        final DownloadMission mission = makeMission();
+        final MissionJournal journal = new MissionJournal(file);
+
+        journal.write(mission);
+        final long snapshotLength = file.length();
+
+        for (int i = 0; i < MissionJournal.COMPACT_THRESHOLD; i++) {
+            mission.done += 1024;
+            journal.write(mission);
+        }
+        assertTrue(file.length() > snapshotLength);
+
+        mission.done += 1024;
+        journal.write(mission);
+        assertEquals(snapshotLength, file.length());
+
+        final DownloadMission loaded = MissionJournal.read(file);
+        assertNotNull(loaded);
+        assertEquals(mission.done, loaded.done);
+    }
+
+    @Test
+    public void testStateChangeWritesSnapshot() throws IOException {
+        final File file = makeFile();
+        final DownloadMission mission = makeMission();
+        final MissionJournal journal = new MissionJournal(file);
+
+        journal.write(mission);
+        mission.enqueued = false;
+        journal.write(mission);
+
+        final DownloadMission loaded = MissionJournal.read(file);
+        assertNotNull(loaded);
+        assertFalse(loaded.enqueued);
+    }
+}
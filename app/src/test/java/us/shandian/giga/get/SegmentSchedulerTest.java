@@ -0,0 +1,177 @@
+package us.shandian.giga.get;
+
+import org.junit.Test;
+
+import us.shandian.giga.get.DownloadMission.Block;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static us.shandian.giga.get.DownloadMission.BLOCK_SIZE;
+
+public class SegmentSchedulerTest {
+    private long now = 0;
+
+    private SegmentScheduler makeScheduler(final int[] blocks, final long length,
+                                           final int connections) {
+        final SegmentScheduler scheduler =
+                new SegmentScheduler(blocks, length, connections, () -> now);
+        for (int i = 0; i < connections; i++) {
+            scheduler.registerConnection();
+        }
+        return scheduler;
+    }
+
+    @Test
+    public void testAcquireUntouchedBlocksFirst() {
+        final int[] blocks = new int[3];
+        blocks[1] = -1;
+        final SegmentScheduler scheduler = makeScheduler(blocks, 3L * BLOCK_SIZE, 2);
+
+        final Block first = scheduler.acquire();
+        final Block second = scheduler.acquire();
+
+        assertNotNull(first);
+        assertNotNull(second);
+        assertEquals(0, first.position);
+        assertEquals(2, second.position);
+        assertEquals(BLOCK_SIZE, second.end);
+    }
+
+    @Test
+    public void testLastBlockIsShorter() {
+        final SegmentScheduler scheduler = makeScheduler(new int[2], BLOCK_SIZE + 1000, 1);
+        assertEquals(BLOCK_SIZE, scheduler.blockSize(0));
+        assertEquals(1000, scheduler.blockSize(1));
+    }
+
+    @Test
+    public void testIdleConnectionStealsSecondHalf() {
+        final int[] blocks = new int[1];
+        final SegmentScheduler scheduler = makeScheduler(blocks, BLOCK_SIZE, 2);
+
+        final Block victim = scheduler.acquire();
+        assertNotNull(victim);
+        victim.done = 1000;
+
+        final Block thief = scheduler.acquire();
+        assertNotNull(thief);
+        assertEquals(victim.position, thief.position);
+        assertEquals(victim.end, thief.start);
+        assertEquals(BLOCK_SIZE, thief.end);
+        assertTrue(thief.start >= victim.done + DownloadMission.BUFFER_SIZE);
+    }
+
+    @Test
+    public void testNoStealOfSmallRanges() {
+        final int[] blocks = new int[1];
+        final SegmentScheduler scheduler = makeScheduler(blocks, BLOCK_SIZE, 2);
+
+        final Block victim = scheduler.acquire();
+        assertNotNull(victim);
+        victim.done = BLOCK_SIZE - SegmentScheduler.MIN_STEAL_SIZE;
+
+        assertNull(scheduler.acquire());
+        assertEquals(1, scheduler.getActiveConnections());
+    }
+
+    @Test
+    public void testReleaseCommitsBlockOnceAllSlicesFinish() {
+        final int[] blocks = new int[1];
+        final SegmentScheduler scheduler = makeScheduler(blocks, BLOCK_SIZE, 2);
+
+        final Block victim = scheduler.acquire();
+        final Block thief = scheduler.acquire();
+        assertNotNull(victim);
+        assertNotNull(thief);
+
+        thief.done = thief.end;
+        assertEquals(0, scheduler.release(thief));
+        assertEquals(0, blocks[0]);
+
+        victim.done = victim.end;
+        assertEquals(0, scheduler.release(victim));
+        assertEquals(-1, blocks[0]);
+    }
+
+    @Test
+    public void testReleaseKeepsOnlyContiguousProgress() {
+        final int[] blocks = new int[1];
+        final SegmentScheduler scheduler = makeScheduler(blocks, BLOCK_SIZE, 2);
+
+        final Block victim = scheduler.acquire();
+        final Block thief = scheduler.acquire();
+        assertNotNull(victim);
+        assertNotNull(thief);
+
+        // paused with a gap between both slices
+        victim.done = 4096;
+        thief.done = thief.start + 8192;
+
+        assertEquals(0, scheduler.release(victim));
+        assertEquals(8192, scheduler.release(thief));
+        assertEquals(4096, blocks[0]);
+
+        // the block can be acquired again from the persisted offset
+        final Block resumed = scheduler.acquire();
+        assertNotNull(resumed);
+        assertEquals(4096, resumed.done);
+    }
+
+    @Test
+    public void testSurplusConnectionExits() {
+        final int[] blocks = new int[64];
+        final SegmentScheduler scheduler = makeScheduler(blocks, 64L * BLOCK_SIZE, 2);
+        assertEquals(2, scheduler.getTargetConnections());
+
+        // first window only sets the baseline, the second one probes a connection less
+        now += SegmentScheduler.ADAPT_WINDOW_MILLIS;
+        scheduler.onTransfer(1000);
+        now += SegmentScheduler.ADAPT_WINDOW_MILLIS;
+        scheduler.onTransfer(1000);
+        assertEquals(1, scheduler.getTargetConnections());
+
+        assertNull(scheduler.acquire());
+        assertEquals(1, scheduler.getActiveConnections());
+        assertNotNull(scheduler.acquire());
+    }
+
+    @Test
+    public void testConnectionRestoredWhenThroughputDrops() {
+        final int[] blocks = new int[64];
+        final SegmentScheduler scheduler = makeScheduler(blocks, 64L * BLOCK_SIZE, 2);
+
+        now += SegmentScheduler.ADAPT_WINDOW_MILLIS;
+        scheduler.onTransfer(100_000);
+        now += SegmentScheduler.ADAPT_WINDOW_MILLIS;
+        scheduler.onTransfer(100_000);
+        assertEquals(1, scheduler.getTargetConnections());
+        assertNull(scheduler.acquire());
+
+        now += SegmentScheduler.ADAPT_WINDOW_MILLIS;
+        assertTrue(scheduler.onTransfer(50_000));
+        assertEquals(2, scheduler.getTargetConnections());
+    }
+
+    @Test
+    public void testNoConnectionSpawnedForRangeTooSmallToSteal() {
+        final SegmentScheduler scheduler = makeScheduler(new int[1], BLOCK_SIZE, 2);
+        final Block victim = scheduler.acquire();
+        assertNotNull(victim);
+
+        now += SegmentScheduler.ADAPT_WINDOW_MILLIS;
+        scheduler.onTransfer(100_000);
+        now += SegmentScheduler.ADAPT_WINDOW_MILLIS;
+        scheduler.onTransfer(100_000);
+        assertNull(scheduler.acquire());
+
+        // large enough without the buffer the victim may be writing, too small with it
+        victim.done = BLOCK_SIZE - (2 * SegmentScheduler.MIN_STEAL_SIZE
+                + DownloadMission.BUFFER_SIZE - 1);
+        now += SegmentScheduler.ADAPT_WINDOW_MILLIS;
+        assertFalse(scheduler.onTransfer(50_000));
+        assertEquals(2, scheduler.getTargetConnections());
+    }
+}